@@ -17,11 +17,13 @@ package des.game.base;
 
 
 import des.game.physics.CollisionBehavior;
+import des.game.physics.ContactBehavior;
+import des.game.physics.PhysicsEngine;
 import des.game.physics.PhysicsObject;
 import des.game.physics.VectorObject;
 
 
-public class CollisionComponent extends GameComponent implements CollisionBehavior{
+public class CollisionComponent extends GameComponent implements ContactBehavior{
 	
 	// this compoment wraps this particular physicsObject
 	public PhysicsObject physicsObject;
@@ -61,6 +63,14 @@ public class CollisionComponent extends GameComponent implements CollisionBehavi
 	    	
 	    	gameObject.targetVelocity.x = velocity.x;
 	    	gameObject.targetVelocity.y = velocity.y;
+	    	
+	    	//draw the object between the last two physics steps
+	    	final float alpha = PhysicsEngine.instance.getInterpolation();
+	    	gameObject.renderOffset.x = (float)v.getInterpolatedX(alpha) - position.x;
+	    	gameObject.renderOffset.y = (float)v.getInterpolatedY(alpha) - position.y;
+    	}
+    	else{
+    		gameObject.renderOffset.zero();
     	}
 	}
 	
@@ -73,6 +83,26 @@ public class CollisionComponent extends GameComponent implements CollisionBehavi
 	public void handleCollision(CollisionBehavior other) {
 		
 		
+	}
+	
+	/**
+	 * called once when a contact with other starts, sub-classes can use this instead of tracking 
+	 * 	whether handleCollision has already been called for other
+	 * 
+	 * @param the behavior of an object that was collided with, may be null
+	 */
+	@Override
+	public void beginContact(CollisionBehavior other) {
+		
+	}
+	/**
+	 * called once when a contact with other ends
+	 * 
+	 * @param the behavior of an object that was collided with, may be null
+	 */
+	@Override
+	public void endContact(CollisionBehavior other) {
+		
 	}
 	
 	public void setPhysicsObject(PhysicsObject physicsObject, GameObject parent){
@@ -41,6 +41,10 @@ public class GameObject extends PhasedObjectManager {
      * This value is the objects desired velocity as well as it's orientation
      */
     public Vector2 targetVelocity;   
+    /**
+     * How far from mPosition the object is drawn, to draw it between the last two physics steps
+     */
+    public Vector2 renderOffset;
     
     
     public boolean destroyOnDeactivation;
@@ -112,6 +116,7 @@ public class GameObject extends PhasedObjectManager {
         
         velocity = new Vector2(0, 0);
         targetVelocity = new Vector2(1,1);
+        renderOffset = new Vector2();
         reset();
     }
     
@@ -131,6 +136,7 @@ public class GameObject extends PhasedObjectManager {
 
         velocity.set(1.0f, 1.0f);
         targetVelocity.set(1.0f, 1.0f);
+        renderOffset.zero();
         mCurrentAction = -1;
         mCurrentDirection = -1;
         mCurrentState = -1;
@@ -29,14 +29,36 @@ import des.game.base.GameComponent;
  *
  */
 public class Boundary extends GameComponent{
+	//shape types, the ids of new kinds of shapes come from ShapeKernel.newShapeType and are tested 
+	//	by the kernels registered for them
+	public static final int NO_SHAPE = -1;
+	public static final int CIRCLE = 0;
+	public static final int RECTANGLE = 1;
+	public static final int POLYGON = 2;
+	public static final int BUILT_IN_SHAPES = 3;
 	 
 	private Rectangle rectangle;
 	private Circle circle;
 	private Polygon polygon;
+	//kind of shape held, picks the kernel that tests a pair
+	private int shapeType;
 	protected BoundingBox xProjection;
 	protected BoundingBox yProjection;
 	protected BoundingBox zProjection;
 	protected double height;
+	//location and size the box was last set at, used to skip unchanged boxes
+	private boolean boxSet;
+	private double boxX;
+	private double boxY;
+	private double boxZ;
+	private double boxWidth;
+	private double boxHeight;
+	private int boxVersion;
+	//distance moved over the last step, the box is stretched back to cover where the boundary started
+	private double sweepX;
+	private double sweepY;
+	private double boxSweepX;
+	private double boxSweepY;
 	
 	public Boundary(){
 		super();
@@ -45,6 +67,7 @@ public class Boundary extends GameComponent{
 		yProjection = new BoundingBox();
 		zProjection = new BoundingBox();
 		height = 1;
+		updateShapeType();
 	}
 	/**
 	 * creates a boundary with a polygon
@@ -58,6 +81,7 @@ public class Boundary extends GameComponent{
 		yProjection = new BoundingBox();
 		zProjection = new BoundingBox();
 		height = 1;
+		updateShapeType();
 	}
 	/**
 	 * creates a boundary with a circle
@@ -74,6 +98,7 @@ public class Boundary extends GameComponent{
 		yProjection = new BoundingBox();
 		zProjection = new BoundingBox();
 		height = 1;
+		updateShapeType();
 	}
 	/**
 	 * creates a boundary with a rectangle
@@ -89,18 +114,87 @@ public class Boundary extends GameComponent{
 		yProjection = new BoundingBox();
 		zProjection = new BoundingBox();
 		height = 1;
+		updateShapeType();
+	}
+	/**
+	 * sets the x and y projections of the boundary, but only if the boundary has moved or changed
+	 * 	size since the projections were last set
+	 * @return true when the projections were changed
+	 */
+	public boolean updateBox(){
+		final GLPoint location = getLocation();
+		if(location == null){
+			return false;
+		}
+		double w = 0;
+		double h = 0;
+		if(polygon != null){
+			//a turned polygon covers a different box
+			w = polygon.getRotation();
+		}
+		else{
+			if(circle != null){
+				w = h = circle.getRadius();
+			}
+			else if(rectangle != null){
+				w = rectangle.getWidth();
+				h = rectangle.getHeight();
+			}
+		}
+		if(boxSet && boxX == location.getX() && boxY == location.getY() && boxZ == location.getZ() &&
+				boxWidth == w && boxHeight == h && boxSweepX == sweepX && boxSweepY == sweepY){
+			return false;
+		}
+		boxSet = true;
+		boxX = location.getX();
+		boxY = location.getY();
+		boxZ = location.getZ();
+		boxWidth = w;
+		boxHeight = h;
+		boxSweepX = sweepX;
+		boxSweepY = sweepY;
+		setBox();
+		return true;
+	}
+	/**
+	 * incremented every time the projections are set, so a cached result can tell if the box has changed
+	 * @return the current version of the projections
+	 */
+	public int getBoxVersion(){
+		return boxVersion;
 	}
 	/**
 	 * sets the x and y projections of the boundary based on its current location
 	 */
 	public void setBox(){
+		boxVersion++;
+		setShapeBox();
+		if(sweepX > 0){
+			xProjection.setStart(xProjection.getStart() - sweepX);
+		}
+		else{
+			xProjection.setEnd(xProjection.getEnd() - sweepX);
+		}
+		if(sweepY > 0){
+			yProjection.setStart(yProjection.getStart() - sweepY);
+		}
+		else{
+			yProjection.setEnd(yProjection.getEnd() - sweepY);
+		}
+	}
+	/**
+	 * sets the projections to the box around the shape where it is, before the sweep is added
+	 */
+	protected void setShapeBox(){
 		if(polygon != null){
+			//build the cached vertices here, before the narrow phase reads them from several threads
+			polygon.updateWorld();
 			xProjection.setStart(polygon.getMinX());
 			xProjection.setEnd(polygon.getMaxX());
 			yProjection.setStart(polygon.getMinY());
 			yProjection.setEnd(polygon.getMaxY());
 			zProjection.setStart(polygon.getCenter().getZ());
-			zProjection.setStart(polygon.getCenter().getZ() + height);
+			zProjection.setEnd(polygon.getCenter().getZ() + height);
 		}
 		else if(circle != null){
 			xProjection.setStart(circle.getCenter().getX() - circle.getRadius());
@@ -108,7 +202,7 @@ public class Boundary extends GameComponent{
 			yProjection.setStart(circle.getCenter().getY() - circle.getRadius());
 			yProjection.setEnd(circle.getCenter().getY() + circle.getRadius());
 			zProjection.setStart(circle.getCenter().getZ());
-			zProjection.setStart(circle.getCenter().getZ() + height);
+			zProjection.setEnd(circle.getCenter().getZ() + height);
 		}
 		else if(rectangle != null){
 			xProjection.setStart(rectangle.getLeft());
@@ -116,9 +210,31 @@ public class Boundary extends GameComponent{
 			yProjection.setStart(rectangle.getBottom());
 			yProjection.setEnd(rectangle.getTop());
 			zProjection.setStart(rectangle.getCenter().getZ());
-			zProjection.setStart(rectangle.getCenter().getZ() + height);
+			zProjection.setEnd(rectangle.getCenter().getZ() + height);
 		}
 	}
+	/**
+	 * makes the next updateBox set the projections, for when the shape changes in a way updateBox can not see
+	 */
+	protected void invalidateBox(){
+		boxSet = false;
+	}
+	/**
+	 * sets how far the boundary moved over the last step. the box then also covers where the boundary
+	 * 	started, so the broadphase finds pairs that passed through each other during the step.
+	 * @param dx
+	 * @param dy
+	 */
+	public void setSweep(double dx, double dy){
+		sweepX = dx;
+		sweepY = dy;
+	}
+	public double getSweepX(){
+		return sweepX;
+	}
+	public double getSweepY(){
+		return sweepY;
+	}
 	
 
 	public Rectangle getRectangle() {
@@ -126,25 +242,59 @@ public class Boundary extends GameComponent{
 	}
 	public void setRectangle(Rectangle rectangle) {
 		this.rectangle = rectangle;
+		boxSet = false;
 		
 		circle = null;
 		polygon = null;
+		updateShapeType();
 	}
 	public Circle getCircle() {
 		return circle;
 	}
 	public void setCircle(Circle circle) {
 		this.circle = circle;
+		boxSet = false;
 		polygon = null;
 		rectangle = null;
+		updateShapeType();
 	}
 	public Polygon getPolygon(){
 		return polygon;
 	}
 	public void setPolygon(Polygon polygon){
 		this.polygon = polygon;
+		boxSet = false;
 		circle = null;
 		rectangle = null;
+		updateShapeType();
+	}
+	/**
+	 * @return CIRCLE, RECTANGLE, POLYGON, the id of a new kind of shape, or NO_SHAPE when it holds none
+	 */
+	public int getShapeType(){
+		return shapeType;
+	}
+	/**
+	 * for boundaries that hold a new kind of shape
+	 * @param shapeType id from ShapeKernel.newShapeType
+	 */
+	protected void setShapeType(int shapeType){
+		this.shapeType = shapeType;
+	}
+	//polygons keep their bounding circle as well, so they are checked first
+	private void updateShapeType(){
+		if(polygon != null){
+			shapeType = POLYGON;
+		}
+		else if(circle != null){
+			shapeType = CIRCLE;
+		}
+		else if(rectangle != null){
+			shapeType = RECTANGLE;
+		}
+		else{
+			shapeType = NO_SHAPE;
+		}
 	}
 	/**
 	 * detects intersections(collisions) of boundaries
@@ -152,91 +302,90 @@ public class Boundary extends GameComponent{
 	 * @return true when boundaries are intersecting
 	 */
 	public boolean collision(Boundary other){
-		boolean flag = false;
-		if(polygon != null){
-			if(other.polygon != null){
-				flag = polygon.collision(other.polygon);
-			}
-			else if(other.circle != null){
-				flag = polygon.collision(other.circle);
-			}
-			else if(other.rectangle != null){
-				flag = polygon.collision(other.rectangle);
-			}
+		if(shapeType < 0 || other.shapeType < 0){
+			return false;
 		}
-		else if(circle != null){
-			if(other.polygon != null){
-				flag = other.polygon.collision(circle);
-			}
-			else if(other.circle != null){
-				flag = circle.collision(other.circle);
-			}
-			else if(other.rectangle != null){
-				flag = circle.collision(other.rectangle);
-			}
+		if(shapeType >= BUILT_IN_SHAPES || other.shapeType >= BUILT_IN_SHAPES){
+			//only new kinds of shape pay for the table lookup
+			final ShapeKernel kernel = ShapeKernel.table[shapeType][other.shapeType];
+			return kernel != null && kernel.collision(this, other);
 		}
-		else if(rectangle != null){
-			if(other.polygon != null){
-				flag = other.polygon.collision(rectangle);
-			}
-			else if(other.circle != null){
-				flag = other.circle.collision(rectangle);
-			}
-			else if(other.rectangle != null){
-				flag = rectangle.collision(other.rectangle);
-			}	
+		//one switch on the pair, each case calls its test directly
+		switch(shapeType*BUILT_IN_SHAPES + other.shapeType){
+		case POLYGON*BUILT_IN_SHAPES + POLYGON:
+			return polygon.collision(other.polygon);
+		case POLYGON*BUILT_IN_SHAPES + CIRCLE:
+			return polygon.collision(other.circle);
+		case POLYGON*BUILT_IN_SHAPES + RECTANGLE:
+			return polygon.collision(other.rectangle);
+		case CIRCLE*BUILT_IN_SHAPES + POLYGON:
+			return other.polygon.collision(circle);
+		case CIRCLE*BUILT_IN_SHAPES + CIRCLE:
+			return circle.collision(other.circle);
+		case CIRCLE*BUILT_IN_SHAPES + RECTANGLE:
+			return circle.collision(other.rectangle);
+		case RECTANGLE*BUILT_IN_SHAPES + POLYGON:
+			return other.polygon.collision(rectangle);
+		case RECTANGLE*BUILT_IN_SHAPES + CIRCLE:
+			return other.circle.collision(rectangle);
+		default:
+			return rectangle.collision(other.rectangle);
 		}
-		return flag;
 	}
 	/**
-	 * returns the normal of collision between two boundaries. the angle is 
+	 * finds the normal of collision between two boundaries. the normal is 
 	 * 	relative to the calling boundary
 	 * @param other
-	 * @return counter-clockwise angle in radians 
+	 * @param normal set to the unit normal
 	 */
-	public double getNormal(Boundary other){
-		double normal = 0;
-		if(polygon != null){
-			if(other.polygon != null){
-				normal = polygon.normal(other.polygon);
-			}
-			else if(other.circle != null){
-				normal = polygon.normal(other.circle);
-			}
-			else if(other.rectangle != null){
-				normal  = polygon.normal(other.rectangle);
-			}
+	public void getNormal(Boundary other, Pair normal){
+		normal.x = 0;
+		normal.y = -1;
+		if(shapeType < 0 || other.shapeType < 0){
+			return;
 		}
-		else if(circle != null){
-			if(other.polygon != null){
-				normal = other.polygon.normal(circle);
-				//reverse direction to make angle relative to this object
-				normal += Math.PI;
-			}
-			else if(other.circle != null){
-				normal = circle.getNormal(other.circle);
-			}
-			else if(other.rectangle != null){
-				normal = circle.getNormal(other.rectangle);
+		if(shapeType >= BUILT_IN_SHAPES || other.shapeType >= BUILT_IN_SHAPES){
+			final ShapeKernel kernel = ShapeKernel.table[shapeType][other.shapeType];
+			if(kernel != null){
+				kernel.normal(this, other, normal);
 			}
+			return;
 		}
-		else if(rectangle != null){
-			if(other.polygon != null){
-				normal = other.polygon.normal(rectangle);
-				//reverse direction to make angle relative to this object
-				normal += Math.PI;
-			}
-			else if(other.circle != null){
-				normal = other.circle.getNormal(rectangle);
-				//reverse direction to make angle relative to this object
-				normal += Math.PI;
-			}
-			else if(other.rectangle != null){
-				normal = rectangle.getNormal(other.rectangle);
-			}	
+		switch(shapeType*BUILT_IN_SHAPES + other.shapeType){
+		case POLYGON*BUILT_IN_SHAPES + POLYGON:
+			polygon.normal(other.polygon, normal);
+			break;
+		case POLYGON*BUILT_IN_SHAPES + CIRCLE:
+			polygon.normal(other.circle, normal);
+			break;
+		case POLYGON*BUILT_IN_SHAPES + RECTANGLE:
+			polygon.normal(other.rectangle, normal);
+			break;
+		case CIRCLE*BUILT_IN_SHAPES + POLYGON:
+			other.polygon.normal(circle, normal);
+			//reverse direction to make the normal relative to this object
+			normal.x = -normal.x;
+			normal.y = -normal.y;
+			break;
+		case CIRCLE*BUILT_IN_SHAPES + CIRCLE:
+			circle.getNormal(other.circle, normal);
+			break;
+		case CIRCLE*BUILT_IN_SHAPES + RECTANGLE:
+			circle.getNormal(other.rectangle, normal);
+			break;
+		case RECTANGLE*BUILT_IN_SHAPES + POLYGON:
+			other.polygon.normal(rectangle, normal);
+			normal.x = -normal.x;
+			normal.y = -normal.y;
+			break;
+		case RECTANGLE*BUILT_IN_SHAPES + CIRCLE:
+			other.circle.getNormal(rectangle, normal);
+			normal.x = -normal.x;
+			normal.y = -normal.y;
+			break;
+		default:
+			rectangle.getNormal(other.rectangle, normal);
 		}
-		
-		return normal;
 	}
 	/**
 	 * detects intersections(collisions) of boundaries
@@ -258,8 +407,22 @@ public class Boundary extends GameComponent{
 		}
 		return flag;
 	}
+	/**
+	 * @return true when the segment from start to end touches the boundary
+	 */
 	public boolean collision(double startX,double startY,double endX,double endY){
-		return false;
+		if(polygon == null && circle != null){
+			return circle.collision(startX, startY, endX, endY);
+		}
+		return TimeOfImpact.ray(this, startX, startY, endX - startX, endY - startY, null) != TimeOfImpact.NONE;
+	}
+	/**
+	 * casts the segment from start to end against the boundary
+	 * @param normal if not null receives the unit normal of the surface that was hit
+	 * @return fraction of the segment before the first hit, 0 if start is inside, otherwise TimeOfImpact.NONE
+	 */
+	public double raycast(double startX,double startY,double endX,double endY, Pair normal){
+		return TimeOfImpact.ray(this, startX, startY, endX - startX, endY - startY, normal);
 	}
 	public BoundingBox getXProjection(){
 		return xProjection;
@@ -267,6 +430,12 @@ public class Boundary extends GameComponent{
 	public BoundingBox getYProjection(){
 		return yProjection;
 	}
+	/**
+	 * @return the z range from the location up by the height, as of the last time the box was set
+	 */
+	public BoundingBox getZProjection(){
+		return zProjection;
+	}
 	
 	public double getHeight() {
 		return height;
@@ -276,19 +445,21 @@ public class Boundary extends GameComponent{
 			height = 1;
 		}
 		this.height = height;
+		boxSet = false;
 	}
 	
 	/**
-	 * two boundaries are coplanar if their z projections overlap, or if either has a height of 0
+	 * two boundaries are coplanar if their z projections overlap, or if either has a height of 0. the 
+	 * 		projections are the ones of the last time the boxes were set
 	 * @param other
 	 * @return
 	 */
 	public boolean isCoplanar(Boundary other){
 		boolean rtn = true;
 		
-//		if(this.height > 0 && other.height > 0){
-//			rtn = this.zProjection.overlap(other.zProjection);
-//		}
+		if(this.height > 0 && other.height > 0){
+			rtn = this.zProjection.overlap(other.zProjection);
+		}
 		
 		return rtn;
 	}
@@ -319,17 +490,37 @@ public class Boundary extends GameComponent{
 		circle = null;
 		rectangle = null;
 		polygon = null;
+		shapeType = NO_SHAPE;
+		boxSet = false;
 	}
 	public void propagateLocation(GLPoint location) {
-		if(circle != null){
+		boxSet = false;
+		//polygons keep their bounding circle as well, so they are checked first
+		if(polygon != null){
+			polygon.setCenter(location);
+		}
+		else if(circle != null){
 			circle.setCenter(location);
 		}
 		else if(rectangle != null){
 			rectangle.setCenter(location);
 		}
-		else if(polygon != null){
-			//TODO
-		}
 		
 	}
+	/**
+	 * @return the rotation of a polygon boundary in radians, 0 for other shapes
+	 */
+	public double getRotation(){
+		return polygon != null ? polygon.getRotation() : 0;
+	}
+	/**
+	 * turns a polygon boundary around its center. circles look the same at any angle and rectangles 
+	 * 		stay lined up with the axes, so they are left as they are.
+	 * @param rotation angle in radians
+	 */
+	public void setRotation(double rotation){
+		if(polygon != null){
+			polygon.setRotation(rotation);
+		}
+	}
 }
@@ -65,8 +65,20 @@ public class Circle extends GameComponent{
 		double dy = (center.getY()-y);
 		return dx*dx + dy*dy < radius*radius;
 	}
+	/**
+	 * @return true when the segment from start to end passes within the radius of the center
+	 */
 	public boolean collision(double startX,double startY,double endX,double endY){
-		return false;
+		final double ex = endX - startX;
+		final double ey = endY - startY;
+		final double length = ex*ex + ey*ey;
+		//closest point on the segment to the center
+		double u = length == 0 ? 0 : ((center.getX() - startX)*ex + (center.getY() - startY)*ey)/length;
+		if(u < 0) u = 0;
+		else if(u > 1) u = 1;
+		final double dx = startX + ex*u - center.getX();
+		final double dy = startY + ey*u - center.getY();
+		return dx*dx + dy*dy < radius*radius;
 	}
 	public boolean collision(Rectangle other){
 		boolean flag = false;
@@ -126,123 +138,62 @@ public class Circle extends GameComponent{
 	public void setRadius(float radius) {
 		this.radius = radius;
 	}	
-	public double getNormal(Circle other){
-		double x = other.center.getX() - center.getX();
-		double y = other.center.getY() - center.getY();
-		double angle;
-		
-		if(x == 0){
-			if( y > 0){
-				angle = Math.PI/2;
-			}
-			else{
-				angle = 3*Math.PI/2;
-			}
-		}
-		else{
-			angle = Math.atan(y/x);
-			if(x < 0){
-				angle += Math.PI;
-			}
-		}
-		
-		return angle;
+	/**
+	 * sets normal to the unit vector from this center towards the center of other
+	 */
+	public void getNormal(Circle other, Pair normal){
+		normal.setDirection(other.center.getX() - center.getX(), other.center.getY() - center.getY());
 	}
-	public double getNormal(GLPoint other){
-		double angle;
-		double x = center.getX() - other.getX();
-		double y = center.getY() - other.getY();
-		
-		
-		if(x == 0){
-			if( y > 0){
-				angle = Math.PI/2;
-			}
-			else{
-				angle = 3*Math.PI/2;
-			}
-		}
-		else{
-			angle = Math.atan(y/x);
-			if(x < 0){
-				angle += Math.PI;
-			}
-		}
-		
-		return angle;
+	/**
+	 * sets normal to the unit vector from other towards the center
+	 */
+	public void getNormal(GLPoint other, Pair normal){
+		normal.setDirection(center.getX() - other.getX(), center.getY() - other.getY());
 	}
-	public double getNormal(double a,double b){
-		double angle;
-		double x = center.getX() - a;
-		double y = center.getY() - b;
-		
-		
-		if(x == 0){
-			if( y > 0){
-				angle = Math.PI/2;
-			}
-			else{
-				angle = 3*Math.PI/2;
-			}
-		}
-		else{
-			angle = Math.atan(y/x);
-			if(x < 0){
-				angle += Math.PI;
-			}
-		}
-		
-		return angle;
+	/**
+	 * sets normal to the unit vector from (a,b) towards the center
+	 */
+	public void getNormal(double a,double b, Pair normal){
+		normal.setDirection(center.getX() - a, center.getY() - b);
 	}
-	public double getNormal(Rectangle other){
+	/**
+	 * sets normal to the unit vector pointing out of the side or corner of other that the circle is closest to
+	 */
+	public void getNormal(Rectangle other, Pair normal){
 		
 		double leftA = other.getLeft();
 		double rightA = other.getRight();
 		double topA = other.getTop();
 		double bottomA = other.getBottom();
-		double angle;
 		
 		double y = center.getY();
 		double x = center.getX();
 		if(y <= topA && y >=bottomA){
-			if(x >= leftA + other.getWidth()/2){
-				angle = 0;
-			}
-			else{
-				angle = Math.PI;
-			}
+			normal.x = x >= leftA + other.getWidth()/2 ? 1 : -1;
+			normal.y = 0;
 		}
 		else if(x <= rightA && x >= leftA){
-			if(y >= topA - other.getHeight()/2){
-				angle = Math.PI/2;
-			}
-			else{
-				angle = 3*Math.PI/2;
-				
-			}
+			normal.x = 0;
+			normal.y = y >= topA - other.getHeight()/2 ? 1 : -1;
 		}
 		else{
 			if(y >= topA){
 				if(x >= rightA){
-					angle = getNormal(rightA,topA);
+					getNormal(rightA,topA,normal);
 				}
 				else{
-					angle = getNormal(leftA,topA);
+					getNormal(leftA,topA,normal);
 				}
 			}
 			else{
 				if(x >= rightA){
-					angle = getNormal(rightA,bottomA);
+					getNormal(rightA,bottomA,normal);
 				}
 				else{
-					angle = getNormal(leftA,bottomA);
+					getNormal(leftA,bottomA,normal);
 				}
 			}
 		}
-				
-
-		
-		return angle;
 	}
 	private GLPoint center;
 	public double radius;
@@ -0,0 +1,250 @@
+/*******************************************************************************
+ * Copyright 2011 Douglas Siemon
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package des.game.boundary;
+
+import des.game.base.GLPoint;
+
+/**
+ * A boundary made of several convex parts that move together, for concave shapes that would otherwise 
+ * 	need a physics object per convex piece. The parts are circles, rectangles or polygons built around 
+ * 	(0,0), their locations are kept as offsets from the location of the compound.
+ * 
+ * The box of the compound covers the boxes of all its parts. A pair with a compound is tested part by 
+ * 	part, only for the parts whose boxes overlap the box of the other boundary, and is still a single 
+ * 	pair to the physics engine. The contact is the deepest one between a part and the other boundary. 
+ * 	Parts do not turn with the compound, and the kernels only cover shape types made before the first 
+ * 	compound.
+ * 
+ * The parts are moved to the compound and their boxes set when the box of the compound is set, by 
+ * 	updateBox. The pair tests only read the parts and the box of the other boundary, so they can run 
+ * 	on several threads at once, and both boxes have to be up to date before a pair is tested.
+ */
+public class CompoundBoundary extends Boundary{
+	public static final int COMPOUND;
+	
+	private GLPoint location;
+	private Boundary[] parts;
+	//offset of each part from the location, x and y interleaved
+	private double[] offsets;
+	private int partCount;
+	//location the parts were last moved to
+	private boolean placed;
+	private double placedX;
+	private double placedY;
+	private double placedZ;
+	
+	/**
+	 * @param location shared with the physics object, the parts are placed around it
+	 * @param capacity number of parts expected, more can be added
+	 */
+	public CompoundBoundary(GLPoint location, int capacity){
+		super();
+		this.location = location;
+		parts = new Boundary[capacity > 0 ? capacity : 1];
+		offsets = new double[parts.length*2];
+		partCount = 0;
+		setShapeType(COMPOUND);
+	}
+	
+	/**
+	 * adds a part, its current location is taken as its offset from the location of the compound
+	 * @param part a boundary holding a circle, rectangle or polygon
+	 */
+	public void addPart(Boundary part){
+		if(part == null || part.getShapeType() < 0 || part.getShapeType() >= BUILT_IN_SHAPES){
+			throw new IllegalArgumentException("parts must be circles, rectangles or polygons");
+		}
+		if(partCount == parts.length){
+			final Boundary[] temp = new Boundary[partCount*2];
+			final double[] tempOffsets = new double[partCount*4];
+			System.arraycopy(parts, 0, temp, 0, partCount);
+			System.arraycopy(offsets, 0, tempOffsets, 0, partCount*2);
+			parts = temp;
+			offsets = tempOffsets;
+		}
+		offsets[2*partCount] = part.getLocation().getX();
+		offsets[2*partCount + 1] = part.getLocation().getY();
+		part.setHeight(getHeight());
+		parts[partCount++] = part;
+		placed = false;
+		invalidateBox();
+	}
+	public int getPartCount(){
+		return partCount;
+	}
+	/**
+	 * @return the part at index, placed where the compound was the last time its box was set
+	 */
+	public Boundary getPart(int index){
+		return parts[index];
+	}
+	/**
+	 * @return true if the box of the part at index overlaps the box of other, as both were last set
+	 */
+	public boolean partOverlaps(int index, Boundary other){
+		final Boundary part = parts[index];
+		return part.getXProjection().overlap(other.getXProjection()) && part.getYProjection().overlap(other.getYProjection());
+	}
+	
+	/**
+	 * moves the parts to the location of the compound if it has moved since they were last placed, 
+	 * 	only from setShapeBox
+	 */
+	private void place(){
+		final double x = location.getX();
+		final double y = location.getY();
+		final double z = location.getZ();
+		if(placed && x == placedX && y == placedY && z == placedZ){
+			return;
+		}
+		for(int i = 0; i < partCount; i++){
+			final GLPoint partLocation = parts[i].getLocation();
+			partLocation.setX(x + offsets[2*i]);
+			partLocation.setY(y + offsets[2*i + 1]);
+			partLocation.setZ(z);
+			parts[i].setBox();
+		}
+		placed = true;
+		placedX = x;
+		placedY = y;
+		placedZ = z;
+	}
+	
+	@Override
+	protected void setShapeBox() {
+		place();
+		if(partCount == 0){
+			xProjection.setStart(location.getX());
+			xProjection.setEnd(location.getX());
+			yProjection.setStart(location.getY());
+			yProjection.setEnd(location.getY());
+		}
+		else{
+			double minX = Double.MAX_VALUE;
+			double minY = Double.MAX_VALUE;
+			double maxX = -Double.MAX_VALUE;
+			double maxY = -Double.MAX_VALUE;
+			for(int i = 0; i < partCount; i++){
+				final Boundary part = parts[i];
+				minX = Math.min(minX, part.getXProjection().getStart());
+				maxX = Math.max(maxX, part.getXProjection().getEnd());
+				minY = Math.min(minY, part.getYProjection().getStart());
+				maxY = Math.max(maxY, part.getYProjection().getEnd());
+			}
+			xProjection.setStart(minX);
+			xProjection.setEnd(maxX);
+			yProjection.setStart(minY);
+			yProjection.setEnd(maxY);
+		}
+		zProjection.setStart(location.getZ());
+		zProjection.setEnd(location.getZ() + getHeight());
+	}
+	@Override
+	public void setHeight(double height) {
+		super.setHeight(height);
+		for(int i = 0; i < partCount; i++){
+			parts[i].setHeight(getHeight());
+		}
+	}
+	@Override
+	public GLPoint getLocation() {
+		return location;
+	}
+	@Override
+	public void propagateLocation(GLPoint location) {
+		this.location = location;
+		placed = false;
+		invalidateBox();
+	}
+	@Override
+	public boolean collision(GLPoint other) {
+		//a query from the game, the compound may have been moved since its box was set
+		updateBox();
+		for(int i = 0; i < partCount; i++){
+			if(parts[i].collision(other)){
+				return true;
+			}
+		}
+		return false;
+	}
+	@Override
+	public boolean collision(double startX, double startY, double endX, double endY) {
+		return raycast(startX, startY, endX, endY, null) != TimeOfImpact.NONE;
+	}
+	@Override
+	public double raycast(double startX, double startY, double endX, double endY, Pair normal) {
+		updateBox();
+		return TimeOfImpact.ray(this, startX, startY, endX - startX, endY - startY, normal);
+	}
+	@Override
+	public void reset() {
+		super.reset();
+		for(int i = 0; i < partCount; i++){
+			parts[i] = null;
+		}
+		partCount = 0;
+		placed = false;
+		setShapeType(COMPOUND);
+	}
+	
+	/**
+	 * tests the parts of a compound against the other boundary of a pair
+	 */
+	private static final class CompoundKernel extends ShapeKernel{
+		@Override
+		public boolean collision(Boundary a, Boundary b) {
+			if(a instanceof CompoundBoundary){
+				final CompoundBoundary compound = (CompoundBoundary)a;
+				final int count = compound.getPartCount();
+				for(int i = 0; i < count; i++){
+					if(compound.partOverlaps(i, b) && compound.getPart(i).collision(b)){
+						return true;
+					}
+				}
+				return false;
+			}
+			return collision(b, a);
+		}
+		@Override
+		public void normal(Boundary a, Boundary b, Pair normal) {
+			final boolean first = a instanceof CompoundBoundary;
+			final CompoundBoundary compound = (CompoundBoundary)(first ? a : b);
+			final Boundary other = first ? b : a;
+			final int count = compound.getPartCount();
+			for(int i = 0; i < count; i++){
+				final Boundary part = compound.getPart(i);
+				if(compound.partOverlaps(i, other) && part.collision(other)){
+					if(first){
+						part.getNormal(other, normal);
+					}
+					else{
+						other.getNormal(part, normal);
+					}
+					return;
+				}
+			}
+		}
+	}
+	
+	static{
+		COMPOUND = ShapeKernel.newShapeType();
+		final ShapeKernel kernel = new CompoundKernel();
+		for(int type = 0; type <= COMPOUND; type++){
+			ShapeKernel.register(COMPOUND, type, kernel);
+			ShapeKernel.register(type, COMPOUND, kernel);
+		}
+	}
+}
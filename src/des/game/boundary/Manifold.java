@@ -0,0 +1,395 @@
+/*******************************************************************************
+ * Copyright 2011 Douglas Siemon
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package des.game.boundary;
+
+import des.game.base.AllocationGuard;
+
+/**
+ * The contact between two boundaries, found in one pass over their shapes: whether they overlap, 
+ * 	how deep, the normal that separates them and the points where they touch.
+ * 
+ * Two circles are solved from their centers, a circle against a rectangle or polygon from the face 
+ * 	or closest point of the shape to the center, and two rectangles or polygons with the separating 
+ * 	axis test over the edge normals of both. The face that overlaps the least is the reference face, 
+ * 	and the contact points are the edge of the other shape clipped to it. Polygons are assumed to be 
+ * 	convex, as they are everywhere else.
+ * 
+ * A manifold is filled again by every compute, so one can be kept per thread and reused.
+ */
+public class Manifold extends AllocationGuard{
+	public static final int MAX_POINTS = 2;
+	//outward normals of the rectangle edges, in the order TimeOfImpact reads the corners
+	private static final double[] RECTANGLE_NORMALS = {0, 1, 1, 0, 0, -1, -1, 0};
+	
+	/**
+	 * true if the boundaries overlap, the other fields are only set when they do
+	 */
+	public boolean hit;
+	/**
+	 * how far the boundaries overlap along the normal
+	 */
+	public double depth;
+	/**
+	 * unit normal of the contact, pointing from b towards a. moving a along it by depth separates them
+	 */
+	public double normalX;
+	public double normalY;
+	/**
+	 * points where the boundaries touch
+	 */
+	public int pointCount;
+	public final double[] pointX;
+	public final double[] pointY;
+	//face found by the last call to separation
+	private int face;
+	
+	public Manifold(){
+		super();
+		pointX = new double[MAX_POINTS];
+		pointY = new double[MAX_POINTS];
+		clear();
+	}
+	
+	public void clear(){
+		hit = false;
+		depth = 0;
+		normalX = 1;
+		normalY = 0;
+		pointCount = 0;
+	}
+	
+	/**
+	 * finds the contact between two boundaries
+	 * @return true if they overlap
+	 */
+	public boolean compute(Boundary a, Boundary b){
+		if(a.getShapeType() >= Boundary.BUILT_IN_SHAPES && a instanceof CompoundBoundary){
+			return compound((CompoundBoundary)a, b, true);
+		}
+		if(b.getShapeType() >= Boundary.BUILT_IN_SHAPES && b instanceof CompoundBoundary){
+			return compound((CompoundBoundary)b, a, false);
+		}
+		clear();
+		final Circle circleA = a.getPolygon() == null ? a.getCircle() : null;
+		final Circle circleB = b.getPolygon() == null ? b.getCircle() : null;
+		if(circleA != null && circleB != null){
+			circles(circleA, circleB);
+		}
+		else if(circleA != null){
+			circleConvex(circleA.getCenter().getX(), circleA.getCenter().getY(), circleA.getRadius(), b);
+		}
+		else if(circleB != null){
+			//the normal found points towards b
+			circleConvex(circleB.getCenter().getX(), circleB.getCenter().getY(), circleB.getRadius(), a);
+			normalX = -normalX;
+			normalY = -normalY;
+		}
+		else{
+			convex(a, b);
+		}
+		return hit;
+	}
+	
+	/**
+	 * keeps the deepest contact between a part of the compound and the other boundary
+	 * @param first true if the compound is a of the pair, the normal points from b towards a either way
+	 */
+	private boolean compound(CompoundBoundary compound, Boundary other, boolean first){
+		double bestDepth = -1;
+		double bestNormalX = 1;
+		double bestNormalY = 0;
+		int bestCount = 0;
+		double x0 = 0;
+		double y0 = 0;
+		double x1 = 0;
+		double y1 = 0;
+		final int count = compound.getPartCount();
+		for(int i = 0; i < count; i++){
+			if(!compound.partOverlaps(i, other)){
+				continue;
+			}
+			final boolean touching = first ? compute(compound.getPart(i), other) : compute(other, compound.getPart(i));
+			if(touching && depth > bestDepth){
+				bestDepth = depth;
+				bestNormalX = normalX;
+				bestNormalY = normalY;
+				bestCount = pointCount;
+				x0 = pointX[0];
+				y0 = pointY[0];
+				x1 = pointX[1];
+				y1 = pointY[1];
+			}
+		}
+		clear();
+		if(bestDepth >= 0){
+			hit = true;
+			depth = bestDepth;
+			normalX = bestNormalX;
+			normalY = bestNormalY;
+			pointCount = bestCount;
+			pointX[0] = x0;
+			pointY[0] = y0;
+			pointX[1] = x1;
+			pointY[1] = y1;
+		}
+		return hit;
+	}
+	
+	private void circles(Circle a, Circle b){
+		final double x = a.getCenter().getX() - b.getCenter().getX();
+		final double y = a.getCenter().getY() - b.getCenter().getY();
+		final double radius = a.getRadius() + b.getRadius();
+		final double squared = x*x + y*y;
+		if(squared >= radius*radius){
+			return;
+		}
+		final double distance = Math.sqrt(squared);
+		if(distance > 0){
+			normalX = x/distance;
+			normalY = y/distance;
+		}
+		hit = true;
+		depth = radius - distance;
+		//halfway through the overlap
+		final double along = b.getRadius() - depth/2;
+		addPoint(b.getCenter().getX() + normalX*along, b.getCenter().getY() + normalY*along);
+	}
+	
+	/**
+	 * a circle centered at (x,y) against a rectangle or polygon, the normal points from the shape to the circle
+	 */
+	private void circleConvex(double x, double y, double radius, Boundary shape){
+		final int count = TimeOfImpact.vertexCount(shape);
+		double separation = -Double.MAX_VALUE;
+		double faceX = 0;
+		double faceY = 0;
+		double closest = Double.MAX_VALUE;
+		double closestX = 0;
+		double closestY = 0;
+		for(int i = 0; i < count; i++){
+			final int j = i + 1 == count ? 0 : i + 1;
+			final double x0 = TimeOfImpact.vertexX(shape, i);
+			final double y0 = TimeOfImpact.vertexY(shape, i);
+			final double nx = normalX(shape, i);
+			final double ny = normalY(shape, i);
+			final double distance = (x - x0)*nx + (y - y0)*ny;
+			if(distance >= radius){
+				return;
+			}
+			if(distance > separation){
+				separation = distance;
+				faceX = nx;
+				faceY = ny;
+			}
+			//closest point on the edge
+			final double ex = TimeOfImpact.vertexX(shape, j) - x0;
+			final double ey = TimeOfImpact.vertexY(shape, j) - y0;
+			final double length = ex*ex + ey*ey;
+			double u = length == 0 ? 0 : ((x - x0)*ex + (y - y0)*ey)/length;
+			if(u < 0) u = 0;
+			else if(u > 1) u = 1;
+			final double px = x0 + ex*u;
+			final double py = y0 + ey*u;
+			final double squared = (x - px)*(x - px) + (y - py)*(y - py);
+			if(squared < closest){
+				closest = squared;
+				closestX = px;
+				closestY = py;
+			}
+		}
+		if(separation <= 0){
+			//the center is inside, push it out through the nearest face
+			normalX = faceX;
+			normalY = faceY;
+			depth = radius - separation;
+			hit = true;
+			addPoint(x - faceX*separation, y - faceY*separation);
+			return;
+		}
+		if(closest >= radius*radius){
+			return;
+		}
+		final double distance = Math.sqrt(closest);
+		normalX = (x - closestX)/distance;
+		normalY = (y - closestY)/distance;
+		depth = radius - distance;
+		hit = true;
+		addPoint(closestX, closestY);
+	}
+	
+	/**
+	 * two rectangles or polygons
+	 */
+	private void convex(Boundary a, Boundary b){
+		final double separationA = separation(a, b);
+		if(separationA >= 0){
+			return;
+		}
+		final int faceA = face;
+		final double separationB = separation(b, a);
+		if(separationB >= 0){
+			return;
+		}
+		final int faceB = face;
+		
+		final Boundary reference;
+		final Boundary incident;
+		final int referenceFace;
+		if(separationB > separationA){
+			reference = b;
+			incident = a;
+			referenceFace = faceB;
+			depth = -separationB;
+		}
+		else{
+			reference = a;
+			incident = b;
+			referenceFace = faceA;
+			depth = -separationA;
+		}
+		hit = true;
+		final double nx = normalX(reference, referenceFace);
+		final double ny = normalY(reference, referenceFace);
+		//the normal points out of b
+		if(reference == b){
+			normalX = nx;
+			normalY = ny;
+		}
+		else{
+			normalX = -nx;
+			normalY = -ny;
+		}
+		
+		//the incident edge faces the reference face the most
+		final int incidentCount = TimeOfImpact.vertexCount(incident);
+		int incidentFace = 0;
+		double facing = Double.MAX_VALUE;
+		for(int i = 0; i < incidentCount; i++){
+			final double dot = nx*normalX(incident, i) + ny*normalY(incident, i);
+			if(dot < facing){
+				facing = dot;
+				incidentFace = i;
+			}
+		}
+		final int incidentNext = incidentFace + 1 == incidentCount ? 0 : incidentFace + 1;
+		double x1 = TimeOfImpact.vertexX(incident, incidentFace);
+		double y1 = TimeOfImpact.vertexY(incident, incidentFace);
+		double x2 = TimeOfImpact.vertexX(incident, incidentNext);
+		double y2 = TimeOfImpact.vertexY(incident, incidentNext);
+		
+		//clip the incident edge to the sides of the reference face
+		final int referenceCount = TimeOfImpact.vertexCount(reference);
+		final int referenceNext = referenceFace + 1 == referenceCount ? 0 : referenceFace + 1;
+		final double rx1 = TimeOfImpact.vertexX(reference, referenceFace);
+		final double ry1 = TimeOfImpact.vertexY(reference, referenceFace);
+		final double rx2 = TimeOfImpact.vertexX(reference, referenceNext);
+		final double ry2 = TimeOfImpact.vertexY(reference, referenceNext);
+		final double tx = rx2 - rx1;
+		final double ty = ry2 - ry1;
+		boolean clipped = true;
+		for(int side = 0; side < 2 && clipped; side++){
+			//keep the part of the edge on the inside of the side, tangent.p >= offset
+			final double sx = side == 0 ? tx : -tx;
+			final double sy = side == 0 ? ty : -ty;
+			final double offset = side == 0 ? sx*rx1 + sy*ry1 : sx*rx2 + sy*ry2;
+			final double d1 = sx*x1 + sy*y1 - offset;
+			final double d2 = sx*x2 + sy*y2 - offset;
+			if(d1 < 0 && d2 < 0){
+				clipped = false;
+			}
+			else if(d1 < 0){
+				final double u = d1/(d1 - d2);
+				x1 += (x2 - x1)*u;
+				y1 += (y2 - y1)*u;
+			}
+			else if(d2 < 0){
+				final double u = d2/(d2 - d1);
+				x2 += (x1 - x2)*u;
+				y2 += (y1 - y2)*u;
+			}
+		}
+		//keep the points that are behind the reference face
+		if(clipped){
+			if((x1 - rx1)*nx + (y1 - ry1)*ny <= 0){
+				addPoint(x1, y1);
+			}
+			if((x2 - rx1)*nx + (y2 - ry1)*ny <= 0){
+				addPoint(x2, y2);
+			}
+		}
+		if(pointCount == 0){
+			//numerical edge cases, fall back to the deepest vertex of the incident shape
+			double deepest = Double.MAX_VALUE;
+			for(int i = 0; i < incidentCount; i++){
+				final double x = TimeOfImpact.vertexX(incident, i);
+				final double y = TimeOfImpact.vertexY(incident, i);
+				final double distance = (x - rx1)*nx + (y - ry1)*ny;
+				if(distance < deepest){
+					deepest = distance;
+					x1 = x;
+					y1 = y;
+				}
+			}
+			addPoint(x1, y1);
+		}
+	}
+	
+	/**
+	 * the largest distance of shape other in front of a face of shape, negative when every face is overlapped
+	 */
+	private double separation(Boundary shape, Boundary other){
+		final int count = TimeOfImpact.vertexCount(shape);
+		final int otherCount = TimeOfImpact.vertexCount(other);
+		double best = -Double.MAX_VALUE;
+		face = 0;
+		for(int i = 0; i < count; i++){
+			final double nx = normalX(shape, i);
+			final double ny = normalY(shape, i);
+			final double offset = nx*TimeOfImpact.vertexX(shape, i) + ny*TimeOfImpact.vertexY(shape, i);
+			double distance = Double.MAX_VALUE;
+			for(int j = 0; j < otherCount; j++){
+				final double d = nx*TimeOfImpact.vertexX(other, j) + ny*TimeOfImpact.vertexY(other, j) - offset;
+				if(d < distance){
+					distance = d;
+				}
+			}
+			if(distance > best){
+				best = distance;
+				face = i;
+				if(best >= 0){
+					break;
+				}
+			}
+		}
+		return best;
+	}
+	
+	private void addPoint(double x, double y){
+		if(pointCount < MAX_POINTS){
+			pointX[pointCount] = x;
+			pointY[pointCount] = y;
+			pointCount++;
+		}
+	}
+	private static double normalX(Boundary shape, int i){
+		final Polygon polygon = shape.getPolygon();
+		return polygon != null ? polygon.getNormals()[2*i] : RECTANGLE_NORMALS[2*i];
+	}
+	private static double normalY(Boundary shape, int i){
+		final Polygon polygon = shape.getPolygon();
+		return polygon != null ? polygon.getNormals()[2*i + 1] : RECTANGLE_NORMALS[2*i + 1];
+	}
+}
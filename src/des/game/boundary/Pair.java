@@ -36,7 +36,7 @@ public class Pair extends AllocationGuard{
 		this.y = y;
 	}
 	public static double dotProduct(double x1, double y1, double x2, double y2 ){
-		return 0;
+		return x1*x2 + y1*y2;
 	}
 	/**
 	 * Calculates distance between two points in the x y plane
@@ -56,8 +56,22 @@ public class Pair extends AllocationGuard{
 		return x*this.x + y*this.y;
 	}
 	public void normalize() {
-		double magnitude = Math.sqrt(x*x + y+y);
+		double magnitude = Math.sqrt(x*x + y*y);
 		x = x / magnitude;
 		y = y / magnitude;
 	}
+	/**
+	 * sets the pair to the unit vector pointing along (x,y), or straight down when (x,y) has no length
+	 */
+	public void setDirection(double x, double y){
+		final double length = Math.sqrt(x*x + y*y);
+		if(length == 0){
+			this.x = 0;
+			this.y = -1;
+		}
+		else{
+			this.x = x/length;
+			this.y = y/length;
+		}
+	}
 }
@@ -22,10 +22,23 @@ public class Polygon  extends GameComponent {
 	public static final int MAX_VERT = 5;
 	
 	private Circle circle;
+	//vertices relative to the center after rotation, and the edges built from them
 	private Pair[] points;
 	private ProjectionLine[] edges;
 	private GLPoint center;
 	
+	//rotation in radians around the center, points are localVertices turned by it
+	private double rotation;
+	//vertices relative to the center before rotation, x and y interleaved
+	private double[] localVertices;
+	//vertices in world space and the unit outward normal of each edge, x and y interleaved. they are
+	//	rebuilt when they are asked for after the rotation or the center changed
+	private double[] worldVertices;
+	private double[] normals;
+	private boolean dirty;
+	private double worldX;
+	private double worldY;
+	
 	
 	private double maxX;
 	private double minX;
@@ -33,9 +46,6 @@ public class Polygon  extends GameComponent {
 	private double maxY;
 	private double minY;
 	
-	private Pair dummyA;
-	private Pair dummyB;
-	private Pair dummyC;
 	/**
 	 * default polygon
 	 */
@@ -59,7 +69,11 @@ public class Polygon  extends GameComponent {
 			Pair[] temp = {new Pair(0,0),new Pair(0,1),new Pair(1,0)};
 			points = temp;
 		}
-		this.points = points;
+		//keep copies, rotating turns the points in place
+		this.points = new Pair[points.length];
+		for(int i = 0; i < points.length; i++){
+			this.points[i] = new Pair(points[i]);
+		}
 		
 		setCircleAndBounds();
 	}
@@ -108,6 +122,95 @@ public class Polygon  extends GameComponent {
 	public GLPoint getCenter(){
 		return center;
 	}
+	/**
+	 * moves the polygon to a new center, the bounding circle shares it
+	 */
+	public void setCenter(GLPoint center){
+		this.center = center;
+		circle.setCenter(center);
+		dirty = true;
+	}
+	public double getRotation(){
+		return rotation;
+	}
+	/**
+	 * turns the polygon around its center
+	 * @param rotation angle in radians, counter clockwise from the vertices it was created with
+	 */
+	public void setRotation(double rotation){
+		if(rotation == this.rotation){
+			return;
+		}
+		this.rotation = rotation;
+		final double cos = Math.cos(rotation);
+		final double sin = Math.sin(rotation);
+		for(int i = 0; i < points.length; i++){
+			final double x = localVertices[2*i];
+			final double y = localVertices[2*i + 1];
+			points[i].x = x*cos - y*sin;
+			points[i].y = x*sin + y*cos;
+		}
+		//the vertex at each end of an edge's projection does not change when everything turns together
+		for(int i = 0; i < points.length; i++){
+			final Pair p1 = points[i];
+			final Pair p2 = points[i + 1 == points.length ? 0 : i + 1];
+			edges[i].edge.x = -(p1.y - p2.y);
+			edges[i].edge.y = p1.x - p2.x;
+		}
+		setBounds();
+		dirty = true;
+	}
+	public int getVertexCount(){
+		return points.length;
+	}
+	/**
+	 * @return the vertices in world space, x and y interleaved. the array is cached and must not be changed
+	 */
+	public double[] getWorldVertices(){
+		updateWorld();
+		return worldVertices;
+	}
+	/**
+	 * @return the unit outward normal of each edge, from vertex i to vertex i + 1, x and y interleaved. 
+	 * 		the array is cached and must not be changed
+	 */
+	public double[] getNormals(){
+		updateWorld();
+		return normals;
+	}
+	/**
+	 * rebuilds the world vertices and normals if the polygon moved or turned since they were built
+	 */
+	void updateWorld(){
+		final double x = center.getX();
+		final double y = center.getY();
+		if(!dirty && x == worldX && y == worldY){
+			return;
+		}
+		for(int i = 0; i < points.length; i++){
+			worldVertices[2*i] = points[i].x + x;
+			worldVertices[2*i + 1] = points[i].y + y;
+		}
+		if(dirty){
+			//the edges are perpendicular to the sides, flip them outward for either winding
+			double area = 0;
+			for(int i = 0; i < points.length; i++){
+				final Pair p1 = points[i];
+				final Pair p2 = points[i + 1 == points.length ? 0 : i + 1];
+				area += p1.x*p2.y - p2.x*p1.y;
+			}
+			final double sign = area > 0 ? 1 : -1;
+			for(int i = 0; i < points.length; i++){
+				final Pair edge = edges[i].edge;
+				final double length = Math.sqrt(edge.x*edge.x + edge.y*edge.y);
+				normals[2*i] = length == 0 ? 0 : sign*edge.x/length;
+				normals[2*i + 1] = length == 0 ? 0 : sign*edge.y/length;
+			}
+		}
+		worldX = x;
+		worldY = y;
+		dirty = false;
+	}
 	public Pair[] getPoints(){
 		return points;
 	}
@@ -115,24 +218,36 @@ public class Polygon  extends GameComponent {
 		return circle;
 	}
 	private void setCircleAndBounds(){
-		dummyA = new Pair();
-		dummyB = new Pair();
-		dummyC = new Pair();
 		double maxDistance = 0;
-		
-		boolean first = true;
-		
 		for(int i = 0; i < points.length; i++){
-			if(first){
-				first = false;
-				minX = maxX = points[i].x;
-				minY = maxY = points[i].y;
-			}
-			
 			double temp = points[i].distance(0,0);
 			if(temp > maxDistance){
 				maxDistance = temp;
 			}
+		}
+		
+		rotation = 0;
+		localVertices = new double[points.length*2];
+		worldVertices = new double[points.length*2];
+		normals = new double[points.length*2];
+		for(int i = 0; i < points.length; i++){
+			localVertices[2*i] = points[i].x;
+			localVertices[2*i + 1] = points[i].y;
+		}
+		dirty = true;
+		
+		setBounds();
+		circle = new Circle(center,maxDistance);
+		setUpProjections();
+		
+	}
+	/**
+	 * sets the box around the points, relative to the center
+	 */
+	private void setBounds(){
+		minX = maxX = points[0].x;
+		minY = maxY = points[0].y;
+		for(int i = 1; i < points.length; i++){
 			if(points[i].x < minX){
 				minX = points[i].x;
 			}
@@ -147,10 +262,6 @@ public class Polygon  extends GameComponent {
 				maxY = points[i].y;
 			}
 		}
-		
-		circle = new Circle(center,maxDistance);
-		setUpProjections();
-		
 	}
 	private void setUpProjections(){
 		
@@ -189,83 +300,55 @@ public class Polygon  extends GameComponent {
 		}
 	}
 	/**
-	 * projects a polygon onto an arbitrary axis
-	 * @param axis polygon is projected onto this
-	 * @param polygon
-	 * @param interval projectin is stored in this, x = min, y = max
+	 * projects a polygon onto an arbitrary axis and measures the gap between the projection and an interval
+	 * @param axisX polygon is projected onto (axisX, axisY)
+	 * @param min start of the interval
+	 * @param max end of the interval
+	 * @return the distance between the projection and the interval, negative if they overlap
 	 */
-	static private void projectPolygon(Pair axis, Polygon polygon, Pair interval) {
+	static private double projectPolygon(double axisX, double axisY, Polygon polygon, double min, double max) {
 		// To project a point on an axis use the dot product
-		double d = axis.x*(polygon.points[0].x + polygon.center.getX()) + axis.y*(polygon.points[0].y + polygon.center.getY());
-		interval.x = d;//min
-		interval.y = d;//max
-		for (int i = 1; i < polygon.points.length; i++) {
-			d = axis.x*(polygon.points[i].x + polygon.center.getX()) + axis.y*(polygon.points[i].y + polygon.center.getY());
-			if (d < interval.x) {
-				interval.x = d;
-			} else {
-				if (d > interval.y) {
-					interval.y = d;
-				}
+		final double[] vertices = polygon.getWorldVertices();
+		double d = axisX*vertices[0] + axisY*vertices[1];
+		double pMin = d;
+		double pMax = d;
+		for (int i = 2; i < vertices.length; i += 2) {
+			d = axisX*vertices[i] + axisY*vertices[i + 1];
+			if (d < pMin) {
+				pMin = d;
+			} else if (d > pMax) {
+				pMax = d;
 			}
 		}
+		return intervalDistance(min, max, pMin, pMax);
 	}
-	static private void projectRectangle(Pair axis, Rectangle rectangle, Pair interval) {
+	static private double projectRectangle(double axisX, double axisY, Rectangle rectangle, double min, double max) {
 		// To project a point on an axis use the dot product
-		Pair[] points = rectangle.getPoints();
-		double d = axis.x*(points[0].x + rectangle.getCenter().getX()) + axis.y*(points[0].y +rectangle.getCenter().getY());
-		interval.x = d;//min
-		interval.y = d;//max
+		final Pair[] points = rectangle.getPoints();
+		final GLPoint center = rectangle.getCenter();
+		double d = axisX*(points[0].x + center.getX()) + axisY*(points[0].y + center.getY());
+		double pMin = d;
+		double pMax = d;
 		for (int i = 1; i < points.length; i++) {
-			d = axis.x*(points[i].x + rectangle.getCenter().getX()) + axis.y*(points[i].y + rectangle.getCenter().getY());
-			if (d < interval.x) {
-				interval.x = d;
-			} else {
-				if (d > interval.y) {
-					interval.y = d;
-				}
+			d = axisX*(points[i].x + center.getX()) + axisY*(points[i].y + center.getY());
+			if (d < pMin) {
+				pMin = d;
+			} else if (d > pMax) {
+				pMax = d;
 			}
 		}
+		return intervalDistance(min, max, pMin, pMax);
 	}
-	static private void projectCircle(Pair axis, Circle circle, Pair interval) {
-		double x = circle.getCenter().getX();
-		double y = circle.getCenter().getY();
-		double r = circle.getRadius();
-		// To project a point on an axis use the dot product
-		double minx;
-		double miny;
-		double maxx; 
-		double maxy;
-		double slope = 0;
-		if(axis.x != 0){
-			 slope = axis.y/axis.x;
-			minx = r*Math.sqrt(1/(1+slope*slope));
-			miny = slope*minx;
-			maxx = -minx;
-			maxy = -miny;
-		}
-		else{
-			miny = r;
-			maxx = minx = 0;
-			maxy = -miny;
-			
-		}
-		minx = minx + x;
-		miny = miny + y;
-		maxx = maxx + x;
-		maxy = maxy + y;
-
-		interval.x = axis.x*(minx) + axis.y*(miny);//min
-		interval.y = axis.x*(maxx) + axis.y*(maxy);//max
-		
-		if(interval.x > interval.y){
-			double temp = interval.x;
-			interval.x = interval.y;
-			interval.y = temp;
-			
-		}
+	static private double projectCircle(double axisX, double axisY, Circle circle, double min, double max) {
+		// the center projects onto the axis, the radius is scaled by the length of the axis
+		final double d = axisX*circle.getCenter().getX() + axisY*circle.getCenter().getY();
+		final double r = circle.getRadius()*Math.sqrt(axisX*axisX + axisY*axisY);
+		return intervalDistance(min, max, d - r, d + r);
 	}
-	public double normal(Polygon other){
+	/**
+	 * sets normal to the unit vector from the closest point of this polygon to the closest point of other
+	 */
+	public void normal(Polygon other, Pair normal){
 	
 		boolean firstTime = true;
 		double minAx = points[0].x;
@@ -398,27 +481,13 @@ public class Polygon  extends GameComponent {
 		double x = minBx - minAx;
 		double y = minBy - minAy;
 
-		double angle;
-		
-		if(x == 0){
-			if( y > 0){
-				angle = Math.PI/2;
-			}
-			else{
-				angle = 3*Math.PI/2;
-			}
-		}
-		else{
-			angle = Math.atan(y/x);
-			if(x < 0){
-				angle += Math.PI;
-			}
-		}
-		
-		return angle;
+		normal.setDirection(x, y);
 
 	}
-	public double normal(Circle other){
+	/**
+	 * sets normal to the unit vector from the closest point of this polygon to the closest point of other
+	 */
+	public void normal(Circle other, Pair normal){
 		
 		boolean firstTime = true;
 		double minAx = points[0].x;
@@ -490,27 +559,13 @@ public class Polygon  extends GameComponent {
 		double x = minBx - minAx;
 		double y = minBy - minAy;
 
-		double angle;
-		
-		if(x == 0){
-			if( y > 0){
-				angle = Math.PI/2;
-			}
-			else{
-				angle = 3*Math.PI/2;
-			}
-		}
-		else{
-			angle = Math.atan(y/x);
-			if(x < 0){
-				angle += Math.PI;
-			}
-		}
-		
-		return angle;
+		normal.setDirection(x, y);
 
 	}
-	public double normal(Rectangle other){
+	/**
+	 * sets normal to the unit vector from the closest point of this polygon to the closest point of other
+	 */
+	public void normal(Rectangle other, Pair normal){
 		
 		boolean firstTime = true;
 		double minAx = points[0].x;
@@ -638,24 +693,7 @@ public class Polygon  extends GameComponent {
 		double x = minBx - minAx;
 		double y = minBy - minAy;
 		
-		double angle;
-		
-		if(x == 0){
-			if( y > 0){
-				angle = Math.PI/2;
-			}
-			else{
-				angle = 3*Math.PI/2;
-			}
-		}
-		else{
-			angle = Math.atan(y/x);
-			if(x < 0){
-				angle += Math.PI;
-			}
-		}
-		
-		return angle;
+		normal.setDirection(x, y);
 	}
 	public boolean collision(Polygon other){
 		boolean flag = false;
@@ -664,42 +702,31 @@ public class Polygon  extends GameComponent {
 
 			int edgeCountA = edges.length;
 			int edgeCountB = other.edges.length;
-			//float minIntervalDistance = float.PositiveInfinity;
-			//Vector translationAxis = new Vector();
 			Pair edge;
-			Pair intA = this.dummyA;
-
-			Pair intB = this.dummyB;
-
 
 			// Loop through all the edges of both polygons
 			for (int edgeIndex = 0; edgeIndex < edgeCountA && flag; edgeIndex++) {
-				
-				edge = edges[edgeIndex].edge;
+				final ProjectionLine line = edges[edgeIndex];
+				edge = line.edge;
 
-				//TODO optimize
-				intA.x = edges[edgeIndex].edge.x*(edges[edgeIndex].min.x+center.getX()) + edges[edgeIndex].edge.y*(edges[edgeIndex].min.y+center.getY());
-				intA.y = edges[edgeIndex].edge.x*(edges[edgeIndex].max.x+center.getX()) + edges[edgeIndex].edge.y*(edges[edgeIndex].max.y+center.getY());
-				projectPolygon(edge, other, intB);
+				final double min = edge.x*(line.min.x+center.getX()) + edge.y*(line.min.y+center.getY());
+				final double max = edge.x*(line.max.x+center.getX()) + edge.y*(line.max.y+center.getY());
 
 				// Check if the polygon projections are currentlty intersecting
-				if (intervalDistance(intA, intB) >= 0){
+				if (projectPolygon(edge.x, edge.y, other, min, max) >= 0){
 					flag = false;
 				}
 			}
 			// Loop through all the edges of both polygons
 			for (int edgeIndex = 0; edgeIndex < edgeCountB && flag; edgeIndex++) {
+				final ProjectionLine line = other.edges[edgeIndex];
+				edge = line.edge;
 
-					edge = other.edges[edgeIndex ].edge;
-				
-
-				
-				projectPolygon(edge, this, intA);
-				intB.x = other.edges[edgeIndex].edge.x*(other.edges[edgeIndex].min.x+other.center.getX()) + other.edges[edgeIndex].edge.y*(other.edges[edgeIndex].min.y+other.center.getY());
-				intB.y = other.edges[edgeIndex].edge.x*(other.edges[edgeIndex].max.x+other.center.getX()) + other.edges[edgeIndex].edge.y*(other.edges[edgeIndex].max.y+other.center.getY());
+				final double min = edge.x*(line.min.x+other.center.getX()) + edge.y*(line.min.y+other.center.getY());
+				final double max = edge.x*(line.max.x+other.center.getX()) + edge.y*(line.max.y+other.center.getY());
 
 				// Check if the polygon projections are currentlty intersecting
-				if (intervalDistance(intA,intB) >= 0){
+				if (projectPolygon(edge.x, edge.y, this, min, max) >= 0){
 					flag = false;
 				}
 			}
@@ -708,11 +735,11 @@ public class Polygon  extends GameComponent {
 	}
 		// Calculate the distance between [minA, maxA] and [minB, maxB]
 		// The distance will be negative if the intervals overlap
-	private double intervalDistance(Pair intA, Pair intB) {
-		if (intA.x < intB.x) {
-			return intB.x - intA.y;
+	static private double intervalDistance(double minA, double maxA, double minB, double maxB) {
+		if (minA < minB) {
+			return minB - maxA;
 		} else {
-			return intA.x - intB.y;
+			return minA - maxB;
 		}
 	}
 
@@ -722,26 +749,18 @@ public class Polygon  extends GameComponent {
 			flag = true;
 
 			int edgeCountA = edges.length;
-			
-			//float minIntervalDistance = float.PositiveInfinity;
-			//Vector translationAxis = new Vector();
 			Pair edge;
-			Pair intA = dummyA;
-			Pair intB = dummyB;
 			// Loop through all the edges of both polygons
 			for (int edgeIndex = 0; edgeIndex < edgeCountA && flag; edgeIndex++) {
-				
-				edge = edges[edgeIndex].edge;
+				final ProjectionLine line = edges[edgeIndex];
+				edge = line.edge;
 
-				//TODO optimize
-				intA.x = edges[edgeIndex].edge.x*(edges[edgeIndex].min.x+center.getX()) + edges[edgeIndex].edge.y*(edges[edgeIndex].min.y+center.getY());
-				intA.y = edges[edgeIndex].edge.x*(edges[edgeIndex].max.x+center.getX()) + edges[edgeIndex].edge.y*(edges[edgeIndex].max.y+center.getY());
-				projectCircle(edge, other, intB);
+				final double min = edge.x*(line.min.x+center.getX()) + edge.y*(line.min.y+center.getY());
+				final double max = edge.x*(line.max.x+center.getX()) + edge.y*(line.max.y+center.getY());
 
 				// Check if the polygon projections are currentlty intersecting
-				if (intervalDistance(intA, intB) >= 0){
+				if (projectCircle(edge.x, edge.y, other, min, max) >= 0){
 					flag = false;
-					
 				}
 			}
 			//check the circles edge
@@ -762,18 +781,16 @@ public class Polygon  extends GameComponent {
 						minDist = temp;
 						minPair = points[i];
 					}
-			}
-				
-				edge = dummyC;
-				edge.x = x - (minPair.x  + center.getX());
-				edge.y = y - (minPair.y  + center.getY());
+				}
 				
-				projectCircle(edge, other, intB);
-				projectPolygon(edge,this,intA);
+				//axis from the closest vertex to the center of the circle
+				final double axisX = x - (minPair.x  + center.getX());
+				final double axisY = y - (minPair.y  + center.getY());
+				final double d = axisX*x + axisY*y;
+				final double r = other.getRadius()*Math.sqrt(axisX*axisX + axisY*axisY);
 				// Check if the polygon projections are currentlty intersecting
-				if (intervalDistance(intA, intB) >= 0){
+				if (projectPolygon(axisX, axisY, this, d - r, d + r) >= 0){
 					flag = false;
-				
 				}
 			}
 		}
@@ -785,41 +802,31 @@ public class Polygon  extends GameComponent {
 			flag = true;
 
 			int edgeCountA = edges.length;
-			
-			//float minIntervalDistance = float.PositiveInfinity;
-			//Vector translationAxis = new Vector();
 			Pair edge;
-			Pair intA = dummyA;
-			Pair intB = dummyB;
 			// Loop through all the edges of both polygons
 			for (int edgeIndex = 0; edgeIndex < edgeCountA && flag; edgeIndex++) {
-				
-				edge = edges[edgeIndex].edge;
+				final ProjectionLine line = edges[edgeIndex];
+				edge = line.edge;
 
-				//TODO optimize
-				intA.x = edges[edgeIndex].edge.x*(edges[edgeIndex].min.x+center.getX()) + edges[edgeIndex].edge.y*(edges[edgeIndex].min.y+center.getY());
-				intA.y = edges[edgeIndex].edge.x*(edges[edgeIndex].max.x+center.getX()) + edges[edgeIndex].edge.y*(edges[edgeIndex].max.y+center.getY());
-				projectRectangle(edge, other, intB);
+				final double min = edge.x*(line.min.x+center.getX()) + edge.y*(line.min.y+center.getY());
+				final double max = edge.x*(line.max.x+center.getX()) + edge.y*(line.max.y+center.getY());
 
 				// Check if the polygon projections are currentlty intersecting
-				if (intervalDistance(intA, intB) >= 0){
+				if (projectRectangle(edge.x, edge.y, other, min, max) >= 0){
 					flag = false;
 				}
 			}
 			ProjectionLine[] otherEdges = other.getEdges();
 			// Loop through all the edges of both polygons
 			for (int edgeIndex = 0; edgeIndex < 4 && flag; edgeIndex++) {
-					
-					edge = otherEdges[edgeIndex ].edge;
-				
+				final ProjectionLine line = otherEdges[edgeIndex];
+				edge = line.edge;
 
-				
-				projectPolygon(edge, this, intA);
-				intB.x = otherEdges[edgeIndex].edge.x*(otherEdges[edgeIndex].min.x+other.getCenter().getX()) + otherEdges[edgeIndex].edge.y*(otherEdges[edgeIndex].min.y+other.getCenter().getY());
-				intB.y = otherEdges[edgeIndex].edge.x*(otherEdges[edgeIndex].max.x+other.getCenter().getX()) + otherEdges[edgeIndex].edge.y*(otherEdges[edgeIndex].max.y+other.getCenter().getY());
+				final double min = edge.x*(line.min.x+other.getCenter().getX()) + edge.y*(line.min.y+other.getCenter().getY());
+				final double max = edge.x*(line.max.x+other.getCenter().getX()) + edge.y*(line.max.y+other.getCenter().getY());
 
 				// Check if the polygon projections are currentlty intersecting
-				if (intervalDistance(intA, intB) >= 0){
+				if (projectPolygon(edge.x, edge.y, this, min, max) >= 0){
 					flag = false;
 				}
 			}
@@ -843,40 +850,20 @@ public class Polygon  extends GameComponent {
 		return minY + center.getY();
 	}
 
+	/**
+	 * the polygon is convex, so a point is inside when it is behind every edge
+	 */
 	public boolean collision(GLPoint other){
-	   double y = other.getY();
-	   double x = other.getX();
-	   
-	   double angle=0;
-	   Pair p1 = dummyA,p2 = dummyB;
-
-	   for (int i=0;i<points.length;i++) {
-	      p1.x = points[i].x + center.getX()- x;
-	      p1.y = points[i].y + center.getY() - y;
-	      p2.x = points[(i+1)%points.length].x + center.getX() - x;
-	      p2.y = points[(i+1)%points.length].y + center.getY() - y;
-	      angle += Angle2D(p1.x,p1.y,p2.x,p2.y);
-	   }
-	   return Math.abs(angle) == 2*Math.PI;
-	}
-
-	/*
-	   Return the angle between two vectors on a plane
-	   The angle is from vector 1 to vector 2, positive anticlockwise
-	   The result is between -pi -> pi
-	*/
-	private double Angle2D(double x1, double y1, double x2, double y2){
-	   double dtheta,theta1,theta2;
-
-	   theta1 = Math.atan2(y1,x1);
-	   theta2 = Math.atan2(y2,x2);
-	   dtheta = theta2 - theta1;
-	   while (dtheta > Math.PI)
-	      dtheta -= Math.PI*2;
-	   while (dtheta < -Math.PI)
-	      dtheta += Math.PI*2;
-
-	   return dtheta;
+		final double x = other.getX();
+		final double y = other.getY();
+		final double[] vertices = getWorldVertices();
+		final double[] normals = getNormals();
+		for(int i = 0; i < points.length; i++){
+			if((x - vertices[2*i])*normals[2*i] + (y - vertices[2*i + 1])*normals[2*i + 1] > 0){
+				return false;
+			}
+		}
+		return true;
 	}
 	
 	public static void expunge(Polygon p1, Polygon p2, Pair rtnValue){
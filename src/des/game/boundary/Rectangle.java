@@ -48,13 +48,15 @@ public class Rectangle extends GameComponent{
 
 		setUpProjections();
 	}
-	public double getNormal(Rectangle other){
+	/**
+	 * sets normal to the unit vector pointing from other towards this rectangle along the axis they overlap least on
+	 */
+	public void getNormal(Rectangle other, Pair normal){
 		
 		double leftA,leftB;
 		double rightA,rightB;
 		double topA,topB;
 		double bottomA,bottomB;
-		double normal;
 		leftA = getLeft() ;
 		rightA = getRight();
 		topA = getTop();
@@ -76,23 +78,13 @@ public class Rectangle extends GameComponent{
 		}
 		
 		if(dY > dX){
-			if(rightA > rightB){
-				normal = 0;
-			}
-			else{
-				normal = Math.PI;
-			}
+			normal.x = rightA > rightB ? 1 : -1;
+			normal.y = 0;
 		}
 		else{
-			if(topA > topB){
-				normal = Math.PI/2;
-			}
-			else{
-				normal = 3*Math.PI/2;
-			}
+			normal.x = 0;
+			normal.y = topA > topB ? 1 : -1;
 		}
-		
-		return normal;
 	}
 	public boolean collision(Rectangle other){
 		boolean flag = true;
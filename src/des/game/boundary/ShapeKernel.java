@@ -0,0 +1,88 @@
+/*******************************************************************************
+ * Copyright 2011 Douglas Siemon
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package des.game.boundary;
+
+/**
+ * The narrow phase test for one pair of shape types, for kinds of shape Boundary does not know. Boundary 
+ * 	tests pairs of circles, rectangles and polygons itself with one switch, and only looks a kernel up 
+ * 	in a table by the shape type of each boundary when one of them is a new kind of shape, so such a 
+ * 	pair costs one array lookup and one call.
+ * 
+ * A new kind of shape takes an id from newShapeType and registers a kernel against each shape it can 
+ * 	touch, in both orders. Pairs without a kernel never collide. The built in pairs cannot be replaced. 
+ * 	Register kernels before the physics engine runs, the table is read from several threads without locking.
+ */
+public abstract class ShapeKernel {
+	//kernel of each pair, by the shape type of the calling boundary and then of the other boundary
+	static ShapeKernel[][] table = new ShapeKernel[4][4];
+	private static int shapeTypes = Boundary.BUILT_IN_SHAPES;
+	
+	/**
+	 * @return true when the boundaries overlap
+	 */
+	public abstract boolean collision(Boundary a, Boundary b);
+	/**
+	 * sets normal to the unit normal of collision, relative to a
+	 */
+	public abstract void normal(Boundary a, Boundary b, Pair normal);
+	
+	/**
+	 * @return an id for a new kind of shape, for Boundary.setShapeType
+	 */
+	public static int newShapeType(){
+		final int type = shapeTypes++;
+		if(type >= table.length){
+			final ShapeKernel[][] grown = new ShapeKernel[type*2][];
+			for(int i = 0; i < grown.length; i++){
+				grown[i] = new ShapeKernel[type*2];
+				if(i < table.length){
+					System.arraycopy(table[i], 0, grown[i], 0, table.length);
+				}
+			}
+			table = grown;
+		}
+		return type;
+	}
+	/**
+	 * @return the number of shape types, built in and new
+	 */
+	public static int getShapeTypeCount(){
+		return shapeTypes;
+	}
+	/**
+	 * sets the kernel used when a boundary of typeA is tested against a boundary of typeB, a kernel 
+	 * 	already registered for the pair is replaced. at least one of the types has to be a new kind of shape.
+	 * @param kernel null to make the pair never collide
+	 */
+	public static void register(int typeA, int typeB, ShapeKernel kernel){
+		if(typeA < 0 || typeB < 0 || typeA >= shapeTypes || typeB >= shapeTypes){
+			throw new IllegalArgumentException("unknown shape type");
+		}
+		if(typeA < Boundary.BUILT_IN_SHAPES && typeB < Boundary.BUILT_IN_SHAPES){
+			throw new IllegalArgumentException("built in shapes are tested by Boundary");
+		}
+		table[typeA][typeB] = kernel;
+	}
+	/**
+	 * @return the kernel registered for the pair, null if there is none
+	 */
+	public static ShapeKernel get(int typeA, int typeB){
+		if(typeA < 0 || typeB < 0 || typeA >= shapeTypes || typeB >= shapeTypes){
+			return null;
+		}
+		return table[typeA][typeB];
+	}
+}
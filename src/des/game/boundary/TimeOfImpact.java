@@ -0,0 +1,402 @@
+/*******************************************************************************
+ * Copyright 2011 Douglas Siemon
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package des.game.boundary;
+
+/**
+ * Finds when two boundaries moving in straight lines first touch, without stepping them through time.
+ * 
+ * Boundary a is moved relative to boundary b. At time t from 0 to 1 a sits at its current location 
+ * 	offset by (startX + dx*t, startY + dy*t) while b stays at its current location. Circles are 
+ * 	solved with a quadratic, a circle against a rectangle or polygon is a ray against the shape 
+ * 	grown by the radius, and two rectangles or polygons use the separating axis test on intervals 
+ * 	of time. Polygons are assumed to be convex, as they are everywhere else.
+ * 
+ * Nothing is allocated and no state is kept, so it is safe to call from several threads.
+ */
+public class TimeOfImpact {
+	/**
+	 * returned when the boundaries do not touch during the motion
+	 */
+	public static final double NONE = -1;
+	
+	private TimeOfImpact(){
+		
+	}
+	
+	/**
+	 * @param a the moving boundary
+	 * @param b the boundary a is moved against
+	 * @param startX offset of a from its current location at time 0
+	 * @param startY
+	 * @param dx distance a moves from time 0 to time 1
+	 * @param dy
+	 * @param normal if not null receives the unit normal of the contact, pointing from b towards a. when 
+	 * 		the boundaries already overlap at time 0 it is the direction that separates them the quickest
+	 * @return the time of the first contact from 0 to 1, 0 if they overlap at time 0, otherwise NONE
+	 */
+	public static double compute(Boundary a, Boundary b, double startX, double startY, double dx, double dy, Pair normal){
+		if(a.getShapeType() >= Boundary.BUILT_IN_SHAPES && a instanceof CompoundBoundary){
+			//the earliest part, its normal is only found once it is known
+			final CompoundBoundary compound = (CompoundBoundary)a;
+			final int first = firstPart(compound, b, startX, startY, dx, dy, true);
+			return first < 0 ? NONE : compute(compound.getPart(first), b, startX, startY, dx, dy, normal);
+		}
+		if(b.getShapeType() >= Boundary.BUILT_IN_SHAPES && b instanceof CompoundBoundary){
+			final CompoundBoundary compound = (CompoundBoundary)b;
+			final int first = firstPart(compound, a, startX, startY, dx, dy, false);
+			return first < 0 ? NONE : compute(a, compound.getPart(first), startX, startY, dx, dy, normal);
+		}
+		final Circle circleA = a.getPolygon() == null ? a.getCircle() : null;
+		final Circle circleB = b.getPolygon() == null ? b.getCircle() : null;
+		if(circleA != null && circleB != null){
+			return circles(circleA.getCenter().getX() + startX - circleB.getCenter().getX(), 
+					circleA.getCenter().getY() + startY - circleB.getCenter().getY(), 
+					circleA.getRadius() + circleB.getRadius(), dx, dy, normal);
+		}
+		else if(circleA != null){
+			return circleConvex(circleA.getCenter().getX() + startX, circleA.getCenter().getY() + startY, 
+					circleA.getRadius(), dx, dy, b, normal);
+		}
+		else if(circleB != null){
+			//move b against a instead, the normal then points the other way
+			final double t = circleConvex(circleB.getCenter().getX() - startX, circleB.getCenter().getY() - startY, 
+					circleB.getRadius(), -dx, -dy, a, normal);
+			if(normal != null){
+				normal.x = -normal.x;
+				normal.y = -normal.y;
+			}
+			return t;
+		}
+		return convex(a, b, startX, startY, dx, dy, normal);
+	}
+	
+	/**
+	 * casts a ray from (startX,startY) along (dx,dy) against a boundary.
+	 * @param normal if not null receives the unit normal of the surface that was hit
+	 * @return the fraction of (dx,dy) travelled before the hit from 0 to 1, 0 if the ray starts inside 
+	 * 		the boundary, otherwise NONE
+	 */
+	public static double ray(Boundary shape, double startX, double startY, double dx, double dy, Pair normal){
+		if(shape.getShapeType() >= Boundary.BUILT_IN_SHAPES && shape instanceof CompoundBoundary){
+			final CompoundBoundary compound = (CompoundBoundary)shape;
+			final int count = compound.getPartCount();
+			double first = NONE;
+			int firstIndex = -1;
+			for(int i = 0; i < count; i++){
+				final double t = ray(compound.getPart(i), startX, startY, dx, dy, null);
+				if(t != NONE && (first == NONE || t < first)){
+					first = t;
+					firstIndex = i;
+				}
+			}
+			return firstIndex < 0 ? NONE : ray(compound.getPart(firstIndex), startX, startY, dx, dy, normal);
+		}
+		final Circle circle = shape.getPolygon() == null ? shape.getCircle() : null;
+		if(circle != null){
+			return circles(startX - circle.getCenter().getX(), startY - circle.getCenter().getY(), 
+					circle.getRadius(), dx, dy, normal);
+		}
+		return circleConvex(startX, startY, 0, dx, dy, shape, normal);
+	}
+	
+	/**
+	 * @param moving true if the compound is the boundary that moves
+	 * @return the index of the part of the compound that touches the other boundary first, -1 if none does
+	 */
+	private static int firstPart(CompoundBoundary compound, Boundary other, double startX, double startY, double dx, double dy, boolean moving){
+		final int count = compound.getPartCount();
+		double first = NONE;
+		int firstIndex = -1;
+		for(int i = 0; i < count; i++){
+			final double t = moving ? compute(compound.getPart(i), other, startX, startY, dx, dy, null) 
+					: compute(other, compound.getPart(i), startX, startY, dx, dy, null);
+			if(t != NONE && (first == NONE || t < first)){
+				first = t;
+				firstIndex = i;
+			}
+		}
+		return firstIndex;
+	}
+	/**
+	 * a circle at (x,y) relative to the center of another moving towards it
+	 * @param radius sum of both radii
+	 */
+	private static double circles(double x, double y, double radius, double dx, double dy, Pair normal){
+		final double c = x*x + y*y - radius*radius;
+		if(c < 0){
+			setNormal(normal, x, y);
+			return 0;
+		}
+		final double a = dx*dx + dy*dy;
+		final double b = 2*(x*dx + y*dy);
+		//not moving, or moving away
+		if(a == 0 || b >= 0){
+			return NONE;
+		}
+		final double discriminant = b*b - 4*a*c;
+		if(discriminant < 0){
+			return NONE;
+		}
+		final double t = (-b - Math.sqrt(discriminant))/(2*a);
+		if(t < 0 || t > 1){
+			return NONE;
+		}
+		setNormal(normal, x + dx*t, y + dy*t);
+		return t;
+	}
+	
+	/**
+	 * a circle centered at (x,y) moving against a rectangle or polygon, the center is cast as a ray 
+	 * 	against the shape grown by the radius: its edges pushed out and its corners rounded.
+	 */
+	private static double circleConvex(double x, double y, double radius, double dx, double dy, Boundary shape, Pair normal){
+		final int count = vertexCount(shape);
+		final double winding = winding(shape, count);
+		
+		//find how far the center starts outside the shape, to tell if it already overlaps
+		boolean inside = true;
+		double closest = Double.MAX_VALUE;
+		double closestX = 0;
+		double closestY = 0;
+		double t = NONE;
+		double normalX = 0;
+		double normalY = 0;
+		for(int i = 0; i < count; i++){
+			final int j = i + 1 == count ? 0 : i + 1;
+			final double x0 = vertexX(shape, i);
+			final double y0 = vertexY(shape, i);
+			final double ex = vertexX(shape, j) - x0;
+			final double ey = vertexY(shape, j) - y0;
+			final double length = Math.sqrt(ex*ex + ey*ey);
+			if(length == 0){
+				continue;
+			}
+			//outward normal of the edge
+			final double nx = winding*ey/length;
+			final double ny = -winding*ex/length;
+			final double distance = (x - x0)*nx + (y - y0)*ny;
+			if(distance > 0){
+				inside = false;
+			}
+			//closest point on the edge
+			double u = ((x - x0)*ex + (y - y0)*ey)/(length*length);
+			if(u < 0) u = 0;
+			else if(u > 1) u = 1;
+			final double px = x - (x0 + ex*u);
+			final double py = y - (y0 + ey*u);
+			final double squared = px*px + py*py;
+			if(squared < closest){
+				closest = squared;
+				closestX = px;
+				closestY = py;
+			}
+			
+			//the edge pushed out by the radius
+			final double speed = dx*nx + dy*ny;
+			if(speed < 0){
+				final double hit = (radius - distance)/speed;
+				if(hit >= 0 && hit <= 1 && (t == NONE || hit < t)){
+					final double along = (x + dx*hit - x0)*ex + (y + dy*hit - y0)*ey;
+					if(along >= 0 && along <= length*length){
+						t = hit;
+						normalX = nx;
+						normalY = ny;
+					}
+				}
+			}
+			//the rounded corner at the start of the edge
+			if(radius > 0){
+				final double hit = circles(x - x0, y - y0, radius, dx, dy, null);
+				if(hit > 0 && (t == NONE || hit < t)){
+					t = hit;
+					normalX = x + dx*hit - x0;
+					normalY = y + dy*hit - y0;
+				}
+			}
+		}
+		if(inside || closest < radius*radius){
+			if(normal != null){
+				if(inside){
+					setNormal(normal, x - centerX(shape, count), y - centerY(shape, count));
+				}
+				else{
+					setNormal(normal, closestX, closestY);
+				}
+			}
+			return 0;
+		}
+		if(t != NONE){
+			setNormal(normal, normalX, normalY);
+		}
+		return t;
+	}
+	
+	/**
+	 * two rectangles or polygons, each edge normal of both is a possible separating axis. on each axis 
+	 * 	the projections overlap for an interval of time, the shapes touch where all the intervals overlap.
+	 */
+	private static double convex(Boundary a, Boundary b, double startX, double startY, double dx, double dy, Pair normal){
+		final int countA = vertexCount(a);
+		final int countB = vertexCount(b);
+		double first = Double.NEGATIVE_INFINITY;
+		double last = Double.POSITIVE_INFINITY;
+		double firstX = 0;
+		double firstY = 0;
+		//axis with the least overlap, used for the normal when the shapes start overlapping
+		double leastOverlap = Double.MAX_VALUE;
+		double leastX = 0;
+		double leastY = 0;
+		
+		for(int k = 0; k < countA + countB; k++){
+			final Boundary owner = k < countA ? a : b;
+			final int count = k < countA ? countA : countB;
+			final int i = k < countA ? k : k - countA;
+			final int j = i + 1 == count ? 0 : i + 1;
+			final double axisX = -(vertexY(owner, j) - vertexY(owner, i));
+			final double axisY = vertexX(owner, j) - vertexX(owner, i);
+			final double length = Math.sqrt(axisX*axisX + axisY*axisY);
+			if(length == 0){
+				continue;
+			}
+			
+			double minA = Double.MAX_VALUE;
+			double maxA = -Double.MAX_VALUE;
+			for(int v = 0; v < countA; v++){
+				final double d = axisX*(vertexX(a, v) + startX) + axisY*(vertexY(a, v) + startY);
+				if(d < minA) minA = d;
+				if(d > maxA) maxA = d;
+			}
+			double minB = Double.MAX_VALUE;
+			double maxB = -Double.MAX_VALUE;
+			for(int v = 0; v < countB; v++){
+				final double d = axisX*vertexX(b, v) + axisY*vertexY(b, v);
+				if(d < minB) minB = d;
+				if(d > maxB) maxB = d;
+			}
+			
+			final double speed = axisX*dx + axisY*dy;
+			double enter;
+			double exit;
+			if(speed == 0){
+				if(maxA <= minB || maxB <= minA){
+					return NONE;
+				}
+				enter = Double.NEGATIVE_INFINITY;
+				exit = Double.POSITIVE_INFINITY;
+			}
+			else if(speed > 0){
+				enter = (minB - maxA)/speed;
+				exit = (maxB - minA)/speed;
+			}
+			else{
+				enter = (maxB - minA)/speed;
+				exit = (minB - maxA)/speed;
+			}
+			if(enter > first){
+				first = enter;
+				//the normal faces against the motion along this axis
+				firstX = speed > 0 ? -axisX : axisX;
+				firstY = speed > 0 ? -axisY : axisY;
+			}
+			if(exit < last){
+				last = exit;
+			}
+			if(first > last || first > 1 || last < 0){
+				return NONE;
+			}
+			
+			final double overlap = Math.min(maxA - minB, maxB - minA)/length;
+			if(overlap < leastOverlap){
+				leastOverlap = overlap;
+				final boolean positive = minA + maxA > minB + maxB;
+				leastX = positive ? axisX : -axisX;
+				leastY = positive ? axisY : -axisY;
+			}
+		}
+		//every axis overlaps at time 0, the shapes touch only if they overlap by more than an edge
+		if(first < 0 || first == Double.NEGATIVE_INFINITY){
+			if(leastOverlap <= 0){
+				return NONE;
+			}
+			setNormal(normal, leastX, leastY);
+			return 0;
+		}
+		setNormal(normal, firstX, firstY);
+		return first;
+	}
+	
+	private static void setNormal(Pair normal, double x, double y){
+		if(normal != null){
+			final double length = Math.sqrt(x*x + y*y);
+			if(length > 0){
+				normal.x = x/length;
+				normal.y = y/length;
+			}
+			else{
+				normal.x = 1;
+				normal.y = 0;
+			}
+		}
+	}
+	/**
+	 * @return 1 if the vertices of the shape run counter-clockwise, -1 if they run clockwise
+	 */
+	private static double winding(Boundary shape, int count){
+		double area = 0;
+		for(int i = 0; i < count; i++){
+			final int j = i + 1 == count ? 0 : i + 1;
+			area += vertexX(shape, i)*vertexY(shape, j) - vertexX(shape, j)*vertexY(shape, i);
+		}
+		return area < 0 ? -1 : 1;
+	}
+	private static double centerX(Boundary shape, int count){
+		double x = 0;
+		for(int i = 0; i < count; i++){
+			x += vertexX(shape, i);
+		}
+		return x/count;
+	}
+	private static double centerY(Boundary shape, int count){
+		double y = 0;
+		for(int i = 0; i < count; i++){
+			y += vertexY(shape, i);
+		}
+		return y/count;
+	}
+	/**
+	 * rectangles are read as four corners, clockwise from the top left
+	 */
+	static int vertexCount(Boundary shape){
+		final Polygon polygon = shape.getPolygon();
+		return polygon != null ? polygon.getVertexCount() : 4;
+	}
+	static double vertexX(Boundary shape, int i){
+		final Polygon polygon = shape.getPolygon();
+		if(polygon != null){
+			return polygon.getWorldVertices()[2*i];
+		}
+		final Rectangle rectangle = shape.getRectangle();
+		return i == 1 || i == 2 ? rectangle.getRight() : rectangle.getLeft();
+	}
+	static double vertexY(Boundary shape, int i){
+		final Polygon polygon = shape.getPolygon();
+		if(polygon != null){
+			return polygon.getWorldVertices()[2*i + 1];
+		}
+		final Rectangle rectangle = shape.getRectangle();
+		return i < 2 ? rectangle.getTop() : rectangle.getBottom();
+	}
+}
@@ -16,29 +16,15 @@
 package des.game.physics;
 
 
-import des.game.base.GLPoint;
-
 /**
  * This class extends vector, it is intended to model acceleration
  *
  */
 public class Acceleration extends Vector{
 	/*
-	 * Sets Components to zero.
-	 */
-	Acceleration(){
-		super();
-	}
-	/*
-	 * Sets Components to a and b.
-	 */
-	Acceleration(double a,double b,GLPoint p){
-		super(a,b,p);
-	}
-	/*
-	 * Sets Components to a and b.
+	 * a view of the acceleration of a body, or of the acceleration from outside forces.
 	 */
-	Acceleration(double x,double y,double z,GLPoint p){
-		super(x,y,z,p);
+	Acceleration(int body,boolean outside){
+		super(body, outside ? BodyStore.OUTSIDE_ACCELERATION : BodyStore.ACCELERATION);
 	}
 }
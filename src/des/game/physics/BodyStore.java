@@ -0,0 +1,345 @@
+/*******************************************************************************
+ * Copyright 2011 Douglas Siemon
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package des.game.physics;
+
+import des.game.base.GLPoint;
+
+/**
+ * Keeps the motion of every vector object in flat arrays indexed by body id. A vector object, its 
+ * 	velocity and its accelerations are views onto a body, so the physics step integrates and clears 
+ * 	the bodies in straight loops over the arrays instead of going through each object.
+ * 
+ * The x, y and z of a body are stored next to each other, body i starts at 3*i. The location of a 
+ * 	body is the GLPoint it shares with its boundary, the store keeps a reference to it.
+ * 
+ * The velocities, accelerations and masses are kept in doubles, or in floats in single precision, 
+ * 	which halves the memory the integration loops go through. Locations stay in doubles either way.
+ * 
+ * Bodies are not given back, vector objects are pooled and keep theirs for as long as they live.
+ */
+public class BodyStore {
+	//precision the store starts in, the engine can change it at run time
+	public static final boolean SINGLE_PRECISION = false;
+	private static final int DEFAULT_SIZE = 64;
+	//vectors kept for each body
+	static final int VELOCITY = 0;
+	static final int ACCELERATION = 1;
+	static final int OUTSIDE_ACCELERATION = 2;
+	private static final int VECTOR_COUNT = 3;
+	//the body belongs to an object in the vector object set
+	static final int ADDED = 1;
+	static final int SLEEPING = 2;
+	//the z coordinate of the body is not moved
+	static final int LOCKED = 4;
+	
+	//indexed by the vectors above, only the arrays of the current precision are allocated
+	private double[][] vectors;
+	private double[] mass;
+	private float[][] singleVectors;
+	private float[] singleMass;
+	private boolean singlePrecision;
+	
+	GLPoint[] location;
+	byte[] flags;
+	private int count;
+	private int capacity;
+	
+	private BodyStore(int size, boolean singlePrecision){
+		this.singlePrecision = singlePrecision;
+		count = 0;
+		allocate(size);
+	}
+	/**
+	 * makes sure bodies up to size can be created without growing the arrays
+	 */
+	public void ensureCapacity(int size){
+		if(capacity < size){
+			allocate(size);
+		}
+	}
+	/**
+	 * @return id of a new body at rest with a mass of 1
+	 */
+	int create(GLPoint p){
+		if(count == capacity){
+			allocate(count*2);
+		}
+		final int body = count++;
+		setMass(body, 1);
+		location[body] = p;
+		return body;
+	}
+	public int getCount(){
+		return count;
+	}
+	public boolean isSinglePrecision(){
+		return singlePrecision;
+	}
+	/**
+	 * moves the bodies into float or double arrays, the values are kept. call between physics steps.
+	 */
+	public void setSinglePrecision(boolean singlePrecision){
+		if(this.singlePrecision == singlePrecision){
+			return;
+		}
+		final int length = VECTOR_COUNT*capacity;
+		if(singlePrecision){
+			singleVectors = new float[VECTOR_COUNT][];
+			for(int v = 0; v < VECTOR_COUNT; v++){
+				singleVectors[v] = new float[length];
+				for(int i = 0; i < length; i++){
+					singleVectors[v][i] = (float)vectors[v][i];
+				}
+			}
+			singleMass = new float[capacity];
+			for(int i = 0; i < count; i++){
+				singleMass[i] = (float)mass[i];
+			}
+			vectors = null;
+			mass = null;
+		}
+		else{
+			vectors = new double[VECTOR_COUNT][];
+			for(int v = 0; v < VECTOR_COUNT; v++){
+				vectors[v] = new double[length];
+				for(int i = 0; i < length; i++){
+					vectors[v][i] = singleVectors[v][i];
+				}
+			}
+			mass = new double[capacity];
+			for(int i = 0; i < count; i++){
+				mass[i] = singleMass[i];
+			}
+			singleVectors = null;
+			singleMass = null;
+		}
+		this.singlePrecision = singlePrecision;
+	}
+	/**
+	 * @param vector one of VELOCITY, ACCELERATION or OUTSIDE_ACCELERATION
+	 * @param index 3*body for x, plus 1 for y or 2 for z
+	 */
+	double get(int vector, int index){
+		return singlePrecision ? singleVectors[vector][index] : vectors[vector][index];
+	}
+	void set(int vector, int index, double value){
+		if(singlePrecision){
+			singleVectors[vector][index] = (float)value;
+		}
+		else{
+			vectors[vector][index] = value;
+		}
+	}
+	void add(int vector, int index, double value){
+		if(singlePrecision){
+			singleVectors[vector][index] += value;
+		}
+		else{
+			vectors[vector][index] += value;
+		}
+	}
+	double getMass(int body){
+		return singlePrecision ? singleMass[body] : mass[body];
+	}
+	void setMass(int body, double value){
+		if(singlePrecision){
+			singleMass[body] = (float)value;
+		}
+		else{
+			mass[body] = value;
+		}
+	}
+	/**
+	 * moves every awake body in the vector object set forward in time
+	 * @param time in milliseconds
+	 */
+	public void integrate(double time){
+		final double seconds = time/1000.0d;
+		final byte[] flags = this.flags;
+		final int count = this.count;
+		if(singlePrecision){
+			final float singleSeconds = (float)seconds;
+			for(int i = 0; i < count; i++){
+				if((flags[i] & (ADDED | SLEEPING)) == ADDED){
+					moveSingle(i, singleSeconds);
+				}
+			}
+		}
+		else{
+			for(int i = 0; i < count; i++){
+				if((flags[i] & (ADDED | SLEEPING)) == ADDED){
+					move(i, seconds);
+				}
+			}
+		}
+	}
+	/**
+	 * moves one body forward in time, whether it is in the set or not
+	 * @param time in milliseconds
+	 */
+	void integrate(int body, double time){
+		if(singlePrecision){
+			moveSingle(body, (float)(time/1000.0d));
+		}
+		else{
+			move(body, time/1000.0d);
+		}
+	}
+	/**
+	 * clears the outside accelerations of every awake body in the vector object set
+	 */
+	public void clearOutsideAccelerations(){
+		final byte[] flags = this.flags;
+		final int count = this.count;
+		if(singlePrecision){
+			final float[] outside = singleVectors[OUTSIDE_ACCELERATION];
+			for(int i = 0, j = 0; i < count; i++, j += 3){
+				if((flags[i] & (ADDED | SLEEPING)) == ADDED){
+					outside[j] = outside[j + 1] = outside[j + 2] = 0;
+				}
+			}
+		}
+		else{
+			final double[] outside = vectors[OUTSIDE_ACCELERATION];
+			for(int i = 0, j = 0; i < count; i++, j += 3){
+				if((flags[i] & (ADDED | SLEEPING)) == ADDED){
+					outside[j] = outside[j + 1] = outside[j + 2] = 0;
+				}
+			}
+		}
+	}
+	
+	void setFlag(int body, int flag, boolean set){
+		if(set){
+			flags[body] |= flag;
+		}
+		else{
+			flags[body] &= ~flag;
+		}
+	}
+	boolean hasFlag(int body, int flag){
+		return (flags[body] & flag) != 0;
+	}
+	
+	private void move(int body, double seconds){
+		final double[] velocity = vectors[VELOCITY];
+		final double[] acceleration = vectors[ACCELERATION];
+		final double[] outside = vectors[OUTSIDE_ACCELERATION];
+		final int x = 3*body;
+		final int y = x + 1;
+		final int z = x + 2;
+		
+		double vx = velocity[x] + (outside[x] + acceleration[x])*seconds;
+		double vy = velocity[y] + (outside[y] + acceleration[y])*seconds;
+		double vz = velocity[z] + (outside[z] + acceleration[z])*seconds;
+		//insure that the x,y velocity stays under the max velocity, scaling keeps the direction
+		final double speedSquared = vx*vx + vy*vy;
+		if(speedSquared >= PhysicsEngine.MAX_VELOCITY*PhysicsEngine.MAX_VELOCITY){
+			final double scale = PhysicsEngine.MAX_VELOCITY/Math.sqrt(speedSquared);
+			vx *= scale;
+			vy *= scale;
+		}
+		//insure that the z velocity statys under the max velocity
+		if(vz >= PhysicsEngine.MAX_VELOCITY){
+			vz = PhysicsEngine.MAX_VELOCITY;
+		}
+		velocity[x] = vx;
+		velocity[y] = vy;
+		velocity[z] = vz;
+		
+		final GLPoint p = location[body];
+		p.setX(p.getX() + seconds*vx);
+		p.setY(p.getY() + seconds*vy);
+		if((flags[body] & LOCKED) == 0){
+			p.setZ(p.getZ() + seconds*vz);
+		}
+	}
+	private void moveSingle(int body, float seconds){
+		final float[] velocity = singleVectors[VELOCITY];
+		final float[] acceleration = singleVectors[ACCELERATION];
+		final float[] outside = singleVectors[OUTSIDE_ACCELERATION];
+		final int x = 3*body;
+		final int y = x + 1;
+		final int z = x + 2;
+		
+		float vx = velocity[x] + (outside[x] + acceleration[x])*seconds;
+		float vy = velocity[y] + (outside[y] + acceleration[y])*seconds;
+		float vz = velocity[z] + (outside[z] + acceleration[z])*seconds;
+		final float speedSquared = vx*vx + vy*vy;
+		if(speedSquared >= PhysicsEngine.MAX_VELOCITY*PhysicsEngine.MAX_VELOCITY){
+			final float scale = PhysicsEngine.MAX_VELOCITY/(float)Math.sqrt(speedSquared);
+			vx *= scale;
+			vy *= scale;
+		}
+		if(vz >= PhysicsEngine.MAX_VELOCITY){
+			vz = PhysicsEngine.MAX_VELOCITY;
+		}
+		velocity[x] = vx;
+		velocity[y] = vy;
+		velocity[z] = vz;
+		
+		final GLPoint p = location[body];
+		p.setX(p.getX() + seconds*vx);
+		p.setY(p.getY() + seconds*vy);
+		if((flags[body] & LOCKED) == 0){
+			p.setZ(p.getZ() + seconds*vz);
+		}
+	}
+	private void allocate(int size){
+		final int length = VECTOR_COUNT*size;
+		if(singlePrecision){
+			final float[][] singleVectors = new float[VECTOR_COUNT][];
+			final float[] singleMass = new float[size];
+			for(int v = 0; v < VECTOR_COUNT; v++){
+				singleVectors[v] = new float[length];
+				if(this.singleVectors != null){
+					System.arraycopy(this.singleVectors[v], 0, singleVectors[v], 0, 3*count);
+				}
+			}
+			if(this.singleMass != null){
+				System.arraycopy(this.singleMass, 0, singleMass, 0, count);
+			}
+			this.singleVectors = singleVectors;
+			this.singleMass = singleMass;
+		}
+		else{
+			final double[][] vectors = new double[VECTOR_COUNT][];
+			final double[] mass = new double[size];
+			for(int v = 0; v < VECTOR_COUNT; v++){
+				vectors[v] = new double[length];
+				if(this.vectors != null){
+					System.arraycopy(this.vectors[v], 0, vectors[v], 0, 3*count);
+				}
+			}
+			if(this.mass != null){
+				System.arraycopy(this.mass, 0, mass, 0, count);
+			}
+			this.vectors = vectors;
+			this.mass = mass;
+		}
+		final GLPoint[] location = new GLPoint[size];
+		final byte[] flags = new byte[size];
+		if(this.location != null){
+			System.arraycopy(this.location, 0, location, 0, count);
+			System.arraycopy(this.flags, 0, flags, 0, count);
+		}
+		this.location = location;
+		this.flags = flags;
+		capacity = size;
+	}
+	
+	public static BodyStore instance = new BodyStore(DEFAULT_SIZE, SINGLE_PRECISION);
+}
@@ -18,18 +18,224 @@ package des.game.physics;
 import java.util.ArrayList;
 
 import des.game.base.BaseObject;
+import des.game.base.FixedSizeArray;
 import des.game.base.ObjectManager;
 
 
 public class BoundarySet extends ObjectManager<PhysicsObject>{
+	//objects without a vector do not move on their own, they are kept apart from the moving objects so the
+	//	broadphase only has to index them again when they change. sleeping objects are kept in a third 
+	//	partition of their own, so falling asleep and waking up do not rebuild the static index
+	private FixedSizeArray<PhysicsObject> staticObjects;
+	private FixedSizeArray<PhysicsObject> dynamicObjects;
+	private FixedSizeArray<PhysicsObject> sleepingObjects;
+	private int staticVersion;
+	private int sleepingVersion;
+	//set when an object gains or loses its vector or changes its layers
+	private boolean partitionDirty;
+	//set when an object in the set falls asleep or wakes up
+	private boolean sleepingDirty;
+	
 	private BoundarySet(int size){
 		super(size);
-
+		staticObjects = new FixedSizeArray<PhysicsObject>(size);
+		dynamicObjects = new FixedSizeArray<PhysicsObject>(size);
+		sleepingObjects = new FixedSizeArray<PhysicsObject>(size);
+		staticVersion = 0;
+		sleepingVersion = 0;
 	}
 	@Override
     public void update(float timeDelta, BaseObject parent) {
         commitUpdates();
     }
+	/**
+	 * commits the pending additions and removals and splits the set into its static, dynamic and sleeping partitions
+	 */
+	@Override
+	public void commitUpdates() {
+		if(mPendingAdditions.getCount() == 0 && mPendingRemovals.getCount() == 0 && !partitionDirty){
+			return;
+		}
+		super.commitUpdates();
+		partition();
+	}
+	@Override
+	public void clear() {
+		super.clear();
+		staticObjects.clear();
+		dynamicObjects.clear();
+		sleepingObjects.clear();
+		staticVersion++;
+		sleepingVersion++;
+		partitionDirty = false;
+		sleepingDirty = false;
+	}
+	/**
+	 * marks the partitions and the static index to be rebuilt the next time updates are committed. 
+	 * 	call after an object in the set gains or loses its vector or changes its collision layers.
+	 */
+	public void invalidatePartition(){
+		partitionDirty = true;
+	}
+	/**
+	 * marks the objects to be moved between the dynamic and sleeping partitions the next time updateSleeping 
+	 * 	is called. called by a vector object when it falls asleep or wakes up.
+	 */
+	public void invalidateSleeping(){
+		sleepingDirty = true;
+	}
+	/**
+	 * sorts the objects into the static, dynamic and sleeping partitions. an object is dynamic if it has 
+	 * 	an awake vector.
+	 */
+	public void partition(){
+		//the layers of a static or sleeping object may have changed without it leaving its partition
+		boolean staticChanged = partitionDirty;
+		boolean sleepingChanged = partitionDirty || sleepingDirty;
+		partitionDirty = false;
+		sleepingDirty = false;
+		final int count = this.mObjects.getCount();
+		final Object[] physicsArray = this.mObjects.getArray();
+		final int oldStaticCount = staticObjects.getCount();
+		final int oldSleepingCount = sleepingObjects.getCount();
+		int staticCount = 0;
+		int sleepingCount = 0;
+		
+		dynamicObjects.clear();
+		for(int i = 0; i < count; i++){
+			final PhysicsObject physicsObject = (PhysicsObject)physicsArray[i];
+			if(isSleeping(physicsObject)){
+				if(sleepingCount >= oldSleepingCount || sleepingObjects.get(sleepingCount) != physicsObject){
+					sleepingChanged = true;
+				}
+				sleepingCount++;
+			}
+			else if(isDynamic(physicsObject)){
+				dynamicObjects.add(physicsObject);
+			}
+			else{
+				//a resting object has not moved, so its box no longer needs to cover a sweep
+				if(physicsObject.getBoundary() != null){
+					physicsObject.getBoundary().setSweep(0, 0);
+				}
+				if(staticCount >= oldStaticCount || staticObjects.get(staticCount) != physicsObject){
+					staticChanged = true;
+				}
+				staticCount++;
+			}
+		}
+		if(staticChanged || staticCount != oldStaticCount){
+			staticObjects.clear();
+			for(int i = 0; i < count; i++){
+				final PhysicsObject physicsObject = (PhysicsObject)physicsArray[i];
+				if(!isDynamic(physicsObject)){
+					staticObjects.add(physicsObject);
+				}
+			}
+			staticVersion++;
+		}
+		if(sleepingChanged || sleepingCount != oldSleepingCount){
+			sleepingObjects.clear();
+			for(int i = 0; i < count; i++){
+				final PhysicsObject physicsObject = (PhysicsObject)physicsArray[i];
+				if(isSleeping(physicsObject)){
+					settle(physicsObject);
+					sleepingObjects.add(physicsObject);
+				}
+			}
+			sleepingVersion++;
+		}
+	}
+	/**
+	 * moves the objects that fell asleep or woke up since the last call between the dynamic and sleeping 
+	 * 	partitions, without sorting the whole set again
+	 * @return the number of objects that fell asleep
+	 */
+	public int updateSleeping(){
+		if(!sleepingDirty){
+			return 0;
+		}
+		sleepingDirty = false;
+		final int dynamicCount = dynamicObjects.getCount();
+		final int sleepingCount = sleepingObjects.getCount();
+		int fellAsleep = 0;
+		int kept = 0;
+		for(int i = 0; i < sleepingCount; i++){
+			final PhysicsObject physicsObject = sleepingObjects.get(i);
+			if(isSleeping(physicsObject)){
+				sleepingObjects.set(kept++, physicsObject);
+			}
+			else{
+				dynamicObjects.add(physicsObject);
+			}
+		}
+		while(sleepingObjects.getCount() > kept){
+			sleepingObjects.removeLast();
+		}
+		kept = 0;
+		for(int i = 0; i < dynamicObjects.getCount(); i++){
+			final PhysicsObject physicsObject = dynamicObjects.get(i);
+			if(isSleeping(physicsObject)){
+				settle(physicsObject);
+				sleepingObjects.add(physicsObject);
+				fellAsleep++;
+			}
+			else{
+				dynamicObjects.set(kept++, physicsObject);
+			}
+		}
+		while(dynamicObjects.getCount() > kept){
+			dynamicObjects.removeLast();
+		}
+		if(kept != dynamicCount || sleepingObjects.getCount() != sleepingCount){
+			sleepingVersion++;
+		}
+		return fellAsleep;
+	}
+	/**
+	 * a sleeping object has not moved, so its box no longer needs to cover a sweep
+	 */
+	private static void settle(PhysicsObject physicsObject){
+		physicsObject.getBoundary().setSweep(0, 0);
+		physicsObject.getBoundary().updateBox();
+	}
+	private static boolean isDynamic(PhysicsObject physicsObject){
+		return physicsObject.getVector() != null;
+	}
+	private static boolean isSleeping(PhysicsObject physicsObject){
+		return physicsObject.getVector() != null && physicsObject.getVector().isSleeping();
+	}
+	/**
+	 * objects without a vector, the broadphase may reorder this array
+	 */
+	public FixedSizeArray<PhysicsObject> getStaticObjects(){
+		return staticObjects;
+	}
+	/**
+	 * objects with an awake vector, the broadphase may reorder this array
+	 */
+	public FixedSizeArray<PhysicsObject> getDynamicObjects(){
+		return dynamicObjects;
+	}
+	/**
+	 * objects with a sleeping vector, the broadphase may reorder this array
+	 */
+	public FixedSizeArray<PhysicsObject> getSleepingObjects(){
+		return sleepingObjects;
+	}
+	/**
+	 * incremented every time an object joins or leaves the static partition, a static box changes or the 
+	 * 	partition is invalidated
+	 */
+	public int getStaticVersion(){
+		return staticVersion;
+	}
+	/**
+	 * incremented every time an object joins or leaves the sleeping partition or the partition is invalidated
+	 */
+	public int getSleepingVersion(){
+		return sleepingVersion;
+	}
 /**
  * performs an insertion sort on the set. after the physics engine moves the vectors the order of the 
  * 	boundaries is assumed to change minimally, so the set should be already be near sorted when this is
@@ -46,31 +252,75 @@ public class BoundarySet extends ObjectManager<PhysicsObject>{
 			}
 		}
 	}
-	public void updateBoxes(){
-		final int count = this.mObjects.getCount();
-		final Object[] physicsArray = this.mObjects.getArray();
+	/**
+	 * sets the bounding boxes of the boundaries that have moved or changed size since their boxes were last set.
+	 * 	a static box changing marks the static partition as changed, a sleeping object whose box changed was 
+	 * 	moved by something other than its vector and is woken.
+	 * @return the number of boxes that changed
+	 */
+	public int updateBoxes(){
+		int changed = updateBoxes(dynamicObjects);
+		final int staticChanged = updateBoxes(staticObjects);
+		if(staticChanged > 0){
+			staticVersion++;
+		}
+		final int count = sleepingObjects.getCount();
+		int sleepingChanged = 0;
+		for(int i = 0; i < count; i++){
+			final PhysicsObject physicsObject = sleepingObjects.get(i);
+			if(physicsObject.getBoundary().updateBox()){
+				physicsObject.getVector().wake();
+				sleepingChanged++;
+			}
+		}
+		if(sleepingChanged > 0){
+			updateSleeping();
+		}
+		return changed + staticChanged + sleepingChanged;
+	}
+	private static int updateBoxes(FixedSizeArray<PhysicsObject> objects){
+		final int count = objects.getCount();
+		final Object[] physicsArray = objects.getArray();
+		int changed = 0;
 		for(int i = 0; i < count; i++){
 			final PhysicsObject physicsObject = (PhysicsObject)physicsArray[i];
-			physicsObject.getBoundary().setBox();
+			if(physicsObject.getBoundary().updateBox()){
+				changed++;
+			}
 		}
+		return changed;
 	}
 
 	/**
-	 * checks the value of the collisionMatrix at i and j
-	 * @param i the first type, i,j = j,i
-	 * @param j the second type
-	 * @return value of the boolean reflects whether or not a collision is allowed for those types
+	 * @return the layer bit of a type, 0 for a type outside the 32 layers
 	 */
-	protected static boolean checkMatrix(int i, int j){
-		boolean flag = false;
-		try{
-			//set the flag to the value of the matrix
-			flag = collisionMatrix[i][j];
-		}
-		catch(IndexOutOfBoundsException e){
-			
+	public static int categoryOf(int type){
+		return type >= 0 && type < LAYER_COUNT ? 1 << type : 0;
+	}
+	/**
+	 * @return the bits of the layers a type collides with
+	 */
+	public static int maskOf(int type){
+		return type >= 0 && type < LAYER_COUNT ? typeMasks[type] : 0;
+	}
+	/**
+	 * turns the rows of the collision matrix into layer masks. every type is seen by passive objects, 
+	 * 	except passive objects themselves.
+	 */
+	protected static void updateMasks(){
+		for(int i = 0; i < LAYER_COUNT; i++){
+			int mask = 0;
+			if(collisionMatrix != null && i < collisionMatrix.length){
+				final boolean[] row = collisionMatrix[i];
+				final int length = Math.min(row.length, LAYER_COUNT);
+				for(int j = 0; j < length; j++){
+					if(row[j]){
+						mask |= 1 << j;
+					}
+				}
+			}
+			typeMasks[i] = i == PhysicsObject.PASSIVE_TYPE ? ~categoryOf(PhysicsObject.PASSIVE_TYPE) : mask | categoryOf(PhysicsObject.PASSIVE_TYPE);
 		}
-		return flag;
 	}
 
 	protected synchronized static void initializeSet(int size){
@@ -79,5 +329,11 @@ public class BoundarySet extends ObjectManager<PhysicsObject>{
 		}
 	}
 	public static boolean[][] collisionMatrix;
+	//types are collision layers, one bit each
+	public static final int LAYER_COUNT = 32;
+	private static final int[] typeMasks = new int[LAYER_COUNT];
+	static{
+		updateMasks();
+	}
 	public static BoundarySet instance;
 }
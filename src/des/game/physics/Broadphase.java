@@ -0,0 +1,141 @@
+/*******************************************************************************
+ * Copyright 2011 Douglas Siemon
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package des.game.physics;
+
+import des.game.base.FixedSizeArray;
+import des.game.boundary.Boundary;
+
+/**
+ * The broad phase of collision detection. A broadphase is given the boundaries in the BoundarySet
+ * 	after their bounding boxes have been set, and it reports every pair whose x and y projections
+ * 	overlap. The physics engine then runs the narrow phase (type, plane, and shape tests) on
+ * 	those pairs only.
+ */
+public abstract class Broadphase {
+	/**
+	 * rebuilds the broadphase from the current bounding boxes of the objects.
+	 * @param objects array of PhysicsObjects that have a boundary, may be reordered
+	 * @param count number of objects in the array
+	 */
+	public abstract void update(Object[] objects, int count);
+	/**
+	 * writes each pair of objects whose bounding boxes overlap into pairs. each pair is written once.
+	 * @param pairs
+	 */
+	public abstract void findPairs(PairBuffer pairs);
+	/**
+	 * writes every object whose bounding box overlaps the given box into result, stopping when result is full.
+	 * @param result objects are added to the end of the array, it is not cleared
+	 */
+	public abstract void query(double minX, double minY, double maxX, double maxY, FixedSizeArray<PhysicsObject> result);
+	/**
+	 * like query, but a broadphase that keeps its objects by collision layer only looks in the layers 
+	 * 	in mask. others return every overlapping object, so the caller still has to check the layers.
+	 * @param mask bits of the layers to look in
+	 */
+	public void query(double minX, double minY, double maxX, double maxY, int mask, FixedSizeArray<PhysicsObject> result){
+		query(minX, minY, maxX, maxY, result);
+	}
+	/**
+	 * like query with the bounding box of boundary, a broadphase that keeps its objects by z plane only 
+	 * 	looks in the planes the boundary reaches
+	 */
+	public void query(Boundary boundary, int mask, FixedSizeArray<PhysicsObject> result){
+		query(boundary.getXProjection().getStart(), boundary.getYProjection().getStart(), 
+				boundary.getXProjection().getEnd(), boundary.getYProjection().getEnd(), mask, result);
+	}
+	/**
+	 * writes every object whose bounding box touches the segment from start to end into result, stopping 
+	 * 	when result is full. by default the box around the segment is queried and the objects the segment 
+	 * 	misses are dropped, broadphases that can walk along the segment override it.
+	 * @param result objects are added to the end of the array, it is not cleared
+	 */
+	public void queryRay(double startX, double startY, double endX, double endY, FixedSizeArray<PhysicsObject> result){
+		final int start = result.getCount();
+		query(Math.min(startX, endX), Math.min(startY, endY), Math.max(startX, endX), Math.max(startY, endY), result);
+		keepRayHits(startX, startY, endX, endY, start, result);
+	}
+	/**
+	 * like queryRay, only looking in the layers in mask when the broadphase keeps its objects by layer
+	 * @see #query(double, double, double, double, int, FixedSizeArray)
+	 */
+	public void queryRay(double startX, double startY, double endX, double endY, int mask, FixedSizeArray<PhysicsObject> result){
+		queryRay(startX, startY, endX, endY, result);
+	}
+	/**
+	 * removes the objects from index start on whose bounding boxes the segment misses
+	 */
+	protected static void keepRayHits(double startX, double startY, double endX, double endY, int start, FixedSizeArray<PhysicsObject> result){
+		final int size = result.getCount();
+		int kept = start;
+		for(int i = start; i < size; i++){
+			final PhysicsObject object = result.get(i);
+			final Boundary b = object.getBoundary();
+			if(segmentOverlap(startX, startY, endX, endY, b.getXProjection().getStart(), b.getYProjection().getStart(), 
+					b.getXProjection().getEnd(), b.getYProjection().getEnd())){
+				result.set(kept++, object);
+			}
+		}
+		while(result.getCount() > kept){
+			result.removeLast();
+		}
+	}
+	/**
+	 * @return true when the segment from start to end touches the box, edges included
+	 */
+	protected static boolean segmentOverlap(double startX, double startY, double endX, double endY, 
+			double minX, double minY, double maxX, double maxY){
+		//clip the segment to the slab of each axis, it touches the box if anything is left
+		double t0 = 0;
+		double t1 = 1;
+		final double dx = endX - startX;
+		if(dx == 0){
+			if(startX < minX || startX > maxX){
+				return false;
+			}
+		}
+		else{
+			double near = (minX - startX)/dx;
+			double far = (maxX - startX)/dx;
+			if(near > far){
+				final double temp = near;
+				near = far;
+				far = temp;
+			}
+			t0 = Math.max(t0, near);
+			t1 = Math.min(t1, far);
+			if(t0 > t1){
+				return false;
+			}
+		}
+		final double dy = endY - startY;
+		if(dy == 0){
+			return startY >= minY && startY <= maxY;
+		}
+		double near = (minY - startY)/dy;
+		double far = (maxY - startY)/dy;
+		if(near > far){
+			final double temp = near;
+			near = far;
+			far = temp;
+		}
+		return Math.max(t0, near) <= Math.min(t1, far);
+	}
+	/**
+	 * @return a new empty broadphase of the same kind and settings
+	 */
+	public abstract Broadphase newInstance();
+}
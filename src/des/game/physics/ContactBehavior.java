@@ -0,0 +1,34 @@
+/*******************************************************************************
+ * Copyright 2011 Douglas Siemon
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package des.game.physics;
+
+/**
+ * A CollisionBehavior that also wants to know when a contact starts and ends. handleCollision is 
+ * 	still called every frame the two objects are touching, beginContact is called on the first of 
+ * 	those frames and endContact on the frame after the last one.
+ */
+public interface ContactBehavior extends CollisionBehavior {
+	/**
+	 * called the first frame the objects touch, before handleCollision
+	 * @param other the behavior of the other object, may be null
+	 */
+	public void beginContact(CollisionBehavior other);
+	/**
+	 * called the first frame the objects are no longer touching
+	 * @param other the behavior of the other object, may be null
+	 */
+	public void endContact(CollisionBehavior other);
+}
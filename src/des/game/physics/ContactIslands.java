@@ -0,0 +1,298 @@
+/*******************************************************************************
+ * Copyright 2011 Douglas Siemon
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package des.game.physics;
+
+/**
+ * Groups the touching pairs of a frame into islands, sets of pairs connected through the moving 
+ * 	objects they share. Objects without a vector do not connect pairs, so a wall does not join 
+ * 	everything touching it into one island. Islands share no moving objects, so each can be 
+ * 	resolved on its own thread while the pairs inside an island keep the order they were added in.
+ */
+public class ContactIslands {
+	//contacts in the order they were added
+	private PhysicsObject[] first;
+	private PhysicsObject[] second;
+	private boolean[] began;
+	private boolean[] resolved;
+	private int[] contactBody;
+	private double[] impact;
+	//slot of the pair in the pair cache
+	private int[] entry;
+	private int contactCount;
+	
+	//union find over the moving objects of the contacts
+	private int[] parent;
+	private int[] bodyIsland;
+	private int bodyCount;
+	private int stamp;
+	
+	//contacts grouped by island, island i holds order[islandStart[i]] to order[islandStart[i+1]-1]
+	private int[] order;
+	private int[] islandStart;
+	private int islandCount;
+	
+	public ContactIslands(int capacity){
+		if(capacity < 1){
+			capacity = 1;
+		}
+		allocateContacts(capacity);
+		allocateBodies(capacity);
+		stamp = 1;
+	}
+	/**
+	 * forgets the contacts of the last frame
+	 */
+	public void clear(){
+		contactCount = 0;
+		bodyCount = 0;
+		islandCount = 0;
+		stamp++;
+		if(stamp == Integer.MAX_VALUE){
+			stamp = 1;
+		}
+	}
+	/**
+	 * adds a touching pair, joining the islands of its moving objects
+	 * @param began true if the pair was not touching last frame
+	 * @param entry index of the pair in the pair cache
+	 */
+	public void add(PhysicsObject a, PhysicsObject b, boolean began, int entry){
+		if(contactCount == first.length){
+			allocateContacts(contactCount*2);
+		}
+		final int bodyA = index(a);
+		final int bodyB = index(b);
+		if(bodyA >= 0 && bodyB >= 0){
+			union(bodyA, bodyB);
+		}
+		first[contactCount] = a;
+		second[contactCount] = b;
+		this.began[contactCount] = began;
+		resolved[contactCount] = false;
+		impact[contactCount] = 0;
+		this.entry[contactCount] = entry;
+		contactBody[contactCount] = bodyA >= 0 ? bodyA : bodyB;
+		contactCount++;
+	}
+	/**
+	 * numbers the islands in the order their first contact was added and sorts the contacts by island
+	 */
+	public void build(){
+		islandCount = 0;
+		for(int i = 0; i < bodyCount; i++){
+			bodyIsland[i] = -1;
+		}
+		//count the contacts of each island, islandStart[i+1] holds the count of island i for now
+		for(int k = 0; k < contactCount; k++){
+			final int island = island(k);
+			islandStart[island + 1]++;
+		}
+		islandStart[0] = 0;
+		for(int i = 0; i < islandCount; i++){
+			islandStart[i + 1] += islandStart[i];
+		}
+		//place the contacts, walking them in order keeps each island in the order they were added
+		for(int k = 0; k < contactCount; k++){
+			final int island = contactIsland(k);
+			order[islandStart[island]++] = k;
+		}
+		//placing moved every start to the start of the next island
+		for(int i = islandCount; i > 0; i--){
+			islandStart[i] = islandStart[i - 1];
+		}
+		islandStart[0] = 0;
+	}
+	
+	public int getContactCount(){
+		return contactCount;
+	}
+	/**
+	 * @return index of the contact's pair in the pair cache
+	 */
+	public int getEntry(int contact){
+		return entry[contact];
+	}
+	public PhysicsObject getFirst(int contact){
+		return first[contact];
+	}
+	public PhysicsObject getSecond(int contact){
+		return second[contact];
+	}
+	/**
+	 * @return true if the pair was not touching last frame
+	 */
+	public boolean hasBegun(int contact){
+		return began[contact];
+	}
+	/**
+	 * @return true if the contact was resolved, false if an earlier contact of its island pushed the pair apart
+	 */
+	public boolean isResolved(int contact){
+		return resolved[contact];
+	}
+	public void setResolved(int contact, boolean resolved){
+		this.resolved[contact] = resolved;
+	}
+	/**
+	 * @return the time of impact set for the contact, 0 until one is set
+	 */
+	public double getTimeOfImpact(int contact){
+		return impact[contact];
+	}
+	public void setTimeOfImpact(int contact, double time){
+		impact[contact] = time;
+	}
+	/**
+	 * sorts the contacts of an island by their time of impact, contacts with the same time keep the
+	 * 	order they were added in
+	 */
+	public void sortIsland(int island){
+		final int start = islandStart[island];
+		final int end = islandStart[island + 1];
+		//islands are small, insertion sort is stable and does not allocate
+		for(int i = start + 1; i < end; i++){
+			final int contact = order[i];
+			final double time = impact[contact];
+			int j = i - 1;
+			while(j >= start && impact[order[j]] > time){
+				order[j + 1] = order[j];
+				j--;
+			}
+			order[j + 1] = contact;
+		}
+	}
+	public int getIslandCount(){
+		return islandCount;
+	}
+	/**
+	 * @return position of the first contact of island in the island order
+	 */
+	public int getIslandStart(int island){
+		return islandStart[island];
+	}
+	/**
+	 * @return position after the last contact of island in the island order
+	 */
+	public int getIslandEnd(int island){
+		return islandStart[island + 1];
+	}
+	/**
+	 * @param position position in the island order
+	 * @return the contact at that position
+	 */
+	public int getContact(int position){
+		return order[position];
+	}
+	
+	/**
+	 * @return index of the object in the union find, -1 if it does not connect islands
+	 */
+	private int index(PhysicsObject object){
+		if(object.getVector() == null){
+			return -1;
+		}
+		if(object.islandStamp != stamp){
+			if(bodyCount == parent.length){
+				allocateBodies(bodyCount*2);
+			}
+			object.islandStamp = stamp;
+			object.islandIndex = bodyCount;
+			parent[bodyCount] = bodyCount;
+			bodyCount++;
+		}
+		return object.islandIndex;
+	}
+	private int find(int body){
+		while(parent[body] != body){
+			//path halving
+			parent[body] = parent[parent[body]];
+			body = parent[body];
+		}
+		return body;
+	}
+	private void union(int a, int b){
+		a = find(a);
+		b = find(b);
+		//the lower index becomes the root so the result does not depend on the order of the unions
+		if(a < b){
+			parent[b] = a;
+		}
+		else if(b < a){
+			parent[a] = b;
+		}
+	}
+	/**
+	 * assigns the island of a contact the first time one of its contacts is seen
+	 */
+	private int island(int contact){
+		final int body = contactBody[contact];
+		if(body < 0){
+			//no moving object, the contact is an island of its own
+			contactBody[contact] = -1 - islandCount;
+			islandStart[islandCount + 1] = 0;
+			return islandCount++;
+		}
+		final int root = find(body);
+		if(bodyIsland[root] < 0){
+			bodyIsland[root] = islandCount;
+			islandStart[islandCount + 1] = 0;
+			islandCount++;
+		}
+		return bodyIsland[root];
+	}
+	private int contactIsland(int contact){
+		final int body = contactBody[contact];
+		if(body < 0){
+			return -1 - body;
+		}
+		return bodyIsland[find(body)];
+	}
+	private void allocateContacts(int size){
+		PhysicsObject[] newFirst = new PhysicsObject[size];
+		PhysicsObject[] newSecond = new PhysicsObject[size];
+		boolean[] newBegan = new boolean[size];
+		boolean[] newResolved = new boolean[size];
+		int[] newBody = new int[size];
+		double[] newImpact = new double[size];
+		int[] newEntry = new int[size];
+		if(first != null){
+			System.arraycopy(first, 0, newFirst, 0, contactCount);
+			System.arraycopy(second, 0, newSecond, 0, contactCount);
+			System.arraycopy(began, 0, newBegan, 0, contactCount);
+			System.arraycopy(resolved, 0, newResolved, 0, contactCount);
+			System.arraycopy(contactBody, 0, newBody, 0, contactCount);
+			System.arraycopy(impact, 0, newImpact, 0, contactCount);
+			System.arraycopy(entry, 0, newEntry, 0, contactCount);
+		}
+		first = newFirst;
+		second = newSecond;
+		began = newBegan;
+		resolved = newResolved;
+		contactBody = newBody;
+		impact = newImpact;
+		entry = newEntry;
+		order = new int[size];
+		islandStart = new int[size + 1];
+	}
+	private void allocateBodies(int size){
+		int[] newParent = new int[size];
+		if(parent != null){
+			System.arraycopy(parent, 0, newParent, 0, bodyCount);
+		}
+		parent = newParent;
+		bodyIsland = new int[size];
+	}
+}
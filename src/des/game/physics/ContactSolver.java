@@ -0,0 +1,250 @@
+/*******************************************************************************
+ * Copyright 2011 Douglas Siemon
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package des.game.physics;
+
+import des.game.base.GLPoint;
+import des.game.boundary.Manifold;
+
+/**
+ * Resolves the overlapping contacts of an island together with sequential impulses. Each contact 
+ * 	gets an impulse along its normal that can only push, and the impulses are refined over several 
+ * 	passes so contacts sharing an object agree with each other. Each pass only corrects what the 
+ * 	last one left, so a stack settles instead of each pair bouncing on its own.
+ * 
+ * The impulse a pair settles on is kept in the pair cache and applied again at the start of the 
+ * 	next frame, so a resting contact starts from the answer of the last frame and needs few passes.
+ * 
+ * Data is stored per contact of the frame, so islands can be solved on different threads.
+ */
+public class ContactSolver {
+	//overlap left alone so resting contacts stay touching and keep their cached impulse
+	public static final double SLOP = .05;
+	//part of the remaining overlap removed each frame
+	public static final double POSITION_CORRECTION = .4;
+	public static final double DEFAULT_RESTITUTION_THRESHOLD = 10;
+	
+	private double[] normalX;
+	private double[] normalY;
+	private double[] depth;
+	private double[] inverseMassA;
+	private double[] inverseMassB;
+	//mass the pair has along its normal
+	private double[] normalMass;
+	//relative velocity along the normal the pair should end with
+	private double[] target;
+	private double[] impulse;
+	private boolean[] active;
+	//locations of both objects when the contact was prepared, the depth changes as they are moved apart
+	private double[] startAX;
+	private double[] startAY;
+	private double[] startBX;
+	private double[] startBY;
+	
+	private double restitution;
+	private double restitutionThreshold;
+	
+	public ContactSolver(int capacity){
+		allocate(capacity < 1 ? 1 : capacity);
+		restitution = 1;
+		restitutionThreshold = DEFAULT_RESTITUTION_THRESHOLD;
+	}
+	/**
+	 * @param restitution part of the speed the objects hit each other with that they bounce back with
+	 * @param threshold contacts closing slower than this do not bounce, so resting contacts settle
+	 */
+	public void setRestitution(double restitution, double threshold){
+		this.restitution = restitution;
+		this.restitutionThreshold = threshold;
+	}
+	public double getRestitution(){
+		return restitution;
+	}
+	public double getRestitutionThreshold(){
+		return restitutionThreshold;
+	}
+	/**
+	 * makes room for the contacts of a frame, called before the islands are solved
+	 */
+	public void ensureCapacity(int count){
+		if(count > impulse.length){
+			allocate(Math.max(count, impulse.length*2));
+		}
+	}
+	/**
+	 * sets up an overlapping contact, every contact of an island is prepared before warmStart
+	 * @param manifold contact of a and b
+	 * @param cached impulse from the pair cache
+	 */
+	public void prepare(int contact, PhysicsObject a, PhysicsObject b, Manifold manifold, double cached){
+		final VectorObject av = a.getVector();
+		final VectorObject bv = b.getVector();
+		final double inverseA = av != null ? 1/av.getMass() : 0;
+		final double inverseB = bv != null ? 1/bv.getMass() : 0;
+		if(inverseA + inverseB == 0){
+			active[contact] = false;
+			return;
+		}
+		active[contact] = true;
+		normalX[contact] = manifold.normalX;
+		normalY[contact] = manifold.normalY;
+		depth[contact] = manifold.depth;
+		inverseMassA[contact] = inverseA;
+		inverseMassB[contact] = inverseB;
+		normalMass[contact] = 1/(inverseA + inverseB);
+		final GLPoint locationA = a.getBoundary().getLocation();
+		final GLPoint locationB = b.getBoundary().getLocation();
+		startAX[contact] = locationA.getX();
+		startAY[contact] = locationA.getY();
+		startBX[contact] = locationB.getX();
+		startBY[contact] = locationB.getY();
+		
+		final double closing = relativeVelocity(contact, av, bv);
+		target[contact] = closing < -restitutionThreshold ? -restitution*closing : 0;
+		
+		impulse[contact] = cached;
+	}
+	/**
+	 * applies the impulses the prepared contacts of an island ended with last frame
+	 * @param islands the contacts of the frame
+	 * @param start first position of the island in islands
+	 * @param end position after the last contact of the island
+	 */
+	public void warmStart(ContactIslands islands, int start, int end){
+		for(int i = start; i < end; i++){
+			final int contact = islands.getContact(i);
+			if(active[contact]){
+				apply(contact, islands.getFirst(contact).getVector(), islands.getSecond(contact).getVector(), impulse[contact]);
+			}
+		}
+	}
+	/**
+	 * leaves a contact out of the solver, for pairs that are not overlapping
+	 */
+	public void skip(int contact){
+		active[contact] = false;
+	}
+	/**
+	 * refines the impulses of the prepared contacts of an island
+	 * @see #warmStart(ContactIslands, int, int)
+	 */
+	public void solveVelocities(ContactIslands islands, int start, int end, int iterations){
+		for(int k = 0; k < iterations; k++){
+			for(int i = start; i < end; i++){
+				final int contact = islands.getContact(i);
+				if(!active[contact]){
+					continue;
+				}
+				final VectorObject av = islands.getFirst(contact).getVector();
+				final VectorObject bv = islands.getSecond(contact).getVector();
+				double change = normalMass[contact]*(target[contact] - relativeVelocity(contact, av, bv));
+				//the total impulse can only push the pair apart
+				final double total = Math.max(impulse[contact] + change, 0);
+				change = total - impulse[contact];
+				impulse[contact] = total;
+				apply(contact, av, bv, change);
+			}
+		}
+	}
+	/**
+	 * moves the objects of an island apart by most of their overlap, the heavier object moving less. 
+	 * 		moving one pair apart pushes its objects into their other contacts, so it takes several passes
+	 */
+	public void correctPositions(ContactIslands islands, int start, int end, int iterations){
+		for(int k = 0; k < iterations; k++){
+			for(int i = start; i < end; i++){
+				final int contact = islands.getContact(i);
+				if(!active[contact]){
+					continue;
+				}
+				final GLPoint locationA = islands.getFirst(contact).getBoundary().getLocation();
+				final GLPoint locationB = islands.getSecond(contact).getBoundary().getLocation();
+				//how far the objects have moved apart along the normal since the contact was prepared
+				final double moved = (locationA.getX() - startAX[contact] - locationB.getX() + startBX[contact])*normalX[contact] + 
+						(locationA.getY() - startAY[contact] - locationB.getY() + startBY[contact])*normalY[contact];
+				final double overlap = depth[contact] - moved;
+				if(overlap <= SLOP){
+					continue;
+				}
+				final double distance = (overlap - SLOP)*POSITION_CORRECTION*normalMass[contact];
+				translate(locationA, normalX[contact]*distance*inverseMassA[contact], 
+						normalY[contact]*distance*inverseMassA[contact]);
+				translate(locationB, -normalX[contact]*distance*inverseMassB[contact], 
+						-normalY[contact]*distance*inverseMassB[contact]);
+			}
+		}
+	}
+	/**
+	 * @return the total impulse of the contact after solving, 0 if it was not prepared
+	 */
+	public double getImpulse(int contact){
+		return active[contact] ? impulse[contact] : 0;
+	}
+	
+	/**
+	 * velocity of a relative to b along the normal, negative when they are closing
+	 */
+	private double relativeVelocity(int contact, VectorObject av, VectorObject bv){
+		double x = 0;
+		double y = 0;
+		if(av != null){
+			x += av.getVelocityXComponent();
+			y += av.getVelocityYComponent();
+		}
+		if(bv != null){
+			x -= bv.getVelocityXComponent();
+			y -= bv.getVelocityYComponent();
+		}
+		return x*normalX[contact] + y*normalY[contact];
+	}
+	private void apply(int contact, VectorObject av, VectorObject bv, double amount){
+		if(amount == 0){
+			return;
+		}
+		final double x = normalX[contact]*amount;
+		final double y = normalY[contact]*amount;
+		//impulses go straight to the velocity so a resting object keeps counting towards sleep
+		if(av != null){
+			av.velocity.setXComponent(av.getVelocityXComponent() + x*inverseMassA[contact]);
+			av.velocity.setYComponent(av.getVelocityYComponent() + y*inverseMassA[contact]);
+		}
+		if(bv != null){
+			bv.velocity.setXComponent(bv.getVelocityXComponent() - x*inverseMassB[contact]);
+			bv.velocity.setYComponent(bv.getVelocityYComponent() - y*inverseMassB[contact]);
+		}
+	}
+	private static void translate(GLPoint location, double dx, double dy){
+		if(dx == 0 && dy == 0){
+			return;
+		}
+		location.setX(location.getX() + dx);
+		location.setY(location.getY() + dy);
+	}
+	private void allocate(int size){
+		normalX = new double[size];
+		normalY = new double[size];
+		depth = new double[size];
+		inverseMassA = new double[size];
+		inverseMassB = new double[size];
+		normalMass = new double[size];
+		target = new double[size];
+		impulse = new double[size];
+		active = new boolean[size];
+		startAX = new double[size];
+		startAY = new double[size];
+		startBX = new double[size];
+		startBY = new double[size];
+	}
+}
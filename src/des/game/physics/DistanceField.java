@@ -0,0 +1,269 @@
+/*******************************************************************************
+ * Copyright 2011 Douglas Siemon
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package des.game.physics;
+
+import des.game.base.FixedSizeArray;
+import des.game.base.GLPoint;
+import des.game.boundary.Boundary;
+import des.game.boundary.Circle;
+import des.game.boundary.Pair;
+
+/**
+ * Signed distance from the walls of a level, baked once into a grid of floats when the level 
+ * 	loads. Distance, normal and penetration lookups then read four cells instead of testing the 
+ * 	boundaries, so bullets, particles and clearance checks against the level cost almost nothing.
+ * 
+ * The walls are the solid tiles of a TileCollision and the objects without a vector. Objects 
+ * 	that move, or are added, after baking are not in the field. The distance is negative inside a 
+ * 	wall and is only as accurate as the cell size, lookups outside the grid read its edge.
+ */
+public class DistanceField {
+	private double originX;
+	private double originY;
+	private double cellSize;
+	private int columns;
+	private int rows;
+	//distance at the center of each cell, row by row from the bottom left
+	private float[] distances;
+	private int mask;
+	
+	/**
+	 * @param originX left edge of the grid
+	 * @param originY bottom edge of the grid
+	 * @param width width covered by the grid
+	 * @param height height covered by the grid
+	 * @param cellSize width and height of a cell
+	 */
+	public DistanceField(double originX, double originY, double width, double height, double cellSize){
+		this.originX = originX;
+		this.originY = originY;
+		this.cellSize = cellSize < PhysicsEngine.MIN_TILE_SIZE ? PhysicsEngine.MIN_TILE_SIZE : cellSize;
+		columns = Math.max(1, (int)Math.ceil(width/this.cellSize));
+		rows = Math.max(1, (int)Math.ceil(height/this.cellSize));
+		distances = new float[columns*rows];
+		mask = ~BoundarySet.categoryOf(PhysicsObject.PASSIVE_TYPE);
+	}
+	
+	public double getCellSize() {
+		return cellSize;
+	}
+	public int getColumns() {
+		return columns;
+	}
+	public int getRows() {
+		return rows;
+	}
+	/**
+	 * @return bits of the layers of the objects baked into the field
+	 */
+	public int getMask() {
+		return mask;
+	}
+	/**
+	 * @param mask bits of the layers of the objects baked into the field, every layer but the passive one by default
+	 */
+	public void setMask(int mask) {
+		this.mask = mask;
+	}
+	
+	/**
+	 * fills the grid with the distance from each cell to the nearest wall
+	 * @param tiles solid tiles of the level, may be null
+	 * @param objects objects to bake, the ones with a vector are skipped
+	 */
+	public void bake(TileCollision tiles, FixedSizeArray<PhysicsObject> objects){
+		final int size = columns*rows;
+		final boolean[] inside = new boolean[size];
+		
+		//a cell is inside a wall if its center is
+		if(tiles != null){
+			for(int row = 0; row < rows; row++){
+				for(int column = 0; column < columns; column++){
+					inside[row*columns + column] = tiles.isSolid(centerX(column), centerY(row));
+				}
+			}
+		}
+		final GLPoint point = new GLPoint();
+		final int count = objects == null ? 0 : objects.getCount();
+		for(int i = 0; i < count; i++){
+			final PhysicsObject object = objects.get(i);
+			final Boundary boundary = object.getBoundary();
+			if(object.getVector() != null || boundary == null || (object.category & mask) == 0){
+				continue;
+			}
+			//only the cells under the box of the boundary
+			boundary.updateBox();
+			final int startColumn = Math.max(0, cell(boundary.getXProjection().getStart() - originX));
+			final int endColumn = Math.min(columns - 1, cell(boundary.getXProjection().getEnd() - originX));
+			final int startRow = Math.max(0, cell(boundary.getYProjection().getStart() - originY));
+			final int endRow = Math.min(rows - 1, cell(boundary.getYProjection().getEnd() - originY));
+			for(int row = startRow; row <= endRow; row++){
+				for(int column = startColumn; column <= endColumn; column++){
+					point.setX(centerX(column));
+					point.setY(centerY(row));
+					if(!inside[row*columns + column] && boundary.collision(point)){
+						inside[row*columns + column] = true;
+					}
+				}
+			}
+		}
+		
+		//squared distances to the nearest cell inside a wall, and to the nearest cell outside
+		//further than any two cells are apart, small enough to add to without losing the fraction
+		final float far = (float)columns*columns + (float)rows*rows + 1;
+		final float[] outsideSquared = new float[size];
+		final float[] insideSquared = new float[size];
+		for(int i = 0; i < size; i++){
+			outsideSquared[i] = inside[i] ? 0 : far;
+			insideSquared[i] = inside[i] ? far : 0;
+		}
+		transform(outsideSquared);
+		transform(insideSquared);
+		
+		//the surface is half a cell from the center of the cells next to it
+		for(int i = 0; i < size; i++){
+			if(inside[i]){
+				distances[i] = (float)(-(Math.sqrt(insideSquared[i]) - .5)*cellSize);
+			}
+			else{
+				distances[i] = (float)((Math.sqrt(outsideSquared[i]) - .5)*cellSize);
+			}
+		}
+	}
+	
+	/**
+	 * @return the distance from the point to the nearest wall, negative inside a wall
+	 */
+	public double distance(double x, double y){
+		//cell centers are half a cell in from the corner of the cell
+		double fx = (x - originX)/cellSize - .5;
+		double fy = (y - originY)/cellSize - .5;
+		fx = fx < 0 ? 0 : fx > columns - 1 ? columns - 1 : fx;
+		fy = fy < 0 ? 0 : fy > rows - 1 ? rows - 1 : fy;
+		final int column = Math.min((int)fx, columns - 2 < 0 ? 0 : columns - 2);
+		final int row = Math.min((int)fy, rows - 2 < 0 ? 0 : rows - 2);
+		final int nextColumn = column + 1 < columns ? column + 1 : column;
+		final int nextRow = row + 1 < rows ? row + 1 : row;
+		final double tx = fx - column;
+		final double ty = fy - row;
+		
+		final double bottom = distances[row*columns + column]*(1 - tx) + distances[row*columns + nextColumn]*tx;
+		final double top = distances[nextRow*columns + column]*(1 - tx) + distances[nextRow*columns + nextColumn]*tx;
+		return bottom*(1 - ty) + top*ty;
+	}
+	/**
+	 * sets normal to the direction away from the nearest wall
+	 * @return normal
+	 */
+	public Pair normal(double x, double y, Pair normal){
+		final double gx = distance(x + cellSize, y) - distance(x - cellSize, y);
+		final double gy = distance(x, y + cellSize) - distance(x, y - cellSize);
+		normal.setDirection(gx, gy);
+		return normal;
+	}
+	/**
+	 * @param normal set to the direction to push the circle out, when it overlaps a wall
+	 * @return how far a circle at (x,y) reaches into the walls, 0 if it does not touch them
+	 */
+	public double penetration(double x, double y, double radius, Pair normal){
+		final double depth = radius - distance(x, y);
+		if(depth <= 0){
+			return 0;
+		}
+		normal(x, y, normal);
+		return depth;
+	}
+	/**
+	 * @see #penetration(double, double, double, Pair)
+	 */
+	public double penetration(Circle circle, Pair normal){
+		return penetration(circle.getCenter().getX(), circle.getCenter().getY(), circle.getRadius(), normal);
+	}
+	
+	private double centerX(int column){
+		return originX + (column + .5)*cellSize;
+	}
+	private double centerY(int row){
+		return originY + (row + .5)*cellSize;
+	}
+	private int cell(double offset){
+		return (int)Math.floor(offset/cellSize);
+	}
+	/**
+	 * replaces each squared distance with the smallest squared distance to any cell plus its own 
+	 * 	value, one pass along the rows and one along the columns
+	 */
+	private void transform(float[] grid){
+		final int length = Math.max(columns, rows);
+		final float[] line = new float[length];
+		final float[] result = new float[length];
+		final int[] parabolas = new int[length];
+		final float[] bounds = new float[length + 1];
+		
+		for(int row = 0; row < rows; row++){
+			for(int column = 0; column < columns; column++){
+				line[column] = grid[row*columns + column];
+			}
+			transform(line, columns, result, parabolas, bounds);
+			for(int column = 0; column < columns; column++){
+				grid[row*columns + column] = result[column];
+			}
+		}
+		for(int column = 0; column < columns; column++){
+			for(int row = 0; row < rows; row++){
+				line[row] = grid[row*columns + column];
+			}
+			transform(line, rows, result, parabolas, bounds);
+			for(int row = 0; row < rows; row++){
+				grid[row*columns + column] = result[row];
+			}
+		}
+	}
+	/**
+	 * one dimensional distance transform, the lower envelope of a parabola rooted at each cell
+	 */
+	private static void transform(float[] line, int count, float[] result, int[] parabolas, float[] bounds){
+		int last = 0;
+		parabolas[0] = 0;
+		bounds[0] = Float.NEGATIVE_INFINITY;
+		bounds[1] = Float.POSITIVE_INFINITY;
+		for(int q = 1; q < count; q++){
+			float s = intersection(line, q, parabolas[last]);
+			while(s <= bounds[last]){
+				last--;
+				s = intersection(line, q, parabolas[last]);
+			}
+			last++;
+			parabolas[last] = q;
+			bounds[last] = s;
+			bounds[last + 1] = Float.POSITIVE_INFINITY;
+		}
+		int k = 0;
+		for(int q = 0; q < count; q++){
+			while(bounds[k + 1] < q){
+				k++;
+			}
+			final int p = parabolas[k];
+			result[q] = (q - p)*(q - p) + line[p];
+		}
+	}
+	/**
+	 * @return where the parabolas rooted at cells q and p cross
+	 */
+	private static float intersection(float[] line, int q, int p){
+		return ((line[q] + q*q) - (line[p] + p*p))/(2f*(q - p));
+	}
+}
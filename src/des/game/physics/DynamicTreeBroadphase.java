@@ -0,0 +1,504 @@
+/*******************************************************************************
+ * Copyright 2011 Douglas Siemon
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package des.game.physics;
+
+import des.game.base.FixedSizeArray;
+import des.game.boundary.Boundary;
+
+/**
+ * A broadphase that keeps the boundaries in a dynamic bounding volume tree. each leaf stores an 
+ * 	enlarged(fat) copy of its boundary's bounding box, and the leaf is only removed and reinserted 
+ * 	when the boundary leaves its fat box. objects that are idle or moving slowly do not change 
+ * 	the tree, which keeps large worlds cheap to update.
+ * 
+ * The tree is kept balanced with the rotations used by Box2D's b2DynamicTree. nodes are stored in 
+ * 	parallel arrays and recycled through a free list, so the tree does not allocate in steady state.
+ */
+public class DynamicTreeBroadphase extends Broadphase{
+	public static final double DEFAULT_MARGIN = 4;
+	private static final int NULL_NODE = -1;
+	
+	private final double margin;
+	private int root;
+	//node storage
+	private double[] minX;
+	private double[] minY;
+	private double[] maxX;
+	private double[] maxY;
+	private int[] parent;
+	private int[] child1;
+	private int[] child2;
+	private int[] height;
+	private int[] stamp;
+	private PhysicsObject[] leafObject;
+	private int nodeCount;
+	private int freeList;
+	//leaves currently in the tree, so leaves whose object left the set can be found
+	private int[] leaves;
+	private int leafCount;
+	private int frame;
+	//traversal stack
+	private int[] stack;
+	
+	public DynamicTreeBroadphase(){
+		this(DEFAULT_MARGIN, 64);
+	}
+	/**
+	 * @param margin distance the fat boxes extend past the boundaries' boxes in each direction
+	 * @param capacity expected number of objects
+	 */
+	public DynamicTreeBroadphase(double margin, int capacity){
+		if(margin < 0){
+			margin = 0;
+		}
+		if(capacity < 1){
+			capacity = 1;
+		}
+		this.margin = margin;
+		root = NULL_NODE;
+		nodeCount = 0;
+		freeList = NULL_NODE;
+		leafCount = 0;
+		frame = 0;
+		allocateNodes(capacity*2);
+		leaves = new int[capacity];
+		stack = new int[64];
+	}
+	@Override
+	public Broadphase newInstance() {
+		return new DynamicTreeBroadphase(margin, 1);
+	}
+	
+	public double getMargin(){
+		return margin;
+	}
+	/**
+	 * the height of the tree, for debugging
+	 */
+	public int getHeight(){
+		return root == NULL_NODE ? 0 : height[root];
+	}
+	
+	@Override
+	public void update(Object[] objects, int count) {
+		frame++;
+		for(int i = 0; i < count; i++){
+			final PhysicsObject object = (PhysicsObject)objects[i];
+			final Boundary boundary = object.getBoundary();
+			final double x0 = boundary.getXProjection().getStart();
+			final double x1 = boundary.getXProjection().getEnd();
+			final double y0 = boundary.getYProjection().getStart();
+			final double y1 = boundary.getYProjection().getEnd();
+			
+			int leaf = object.proxyId;
+			if(leaf >= 0 && leaf < nodeCount && leafObject[leaf] == object){
+				//only reinsert when the boundary has left its fat box
+				if(x0 < minX[leaf] || x1 > maxX[leaf] || y0 < minY[leaf] || y1 > maxY[leaf]){
+					removeLeaf(leaf);
+					setFatBox(leaf, x0, y0, x1, y1);
+					insertLeaf(leaf);
+				}
+			}
+			else{
+				leaf = allocateNode();
+				leafObject[leaf] = object;
+				setFatBox(leaf, x0, y0, x1, y1);
+				insertLeaf(leaf);
+				object.proxyId = leaf;
+				if(leafCount == leaves.length){
+					int[] temp = new int[leafCount*2];
+					System.arraycopy(leaves, 0, temp, 0, leafCount);
+					leaves = temp;
+				}
+				leaves[leafCount++] = leaf;
+			}
+			stamp[leaf] = frame;
+		}
+		//remove the leaves whose objects are no longer in the set
+		for(int i = 0; i < leafCount; i++){
+			final int leaf = leaves[i];
+			if(stamp[leaf] != frame){
+				final PhysicsObject object = leafObject[leaf];
+				if(object.proxyId == leaf){
+					object.proxyId = -1;
+				}
+				removeLeaf(leaf);
+				freeNode(leaf);
+				leaves[i] = leaves[--leafCount];
+				i--;
+			}
+		}
+	}
+
+	@Override
+	public void findPairs(PairBuffer pairs) {
+		for(int i = 0; i < leafCount; i++){
+			final int leaf = leaves[i];
+			final PhysicsObject a = leafObject[leaf];
+			final Boundary ab = a.getBoundary();
+			final double x0 = ab.getXProjection().getStart();
+			final double x1 = ab.getXProjection().getEnd();
+			final double y0 = ab.getYProjection().getStart();
+			final double y1 = ab.getYProjection().getEnd();
+			
+			int top = 0;
+			stack[top++] = root;
+			while(top > 0){
+				final int node = stack[--top];
+				if(node == NULL_NODE || x0 > maxX[node] || x1 < minX[node] || y0 > maxY[node] || y1 < minY[node]){
+					continue;
+				}
+				if(child1[node] == NULL_NODE){
+					//each pair is reported by the leaf with the lower index
+					if(node > leaf){
+						final Boundary bb = leafObject[node].getBoundary();
+						if(x0 <= bb.getXProjection().getEnd() && bb.getXProjection().getStart() <= x1 &&
+						   y0 <= bb.getYProjection().getEnd() && bb.getYProjection().getStart() <= y1){
+							pairs.add(a, leafObject[node]);
+						}
+					}
+				}
+				else{
+					if(top + 2 > stack.length){
+						int[] temp = new int[stack.length*2];
+						System.arraycopy(stack, 0, temp, 0, top);
+						stack = temp;
+					}
+					stack[top++] = child1[node];
+					stack[top++] = child2[node];
+				}
+			}
+		}
+	}
+	
+	@Override
+	public void query(double x0, double y0, double x1, double y1, FixedSizeArray<PhysicsObject> result) {
+		int top = 0;
+		stack[top++] = root;
+		while(top > 0 && result.getCount() < result.getCapacity()){
+			final int node = stack[--top];
+			if(node == NULL_NODE || x0 > maxX[node] || x1 < minX[node] || y0 > maxY[node] || y1 < minY[node]){
+				continue;
+			}
+			if(child1[node] == NULL_NODE){
+				final Boundary b = leafObject[node].getBoundary();
+				if(x0 <= b.getXProjection().getEnd() && b.getXProjection().getStart() <= x1 &&
+				   y0 <= b.getYProjection().getEnd() && b.getYProjection().getStart() <= y1){
+					result.add(leafObject[node]);
+				}
+			}
+			else{
+				if(top + 2 > stack.length){
+					int[] temp = new int[stack.length*2];
+					System.arraycopy(stack, 0, temp, 0, top);
+					stack = temp;
+				}
+				stack[top++] = child1[node];
+				stack[top++] = child2[node];
+			}
+		}
+	}
+	
+	@Override
+	public void queryRay(double startX, double startY, double endX, double endY, FixedSizeArray<PhysicsObject> result) {
+		int top = 0;
+		stack[top++] = root;
+		while(top > 0 && result.getCount() < result.getCapacity()){
+			final int node = stack[--top];
+			if(node == NULL_NODE || !segmentOverlap(startX, startY, endX, endY, minX[node], minY[node], maxX[node], maxY[node])){
+				continue;
+			}
+			if(child1[node] == NULL_NODE){
+				final Boundary b = leafObject[node].getBoundary();
+				if(segmentOverlap(startX, startY, endX, endY, b.getXProjection().getStart(), b.getYProjection().getStart(), 
+						b.getXProjection().getEnd(), b.getYProjection().getEnd())){
+					result.add(leafObject[node]);
+				}
+			}
+			else{
+				if(top + 2 > stack.length){
+					int[] temp = new int[stack.length*2];
+					System.arraycopy(stack, 0, temp, 0, top);
+					stack = temp;
+				}
+				stack[top++] = child1[node];
+				stack[top++] = child2[node];
+			}
+		}
+	}
+	
+	private void setFatBox(int node, double x0, double y0, double x1, double y1){
+		minX[node] = x0 - margin;
+		minY[node] = y0 - margin;
+		maxX[node] = x1 + margin;
+		maxY[node] = y1 + margin;
+	}
+	private double perimeter(int node){
+		return 2*((maxX[node] - minX[node]) + (maxY[node] - minY[node]));
+	}
+	private double unionPerimeter(int a, int b){
+		final double w = Math.max(maxX[a], maxX[b]) - Math.min(minX[a], minX[b]);
+		final double h = Math.max(maxY[a], maxY[b]) - Math.min(minY[a], minY[b]);
+		return 2*(w + h);
+	}
+	private void setUnion(int node, int a, int b){
+		minX[node] = Math.min(minX[a], minX[b]);
+		minY[node] = Math.min(minY[a], minY[b]);
+		maxX[node] = Math.max(maxX[a], maxX[b]);
+		maxY[node] = Math.max(maxY[a], maxY[b]);
+	}
+	
+	private void insertLeaf(int leaf){
+		if(root == NULL_NODE){
+			root = leaf;
+			parent[root] = NULL_NODE;
+			return;
+		}
+		//find the best sibling by the perimeter cost of the boxes that would grow
+		int index = root;
+		while(child1[index] != NULL_NODE){
+			final int c1 = child1[index];
+			final int c2 = child2[index];
+			
+			final double area = perimeter(index);
+			final double combinedArea = unionPerimeter(index, leaf);
+			final double cost = 2*combinedArea;
+			final double inheritanceCost = 2*(combinedArea - area);
+			
+			double cost1 = unionPerimeter(leaf, c1) + inheritanceCost;
+			if(child1[c1] != NULL_NODE){
+				cost1 -= perimeter(c1);
+			}
+			double cost2 = unionPerimeter(leaf, c2) + inheritanceCost;
+			if(child1[c2] != NULL_NODE){
+				cost2 -= perimeter(c2);
+			}
+			
+			if(cost < cost1 && cost < cost2){
+				break;
+			}
+			index = cost1 < cost2 ? c1 : c2;
+		}
+		final int sibling = index;
+		
+		//create a new parent for the sibling and the leaf
+		final int oldParent = parent[sibling];
+		final int newParent = allocateNode();
+		parent[newParent] = oldParent;
+		leafObject[newParent] = null;
+		setUnion(newParent, leaf, sibling);
+		height[newParent] = height[sibling] + 1;
+		child1[newParent] = sibling;
+		child2[newParent] = leaf;
+		parent[sibling] = newParent;
+		parent[leaf] = newParent;
+		if(oldParent != NULL_NODE){
+			if(child1[oldParent] == sibling){
+				child1[oldParent] = newParent;
+			}
+			else{
+				child2[oldParent] = newParent;
+			}
+		}
+		else{
+			root = newParent;
+		}
+		
+		refit(parent[leaf]);
+	}
+	private void removeLeaf(int leaf){
+		if(leaf == root){
+			root = NULL_NODE;
+			return;
+		}
+		final int oldParent = parent[leaf];
+		final int grandParent = parent[oldParent];
+		final int sibling = child1[oldParent] == leaf ? child2[oldParent] : child1[oldParent];
+		
+		if(grandParent != NULL_NODE){
+			//connect the sibling to the grand parent and destroy the parent
+			if(child1[grandParent] == oldParent){
+				child1[grandParent] = sibling;
+			}
+			else{
+				child2[grandParent] = sibling;
+			}
+			parent[sibling] = grandParent;
+			freeNode(oldParent);
+			refit(grandParent);
+		}
+		else{
+			root = sibling;
+			parent[sibling] = NULL_NODE;
+			freeNode(oldParent);
+		}
+	}
+	/**
+	 * walks from index to the root, balancing and fixing the boxes and heights
+	 */
+	private void refit(int index){
+		while(index != NULL_NODE){
+			index = balance(index);
+			final int c1 = child1[index];
+			final int c2 = child2[index];
+			height[index] = 1 + Math.max(height[c1], height[c2]);
+			setUnion(index, c1, c2);
+			index = parent[index];
+		}
+	}
+	/**
+	 * performs a left or right rotation if node a is imbalanced
+	 * @return the new root of the subtree
+	 */
+	private int balance(int a){
+		if(child1[a] == NULL_NODE || height[a] < 2){
+			return a;
+		}
+		final int b = child1[a];
+		final int c = child2[a];
+		final int balance = height[c] - height[b];
+		
+		if(balance > 1){
+			//rotate c up
+			final int f = child1[c];
+			final int g = child2[c];
+			child1[c] = a;
+			parent[c] = parent[a];
+			parent[a] = c;
+			replaceChild(parent[c], a, c);
+			
+			if(height[f] > height[g]){
+				child2[c] = f;
+				child2[a] = g;
+				parent[g] = a;
+				setUnion(a, b, g);
+				setUnion(c, a, f);
+				height[a] = 1 + Math.max(height[b], height[g]);
+				height[c] = 1 + Math.max(height[a], height[f]);
+			}
+			else{
+				child2[c] = g;
+				child2[a] = f;
+				parent[f] = a;
+				setUnion(a, b, f);
+				setUnion(c, a, g);
+				height[a] = 1 + Math.max(height[b], height[f]);
+				height[c] = 1 + Math.max(height[a], height[g]);
+			}
+			return c;
+		}
+		if(balance < -1){
+			//rotate b up
+			final int d = child1[b];
+			final int e = child2[b];
+			child1[b] = a;
+			parent[b] = parent[a];
+			parent[a] = b;
+			replaceChild(parent[b], a, b);
+			
+			if(height[d] > height[e]){
+				child2[b] = d;
+				child1[a] = e;
+				parent[e] = a;
+				setUnion(a, c, e);
+				setUnion(b, a, d);
+				height[a] = 1 + Math.max(height[c], height[e]);
+				height[b] = 1 + Math.max(height[a], height[d]);
+			}
+			else{
+				child2[b] = e;
+				child1[a] = d;
+				parent[d] = a;
+				setUnion(a, c, d);
+				setUnion(b, a, e);
+				height[a] = 1 + Math.max(height[c], height[d]);
+				height[b] = 1 + Math.max(height[a], height[e]);
+			}
+			return b;
+		}
+		return a;
+	}
+	private void replaceChild(int node, int oldChild, int newChild){
+		if(node == NULL_NODE){
+			root = newChild;
+		}
+		else if(child1[node] == oldChild){
+			child1[node] = newChild;
+		}
+		else{
+			child2[node] = newChild;
+		}
+	}
+	
+	private int allocateNode(){
+		if(freeList == NULL_NODE){
+			if(nodeCount == parent.length){
+				allocateNodes(nodeCount*2);
+			}
+			freeList = nodeCount;
+			parent[nodeCount] = NULL_NODE;
+			nodeCount++;
+		}
+		final int node = freeList;
+		freeList = parent[node];
+		parent[node] = NULL_NODE;
+		child1[node] = NULL_NODE;
+		child2[node] = NULL_NODE;
+		height[node] = 0;
+		stamp[node] = 0;
+		leafObject[node] = null;
+		return node;
+	}
+	private void freeNode(int node){
+		parent[node] = freeList;
+		child1[node] = NULL_NODE;
+		child2[node] = NULL_NODE;
+		height[node] = -1;
+		leafObject[node] = null;
+		freeList = node;
+	}
+	private void allocateNodes(int size){
+		final int count = nodeCount;
+		minX = grow(minX, size, count);
+		minY = grow(minY, size, count);
+		maxX = grow(maxX, size, count);
+		maxY = grow(maxY, size, count);
+		parent = grow(parent, size, count);
+		child1 = grow(child1, size, count);
+		child2 = grow(child2, size, count);
+		height = grow(height, size, count);
+		stamp = grow(stamp, size, count);
+		PhysicsObject[] objects = new PhysicsObject[size];
+		if(leafObject != null){
+			System.arraycopy(leafObject, 0, objects, 0, count);
+		}
+		leafObject = objects;
+	}
+	private static double[] grow(double[] array, int size, int count){
+		double[] temp = new double[size];
+		if(array != null){
+			System.arraycopy(array, 0, temp, 0, count);
+		}
+		return temp;
+	}
+	private static int[] grow(int[] array, int size, int count){
+		int[] temp = new int[size];
+		if(array != null){
+			System.arraycopy(array, 0, temp, 0, count);
+		}
+		return temp;
+	}
+}
@@ -23,6 +23,8 @@ import des.game.base.FieldComponent;
 
 public class Field extends GameComponent{
 	public Boundary area;
+	//true when the area moved or changed size this frame, only moved fields can wake sleeping objects
+	protected boolean moved;
 	public Field(){
 		super();
 		super.setPhase(GameComponent.ComponentPhases.PHYSICS_FIELD.ordinal());
@@ -0,0 +1,211 @@
+/*******************************************************************************
+ * Copyright 2011 Douglas Siemon
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package des.game.physics;
+
+import des.game.base.FixedSizeArray;
+import des.game.boundary.Boundary;
+
+/**
+ * Uniform grid over the bounding boxes of the field areas. Each cell lists the fields whose box covers
+ * 	it, so finding the fields over a body only looks at the cells the body covers instead of every field 
+ * 	that overlaps it in x. The cells are sized from the fields themselves: no smaller than the average 
+ * 	field and never more than MAX_CELLS across, so large overlapping fields do not fill the whole grid.
+ * 
+ * The grid is only built again when a field moves or the set of fields changes.
+ */
+public class FieldGrid {
+	public static final int MAX_CELLS = 64;
+	
+	private Field[] fields;
+	private int fieldCount;
+	//last query each field was returned by, so a field covering several cells is returned once
+	private int[] stamps;
+	private int stamp;
+	
+	private double originX;
+	private double originY;
+	private double endX;
+	private double endY;
+	private double cellSize;
+	private int columns;
+	private int rows;
+	//cell c holds cellFields[cellStart[c]] to cellFields[cellStart[c+1]-1]
+	private int[] cellStart;
+	private int[] cellFields;
+	
+	public FieldGrid(int capacity){
+		if(capacity < 1){
+			capacity = 1;
+		}
+		fields = new Field[capacity];
+		stamps = new int[capacity];
+		cellStart = new int[2];
+		cellFields = new int[capacity];
+	}
+	/**
+	 * indexes the fields by their current bounding boxes
+	 */
+	public void build(Object[] fieldArray, int count){
+		if(fields.length < count){
+			fields = new Field[count*2];
+			stamps = new int[count*2];
+		}
+		for(int i = 0; i < fieldCount; i++){
+			fields[i] = null;
+		}
+		fieldCount = count;
+		columns = 0;
+		rows = 0;
+		if(count == 0){
+			return;
+		}
+		
+		//bounds of all the fields and the average field size
+		originX = Double.MAX_VALUE;
+		originY = Double.MAX_VALUE;
+		endX = -Double.MAX_VALUE;
+		endY = -Double.MAX_VALUE;
+		double extent = 0;
+		for(int i = 0; i < count; i++){
+			final Field field = (Field)fieldArray[i];
+			fields[i] = field;
+			stamps[i] = 0;
+			final Boundary area = field.getArea();
+			final double minX = area.getXProjection().getStart();
+			final double maxX = area.getXProjection().getEnd();
+			final double minY = area.getYProjection().getStart();
+			final double maxY = area.getYProjection().getEnd();
+			if(minX < originX) originX = minX;
+			if(minY < originY) originY = minY;
+			if(maxX > endX) endX = maxX;
+			if(maxY > endY) endY = maxY;
+			extent += Math.max(maxX - minX, maxY - minY);
+		}
+		stamp = 0;
+		cellSize = extent/count;
+		final double span = Math.max(endX - originX, endY - originY);
+		if(cellSize < span/MAX_CELLS){
+			cellSize = span/MAX_CELLS;
+		}
+		if(cellSize <= 0){
+			cellSize = 1;
+		}
+		columns = Math.min(MAX_CELLS, (int)((endX - originX)/cellSize) + 1);
+		rows = Math.min(MAX_CELLS, (int)((endY - originY)/cellSize) + 1);
+		
+		final int cells = columns*rows;
+		if(cellStart.length < cells + 1){
+			cellStart = new int[cells + 1];
+		}
+		for(int c = 0; c <= cells; c++){
+			cellStart[c] = 0;
+		}
+		//count the fields of each cell, cellStart[c+1] holds the count of cell c for now
+		int total = 0;
+		for(int i = 0; i < count; i++){
+			final Boundary area = fields[i].getArea();
+			final int left = column(area.getXProjection().getStart());
+			final int right = column(area.getXProjection().getEnd());
+			final int bottom = row(area.getYProjection().getStart());
+			final int top = row(area.getYProjection().getEnd());
+			for(int y = bottom; y <= top; y++){
+				for(int x = left; x <= right; x++){
+					cellStart[y*columns + x + 1]++;
+				}
+			}
+			total += (right - left + 1)*(top - bottom + 1);
+		}
+		for(int c = 0; c < cells; c++){
+			cellStart[c + 1] += cellStart[c];
+		}
+		if(cellFields.length < total){
+			cellFields = new int[total*2];
+		}
+		//place the fields, placing moves every start to the start of the next cell
+		for(int i = 0; i < count; i++){
+			final Boundary area = fields[i].getArea();
+			final int left = column(area.getXProjection().getStart());
+			final int right = column(area.getXProjection().getEnd());
+			final int bottom = row(area.getYProjection().getStart());
+			final int top = row(area.getYProjection().getEnd());
+			for(int y = bottom; y <= top; y++){
+				for(int x = left; x <= right; x++){
+					cellFields[cellStart[y*columns + x]++] = i;
+				}
+			}
+		}
+		for(int c = cells; c > 0; c--){
+			cellStart[c] = cellStart[c - 1];
+		}
+		cellStart[0] = 0;
+	}
+	/**
+	 * adds the fields whose bounding boxes overlap the box to result, stopping if result is full
+	 */
+	public void query(double minX, double minY, double maxX, double maxY, FixedSizeArray<Field> result){
+		if(fieldCount == 0 || maxX < originX || minX > endX || maxY < originY || minY > endY){
+			return;
+		}
+		stamp++;
+		if(stamp == Integer.MAX_VALUE){
+			for(int i = 0; i < fieldCount; i++){
+				stamps[i] = 0;
+			}
+			stamp = 1;
+		}
+		final int left = column(minX);
+		final int right = column(maxX);
+		final int bottom = row(minY);
+		final int top = row(maxY);
+		for(int y = bottom; y <= top; y++){
+			for(int x = left; x <= right; x++){
+				final int cell = y*columns + x;
+				final int end = cellStart[cell + 1];
+				for(int k = cellStart[cell]; k < end; k++){
+					final int index = cellFields[k];
+					if(stamps[index] == stamp){
+						continue;
+					}
+					stamps[index] = stamp;
+					final Boundary area = fields[index].getArea();
+					if(area.getXProjection().getStart() <= maxX && area.getXProjection().getEnd() >= minX &&
+							area.getYProjection().getStart() <= maxY && area.getYProjection().getEnd() >= minY){
+						if(result.getCount() == result.getCapacity()){
+							return;
+						}
+						result.add(fields[index]);
+					}
+				}
+			}
+		}
+	}
+	public void clear(){
+		for(int i = 0; i < fieldCount; i++){
+			fields[i] = null;
+		}
+		fieldCount = 0;
+		columns = 0;
+		rows = 0;
+	}
+	private int column(double x){
+		final int column = (int)((x - originX)/cellSize);
+		return column < 0 ? 0 : column >= columns ? columns - 1 : column;
+	}
+	private int row(double y){
+		final int row = (int)((y - originY)/cellSize);
+		return row < 0 ? 0 : row >= rows ? rows - 1 : row;
+	}
+}
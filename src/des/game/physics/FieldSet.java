@@ -17,17 +17,48 @@ package des.game.physics;
 
 
 import des.game.base.BaseObject;
+import des.game.base.FixedSizeArray;
 import des.game.base.ObjectManager;
 
 
 public class FieldSet extends ObjectManager<Field>{
+	//index of the field areas, built again when a field moves or the set changes
+	private FieldGrid grid;
+	private boolean gridDirty;
+	
 	private FieldSet(int size){
 		super(size);
+		grid = new FieldGrid(size);
+		gridDirty = true;
 	}
 	@Override
     public void update(float timeDelta, BaseObject parent) {
         commitUpdates();
     }
+	@Override
+	public void commitUpdates() {
+		if(mPendingAdditions.getCount() > 0 || mPendingRemovals.getCount() > 0){
+			gridDirty = true;
+		}
+		super.commitUpdates();
+	}
+	@Override
+	public void clear() {
+		super.clear();
+		grid.clear();
+		gridDirty = true;
+	}
+	/**
+	 * adds the fields whose bounding boxes overlap the box to result. call updateBoxes first so the
+	 * 	index matches the current field areas.
+	 */
+	public void query(double minX, double minY, double maxX, double maxY, FixedSizeArray<Field> result){
+		if(gridDirty){
+			grid.build(mObjects.getArray(), mObjects.getCount());
+			gridDirty = false;
+		}
+		grid.query(minX, minY, maxX, maxY, result);
+	}
 	/**
 	 * performs an insertion sort on the set. after the physics engine moves the vectors the order of the 
 	 * 	boundaries is assumed to change minimally, so the set should be already be near sorted when this is
@@ -45,13 +76,25 @@ public class FieldSet extends ObjectManager<Field>{
 		}
 	}
 	
-	public void updateBoxes(){
+	/**
+	 * sets the bounding boxes of the field areas that have moved or changed size, and marks those fields as moved.
+	 * @return the number of fields that moved
+	 */
+	public int updateBoxes(){
 		final int count = this.mObjects.getCount();
 		final Object[] fieldArray = this.mObjects.getArray();
+		int moved = 0;
 		for(int i = 0; i < count; i++){
 			final Field field = (Field)fieldArray[i];
-			field.area.setBox();
+			field.moved = field.area.updateBox();
+			if(field.moved){
+				moved++;
+			}
+		}
+		if(moved > 0){
+			gridDirty = true;
 		}
+		return moved;
 	}
 	
 	public static void initialize(int size){
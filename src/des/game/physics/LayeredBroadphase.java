@@ -0,0 +1,171 @@
+/*******************************************************************************
+ * Copyright 2011 Douglas Siemon
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package des.game.physics;
+
+import des.game.base.FixedSizeArray;
+import des.game.boundary.Boundary;
+
+/**
+ * Keeps the objects in a separate broadphase for each collision layer, so layers that do not collide
+ * 	are never paired at all. An object goes in the layer of the lowest bit of its category. Pairs inside
+ * 	a layer come from that layer's broadphase, pairs between two layers that collide come from querying 
+ * 	the larger layer with the objects of the smaller one.
+ */
+public class LayeredBroadphase extends Broadphase{
+	private final Broadphase prototype;
+	//broadphase of each layer, created the first time the layer has an object
+	private final Broadphase[] layers;
+	private final Object[][] members;
+	private final int[] memberCount;
+	//categories and masks of the objects in each layer
+	private final int[] layerCategories;
+	private final int[] layerMasks;
+	//bits of the layers that have objects
+	private int used;
+	private FixedSizeArray<PhysicsObject> hits;
+	
+	/**
+	 * @param prototype broadphase copied for each layer with newInstance, it is not used itself
+	 */
+	public LayeredBroadphase(Broadphase prototype){
+		this.prototype = prototype;
+		layers = new Broadphase[BoundarySet.LAYER_COUNT];
+		members = new Object[BoundarySet.LAYER_COUNT][];
+		memberCount = new int[BoundarySet.LAYER_COUNT];
+		layerCategories = new int[BoundarySet.LAYER_COUNT];
+		layerMasks = new int[BoundarySet.LAYER_COUNT];
+		hits = new FixedSizeArray<PhysicsObject>(64);
+	}
+	@Override
+	public Broadphase newInstance() {
+		return new LayeredBroadphase(prototype.newInstance());
+	}
+	
+	@Override
+	public void update(Object[] objects, int count) {
+		for(int layer = 0; layer < BoundarySet.LAYER_COUNT; layer++){
+			memberCount[layer] = 0;
+			layerCategories[layer] = 0;
+			layerMasks[layer] = 0;
+		}
+		used = 0;
+		for(int i = 0; i < count; i++){
+			final PhysicsObject object = (PhysicsObject)objects[i];
+			//an object without a layer collides with nothing
+			if(object.category == 0){
+				continue;
+			}
+			final int layer = Integer.numberOfTrailingZeros(object.category);
+			if(members[layer] == null){
+				members[layer] = new Object[16];
+				layers[layer] = prototype.newInstance();
+			}
+			else if(memberCount[layer] == members[layer].length){
+				final Object[] temp = new Object[memberCount[layer]*2];
+				System.arraycopy(members[layer], 0, temp, 0, memberCount[layer]);
+				members[layer] = temp;
+			}
+			members[layer][memberCount[layer]++] = object;
+			layerCategories[layer] |= object.category;
+			layerMasks[layer] |= object.mask;
+			used |= 1 << layer;
+		}
+		//empty layers are updated too, so they let go of the objects that left them
+		for(int layer = 0; layer < BoundarySet.LAYER_COUNT; layer++){
+			if(layers[layer] != null){
+				layers[layer].update(members[layer], memberCount[layer]);
+			}
+		}
+	}
+	
+	@Override
+	public void findPairs(PairBuffer pairs) {
+		for(int i = 0; i < BoundarySet.LAYER_COUNT; i++){
+			if((used & (1 << i)) == 0){
+				continue;
+			}
+			if((layerCategories[i] & layerMasks[i]) != 0){
+				layers[i].findPairs(pairs);
+			}
+			for(int j = i + 1; j < BoundarySet.LAYER_COUNT; j++){
+				if((used & (1 << j)) != 0 && 
+						(layerCategories[i] & layerMasks[j]) != 0 && (layerCategories[j] & layerMasks[i]) != 0){
+					if(memberCount[i] <= memberCount[j]){
+						pairLayers(i, j, pairs);
+					}
+					else{
+						pairLayers(j, i, pairs);
+					}
+				}
+			}
+		}
+	}
+	/**
+	 * pairs each object of one layer with the objects of the other layer it overlaps
+	 */
+	private void pairLayers(int small, int large, PairBuffer pairs){
+		if(hits.getCapacity() < memberCount[large]){
+			hits = new FixedSizeArray<PhysicsObject>(memberCount[large]*2);
+		}
+		final Object[] objects = members[small];
+		final int count = memberCount[small];
+		final Broadphase other = layers[large];
+		for(int i = 0; i < count; i++){
+			final PhysicsObject a = (PhysicsObject)objects[i];
+			final Boundary boundary = a.getBoundary();
+			hits.clear();
+			other.query(boundary, -1, hits);
+			final int hitCount = hits.getCount();
+			for(int j = 0; j < hitCount; j++){
+				pairs.add(a, hits.get(j));
+			}
+		}
+		hits.clear();
+	}
+	
+	@Override
+	public void query(double minX, double minY, double maxX, double maxY, FixedSizeArray<PhysicsObject> result) {
+		query(minX, minY, maxX, maxY, -1, result);
+	}
+	@Override
+	public void query(double minX, double minY, double maxX, double maxY, int mask, FixedSizeArray<PhysicsObject> result) {
+		for(int layer = 0; layer < BoundarySet.LAYER_COUNT; layer++){
+			if((used & (1 << layer)) != 0 && (layerCategories[layer] & mask) != 0){
+				layers[layer].query(minX, minY, maxX, maxY, result);
+			}
+		}
+	}
+	@Override
+	public void query(Boundary boundary, int mask, FixedSizeArray<PhysicsObject> result) {
+		for(int layer = 0; layer < BoundarySet.LAYER_COUNT; layer++){
+			if((used & (1 << layer)) != 0 && (layerCategories[layer] & mask) != 0){
+				layers[layer].query(boundary, -1, result);
+			}
+		}
+	}
+	@Override
+	public void queryRay(double startX, double startY, double endX, double endY, FixedSizeArray<PhysicsObject> result) {
+		queryRay(startX, startY, endX, endY, -1, result);
+	}
+	@Override
+	public void queryRay(double startX, double startY, double endX, double endY, int mask, FixedSizeArray<PhysicsObject> result) {
+		for(int layer = 0; layer < BoundarySet.LAYER_COUNT; layer++){
+			if((used & (1 << layer)) != 0 && (layerCategories[layer] & mask) != 0){
+				layers[layer].queryRay(startX, startY, endX, endY, result);
+			}
+		}
+	}
+}
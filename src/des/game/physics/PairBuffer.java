@@ -0,0 +1,82 @@
+/*******************************************************************************
+ * Copyright 2011 Douglas Siemon
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package des.game.physics;
+
+/**
+ * A list of candidate collision pairs written by a Broadphase. The storage is reused between
+ * 	frames and only grows when a frame produces more pairs than any frame before it, so the
+ * 	physics engine does not allocate in steady state.
+ */
+public class PairBuffer {
+	private static final int DEFAULT_SIZE = 256;
+	
+	private PhysicsObject[] first;
+	private PhysicsObject[] second;
+	private int count;
+	
+	public PairBuffer(){
+		this(DEFAULT_SIZE);
+	}
+	public PairBuffer(int size){
+		if(size < 1){
+			size = DEFAULT_SIZE;
+		}
+		first = new PhysicsObject[size];
+		second = new PhysicsObject[size];
+		count = 0;
+	}
+	/**
+	 * adds a pair to the end of the buffer
+	 * @param a
+	 * @param b
+	 */
+	public void add(PhysicsObject a, PhysicsObject b){
+		if(count == first.length){
+			grow();
+		}
+		first[count] = a;
+		second[count] = b;
+		count++;
+	}
+	public PhysicsObject getFirst(int index){
+		return first[index];
+	}
+	public PhysicsObject getSecond(int index){
+		return second[index];
+	}
+	public int getCount(){
+		return count;
+	}
+	/**
+	 * releases the references held by the buffer and sets the count to zero
+	 */
+	public void clear(){
+		for(int i = 0; i < count; i++){
+			first[i] = null;
+			second[i] = null;
+		}
+		count = 0;
+	}
+	private void grow(){
+		final int size = first.length*2;
+		PhysicsObject[] temp = new PhysicsObject[size];
+		System.arraycopy(first, 0, temp, 0, count);
+		first = temp;
+		temp = new PhysicsObject[size];
+		System.arraycopy(second, 0, temp, 0, count);
+		second = temp;
+	}
+}
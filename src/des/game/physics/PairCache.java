@@ -0,0 +1,328 @@
+/*******************************************************************************
+ * Copyright 2011 Douglas Siemon
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package des.game.physics;
+
+/**
+ * Remembers the pairs the broadphase reported in the previous frame, so the engine can tell when 
+ * 	a contact begins, persists, or ends, and so it can reuse the narrow phase result of a pair 
+ * 	whose bounding boxes have not changed since it was last tested.
+ * 
+ * Pairs are keyed on the ids of the two objects. The cache holds two hash tables, the pairs of 
+ * 	the previous frame and the pairs of the current frame, and swaps them in beginFrame.
+ */
+public class PairCache {
+	private static final long EMPTY = -1L;
+	
+	private Table previous;
+	private Table current;
+	
+	public PairCache(int capacity){
+		previous = new Table(capacity);
+		current = new Table(capacity);
+	}
+	/**
+	 * makes the pairs of the last frame the previous pairs and starts an empty current frame
+	 */
+	public void beginFrame(){
+		final Table temp = previous;
+		previous = current;
+		current = temp;
+		current.clear();
+	}
+	/**
+	 * adds a pair to the current frame, carrying over its state from the previous frame
+	 * @return index of the pair in the current frame
+	 */
+	public int add(PhysicsObject a, PhysicsObject b){
+		final long key = key(a, b);
+		int index = current.find(key);
+		if(index < 0){
+			index = current.insert(key, a, b);
+			final int old = previous.find(key);
+			if(old >= 0){
+				previous.carried[old] = true;
+				current.touching[index] = previous.touching[old];
+				current.tested[index] = previous.tested[old];
+				current.versionA[index] = previous.versionA[old];
+				current.versionB[index] = previous.versionB[old];
+				current.firstId[index] = previous.firstId[old];
+				current.impulse[index] = previous.impulse[old];
+			}
+		}
+		return index;
+	}
+	/**
+	 * grows the current frame so it holds count pairs without rehashing, so the indices returned 
+	 * 	by add stay valid for the rest of the frame as long as no more than count pairs are added
+	 */
+	public void ensureCapacity(int count){
+		int size = current.keys.length;
+		while((count + 1)*2 > size){
+			size *= 2;
+		}
+		if(size != current.keys.length){
+			current.rehash(size);
+		}
+	}
+	/**
+	 * @return true if the pair was touching the last time it was tested
+	 */
+	public boolean isTouching(int index){
+		return current.touching[index];
+	}
+	/**
+	 * @return true if the pair has been tested and neither box has changed since
+	 */
+	public boolean isUnchanged(int index, PhysicsObject a, PhysicsObject b){
+		final Table t = current;
+		if(!t.tested[index]){
+			return false;
+		}
+		if(t.firstId[index] != a.id){
+			final PhysicsObject temp = a;
+			a = b;
+			b = temp;
+		}
+		return t.versionA[index] == a.getBoundary().getBoxVersion() && t.versionB[index] == b.getBoundary().getBoxVersion();
+	}
+	/**
+	 * stores the result of the narrow phase for the pair
+	 */
+	public void setTouching(int index, PhysicsObject a, PhysicsObject b, boolean touching){
+		final Table t = current;
+		t.touching[index] = touching;
+		t.tested[index] = true;
+		t.firstId[index] = a.id;
+		t.versionA[index] = a.getBoundary().getBoxVersion();
+		t.versionB[index] = b.getBoundary().getBoxVersion();
+		if(!touching){
+			t.impulse[index] = 0;
+		}
+	}
+	/**
+	 * takes the current boxes as the tested boxes of the pairs whose objects are both at rest. called after 
+	 * 	objects fell asleep and their boxes lost their sweep, so that is not seen as a change of the pair.
+	 */
+	public void settle(){
+		final Table t = current;
+		for(int i = 0; i < t.count; i++){
+			final int slot = t.order[i];
+			final PhysicsObject a = t.first[slot];
+			final PhysicsObject b = t.second[slot];
+			if(t.tested[slot] && PhysicsEngine.isResting(a) && PhysicsEngine.isResting(b)){
+				final boolean firstA = t.firstId[slot] == a.id;
+				t.versionA[slot] = (firstA ? a : b).getBoundary().getBoxVersion();
+				t.versionB[slot] = (firstA ? b : a).getBoundary().getBoxVersion();
+			}
+		}
+	}
+	/**
+	 * @return the impulse the contact solver pushed the pair apart with last time it touched
+	 */
+	public double getImpulse(int index){
+		return current.impulse[index];
+	}
+	/**
+	 * keeps the impulse the contact solver settled on, to start from next frame
+	 */
+	public void setImpulse(int index, double impulse){
+		current.impulse[index] = impulse;
+	}
+	/**
+	 * sends endContact for the pairs that were touching last frame but were not reported by the broadphase this frame, 
+	 * 	and wakes the sleeping objects of those pairs, since what they rested on is gone. a touching pair of a 
+	 * 	sleeping object and an object at rest is kept as it is instead, since neither has moved, and is still 
+	 * 	told about the collision.
+	 */
+	public void endFrame(){
+		final Table t = previous;
+		for(int i = 0; i < t.count; i++){
+			final int slot = t.order[i];
+			if(!t.carried[slot] && t.touching[slot]){
+				final PhysicsObject a = t.first[slot];
+				final PhysicsObject b = t.second[slot];
+				if(a.active && b.active && isAsleep(a, b)){
+					carry(t, slot);
+					PhysicsEngine.handleRestingCollision(a, b);
+				}
+				else if(a.active && b.active){
+					PhysicsEngine.wakeSleeping(a);
+					PhysicsEngine.wakeSleeping(b);
+					a.endContact(b);
+					b.endContact(a);
+				}
+				else if(a.active){
+					PhysicsEngine.wakeSleeping(a);
+					a.endContact(b);
+				}
+				else if(b.active){
+					PhysicsEngine.wakeSleeping(b);
+					b.endContact(a);
+				}
+			}
+		}
+		t.clear();
+	}
+	/**
+	 * @return true if one of the objects is sleeping and the other is sleeping or has no vector
+	 */
+	private static boolean isAsleep(PhysicsObject a, PhysicsObject b){
+		final boolean sleepingA = a.getVector() != null && a.getVector().isSleeping();
+		final boolean sleepingB = b.getVector() != null && b.getVector().isSleeping();
+		return (sleepingA || sleepingB) && PhysicsEngine.isResting(a) && PhysicsEngine.isResting(b);
+	}
+	/**
+	 * copies a pair of the previous frame into the current frame with its state and warm start impulse
+	 */
+	private void carry(Table t, int slot){
+		final int index = current.insert(t.keys[slot], t.first[slot], t.second[slot]);
+		current.touching[index] = t.touching[slot];
+		current.tested[index] = t.tested[slot];
+		current.versionA[index] = t.versionA[slot];
+		current.versionB[index] = t.versionB[slot];
+		current.firstId[index] = t.firstId[slot];
+		current.impulse[index] = t.impulse[slot];
+	}
+	/**
+	 * forgets every pair without sending events
+	 */
+	public void clear(){
+		previous.clear();
+		current.clear();
+	}
+	public int getCount(){
+		return current.count;
+	}
+	
+	private static long key(PhysicsObject a, PhysicsObject b){
+		final long low = Math.min(a.id, b.id) & 0xffffffffL;
+		final long high = Math.max(a.id, b.id) & 0xffffffffL;
+		return (high << 32) | low;
+	}
+	
+	/**
+	 * open addressing hash table with linear probing, entries are never removed during a frame
+	 */
+	private static class Table{
+		long[] keys;
+		PhysicsObject[] first;
+		PhysicsObject[] second;
+		boolean[] touching;
+		boolean[] tested;
+		boolean[] carried;
+		int[] firstId;
+		int[] versionA;
+		int[] versionB;
+		double[] impulse;
+		//slots in insertion order, so the table can be walked and cleared in O(count)
+		int[] order;
+		int count;
+		int mask;
+		
+		Table(int capacity){
+			int size = 16;
+			while(size < capacity*2){
+				size *= 2;
+			}
+			allocate(size);
+		}
+		void allocate(int size){
+			keys = new long[size];
+			first = new PhysicsObject[size];
+			second = new PhysicsObject[size];
+			touching = new boolean[size];
+			tested = new boolean[size];
+			carried = new boolean[size];
+			firstId = new int[size];
+			versionA = new int[size];
+			versionB = new int[size];
+			impulse = new double[size];
+			order = new int[size];
+			mask = size - 1;
+			count = 0;
+			for(int i = 0; i < size; i++){
+				keys[i] = EMPTY;
+			}
+		}
+		int find(long key){
+			int slot = hash(key) & mask;
+			while(keys[slot] != EMPTY){
+				if(keys[slot] == key){
+					return slot;
+				}
+				slot = (slot + 1) & mask;
+			}
+			return -1;
+		}
+		int insert(long key, PhysicsObject a, PhysicsObject b){
+			if((count + 1)*2 > keys.length){
+				rehash(keys.length*2);
+			}
+			int slot = hash(key) & mask;
+			while(keys[slot] != EMPTY){
+				slot = (slot + 1) & mask;
+			}
+			keys[slot] = key;
+			first[slot] = a;
+			second[slot] = b;
+			touching[slot] = false;
+			tested[slot] = false;
+			carried[slot] = false;
+			impulse[slot] = 0;
+			order[count++] = slot;
+			return slot;
+		}
+		void clear(){
+			for(int i = 0; i < count; i++){
+				final int slot = order[i];
+				keys[slot] = EMPTY;
+				first[slot] = null;
+				second[slot] = null;
+			}
+			count = 0;
+		}
+		private void rehash(int size){
+			final long[] oldKeys = keys;
+			final PhysicsObject[] oldFirst = first;
+			final PhysicsObject[] oldSecond = second;
+			final boolean[] oldTouching = touching;
+			final boolean[] oldTested = tested;
+			final boolean[] oldCarried = carried;
+			final int[] oldFirstId = firstId;
+			final int[] oldVersionA = versionA;
+			final int[] oldVersionB = versionB;
+			final double[] oldImpulse = impulse;
+			final int[] oldOrder = order;
+			final int oldCount = count;
+			allocate(size);
+			for(int i = 0; i < oldCount; i++){
+				final int old = oldOrder[i];
+				final int slot = insert(oldKeys[old], oldFirst[old], oldSecond[old]);
+				touching[slot] = oldTouching[old];
+				tested[slot] = oldTested[old];
+				carried[slot] = oldCarried[old];
+				firstId[slot] = oldFirstId[old];
+				versionA[slot] = oldVersionA[old];
+				versionB[slot] = oldVersionB[old];
+				impulse[slot] = oldImpulse[old];
+			}
+		}
+		private static int hash(long key){
+			long h = key * 0x9E3779B97F4A7C15L;
+			return (int)(h ^ (h >>> 32));
+		}
+	}
+}
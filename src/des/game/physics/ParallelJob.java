@@ -0,0 +1,27 @@
+/*******************************************************************************
+ * Copyright 2011 Douglas Siemon
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package des.game.physics;
+
+/**
+ * work that a ParallelRunner spreads over its threads, one call per index.
+ */
+public abstract class ParallelJob {
+	/**
+	 * @param index the piece of work to do, each index is run exactly once
+	 * @param worker the thread running the index, 0 is the calling thread. jobs use it to pick scratch objects
+	 */
+	public abstract void run(int index, int worker);
+}
@@ -0,0 +1,206 @@
+/*******************************************************************************
+ * Copyright 2011 Douglas Siemon
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package des.game.physics;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs a ParallelJob over a range of indices on a fixed set of worker threads. The calling thread 
+ * 	works alongside them and run returns once every index is done, so everything the job wrote is 
+ * 	visible to the caller afterwards. Indices are handed out one at a time in no particular order.
+ * 
+ * The threads are started once and wait between jobs, nothing is allocated per run. Anything the 
+ * 	job throws is rethrown on the calling thread once the run has stopped. A worker that throws an 
+ * 	Error is retired and later runs go on without it.
+ */
+public class ParallelRunner {
+	private final Worker[] workers;
+	private final Object lock = new Object();
+	private final AtomicInteger next = new AtomicInteger();
+	//state of the current job, guarded by lock
+	private ParallelJob job;
+	private int count;
+	private int generation;
+	private int running;
+	//workers that have not been retired by an Error
+	private int live;
+	private boolean shutdown;
+	private Throwable failure;
+	
+	/**
+	 * @param threads total number of threads including the calling thread
+	 */
+	public ParallelRunner(int threads){
+		if(threads < 1){
+			threads = 1;
+		}
+		workers = new Worker[threads - 1];
+		live = workers.length;
+		for(int i = 0; i < workers.length; i++){
+			workers[i] = new Worker(i + 1);
+			workers[i].start();
+		}
+	}
+	
+	public int getThreadCount(){
+		return workers.length + 1;
+	}
+	/**
+	 * runs job for every index from 0 to count - 1 and waits for all of them to finish
+	 */
+	public void run(ParallelJob job, int count){
+		if(count <= 0){
+			return;
+		}
+		final boolean serial;
+		synchronized(lock){
+			serial = live == 0 || count == 1 || shutdown;
+			if(!serial){
+				this.job = job;
+				this.count = count;
+				next.set(0);
+				running = live;
+				generation++;
+				lock.notifyAll();
+			}
+		}
+		if(serial){
+			for(int i = 0; i < count; i++){
+				job.run(i, 0);
+			}
+			return;
+		}
+		Throwable error = null;
+		try{
+			work(job, count, 0);
+		}
+		catch(Throwable e){
+			error = e;
+			//stop handing out indices
+			next.set(count);
+		}
+		boolean interrupted = false;
+		synchronized(lock){
+			while(running > 0){
+				try{
+					lock.wait();
+				}
+				catch(InterruptedException e){
+					interrupted = true;
+				}
+			}
+			this.job = null;
+			if(error == null){
+				error = failure;
+			}
+			failure = null;
+		}
+		if(interrupted){
+			Thread.currentThread().interrupt();
+		}
+		if(error != null){
+			rethrow(error);
+		}
+	}
+	/**
+	 * stops the worker threads, later runs happen on the calling thread. must not be called during a run.
+	 */
+	public void shutdown(){
+		synchronized(lock){
+			shutdown = true;
+			lock.notifyAll();
+		}
+	}
+	
+	private static void rethrow(Throwable error){
+		if(error instanceof RuntimeException){
+			throw (RuntimeException)error;
+		}
+		if(error instanceof Error){
+			throw (Error)error;
+		}
+		throw new RuntimeException(error);
+	}
+	
+	private void work(ParallelJob job, int count, int worker){
+		int i;
+		while((i = next.getAndIncrement()) < count){
+			job.run(i, worker);
+		}
+	}
+	
+	private class Worker extends Thread{
+		private final int index;
+		
+		public Worker(int index){
+			super("physics-worker-" + index);
+			this.index = index;
+			setDaemon(true);
+		}
+		@Override
+		public void run(){
+			int seen = 0;
+			while(true){
+				ParallelJob current;
+				int currentCount;
+				synchronized(lock){
+					while(generation == seen && !shutdown){
+						try{
+							lock.wait();
+						}
+						catch(InterruptedException e){
+							
+						}
+					}
+					if(shutdown){
+						return;
+					}
+					seen = generation;
+					current = job;
+					currentCount = count;
+				}
+				boolean retire = false;
+				try{
+					work(current, currentCount, index);
+				}
+				catch(Throwable e){
+					next.set(currentCount);
+					//after an Error the thread may not be usable, it leaves once the run is counted down
+					retire = e instanceof Error;
+					synchronized(lock){
+						if(failure == null){
+							failure = e;
+						}
+					}
+				}
+				finally{
+					synchronized(lock){
+						if(retire){
+							live--;
+						}
+						running--;
+						if(running == 0){
+							lock.notifyAll();
+						}
+					}
+				}
+				if(retire){
+					return;
+				}
+			}
+		}
+	}
+}
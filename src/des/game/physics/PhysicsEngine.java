@@ -23,12 +23,14 @@ import java.util.*;
 
 import des.game.base.BaseObject;
 import des.game.base.DebugLog;
+import des.game.base.FixedSizeArray;
 import des.game.base.GLPoint;
 import des.game.boundary.Boundary;
 import des.game.boundary.Circle;
+import des.game.boundary.Manifold;
 import des.game.boundary.Pair;
-import des.game.boundary.Polygon;
 import des.game.boundary.Rectangle;
+import des.game.boundary.TimeOfImpact;
 
 
 
@@ -44,7 +46,59 @@ public class PhysicsEngine extends BaseObject{
 	private int zPlane;
 	private int planeDepth;
 	private Pair dummyPair = new Pair();
-
+	private Manifold dummyManifold = new Manifold();
+	//touching pairs of the frame grouped into islands that can be resolved in parallel
+	private ContactIslands islands;
+	private ParallelRunner runner;
+	private IslandJob islandJob;
+	//scratch pair and contact manifold for each thread resolving islands
+	private Pair[] workerPairs;
+	private Manifold[] workerManifolds;
+	//resolves the overlapping contacts of each island together when solverIterations is more than 0
+	private ContactSolver solver;
+	private int solverIterations;
+	//start the solver from the impulses the pair cache kept from the last frame
+	private boolean warmStarting;
+	//state of each candidate pair, its slot in the pair cache and the pairs waiting for the narrow phase
+	private byte[] pairStates;
+	private int[] pairEntries;
+	private int[] narrowTests;
+	private int narrowTestCount;
+	private NarrowphaseJob narrowphaseJob;
+	//broad phase of collision detection and the pairs it found this frame. moving objects are indexed
+	//	every frame, static and sleeping objects only when their partition changes
+	private Broadphase broadphase;
+	private Broadphase staticBroadphase;
+	private int staticVersion;
+	//same kind of broadphase as the moving objects, queried by them but never paired within itself
+	private Broadphase sleepingBroadphase;
+	private int sleepingVersion;
+	private FixedSizeArray<PhysicsObject> staticHits;
+	//fields found over the body fields are being applied to
+	private FixedSizeArray<Field> fieldHits;
+	private PairBuffer pairs;
+	//pairs of the last frame, for contact events and skipping unchanged pairs
+	private PairCache pairCache;
+	//vector objects slower than sleepVelocity for sleepFrames frames are put to sleep
+	private double sleepVelocity;
+	private int sleepFrames;
+	//fixed length of a physics step in milliseconds, frame time is gathered until there is a step to run
+	private int stepTime;
+	private int maxSteps;
+	private double accumulator;
+	//queries refresh the indexes once after each step, the candidates go in queryHits before the exact test
+	private int stepCount;
+	private int queryStep;
+	private FixedSizeArray<PhysicsObject> queryHits;
+	private GLPoint queryPoint;
+	private Boundary queryRectangle;
+	private Boundary queryCircle;
+	private Pair scratchNormal;
+	private RaycastHit sightHit;
+	//solid tiles of the level, tested directly against the moving objects
+	private TileCollision tiles;
+	//distance from the walls of the level, baked when the level loads
+	private DistanceField distanceField;
 	
 	
     public static final int    DEFAULT_BOARD_RESET_TIME = 1000;	
@@ -66,20 +120,86 @@ public class PhysicsEngine extends BaseObject{
 	
 	public static final double EXPUNGE_TOLERANCE = .1;
 	
+	//states of a candidate pair between the phases of checkCollisions
+	private static final byte PAIR_IGNORED = 0;
+	private static final byte PAIR_APART = 1;
+	private static final byte PAIR_TOUCHING = 2;
+	private static final byte PAIR_UNTESTED = 3;
+	//neither object is awake, the pair keeps its cached state without being tested
+	private static final byte PAIR_RESTING = 4;
+	//number of pairs a thread takes at a time in the narrow phase
+	private static final int NARROWPHASE_CHUNK = 32;
+	
+	public static final double DEFAULT_SLEEP_VELOCITY = 2;
+	public static final int DEFAULT_SLEEP_FRAMES = 30;
+	public static final int DEFAULT_STEP = 16;
+	/**
+	 * mask of every collision layer, for queries
+	 */
+	public static final int ALL_LAYERS = -1;
+	public static final int DEFAULT_MAX_STEPS = 4;
+	
 	
 	private PhysicsEngine(){
 		zPlane = 0;
 		planeDepth = 2;
-
+		broadphase = new ZPlaneBroadphase(new LayeredBroadphase(new SweepBroadphase()), zPlane, planeDepth);
+		staticBroadphase = new ZPlaneBroadphase(new LayeredBroadphase(new SweepBroadphase()), zPlane, planeDepth);
+		staticVersion = -1;
+		sleepingBroadphase = broadphase.newInstance();
+		sleepingVersion = -1;
+		staticHits = new FixedSizeArray<PhysicsObject>(64);
+		fieldHits = new FixedSizeArray<Field>(64);
+		queryStep = -1;
+		queryHits = new FixedSizeArray<PhysicsObject>(64);
+		queryPoint = new GLPoint();
+		queryRectangle = new Boundary(new Rectangle(new GLPoint(), 1, 1));
+		queryCircle = new Boundary(new Circle(new GLPoint(), 1));
+		scratchNormal = new Pair();
+		sightHit = new RaycastHit();
+		pairs = new PairBuffer();
+		pairCache = new PairCache(256);
+		sleepVelocity = DEFAULT_SLEEP_VELOCITY;
+		sleepFrames = DEFAULT_SLEEP_FRAMES;
+		stepTime = DEFAULT_STEP;
+		maxSteps = DEFAULT_MAX_STEPS;
+		islands = new ContactIslands(64);
+		solver = new ContactSolver(64);
+		solverIterations = 0;
+		warmStarting = true;
+		islandJob = new IslandJob();
+		narrowphaseJob = new NarrowphaseJob();
+		pairStates = new byte[256];
+		pairEntries = new int[256];
+		narrowTests = new int[256];
+		workerPairs = new Pair[]{dummyPair};
+		workerManifolds = new Manifold[]{dummyManifold};
 	}
 	
 	public static void initialize(int fieldSetSize, int vectorSetSize, int boundarySetSize, int physicsSetSize){
+		initialize(fieldSetSize, vectorSetSize, boundarySetSize, physicsSetSize, 0);
+	}
+	/**
+	 * initializes the engine and its sets.
+	 * @param cellSize when greater than 0 collisions use a SpatialHashBroadphase with cells of this size,
+	 * 		otherwise the sweep and prune broadphase is used
+	 */
+	public static void initialize(int fieldSetSize, int vectorSetSize, int boundarySetSize, int physicsSetSize, double cellSize){
 		if(PhysicsEngine.instance == null){
 			PhysicsEngine.instance = new PhysicsEngine();
+			if(cellSize > 0){
+				PhysicsEngine.instance.broadphase = new ZPlaneBroadphase(new LayeredBroadphase(new SpatialHashBroadphase(cellSize, boundarySetSize)), 
+						PhysicsEngine.instance.zPlane, PhysicsEngine.instance.planeDepth);
+				PhysicsEngine.instance.staticBroadphase = new ZPlaneBroadphase(new LayeredBroadphase(new SpatialHashBroadphase(cellSize, boundarySetSize)), 
+						PhysicsEngine.instance.zPlane, PhysicsEngine.instance.planeDepth);
+				PhysicsEngine.instance.sleepingBroadphase = PhysicsEngine.instance.broadphase.newInstance();
+			}
 			FieldSet.initialize(fieldSetSize);
 			VectorObjectSet.initializeSet(vectorSetSize);
+			BodyStore.instance.ensureCapacity(vectorSetSize);
 			BoundarySet.initializeSet(boundarySetSize);
 			PhysicsObjectSet.initializeSet(physicsSetSize);
+			PhysicsEngine.instance.staticHits = new FixedSizeArray<PhysicsObject>(boundarySetSize > 0 ? boundarySetSize : 1);
 		}
 	}
 	
@@ -97,6 +217,7 @@ public class PhysicsEngine extends BaseObject{
 	 */
 	public void setZPlane(int plane) {
 		zPlane = plane;
+		updatePlanes();
 	}
 	/**
 	 * gets thickness of the z plane slices
@@ -111,6 +232,110 @@ public class PhysicsEngine extends BaseObject{
 	 */
 	public void setPlaneDepth(int planeDepth) {
 		this.planeDepth = planeDepth;
+		updatePlanes();
+	}
+	/**
+	 * moves the slices of the broadphases that keep their objects by z plane to the current settings
+	 */
+	private void updatePlanes(){
+		if(broadphase instanceof ZPlaneBroadphase){
+			((ZPlaneBroadphase)broadphase).setPlanes(zPlane, planeDepth);
+		}
+		if(staticBroadphase instanceof ZPlaneBroadphase){
+			((ZPlaneBroadphase)staticBroadphase).setPlanes(zPlane, planeDepth);
+			//the static objects are only sorted into slices when they are indexed again
+			staticVersion = -1;
+		}
+		if(sleepingBroadphase instanceof ZPlaneBroadphase){
+			((ZPlaneBroadphase)sleepingBroadphase).setPlanes(zPlane, planeDepth);
+			sleepingVersion = -1;
+		}
+	}
+	
+	public Broadphase getBroadphase() {
+		return broadphase;
+	}
+	/**
+	 * sets the broadphase used to find candidate pairs between moving objects in checkCollisions, wrap it
+	 * 	in a LayeredBroadphase to keep layers that do not collide from being paired, and in a 
+	 * 	ZPlaneBroadphase to keep z planes that do not overlap from being paired. the sleeping objects are 
+	 * 	indexed in a new instance of it.
+	 * @param broadphase may not be null
+	 */
+	public void setBroadphase(Broadphase broadphase) {
+		if(broadphase != null){
+			this.broadphase = broadphase;
+			sleepingBroadphase = broadphase.newInstance();
+			sleepingVersion = -1;
+		}
+	}
+	public Broadphase getStaticBroadphase() {
+		return staticBroadphase;
+	}
+	/**
+	 * sets the broadphase that indexes the objects without a vector, it is only updated when the static 
+	 * 	partition of the boundary set changes and is queried once per moving object
+	 * @param staticBroadphase may not be null
+	 */
+	public void setStaticBroadphase(Broadphase staticBroadphase) {
+		if(staticBroadphase != null){
+			this.staticBroadphase = staticBroadphase;
+			staticVersion = -1;
+		}
+	}
+
+	public double getSleepVelocity() {
+		return sleepVelocity;
+	}
+	public int getSleepFrames() {
+		return sleepFrames;
+	}
+	/**
+	 * sets when vector objects go to sleep, a sleeping object is not moved, fields are not applied to it
+	 * 	and it is only checked for collisions against moving objects.
+	 * @param velocity speed in units per second an object has to stay under
+	 * @param frames number of frames it has to stay under velocity, 0 or less disables sleeping and wakes every object
+	 */
+	public void setSleepThreshold(double velocity, int frames) {
+		sleepVelocity = velocity;
+		sleepFrames = frames;
+		if(frames <= 0){
+			final int count = VectorObjectSet.instance.getCount();
+			final Object[] set = VectorObjectSet.instance.getObjects().getArray();
+			for(int i = 0; i < count; i++){
+				((VectorObject)set[i]).wake();
+			}
+		}
+	}
+
+	public int getThreadCount() {
+		return runner != null ? runner.getThreadCount() : 1;
+	}
+	/**
+	 * sets the number of threads that run the narrow phase and resolve contact islands, including the 
+	 * 	thread updating the engine.
+	 * 	the results do not depend on the number of threads.
+	 * @param threads 1 or less resolves every island on the calling thread
+	 */
+	public void setThreadCount(int threads) {
+		if(runner != null){
+			runner.shutdown();
+			runner = null;
+		}
+		if(threads > 1){
+			runner = new ParallelRunner(threads);
+		}
+		else{
+			threads = 1;
+		}
+		workerPairs = new Pair[threads];
+		workerManifolds = new Manifold[threads];
+		workerPairs[0] = dummyPair;
+		workerManifolds[0] = dummyManifold;
+		for(int i = 1; i < threads; i++){
+			workerPairs[i] = new Pair();
+			workerManifolds[i] = new Manifold();
+		}
 	}
 
 	/**
@@ -121,31 +346,55 @@ public class PhysicsEngine extends BaseObject{
 		return BoundarySet.collisionMatrix.length;
 	}
 	
+	/**
+	 * sets which types collide, types are turned into collision layers so only the first 32 are used. 
+	 * 	two types collide only if both matrix[i][j] and matrix[j][i] are true.
+	 */
 	public static void setCollisionMatrix(boolean[][] matrix){
 		BoundarySet.collisionMatrix = matrix;
 		
 		BoundarySet.collisionMatrix[0][0] = false;
+		BoundarySet.updateMasks();
+		//objects already added take their layers from the new matrix, the rest do when they are added
+		final int count = PhysicsObjectSet.instance == null ? 0 : PhysicsObjectSet.instance.getCount();
+		for(int i = 0; i < count; i++){
+			PhysicsObjectSet.instance.get(i).updateFilter();
+		}
+		if(BoundarySet.instance != null){
+			BoundarySet.instance.invalidatePartition();
+		}
 	}
 	/////////Services////////////////////
 
 	/**
-	 * This function advances the physics engine by time milliseconds
+	 * This function advances the physics engine by timeDelta seconds, in as many fixed steps as fit
+	 * 		in the time gathered so far. the time left over is carried to the next frame.
 	 */
 	@Override
 	public void update(float timeDelta, BaseObject parent){
 		
 		final long realtime = SystemClock.uptimeMillis();
 		
-		int time = (int)(timeDelta*1000);
-		if(time > MAX_DELAY){
-			time = MAX_DELAY;
+		if(stepTime > 0){
+			accumulator += timeDelta*1000;
+			int steps = 0;
+			while(accumulator >= stepTime && steps < maxSteps){
+				step(stepTime);
+				accumulator -= stepTime;
+				steps++;
+			}
+			//drop the time of a frame too slow to catch up on, instead of slowing down every frame after it
+			if(accumulator >= stepTime){
+				accumulator %= stepTime;
+			}
+		}
+		else{
+			int time = (int)(timeDelta*1000);
+			if(time > MAX_DELAY){
+				time = MAX_DELAY;
+			}
+			step(time);
 		}
-		updateSets(time);
-		
-		clearOutsideAccelerations();
-		applyFields(time);
-		moveVectorObjects(time);
-		checkCollisions(time);
 		
 		final long endTime = SystemClock.uptimeMillis();
 		
@@ -159,6 +408,116 @@ public class PhysicsEngine extends BaseObject{
             //mGameRoot.sSystemRegistry.hudSystem.setFPS(1000 / (int)averageFrameTime); TODO
         }
 	}
+	/**
+	 * advances the physics engine by time milliseconds
+	 */
+	protected void step(int time){
+		stepCount++;
+		updateSets(time);
+		savePreviousLocations();
+		
+		clearOutsideAccelerations();
+		applyFields(time);
+		moveVectorObjects(time);
+		checkCollisions(time);
+		updateSleep();
+	}
+	/**
+	 * sets the length of a physics step. frames are simulated in whole steps, so the cost of a step
+	 * 		and the results of the simulation do not depend on the frame rate.
+	 * @param milliseconds length of a step, 0 or less steps once a frame by the frame time clamped to MAX_DELAY
+	 * @param maxSteps most steps run in one frame, time beyond that is dropped
+	 */
+	public void setFixedStep(int milliseconds, int maxSteps){
+		stepTime = milliseconds;
+		this.maxSteps = maxSteps < 1 ? 1 : maxSteps;
+		accumulator = 0;
+	}
+	/**
+	 * turns the contact solver on or off. with it on, the overlapping contacts of an island are 
+	 * 		resolved together over several passes, starting from the impulses of the last frame, instead 
+	 * 		of one pair at a time. piles and stacks of objects settle instead of jittering.
+	 * @param iterations passes over the contacts of an island each step, 0 to resolve one pair at a time
+	 */
+	public void setSolverIterations(int iterations){
+		solverIterations = iterations < 0 ? 0 : iterations;
+	}
+	public int getSolverIterations(){
+		return solverIterations;
+	}
+	/**
+	 * @param warmStarting when false the contact solver starts every step from no impulse instead of 
+	 * 		the impulses of the last frame, on by default
+	 */
+	public void setWarmStarting(boolean warmStarting){
+		this.warmStarting = warmStarting;
+	}
+	public boolean isWarmStarting(){
+		return warmStarting;
+	}
+	/**
+	 * sets how the contact solver bounces objects off each other
+	 * @see ContactSolver#setRestitution(double, double)
+	 */
+	public void setSolverRestitution(double restitution, double threshold){
+		solver.setRestitution(restitution, threshold);
+	}
+	/**
+	 * keeps the velocities, accelerations and masses of the vector objects in floats instead of doubles.
+	 * 		the bodies are converted, so it can be changed between frames.
+	 * @see BodyStore#SINGLE_PRECISION
+	 */
+	public void setSinglePrecision(boolean singlePrecision){
+		BodyStore.instance.setSinglePrecision(singlePrecision);
+	}
+	public boolean isSinglePrecision(){
+		return BodyStore.instance.isSinglePrecision();
+	}
+	/**
+	 * collides the moving objects with the tiles of a tile map, the walls of the level then need no 
+	 * 		physics objects of their own
+	 * @param tiles null to stop colliding with tiles
+	 */
+	public void setTileCollision(TileCollision tiles){
+		this.tiles = tiles;
+	}
+	public TileCollision getTileCollision(){
+		return tiles;
+	}
+	/**
+	 * bakes the tiles and the objects without a vector into the field and keeps it for distance lookups, 
+	 * 		call once the walls of the level have been added
+	 * @param field grid covering the level, null to drop the current field
+	 */
+	public void bakeDistanceField(DistanceField field){
+		distanceField = field;
+		if(field != null){
+			BoundarySet.instance.commitUpdates();
+			field.bake(tiles, BoundarySet.instance.getStaticObjects());
+		}
+	}
+	/**
+	 * @return the field baked by bakeDistanceField, null if there is none
+	 */
+	public DistanceField getDistanceField(){
+		return distanceField;
+	}
+	public int getStepTime(){
+		return stepTime;
+	}
+	public int getMaxSteps(){
+		return maxSteps;
+	}
+	/**
+	 * @return how far the frame is into the next step from 0 to 1, for drawing objects between the 
+	 * 		start and end of the last step. always 1 without a fixed step.
+	 */
+	public float getInterpolation(){
+		if(stepTime <= 0){
+			return 1;
+		}
+		return (float)(accumulator/stepTime);
+	}
 	/**
 	 * clears all sets in the physics engine
 	 */
@@ -167,6 +526,11 @@ public class PhysicsEngine extends BaseObject{
 		VectorObjectSet.instance.clear();
 		FieldSet.instance.clear();
 		PhysicsObjectSet.instance.clear();
+		pairCache.clear();
+		staticVersion = -1;
+		sleepingVersion = -1;
+		accumulator = 0;
+		queryStep = -1;
 	}
 
 	/**
@@ -177,20 +541,299 @@ public class PhysicsEngine extends BaseObject{
 	 */
 	public ArrayList<PhysicsObject> checkCollision(Boundary b){
 		ArrayList<PhysicsObject> intersections = new ArrayList<PhysicsObject>();
-		int size = BoundarySet.instance.getCount();
+		b.updateBox();
+		gatherCandidates(b.getXProjection().getStart(), b.getYProjection().getStart(), 
+				b.getXProjection().getEnd(), b.getYProjection().getEnd(), ALL_LAYERS, null);
+		final FixedSizeArray<PhysicsObject> hits = queryHits;
+		final int size = hits.getCount();
 		for(int i = 0; i < size; i++){
-			PhysicsObject a = BoundarySet.instance.get(i);
+			PhysicsObject a = hits.get(i);
 			boolean coPlanar = a.getBoundary().isCoplanar(b);
 
-			if(a.getType() != PhysicsObject.PASSIVE_TYPE && coPlanar && BoundarySet.instance.get(i).getBoundary().collision(b)){
+			if(a.getType() != PhysicsObject.PASSIVE_TYPE && coPlanar && a.getBoundary().collision(b)){
 				intersections.add(a);
 			}
 		}
+		hits.clear();
 		return intersections;
 	}
+	/**
+	 * adds the objects whose boundaries overlap the box to result, none of the queries allocate. the 
+	 * 		indexes are brought up to date by the first query after each step, so objects moved by the game 
+	 * 		since then are found where they were. the queries and shape casts only find physics objects, not 
+	 * 		tiles, use TileCollision.isSolid for those.
+	 * @param mask bits of the collision layers to include, ALL_LAYERS for every object
+	 * @param result objects are added to the end of the array, it is not cleared. stops when it is full
+	 * @return the number of objects added
+	 */
+	public int queryBox(double minX, double minY, double maxX, double maxY, int mask, FixedSizeArray<PhysicsObject> result){
+		final Rectangle rectangle = queryRectangle.getRectangle();
+		rectangle.getCenter().setX(minX);
+		rectangle.getCenter().setY(maxY);
+		rectangle.setHeightAndWidth(maxY - minY, maxX - minX);
+		return queryShape(queryRectangle, mask, false, result);
+	}
+	/**
+	 * adds the objects whose boundaries overlap the circle to result
+	 * @see #queryBox
+	 */
+	public int queryCircle(double x, double y, double radius, int mask, FixedSizeArray<PhysicsObject> result){
+		final Circle circle = queryCircle.getCircle();
+		circle.getCenter().setX(x);
+		circle.getCenter().setY(y);
+		circle.setRadius(radius);
+		return queryShape(queryCircle, mask, false, result);
+	}
+	/**
+	 * adds the objects whose boundaries contain the point to result
+	 * @see #queryBox
+	 */
+	public int queryPoint(double x, double y, int mask, FixedSizeArray<PhysicsObject> result){
+		gatherCandidates(x, y, x, y, mask, null);
+		final FixedSizeArray<PhysicsObject> hits = queryHits;
+		queryPoint.setX(x);
+		queryPoint.setY(y);
+		final int start = result.getCount();
+		final int size = hits.getCount();
+		for(int i = 0; i < size && result.getCount() < result.getCapacity(); i++){
+			final PhysicsObject a = hits.get(i);
+			if(a.getBoundary().collision(queryPoint)){
+				result.add(a);
+			}
+		}
+		hits.clear();
+		return result.getCount() - start;
+	}
+	/**
+	 * adds the objects whose boundaries overlap the shape and share its z slice to result
+	 * @param shape boundary to test, it does not have to be in the boundary set. when it is, its own
+	 * 		object is left out of the results
+	 * @see #queryBox
+	 */
+	public int queryShape(Boundary shape, int mask, FixedSizeArray<PhysicsObject> result){
+		return queryShape(shape, mask, true, result);
+	}
+	private int queryShape(Boundary shape, int mask, boolean coplanar, FixedSizeArray<PhysicsObject> result){
+		shape.updateBox();
+		gatherCandidates(shape.getXProjection().getStart(), shape.getYProjection().getStart(), 
+				shape.getXProjection().getEnd(), shape.getYProjection().getEnd(), mask, shape);
+		final FixedSizeArray<PhysicsObject> hits = queryHits;
+		final int start = result.getCount();
+		final int size = hits.getCount();
+		for(int i = 0; i < size && result.getCount() < result.getCapacity(); i++){
+			final PhysicsObject a = hits.get(i);
+			if((!coplanar || a.getBoundary().isCoplanar(shape)) && a.getBoundary().collision(shape)){
+				result.add(a);
+			}
+		}
+		hits.clear();
+		return result.getCount() - start;
+	}
+	/**
+	 * casts a ray from start to end and finds the first object or tile it hits, ignoring passive objects and 
+	 * 		the z coordinate. boundaries that contain the start of the ray are not hit, so an object can 
+	 * 		look out from its own center. the indexes are walked along the ray rather than every object tested, 
+	 * 		and the tiles are stepped through along it.
+	 * @param mask bits of the collision layers the ray can hit, ALL_LAYERS for every object. the tiles 
+	 * 		are hit if the mask shares a layer with the mask of the TileCollision
+	 * @param hit receives the object or tile flags, distance, point and normal of the hit. its object is 
+	 * 		null on a miss or when a tile was hit
+	 * @return true if something was hit
+	 */
+	public boolean raycast(double startX, double startY, double endX, double endY, int mask, RaycastHit hit){
+		gatherRayCandidates(startX, startY, endX, endY, mask);
+		return castRay(startX, startY, endX, endY, mask, hit);
+	}
+	/**
+	 * casts many rays in one call, for example every vision ray of the AI for a frame. the indexes are 
+	 * 		brought up to date once for the whole batch.
+	 * @param rays startX, startY, endX, endY of each ray one after the other
+	 * @param count number of rays
+	 * @param hits one hit per ray, filled the same as by raycast
+	 * @return the number of rays that hit something
+	 * @see #raycast(double, double, double, double, int, RaycastHit)
+	 */
+	public int raycast(double[] rays, int count, int mask, RaycastHit[] hits){
+		int hitCount = 0;
+		for(int i = 0; i < count; i++){
+			final int ray = i*4;
+			gatherRayCandidates(rays[ray], rays[ray + 1], rays[ray + 2], rays[ray + 3], mask);
+			if(castRay(rays[ray], rays[ray + 1], rays[ray + 2], rays[ray + 3], mask, hits[i])){
+				hitCount++;
+			}
+		}
+		return hitCount;
+	}
+	/**
+	 * sweeps a shape along (dx,dy) and finds the first object it would touch, for predicting a move 
+	 * 		without making it. passive objects, objects outside the shape's z slice, the shape's own 
+	 * 		object and tiles are ignored.
+	 * @param shape boundary to move, it does not have to be in the boundary set and is not moved
+	 * @param mask bits of the collision layers the shape can hit, ALL_LAYERS for every object
+	 * @param hit receives the object and normal of the first contact. fraction is the part of (dx,dy) 
+	 * 		the shape can move before touching, 0 if it already overlaps the object, and x,y is how far 
+	 * 		the shape moved at that time. its object is null on a miss
+	 * @return true if something was hit
+	 */
+	public boolean shapeCast(Boundary shape, double dx, double dy, int mask, RaycastHit hit){
+		return shapeCast(shape, dx, dy, mask, true, hit);
+	}
+	/**
+	 * sweeps a circle along (dx,dy), ignoring the z coordinate
+	 * @see #shapeCast(Boundary, double, double, int, RaycastHit)
+	 */
+	public boolean circleCast(double x, double y, double radius, double dx, double dy, int mask, RaycastHit hit){
+		final Circle circle = queryCircle.getCircle();
+		circle.getCenter().setX(x);
+		circle.getCenter().setY(y);
+		circle.setRadius(radius);
+		return shapeCast(queryCircle, dx, dy, mask, false, hit);
+	}
+	/**
+	 * sweeps a box along (dx,dy), ignoring the z coordinate
+	 * @see #shapeCast(Boundary, double, double, int, RaycastHit)
+	 */
+	public boolean boxCast(double minX, double minY, double maxX, double maxY, double dx, double dy, int mask, RaycastHit hit){
+		final Rectangle rectangle = queryRectangle.getRectangle();
+		rectangle.getCenter().setX(minX);
+		rectangle.getCenter().setY(maxY);
+		rectangle.setHeightAndWidth(maxY - minY, maxX - minX);
+		return shapeCast(queryRectangle, dx, dy, mask, false, hit);
+	}
+	private boolean shapeCast(Boundary shape, double dx, double dy, int mask, boolean coplanar, RaycastHit hit){
+		shape.updateBox();
+		final double minX = shape.getXProjection().getStart();
+		final double minY = shape.getYProjection().getStart();
+		final double maxX = shape.getXProjection().getEnd();
+		final double maxY = shape.getYProjection().getEnd();
+		//every object the shape can touch overlaps the box it sweeps through
+		gatherCandidates(Math.min(minX, minX + dx), Math.min(minY, minY + dy), 
+				Math.max(maxX, maxX + dx), Math.max(maxY, maxY + dy), mask, shape);
+		final FixedSizeArray<PhysicsObject> hits = queryHits;
+		final Pair normal = scratchNormal;
+		hit.reset();
+		final int size = hits.getCount();
+		for(int i = 0; i < size; i++){
+			final PhysicsObject a = hits.get(i);
+			if(a.getType() == PhysicsObject.PASSIVE_TYPE || (coplanar && !a.getBoundary().isCoplanar(shape))){
+				continue;
+			}
+			final double t = TimeOfImpact.compute(shape, a.getBoundary(), 0, 0, dx, dy, normal);
+			if(t != TimeOfImpact.NONE && (hit.object == null || t < hit.fraction)){
+				hit.object = a;
+				hit.fraction = t;
+				hit.normalX = normal.x;
+				hit.normalY = normal.y;
+				if(t == 0){
+					break;
+				}
+			}
+		}
+		hits.clear();
+		if(hit.object == null){
+			return false;
+		}
+		hit.x = dx*hit.fraction;
+		hit.y = dy*hit.fraction;
+		hit.distance = Math.sqrt(dx*dx + dy*dy)*hit.fraction;
+		return true;
+	}
+	/**
+	 * tests the ray against the exact shapes of the candidates in queryHits and the tiles in the layers 
+	 * 		of mask, and keeps the closest hit
+	 */
+	private boolean castRay(double startX, double startY, double endX, double endY, int mask, RaycastHit hit){
+		final FixedSizeArray<PhysicsObject> hits = queryHits;
+		final Pair normal = scratchNormal;
+		hit.reset();
+		final int size = hits.getCount();
+		for(int i = 0; i < size; i++){
+			final PhysicsObject a = hits.get(i);
+			if(a.getType() == PhysicsObject.PASSIVE_TYPE){
+				continue;
+			}
+			final double t = a.getBoundary().raycast(startX, startY, endX, endY, normal);
+			if(t > 0 && (hit.object == null || t < hit.fraction)){
+				hit.object = a;
+				hit.fraction = t;
+				hit.normalX = normal.x;
+				hit.normalY = normal.y;
+			}
+		}
+		hits.clear();
+		if(tiles != null && (mask & tiles.getMask()) != 0){
+			tiles.raycast(startX, startY, endX, endY, hit);
+		}
+		if(hit.object == null && hit.tileFlags == TileCollision.EMPTY){
+			return false;
+		}
+		final double dx = endX - startX;
+		final double dy = endY - startY;
+		hit.x = startX + dx*hit.fraction;
+		hit.y = startY + dy*hit.fraction;
+		hit.distance = Math.sqrt(dx*dx + dy*dy)*hit.fraction;
+		return true;
+	}
+	/**
+	 * replaces the contents of queryHits with the objects in the layers of mask whose bounding boxes overlap the box
+	 * @param exclude boundary left out of the results, may be null
+	 */
+	private void gatherCandidates(double minX, double minY, double maxX, double maxY, int mask, Boundary exclude){
+		prepareQuery();
+		broadphase.query(minX, minY, maxX, maxY, mask, queryHits);
+		staticBroadphase.query(minX, minY, maxX, maxY, mask, queryHits);
+		sleepingBroadphase.query(minX, minY, maxX, maxY, mask, queryHits);
+		filterCandidates(mask, exclude);
+	}
+	/**
+	 * replaces the contents of queryHits with the objects in the layers of mask whose bounding boxes the segment touches
+	 */
+	private void gatherRayCandidates(double startX, double startY, double endX, double endY, int mask){
+		prepareQuery();
+		broadphase.queryRay(startX, startY, endX, endY, mask, queryHits);
+		staticBroadphase.queryRay(startX, startY, endX, endY, mask, queryHits);
+		sleepingBroadphase.queryRay(startX, startY, endX, endY, mask, queryHits);
+		filterCandidates(mask, null);
+	}
+	/**
+	 * brings the indexes up to date if a step ran since the last query and empties queryHits
+	 */
+	private void prepareQuery(){
+		final BoundarySet set = BoundarySet.instance;
+		if(queryStep != stepCount){
+			//the indexes were built before the collisions were resolved, bring them up to date once
+			queryStep = stepCount;
+			updateSleepingObjects();
+			set.updateBoxes();
+			updateRestingIndexes();
+			final FixedSizeArray<PhysicsObject> dynamicObjects = set.getDynamicObjects();
+			broadphase.update(dynamicObjects.getArray(), dynamicObjects.getCount());
+		}
+		if(queryHits.getCapacity() < set.getCount()){
+			queryHits = new FixedSizeArray<PhysicsObject>(set.getObjects().getCapacity());
+		}
+		queryHits.clear();
+	}
+	/**
+	 * drops the candidates outside the layers of mask, broadphases that do not keep layers return every object
+	 */
+	private void filterCandidates(int mask, Boundary exclude){
+		final FixedSizeArray<PhysicsObject> hits = queryHits;
+		final int size = hits.getCount();
+		int kept = 0;
+		for(int i = 0; i < size; i++){
+			final PhysicsObject a = hits.get(i);
+			if((a.category & mask) != 0 && a.getBoundary() != exclude){
+				hits.set(kept++, a);
+			}
+		}
+		while(hits.getCount() > kept){
+			hits.removeLast();
+		}
+	}
 	/**
 	 * checks if there is a line of sight between the two locations, ignoring differences in z.
-	 * 		Also ignores passive objects
+	 * 		Also ignores passive objects and boundaries that contain the start location
 	 * @param startX 
 	 * @param startY
 	 * @param endX
@@ -198,20 +841,11 @@ public class PhysicsEngine extends BaseObject{
 	 * @return true if there is a line of sight between the two points.
 	 */
 	public boolean lineOfSight(double startX,double startY,double endX,double endY){
-		boolean flag = true;
-		int size = BoundarySet.instance.getCount();
-		for(int i = 0; i < size && flag; i++){
-			PhysicsObject a = BoundarySet.instance.get(i);
-
-			if(a.getType() != PhysicsObject.PASSIVE_TYPE && BoundarySet.instance.get(i).getBoundary().collision(startX,startY,endX,endY)){
-				flag = false;
-			}
-		}
-		return flag;
+		return !raycast(startX, startY, endX, endY, ALL_LAYERS, sightHit);
 	}
 	/**
 	 * checks if there is a line of sight between the two locations, using the z coord to determine collisions. 
-	 * 		Also ignores passive objects
+	 * 		Also ignores passive objects and boundaries that contain the start location
 	 * @param startX 
 	 * @param startY
 	 * @param endX
@@ -220,17 +854,20 @@ public class PhysicsEngine extends BaseObject{
 	 * @return true if there is a line of sight betweent the two points.
 	 */
 	public boolean lineOfSight(double startX,double startY,double endX,double endY, double zPlane){
-		boolean flag = true;
-		int size = BoundarySet.instance.getCount();
-		for(int i = 0; i < size && flag; i++){
-			PhysicsObject a = BoundarySet.instance.get(i);
-			boolean coPlanar = a.getBoundary().isCoplanar(zPlane);
-
-			if(a.getType() != PhysicsObject.PASSIVE_TYPE && coPlanar && BoundarySet.instance.get(i).getBoundary().collision(startX,startY,endX,endY)){
-				flag = false;
+		gatherRayCandidates(startX, startY, endX, endY, ALL_LAYERS);
+		final FixedSizeArray<PhysicsObject> hits = queryHits;
+		final int size = hits.getCount();
+		int kept = 0;
+		for(int i = 0; i < size; i++){
+			final PhysicsObject a = hits.get(i);
+			if(a.getBoundary().isCoplanar(zPlane)){
+				hits.set(kept++, a);
 			}
 		}
-		return flag;
+		while(hits.getCount() > kept){
+			hits.removeLast();
+		}
+		return !castRay(startX, startY, endX, endY, ALL_LAYERS, sightHit);
 	}
 	public PhysicsObject[] getObjects(){
 		return PhysicsObjectSet.instance.getObjects().getArray();
@@ -247,241 +884,634 @@ public class PhysicsEngine extends BaseObject{
 	}
 
 	/**
-	 * Clears the outsideAccelerations of all VectorObjects.
+	 * stores the location of every vector object before it is moved by a step
 	 */
-	protected void clearOutsideAccelerations(){
+	protected void savePreviousLocations(){
 		final int size = VectorObjectSet.instance.getCount();
-		
-		
-		Object[] set = VectorObjectSet.instance.getObjects().getArray();
+		final Object[] set = VectorObjectSet.instance.getObjects().getArray();
 		for(int i = 0; i < size; i++){
-			((VectorObject)set[i]).clearOutsideAcceleration();
+			((VectorObject)set[i]).savePrevious();
 		}
 	}
+	/**
+	 * Clears the outsideAccelerations of all VectorObjects.
+	 */
+	protected void clearOutsideAccelerations(){
+		BodyStore.instance.clearOutsideAccelerations();
+	}
 	/**
 	 * Moves vectorObjects forward in time, by DELAY milliseconds.
 	 */
 	protected void moveVectorObjects(int time){
-		
+		//the awake bodies of the set are moved in one pass over the body store
+		BodyStore.instance.integrate(time);
+	}
+	/**
+	 * puts the vector objects that have been slow long enough to sleep
+	 */
+	protected void updateSleep(){
+		if(sleepFrames <= 0){
+			return;
+		}
 		final int count = VectorObjectSet.instance.getCount();
-		//DebugLog.e("physics", "vectorCount: " +  count);
 		final Object[] set = VectorObjectSet.instance.getObjects().getArray();
-		
-//		for(int i = 0; i < count-1; i++){
-//			for(int j = i+1; j < count; j++){
-//				if(set[i] == set[j]){
-//					DebugLog.e("physics", "verror: " );
-//				}
-//			}
-//		}
-//	
-//		final int bcount = BoundarySet.instance.getCount();
-//		final Object[] bset = BoundarySet.instance.getObjects().getArray();
-//		
-//		for(int i = 0; i < bcount-1; i++){
-//			for(int j = i+1; j < bcount; j++){
-//				if(bset[i] == bset[j]){
-//					DebugLog.e("physics", "berror: " );
-//				}
-//			}
-//		}
 		for(int i = 0; i < count; i++){
-			((VectorObject)set[i]).moveVector(time);
+			((VectorObject)set[i]).updateSleep(sleepVelocity, sleepFrames);
+		}
+		updateSleepingObjects();
+	}
+	/**
+	 * moves the objects that fell asleep or woke up into their partitions of the boundary set. the boxes of 
+	 * 	objects that fell asleep lose their sweep, which is not a change the pairs they rest in should see.
+	 */
+	private void updateSleepingObjects(){
+		if(BoundarySet.instance.updateSleeping() > 0){
+			pairCache.settle();
 		}
 	}
+	/**
+	 * indexes the static and sleeping objects again if their partitions have changed
+	 * @return true if the static objects were indexed again
+	 */
+	private boolean updateRestingIndexes(){
+		final BoundarySet set = BoundarySet.instance;
+		boolean staticChanged = false;
+		if(staticVersion != set.getStaticVersion()){
+			final FixedSizeArray<PhysicsObject> staticObjects = set.getStaticObjects();
+			staticBroadphase.update(staticObjects.getArray(), staticObjects.getCount());
+			staticVersion = set.getStaticVersion();
+			staticChanged = true;
+		}
+		if(sleepingVersion != set.getSleepingVersion()){
+			final FixedSizeArray<PhysicsObject> sleepingObjects = set.getSleepingObjects();
+			sleepingBroadphase.update(sleepingObjects.getArray(), sleepingObjects.getCount());
+			sleepingVersion = set.getSleepingVersion();
+		}
+		return staticChanged;
+	}
 	/**
 	 * Applies Fields to VectorObjects.
 	 */
 	protected void applyFields(int time){
-		//set up projections and sort the field set, a high initial cost
-		//	but this will allow optimizations later when checking physics 
-		//	objects against each field
-		FieldSet.instance.updateBoxes();
-		FieldSet.instance.sort();
+		//set up projections of the fields and bodies, the field index is only rebuilt when a field has moved
+		final FieldSet fields = FieldSet.instance;
+		final int movedFields = fields.updateBoxes();
 		BoundarySet.instance.updateBoxes();
+		if(fields.getCount() == 0){
+			return;
+		}
+		if(fieldHits.getCapacity() < fields.getCount()){
+			fieldHits = new FixedSizeArray<Field>(fields.getObjects().getCapacity());
+		}
 		Field f;
 		PhysicsObject po;	
 		
-		final int size = FieldSet.instance.getCount();
-		final Object[] fieldSet = FieldSet.instance.getObjects().getArray();
-		
 		final int physicsSize = PhysicsObjectSet.instance.getCount();
 		final Object[] physicsSet = PhysicsObjectSet.instance.getObjects().getArray();
 		//for each physics object
 		for(int i = 0; i < physicsSize; i++){
 			po = (PhysicsObject)physicsSet[i];
-			if(po.getVector() != null){
-				
-				int start = 0;
+			//a sleeping object can only be woken by a field that moved onto it
+			final boolean sleeping = po.getVector() != null && po.getVector().isSleeping();
+			if(po.getVector() != null && (!sleeping || movedFields > 0)){
+				fieldHits.clear();
 				//if it has a boundary, apply fields based on the boundary
 				if(po.getBoundary() != null){
-					//find the first field whose x projection overlaps with the objects projection
-					while(start < size && po.getBoundary().getXProjection().getEnd() < ((Field)fieldSet[start]).getArea().getXProjection().getStart()){
-						start++;
-					}
-					//apply each field until a field no longer intersects with the objects projection
-					for(int j = start; j < size && po.getBoundary().getXProjection().overlap(((Field)fieldSet[j]).getArea().getXProjection()); j++){
-						f = (Field)fieldSet[j];
-						//check if the y projection is overlapping
-						boolean coPlanar = po.getBoundary().isCoplanar(f.getArea());
-	
-						if(coPlanar && po.getBoundary().getYProjection().overlap(f.getArea().getYProjection())){
-							if(po.getBoundary().collision(f.area)){
-								f.handleCollision(po,time);
+					final Boundary boundary = po.getBoundary();
+					fields.query(boundary.getXProjection().getStart(), boundary.getYProjection().getStart(), 
+							boundary.getXProjection().getEnd(), boundary.getYProjection().getEnd(), fieldHits);
+					final int hitCount = fieldHits.getCount();
+					for(int j = 0; j < hitCount; j++){
+						f = fieldHits.get(j);
+						if(sleeping && !f.moved){
+							continue;
+						}
+						if(boundary.isCoplanar(f.getArea()) && boundary.collision(f.area)){
+							//an awake object keeps its count towards sleep
+							if(sleeping){
+								po.getVector().wake();
 							}
+							f.handleCollision(po,time);
 						}
 					}
 				}
 				else{
-					
-					while(start < size && po.getVector().getLocation().getX() < ((Field)fieldSet[start]).getArea().getXProjection().getStart()){
-						start++;
-					}
-					
-					//apply each field until a field no longer intersects with the objects location
-					for(int j = start; j < size && ((Field)fieldSet[j]).getArea().getXProjection().overlap(po.getVector().getLocation().getX()); j++){
-						f = (Field)fieldSet[j];
-						boolean coPlanar = f.getArea().isCoplanar(po.getLocation().getZ());
-				
-						if(coPlanar && f.getArea().getYProjection().overlap(po.getVector().getLocation().getY())){
-							if(f.area.collision(po.getVector().getLocation())){
-								f.handleCollision(po,time);
+					final GLPoint location = po.getVector().getLocation();
+					fields.query(location.getX(), location.getY(), location.getX(), location.getY(), fieldHits);
+					final int hitCount = fieldHits.getCount();
+					for(int j = 0; j < hitCount; j++){
+						f = fieldHits.get(j);
+						if(sleeping && !f.moved){
+							continue;
+						}
+						if(f.getArea().isCoplanar(po.getLocation().getZ()) && f.area.collision(location)){
+							if(sleeping){
+								po.getVector().wake();
 							}
+							f.handleCollision(po,time);
 						}
 					}
 				}
 			}
-
 		}
-
+		fieldHits.clear();
 	}
 	/**
 	 * Checks for Collisions in the BoundrySet and then resolves them accordingly.
 	 */
 	protected void checkCollisions(int time){
-		//set bounding boxes of boundaries
-		BoundarySet.instance.updateBoxes();
-		//sort by min x coordinate in the bounding boxes
-		BoundarySet.instance.sort();
+		final BoundarySet set = BoundarySet.instance;
+		//objects woken since the last step move back to the moving objects
+		updateSleepingObjects();
+		//stretch the boxes of moving objects back over the step, so fast objects can not pass through each other
+		final FixedSizeArray<PhysicsObject> moving = set.getDynamicObjects();
+		final double seconds = time/1000.0;
+		for(int i = 0; i < moving.getCount(); i++){
+			final PhysicsObject physicsObject = moving.get(i);
+			final VectorObject vector = physicsObject.getVector();
+			physicsObject.getBoundary().setSweep(vector.getVelocityXComponent()*seconds, vector.getVelocityYComponent()*seconds);
+		}
+		//set bounding boxes of boundaries, sleeping objects that were moved are woken
+		set.updateBoxes();
 		
-		PhysicsObject a;
-		PhysicsObject b;
-		//for each boundary
-		final int size = BoundarySet.instance.getCount();
-		final Object[] boundaryArray = BoundarySet.instance.getObjects().getArray();
+		//the static and sleeping objects are only indexed again when they have changed
+		final boolean staticChanged = updateRestingIndexes();
 		
-		for(int i = 0; i < size-1; i++){
-			a = (PhysicsObject)boundaryArray[i];
-			
-			
-			
-			//start at the next boundary in the sorted list and check until the bounding boxes 
-			//   no longer overlap, after this no boundaries in the list will overlap with this 
-			//   boundary as they are sorted
-			for(int j = i+1; j < size && a.getBoundary().getXProjection().overlap(((PhysicsObject)boundaryArray[j]).getBoundary().getXProjection()); j++){
-				b = (PhysicsObject)boundaryArray[j];
-				//first check the y bounding box
-				if(a.getBoundary().getYProjection().overlap(b.getBoundary().getYProjection())){
-					
-					int aType = a.getType();
-					int bType = b.getType();
-					if(aType == PhysicsObject.PASSIVE_TYPE || bType == PhysicsObject.PASSIVE_TYPE){
-						//check if objects are in the same z coordinate slice
-						boolean coPlanar = a.getBoundary().isCoplanar(b.getBoundary());
-					
-						
-						if(coPlanar && a.getBoundary().collision(b.getBoundary())){
-							if(aType != PhysicsObject.PASSIVE_TYPE){
-								b.handleCollision(a);
-							}
-							else if(bType != PhysicsObject.PASSIVE_TYPE){
-								a.handleCollision(b);
-							}
-						}
-					}
-					//check that at least one object has a velocity vector, and that at least one is not phantom
-					// and that they overlap
-					else if((a.getVector() != null ||b.getVector() != null) && (BoundarySet.collisionMatrix[aType][bType])){
-						//check if objects are in the same z coordinate slice
-						boolean coPlanar = a.getBoundary().isCoplanar(b.getBoundary());
-						
-						if(coPlanar && a.getBoundary().collision(b.getBoundary())){
-							
-							//move object back in time until they are no longer colliding
-							int temp = walkBack(a,b,time);
-							//change the velocity vectors accordingly
-							resolveCollision(a,b);
-							
+		//find every moving pair whose bounding boxes overlap
+		final FixedSizeArray<PhysicsObject> dynamicObjects = set.getDynamicObjects();
+		final int size = dynamicObjects.getCount();
+		final Object[] dynamicArray = dynamicObjects.getArray();
+		pairs.clear();
+		broadphase.update(dynamicArray, size);
+		broadphase.findPairs(pairs);
 		
-							//move vector again?
-							
-							if(a.getVector()!= null){
-								a.getVector().moveVector(temp);
-							}
-							if(b.getVector()!= null){
-								b.getVector().moveVector(temp);
-							}
-							//if the boundaries are still overlapping move them so that they are not
-							if(a.getBoundary().collision(b.getBoundary())){
-								expunge(a,b);
-							}
-							//let each object know that there was a collision
-							a.handleCollision(b);
-							b.handleCollision(a);
+		//then every moving object against the static and sleeping objects, static pairs never need checking
+		final FixedSizeArray<PhysicsObject> staticObjects = set.getStaticObjects();
+		final FixedSizeArray<PhysicsObject> sleepingObjects = set.getSleepingObjects();
+		if(staticHits.getCapacity() < staticObjects.getCount() + sleepingObjects.getCount()){
+			staticHits = new FixedSizeArray<PhysicsObject>(set.getObjects().getCapacity());
+		}
+		for(int i = 0; i < size; i++){
+			final PhysicsObject a = (PhysicsObject)dynamicArray[i];
+			if(staticObjects.getCount() > 0){
+				addRestingPairs(a, staticBroadphase);
+			}
+			if(sleepingObjects.getCount() > 0){
+				addRestingPairs(a, sleepingBroadphase);
+			}
+		}
+		//the resting pairs of sleeping objects are carried by the pair cache, they are only found again when 
+		//	the static objects have changed under them
+		if(staticChanged && staticObjects.getCount() > 0){
+			final int sleepingCount = sleepingObjects.getCount();
+			for(int i = 0; i < sleepingCount; i++){
+				addRestingPairs(sleepingObjects.get(i), staticBroadphase);
+			}
+		}
+		staticHits.clear();
+		
+		pairCache.beginFrame();
+		islands.clear();
+		final int pairCount = pairs.getCount();
+		if(pairStates.length < pairCount){
+			int length = pairStates.length;
+			while(length < pairCount){
+				length *= 2;
+			}
+			pairStates = new byte[length];
+			pairEntries = new int[length];
+			narrowTests = new int[length];
+		}
+		//no pair is added to the cache after this loop, so the entries stay where they are
+		pairCache.ensureCapacity(pairCount);
+		narrowTestCount = 0;
+		for(int i = 0; i < pairCount; i++){
+			final byte state = preparePair(pairs.getFirst(i), pairs.getSecond(i), i);
+			pairStates[i] = state;
+			if(state == PAIR_UNTESTED){
+				narrowTests[narrowTestCount++] = i;
+			}
+		}
+		//the narrow phase only reads the boundaries, so the pairs can be tested on any thread
+		if(runner != null && narrowTestCount > NARROWPHASE_CHUNK){
+			runner.run(narrowphaseJob, (narrowTestCount + NARROWPHASE_CHUNK - 1)/NARROWPHASE_CHUNK);
+		}
+		else{
+			testPairs(0, narrowTestCount);
+		}
+		//apply the results serially in the order the broadphase found the pairs
+		for(int i = 0; i < pairCount; i++){
+			if(pairStates[i] == PAIR_RESTING){
+				if(pairCache.isTouching(pairEntries[i])){
+					handleRestingCollision(pairs.getFirst(i), pairs.getSecond(i));
+				}
+			}
+			else if(pairStates[i] != PAIR_IGNORED){
+				checkPair(pairs.getFirst(i), pairs.getSecond(i), pairEntries[i], pairStates[i] == PAIR_TOUCHING);
+			}
+		}
+		
+		//resolve the touching pairs, islands share no moving objects so they can run on any thread
+		islands.build();
+		islandJob.time = time;
+		if(solverIterations > 0){
+			solver.ensureCapacity(islands.getContactCount());
+		}
+		if(runner != null){
+			runner.run(islandJob, islands.getIslandCount());
+		}
+		else{
+			final int islandCount = islands.getIslandCount();
+			for(int i = 0; i < islandCount; i++){
+				resolveIsland(i, time, dummyPair, dummyManifold);
+			}
+		}
+		
+		//level geometry in the tile map is only tested against the tiles each moving object covers
+		if(tiles != null){
+			collideTiles(dynamicObjects, seconds);
+		}
+		
+		//let the objects know about the collisions in the order the pairs were found
+		final int contactCount = islands.getContactCount();
+		for(int i = 0; i < contactCount; i++){
+			final PhysicsObject a = islands.getFirst(i);
+			final PhysicsObject b = islands.getSecond(i);
+			if(islands.isResolved(i)){
+				if(islands.hasBegun(i)){
+					a.beginContact(b);
+					b.beginContact(a);
+				}
+				a.handleCollision(b);
+				b.handleCollision(a);
+			}
+			else{
+				//an earlier contact in the island pushed the pair apart
+				pairCache.setTouching(pairCache.add(a, b), a, b, false);
+				if(!islands.hasBegun(i)){
+					a.endContact(b);
+					b.endContact(a);
+				}
+			}
+		}
+		//end the contacts whose bounding boxes stopped overlapping
+		pairCache.endFrame();
+		pairs.clear();
+	}
+	/**
+	 * adds a pair for the moving or sleeping object and each object of a resting index its box overlaps
+	 */
+	private void addRestingPairs(PhysicsObject a, Broadphase index){
+		staticHits.clear();
+		index.query(a.getBoundary(), a.mask, staticHits);
+		final int hitCount = staticHits.getCount();
+		for(int j = 0; j < hitCount; j++){
+			pairs.add(a, staticHits.get(j));
+		}
+	}
+	/**
+	 * stops the moving objects at the tiles they ran into during the step
+	 */
+	protected void collideTiles(FixedSizeArray<PhysicsObject> objects, double seconds){
+		final int count = objects.getCount();
+		final int mask = tiles.getMask();
+		for(int i = 0; i < count; i++){
+			final PhysicsObject object = objects.get(i);
+			object.tileFlags = (object.category & mask) != 0 ? tiles.collide(object, seconds) : 0;
+			if(object.tileFlags != 0){
+				object.handleTileCollision(object.tileFlags);
+			}
+		}
+	}
+	/**
+	 * resolves the contacts of one island in the order the pairs first touched during the step
+	 * @param scratch pair only used by the thread resolving this island
+	 */
+	protected void resolveIsland(int island, int time, Pair scratch, Manifold manifold){
+		if(solverIterations > 0){
+			solveIsland(island, time, scratch, manifold);
+			return;
+		}
+		final int start = islands.getIslandStart(island);
+		final int end = islands.getIslandEnd(island);
+		if(end - start > 1){
+			for(int i = start; i < end; i++){
+				final int contact = islands.getContact(i);
+				final double impact = timeOfImpact(islands.getFirst(contact), islands.getSecond(contact), time, null);
+				islands.setTimeOfImpact(contact, impact == TimeOfImpact.NONE ? 1 : impact);
+			}
+			islands.sortIsland(island);
+		}
+		for(int i = start; i < end; i++){
+			final int contact = islands.getContact(i);
+			final PhysicsObject a = islands.getFirst(contact);
+			final PhysicsObject b = islands.getSecond(contact);
+			//earlier contacts of the island may have moved the pair apart
+			final double impact = timeOfImpact(a, b, time, scratch);
+			final boolean touching = impact > 0 || (impact == 0 && manifold.compute(a.getBoundary(), b.getBoundary()));
+			if(touching){
+				resolveContact(a, b, impact, scratch, manifold, time);
+			}
+			islands.setResolved(contact, touching);
+		}
+	}
+	/**
+	 * resolves an island with the contact solver. pairs that overlap at the end of the step are solved 
+	 * 		together, pairs that only met during the step are resolved at their time of impact
+	 */
+	protected void solveIsland(int island, int time, Pair scratch, Manifold manifold){
+		final int start = islands.getIslandStart(island);
+		final int end = islands.getIslandEnd(island);
+		for(int i = start; i < end; i++){
+			final int contact = islands.getContact(i);
+			final PhysicsObject a = islands.getFirst(contact);
+			final PhysicsObject b = islands.getSecond(contact);
+			if(manifold.compute(a.getBoundary(), b.getBoundary())){
+				solver.prepare(contact, a, b, manifold, warmStarting ? pairCache.getImpulse(islands.getEntry(contact)) : 0);
+				islands.setResolved(contact, true);
+			}
+			else{
+				solver.skip(contact);
+				final double impact = timeOfImpact(a, b, time, scratch);
+				if(impact > 0){
+					resolveContact(a, b, impact, scratch, manifold, time);
+				}
+				islands.setResolved(contact, impact > 0);
+			}
+		}
+		solver.warmStart(islands, start, end);
+		solver.solveVelocities(islands, start, end, solverIterations);
+		solver.correctPositions(islands, start, end, solverIterations);
+		//the objects of an island only move on its thread, static objects keep the boxes they have
+		for(int i = start; i < end; i++){
+			final int contact = islands.getContact(i);
+			islands.getFirst(contact).getBoundary().updateBox();
+			islands.getSecond(contact).getBoundary().updateBox();
+		}
+		//start from these impulses next frame
+		for(int i = start; i < end; i++){
+			final int contact = islands.getContact(i);
+			pairCache.setImpulse(islands.getEntry(contact), solver.getImpulse(contact));
+		}
+	}
+	/**
+	 * moves a touching pair back to when it collided, changes the velocities and pushes the pair apart
+	 * @param impact time of impact of the pair within the step
+	 * @param scratch holds the normal found with the time of impact
+	 * @param manifold receives the contacts of the pair, only used by the thread resolving it
+	 */
+	protected void resolveContact(PhysicsObject a, PhysicsObject b, double impact, Pair scratch, Manifold manifold, int time){
+		//move the objects back to when they touched
+		final double remaining = walkBack(a, b, impact, time);
+		//change the velocity vectors accordingly, the boundaries only just touch after a sweep so use its normal
+		if(impact > 0){
+			resolveCollision(a, b, scratch.x, scratch.y);
+		}
+		else if(manifold.compute(a.getBoundary(), b.getBoundary())){
+			resolveCollision(a, b, manifold);
+		}
+		//and move them on for the rest of the step with their new velocities
+		advance(a, remaining);
+		advance(b, remaining);
+		//if the boundaries are still overlapping move them so that they are not
+		if(manifold.compute(a.getBoundary(), b.getBoundary())){
+			expunge(a, b, manifold);
+		}
+	}
+	/**
+	 * runs the narrow phase on the queued pairs from start up to end
+	 */
+	private void testPairs(int start, int end){
+		final int[] tests = narrowTests;
+		final byte[] states = pairStates;
+		final PairBuffer pairs = this.pairs;
+		for(int i = start; i < end; i++){
+			final int pair = tests[i];
+			states[pair] = testPair(pairs.getFirst(pair), pairs.getSecond(pair)) ? PAIR_TOUCHING : PAIR_APART;
+		}
+	}
+	private class NarrowphaseJob extends ParallelJob{
+		@Override
+		public void run(int index, int worker) {
+			final int start = index*NARROWPHASE_CHUNK;
+			testPairs(start, Math.min(start + NARROWPHASE_CHUNK, narrowTestCount));
+		}
+	}
+	private class IslandJob extends ParallelJob{
+		int time;
+		@Override
+		public void run(int index, int worker) {
+			resolveIsland(index, time, workerPairs[worker], workerManifolds[worker]);
+		}
+	}
+	/**
+	 * filters a pair the broadphase found and looks up its cached narrow phase result. the result is 
+	 * 		reused when neither bounding box has changed since the pair was last tested.
+	 * @param index index of the pair in this frame, its cache entry is stored at this index
+	 * @return PAIR_IGNORED if the pair can not collide, PAIR_RESTING if neither object is awake and 
+	 * 		neither box has changed, PAIR_UNTESTED if it needs the narrow phase,
+	 * 		otherwise the cached result
+	 */
+	protected byte preparePair(PhysicsObject a, PhysicsObject b, int index){
+		//every pair has a moving object, so only the layers decide if it can collide
+		if(!a.canCollide(b)){
+			return PAIR_IGNORED;
+		}
+		
+		final int entry = pairCache.add(a, b);
+		pairEntries[index] = entry;
+		if(isResting(a) && isResting(b)){
+			//nothing moved the pair apart or together, it stays in the cache as it was
+			if(pairCache.isUnchanged(entry, a, b)){
+				return PAIR_RESTING;
+			}
+			//something was moved onto the pair or out from under it
+			wakeSleeping(a);
+			wakeSleeping(b);
+			return PAIR_UNTESTED;
+		}
+		if(pairCache.isUnchanged(entry, a, b)){
+			return pairCache.isTouching(entry) ? PAIR_TOUCHING : PAIR_APART;
+		}
+		return PAIR_UNTESTED;
+	}
+	/**
+	 * the narrow phase, only reads the two boundaries so it is safe to call from several threads at once
+	 * @return true if the objects are in the same z coordinate slice and their boundaries overlap
+	 */
+	protected boolean testPair(PhysicsObject a, PhysicsObject b){
+		final Boundary boundaryA = a.getBoundary();
+		final Boundary boundaryB = b.getBoundary();
+		if(!boundaryA.isCoplanar(boundaryB)){
+			return false;
+		}
+		if(boundaryA.collision(boundaryB)){
+			return true;
+		}
+		//the pair may have passed through each other during the step
+		final double dx = boundaryA.getSweepX() - boundaryB.getSweepX();
+		final double dy = boundaryA.getSweepY() - boundaryB.getSweepY();
+		if(dx == 0 && dy == 0){
+			return false;
+		}
+		return TimeOfImpact.compute(boundaryA, boundaryB, -dx, -dy, dx, dy, null) > 0;
+	}
+	/**
+	 * records the narrow phase result of a pair, sends the events of passive pairs and adds touching 
+	 * 		pairs to the contact islands.
+	 * @param entry index of the pair in the pair cache
+	 * @param touching result of the narrow phase
+	 */
+	protected void checkPair(PhysicsObject a, PhysicsObject b, int entry, boolean touching){
+		final int aType = a.getType();
+		final int bType = b.getType();
+		final boolean passive = aType == PhysicsObject.PASSIVE_TYPE || bType == PhysicsObject.PASSIVE_TYPE;
+		final boolean wasTouching = pairCache.isTouching(entry);
+		if(!pairCache.isUnchanged(entry, a, b)){
+			pairCache.setTouching(entry, a, b, touching);
+		}
+		
+		if(passive){
+			if(touching != wasTouching || touching){
+				//only the passive object is told about the collision
+				PhysicsObject target = null;
+				PhysicsObject other = null;
+				if(aType != PhysicsObject.PASSIVE_TYPE){
+					target = b;
+					other = a;
+				}
+				else if(bType != PhysicsObject.PASSIVE_TYPE){
+					target = a;
+					other = b;
+				}
+				if(target != null){
+					if(!touching){
+						target.endContact(other);
+					}
+					else{
+						if(!wasTouching){
+							target.beginContact(other);
 						}
+						target.handleCollision(other);
 					}
 				}
 			}
 		}
+		else if(touching){
+			//a moving object ran into a sleeping one
+			wakeSleeping(a);
+			wakeSleeping(b);
+			//resolved with the rest of its island once every pair has been checked
+			islands.add(a, b, !wasTouching, entry);
+		}
+		else if(wasTouching){
+			//a sleeping object lost what it was resting on
+			wakeSleeping(a);
+			wakeSleeping(b);
+			a.endContact(b);
+			b.endContact(a);
+		}
+	}
+	/**
+	 * calls handleCollision for a touching pair that neither object moved, only the passive object is 
+	 * 		told if the pair has one
+	 */
+	static void handleRestingCollision(PhysicsObject a, PhysicsObject b){
+		final boolean passiveA = a.getType() == PhysicsObject.PASSIVE_TYPE;
+		final boolean passiveB = b.getType() == PhysicsObject.PASSIVE_TYPE;
+		if(passiveA && !passiveB){
+			a.handleCollision(b);
+		}
+		else if(passiveB && !passiveA){
+			b.handleCollision(a);
+		}
+		else if(!passiveA){
+			a.handleCollision(b);
+			b.handleCollision(a);
+		}
+	}
+	/**
+	 * @return true if the object has no vector or its vector is sleeping
+	 */
+	static boolean isResting(PhysicsObject object){
+		return object.getVector() == null || object.getVector().isSleeping();
+	}
+	/**
+	 * wakes the object if it is sleeping, an awake object keeps its count towards sleep
+	 */
+	static void wakeSleeping(PhysicsObject object){
+		if(object.getVector() != null && object.getVector().isSleeping()){
+			object.getVector().wake();
+		}
 	}
 	/**
-	 * takes two PhysicsObjects that have collided and moves them backward in time until they
-	 * 		are no longer overlapping.
+	 * finds when during the last step two objects first touched, from how far they have moved since 
+	 * 		the start of the step. earlier contacts of an island may already have changed the velocities, 
+	 * 		so the distance is not taken from them
+	 * @param normal receives the normal of the contact if not null
+	 * @return the time of impact from 0 to 1, 0 if they were already overlapping at the start of the 
+	 * 		step, otherwise TimeOfImpact.NONE
+	 */
+	protected double timeOfImpact(PhysicsObject a, PhysicsObject b, int time, Pair normal){
+		final double seconds = time/1000.0;
+		double dx = 0;
+		double dy = 0;
+		if(a.getVector() != null){
+			dx += a.getVector().getStepX(seconds);
+			dy += a.getVector().getStepY(seconds);
+		}
+		if(b.getVector() != null){
+			dx -= b.getVector().getStepX(seconds);
+			dy -= b.getVector().getStepY(seconds);
+		}
+		return TimeOfImpact.compute(a.getBoundary(), b.getBoundary(), -dx, -dy, dx, dy, normal);
+	}
+	/**
+	 * takes two PhysicsObjects that have collided and moves them backward in time to when they 
+	 * 		first touched.
 	 * @param a
 	 * @param b
-	 * @return returns how far back they went in time.
+	 * @param impact time of impact of the pair within the step
+	 * @return returns how far back they went in time, in milliseconds.
 	 */
-	protected int walkBack(PhysicsObject a,PhysicsObject b,int time){
-		
-		if(a.getVector() != null || b.getVector() != null){
-			if(a.getVector() == null){
-				PhysicsObject c = b;
-				b = a;
-				a = c;
-			}
-			a.getVector().moveVector(-time/2);
-			if(b.getVector() != null)
-			b.getVector().moveVector(-time/2);
-			
-			time = rBisect(0,time/2,time,a,b);
+	protected double walkBack(PhysicsObject a,PhysicsObject b,double impact,int time){
+		if(impact < 0 || impact >= 1){
+			return 0;
 		}
-		
-		return time;
+		final double back = time*(1 - impact);
+		rewind(a, 1 - impact, time);
+		rewind(b, 1 - impact, time);
+		return back;
 	}
 	/**
-	 * Recursive function to find the point when two physicsObjects collided, uses a binary search
-	 * @param left latest time with no collision found
-	 * @param cur  current spot,also current location of the two physicsObjects
-	 * @param right earliest time with collision found
+	 * moves an object back along the path it took since the start of the step
+	 * 	and sets its box again, only from the thread resolving the object
+	 * @param fraction part of the step to take back, from 0 to 1
 	 */
-	protected int rBisect(int left,int cur,int right,PhysicsObject a,PhysicsObject b){
-		int temp = cur;
-		if(a.getBoundary().collision(b.getBoundary())){
-			right = cur;
-			cur = (right + left)/2;
+	protected void rewind(PhysicsObject object, double fraction, int time){
+		final VectorObject vector = object.getVector();
+		if(vector != null && fraction != 0){
+			final GLPoint location = vector.getLocation();
+			final double seconds = time/1000.0;
+			location.setX(location.getX() - vector.getStepX(seconds)*fraction);
+			location.setY(location.getY() - vector.getStepY(seconds)*fraction);
+			object.getBoundary().updateBox();
+		}
+	}
+	/**
+	 * moves an object in a straight line at its current velocity
+	 * 	and sets its box again, only from the thread resolving the object
+	 * @param time milliseconds to move, negative to move back
+	 */
+	protected void advance(PhysicsObject object, double time){
+		final VectorObject vector = object.getVector();
+		if(vector != null && time != 0){
+			final GLPoint location = vector.getLocation();
+			final double seconds = time/1000.0;
+			location.setX(location.getX() + vector.getVelocityXComponent()*seconds);
+			location.setY(location.getY() + vector.getVelocityYComponent()*seconds);
+			object.getBoundary().updateBox();
 		}
-		else{
-			left = cur;
-			cur = (right + left)/2;
-		}
-		temp = cur - temp;
-		a.getVector().moveVector(temp);
-		if(b.getVector() != null)
-		b.getVector().moveVector(temp);
-		if(left < right-1)
-		cur = rBisect(left,cur,right,a,b);
-		
-		return cur;
 	}
 	/**
 	 * Resolves a collision betweeen two physics objects by changing their velocity magnitude and direction
@@ -490,21 +1520,41 @@ public class PhysicsEngine extends BaseObject{
 	 * @param b
 	 */
 	protected void resolveCollision(PhysicsObject a,PhysicsObject b){
+		if(dummyManifold.compute(a.getBoundary(), b.getBoundary())){
+			resolveCollision(a, b, dummyManifold);
+		}
+		else{
+			//touching without overlapping, there is no contact to read the normal from
+			a.getBoundary().getNormal(b.getBoundary(), scratchNormal);
+			resolveCollision(a, b, scratchNormal.x, scratchNormal.y);
+		}
+	}
+	/**
+	 * Resolves a collision betweeen two physics objects along the normal of their contact
+	 */
+	protected void resolveCollision(PhysicsObject a,PhysicsObject b,Manifold manifold){
+		resolveCollision(a, b, manifold.normalX, manifold.normalY);
+	}
+	/**
+	 * Resolves a collision betweeen two physics objects along a unit normal, the result is the same 
+	 * 		for either direction along it. the velocities are changed component-wise, the normal part of 
+	 * 		the velocity is exchanged between the objects or reflected as v - 2(v.n)n
+	 */
+	protected void resolveCollision(PhysicsObject a,PhysicsObject b,double normalX,double normalY){
 		//if both objects have velocity vectors
 		if(a.getVector() != null && b.getVector() != null){
 			VectorObject av = a.getVector();
 			VectorObject bv = b.getVector();
 			//calculate impulse
 			double impulse = (2 * av.getMass() * bv.getMass()/(av.getMass() + bv.getMass()));
-			final double normal = a.getBoundary().getNormal(b.getBoundary());
-			//differences in velocity
-			final double tempX = (av.getVelocityXComponent() - bv.getVelocityXComponent()) * Math.cos(normal);
-			final double tempY = (av.getVelocityYComponent() - bv.getVelocityYComponent()) * Math.sin(normal);
+			//differences in velocity along the normal
+			final double tempX = (av.getVelocityXComponent() - bv.getVelocityXComponent()) * normalX;
+			final double tempY = (av.getVelocityYComponent() - bv.getVelocityYComponent()) * normalY;
 			//account for mass
 			impulse = impulse * (tempX + tempY);
 			
-			final double impulseX = impulse * Math.cos(normal);
-			final double impulseY = impulse * Math.sin(normal);
+			final double impulseX = impulse * normalX;
+			final double impulseY = impulse * normalY;
 			//set new velocities
 			av.setVelocityXComponent(av.getVelocityXComponent()-impulseX/av.getMass() );
 			av.setVelocityYComponent(av.getVelocityYComponent() - impulseY/av.getMass());
@@ -515,25 +1565,12 @@ public class PhysicsEngine extends BaseObject{
 		}
 		//if only one of the objects has a velocity vector
 		else if(a.getVector() != null || b.getVector() != null){
-			//make sure a is the object with the vector
-			if(a.getVector() == null){
-				PhysicsObject c = b;
-				b = a;
-				a = c;
-			}
-			//get the vector and the normal of collision
-			VectorObject av = a.getVector();
-			final double normal = a.getBoundary().getNormal(b.getBoundary());
-			//calculate new direction
-			double dir = av.getVelocityDirection()+Math.PI;
-			
-			while(dir >= Math.PI*2) dir -= Math.PI*2;
-		
-			
-			final double delta = normal-dir;
-			dir += 2*delta;// + Math.PI;
-			//set the new direction, the magnitude will not change
-			av.setVelocityMagDir(av.getVelocityMagnitude(),dir);
+			//get the vector
+			VectorObject av = a.getVector() != null ? a.getVector() : b.getVector();
+			//reflect the velocity off the surface, the magnitude will not change
+			final double along = av.getVelocityXComponent()*normalX + av.getVelocityYComponent()*normalY;
+			av.setVelocityXComponent(av.getVelocityXComponent() - 2*along*normalX);
+			av.setVelocityYComponent(av.getVelocityYComponent() - 2*along*normalY);
 		}
 	}
 	/**
@@ -542,459 +1579,43 @@ public class PhysicsEngine extends BaseObject{
 	 * @param b
 	 */
 	protected void expunge(PhysicsObject a,PhysicsObject b){
-		//cases
-		// polygon *
-		// circle circle
-		// circle rectangle
-		// rectangle rectangle
-	
-		if(a.getBoundary().getPolygon() == null && b.getBoundary().getCircle() != null){
-			PhysicsObject temp = a;
-			a = b;
-			b = temp;
+		if(dummyManifold.compute(a.getBoundary(), b.getBoundary())){
+			expunge(a, b, dummyManifold);
 		}
-
-		if(a.getVector() != null && b.getVector() != null){///////both///////////////////////////////////////////
-			
-			if(a.getBoundary().getPolygon() != null){
-				if(b.getBoundary().getPolygon() != null){
-					Polygon p1 = a.getBoundary().getPolygon();
-					Polygon p2 = b.getBoundary().getPolygon();
-					//get the normal and the min distance of the polygons stored in a pair. x=normal y=mindistance
-					Pair normal = dummyPair;
-					Polygon.expunge(p1, p2, normal);
-					//each polygon will be moved by mindistance
-					
-					normal.y = normal.y/2;
-					GLPoint point = p1.getCenter();
-					double dx = normal.y * Math.cos(normal.x);
-					double dy = normal.y * Math.sin(normal.x);
-					
-					point.setX(point.getX() + dx);
-					point.setY(point.getY() + dy);
-					
-					point = p2.getCenter();
-
-					point.setX(point.getX() - dx);
-					point.setY(point.getY() - dy);
-					
-				}
-				else if(b.getBoundary().getCircle() != null){
-					Polygon p1 = a.getBoundary().getPolygon();
-					Circle c2 = b.getBoundary().getCircle();
-					//get the normal and the min distance of the polygons stored in a pair. x=normal y=mindistance
-					Pair normal = dummyPair;
-					Polygon.expunge(p1, c2, normal);
-					//each polygon will be moved by mindistance
-					
-					normal.y = normal.y/2;
-					GLPoint point = p1.getCenter();
-					double dx = normal.y * Math.cos(normal.x);
-					double dy = normal.y * Math.sin(normal.x);
-					
-					point.setX(point.getX() - dx);
-					point.setY(point.getY() - dy);
-					
-					point = c2.getCenter();
-
-					point.setX(point.getX() + dx);
-					point.setY(point.getY() +dy);
-				}
-				else if(b.getBoundary().getRectangle() != null){
-					Polygon p1 = a.getBoundary().getPolygon();
-					Rectangle r2 = b.getBoundary().getRectangle();
-					//get the normal and the min distance of the polygons stored in a pair. x=normal y=mindistance
-					Pair normal = dummyPair;
-					Polygon.expunge(p1, r2, normal);
-					//each polygon will be moved by mindistance
-			
-					normal.y = normal.y/2 + EXPUNGE_TOLERANCE;
-					GLPoint point = p1.getCenter();
-					double dx = normal.y * Math.cos(normal.x);
-					double dy = normal.y * Math.sin(normal.x);
-					
-					point.setX(point.getX() + dx);
-					point.setY(point.getY() + dy);
-					
-					point = r2.getCenter();
-
-					point.setX(point.getX() - dx);
-					point.setY(point.getY() - dy);
-				}
-			}
-			else if(a.getBoundary().getCircle() != null){
-				if(b.getBoundary().getCircle() != null){
-					Circle c1 = a.getBoundary().getCircle();
-					Circle c2 = b.getBoundary().getCircle();
-					
-					double normal = c1.getNormal(c2);
-					
-					double dis = c1.getCenter().distance(c2.getCenter());
-					
-					
-					dis =  ((c1.getRadius() + c2.getRadius())+EXPUNGE_TOLERANCE - dis)/2;
-					c2.getCenter().setX(c2.getCenter().getX() +(dis)*Math.cos(normal));
-					c2.getCenter().setY(c2.getCenter().getY() + (dis)*Math.sin(normal));
-					normal+= Math.PI;
-					c1.getCenter().setX(c1.getCenter().getX() +(dis)*Math.cos(normal));
-					c1.getCenter().setY(c1.getCenter().getY() + (dis)*Math.sin(normal));
-				}
-				else if(b.getBoundary().getRectangle() != null){
-					Circle c = a.getBoundary().getCircle();
-					Rectangle r = b.getBoundary().getRectangle();
-					double x;
-					double y;
-					double left = r.getLeft();
-					double right = r.getRight();
-					double top = r.getTop();
-					double bottom = r.getBottom();
-					double normal = c.getNormal(r);
-					if(c.getCenter().getX() > right){
-						x = right;
-					}
-					else if(c.getCenter().getX() < left){
-						x = left;
-					}
-					else{
-						x = c.getCenter().getX();
-					}
-					
-					if(c.getCenter().getY() > top){
-						y = top;
-					}
-					else if(c.getCenter().getY() < bottom){
-						y = bottom;
-					}
-					else{
-						y = c.getCenter().getY();
-					}
-					
-					//
-					if(x == c.getCenter().getX() && y == c.getCenter().getY()){
-						if(normal == 0){
-							c.getCenter().setX(c.getCenter().getX() + (c.getRadius() + (right-c.getCenter().getX()))/2);
-							r.getCenter().setX(r.getCenter().getX() - (c.getRadius() + (right-c.getCenter().getX()))/2);
-						}
-						else if(normal == Math.PI){
-							c.getCenter().setX(c.getCenter().getX() - (c.getRadius() + (c.getCenter().getX()-left))/2);
-							r.getCenter().setX(r.getCenter().getX() + (c.getRadius() + (c.getCenter().getX()-left))/2); 
-						}
-						else if(normal == Math.PI/2){
-							c.getCenter().setY(c.getCenter().getY() + (c.getRadius() + (top - c.getCenter().getY()))/2);
-							r.getCenter().setX(r.getCenter().getX() - (c.getRadius() + (top - c.getCenter().getY()))/2);
-						}
-						else{
-							c.getCenter().setY(c.getCenter().getY() - (c.getRadius() + (c.getCenter().getY()-bottom))/2);
-							r.getCenter().setX(r.getCenter().getX() + (c.getRadius() + (c.getCenter().getY()-bottom))/2);
-						}
-					}
-					else{
-						c.getCenter().setX(x + (c.getRadius()*Math.cos(normal))/2);
-						c.getCenter().setY(y + (c.getRadius()*Math.sin(normal))/2);
-						
-						r.getCenter().setX(r.getCenter().getX() - (c.getRadius()*Math.cos(normal))/2);
-						r.getCenter().setY(r.getCenter().getY() - (c.getRadius()*Math.sin(normal))/2);
-					}
-					//
-					/*
-					double dis = c.getCenter().distance(new Point(x,y));
-					
-					dis = (c.getRadius()+.1-dis)/2;
-					r.getCenter().x = r.getCenter().x +(dis)*Math.cos(normal);
-					r.getCenter().y = r.getCenter().y + (dis)*Math.sin(normal);
-					normal+= Math.PI;
-					c.getCenter().x = c.getCenter().x +(dis)*Math.cos(normal);
-					c.getCenter().y = c.getCenter().y + (dis)*Math.sin(normal);*/
-				}
-			}
-			else if(a.getBoundary().getRectangle() != null){
-				if(b.getBoundary().getRectangle() != null){
-					Rectangle r1 = a.getBoundary().getRectangle();
-					Rectangle r2 = b.getBoundary().getRectangle();
-					
-					double normal = r1.getNormal(r2);
-					if(normal == Math.PI || normal == 0){
-						if(r1.getLeft() > r2.getLeft()){
-							Rectangle temp = r1;
-							r1 = r2;
-							r2 = temp;
-						}
-						double delta = r2.getLeft() - r1.getLeft();
-						delta = (r1.getWidth() +EXPUNGE_TOLERANCE - delta)/2;
-						r1.getCenter().setX(r1.getCenter().getX() - delta);
-						r2.getCenter().setX(r2.getCenter().getX() + delta);
-					}
-					else{
-						if(r1.getTop() > r2.getTop()){
-							Rectangle temp = r1;
-							r1 = r2;
-							r2 = temp;
-						}
-						double delta = r2.getTop() - r1.getTop();
-						delta = (r2.getHeight() +EXPUNGE_TOLERANCE - delta)/2;
-						r1.getCenter().setY(r1.getCenter().getY() - delta);
-						r2.getCenter().setY(r2.getCenter().getY() + delta);
-					}
-				}	
-			}
-			
+	}
+	/**
+	 * This function will move two physics objects whose boundries are intersecting apart along the 
+	 * 		normal of their contact. when both can move each goes half way, otherwise the one that can 
+	 * 		moves the whole way
+	 * @param a
+	 * @param b
+	 * @param manifold contact of the pair, so threads can expunge at the same time
+	 */
+	protected void expunge(PhysicsObject a,PhysicsObject b,Manifold manifold){
+		final double distance = manifold.depth + EXPUNGE_TOLERANCE;
+		final double dx = manifold.normalX*distance;
+		final double dy = manifold.normalY*distance;
+		if(a.getVector() != null && b.getVector() != null){
+			translate(a, dx/2, dy/2);
+			translate(b, -dx/2, -dy/2);
 		}
-		else if(a.getVector() != null || b.getVector() != null){/////////one//////////////////////////////
-			if(a.getVector() == null){
-				PhysicsObject c = b;
-				b = a;
-				a = c;
-			}
-			if(a.getBoundary().getPolygon() != null){
-				if(b.getBoundary().getPolygon() != null){
-					Polygon p1 = a.getBoundary().getPolygon();
-					Polygon p2 = b.getBoundary().getPolygon();
-					//get the normal and the min distance of the polygons stored in a pair. x=normal y=mindistance
-					Pair normal = dummyPair;
-					Polygon.expunge(p1, p2, normal);
-					//each polygon will be moved by mindistance
-				
-					GLPoint point = p1.getCenter();
-			
-					point.setX(point.getX() + normal.y * Math.cos(normal.x) + EXPUNGE_TOLERANCE);
-					point.setY(point.getY() + normal.y * Math.sin(normal.x) + EXPUNGE_TOLERANCE);
-				}
-				else if(b.getBoundary().getCircle() != null){
-					Polygon p1 = a.getBoundary().getPolygon();
-					Circle c2 = b.getBoundary().getCircle();
-					//get the normal and the min distance of the polygons stored in a pair. x=normal y=mindistance
-					Pair normal = dummyPair;
-					Polygon.expunge(p1, c2, normal);
-					//each polygon will be moved by mindistance
-					GLPoint point = p1.getCenter();
-
-					point.setX(point.getX() - (normal.y * Math.cos(normal.x) + EXPUNGE_TOLERANCE));
-					point.setY(point.getY() - (normal.y * Math.sin(normal.x) + EXPUNGE_TOLERANCE));
-				}
-				else if(b.getBoundary().getRectangle() != null){
-					Polygon p1 = a.getBoundary().getPolygon();
-					Rectangle r2 = b.getBoundary().getRectangle();
-					//get the normal and the min distance of the polygons stored in a pair. x=normal y=mindistance
-					Pair normal = dummyPair;
-					Polygon.expunge(p1, r2, normal);
-					//each polygon will be moved by mindistance
-					GLPoint point = p1.getCenter();		
-					point.setX(point.getX() + (normal.y * Math.cos(normal.x) + EXPUNGE_TOLERANCE));
-					point.setY(point.getY() + (normal.y * Math.sin(normal.x) + EXPUNGE_TOLERANCE));
-				}
-			}
-			else if(a.getBoundary().getCircle() != null){
-				if(b.getBoundary().getPolygon() != null){
-					Polygon p2 = b.getBoundary().getPolygon();
-					Circle c1 = a.getBoundary().getCircle();
-					//get the normal and the min distance of the polygons stored in a pair. x=normal y=mindistance
-					Pair normal = dummyPair;
-					Polygon.expunge(p2, c1, normal);
-					//each polygon will be moved by mindistance
-					GLPoint point = c1.getCenter();
-
-					point.setX(point.getX() + (normal.y * Math.cos(normal.x) + EXPUNGE_TOLERANCE));
-					point.setY(point.getY() + (normal.y * Math.sin(normal.x) + EXPUNGE_TOLERANCE));
-				}
-				else if(b.getBoundary().getCircle() != null){
-					Circle c1 = a.getBoundary().getCircle();
-					Circle c2 = b.getBoundary().getCircle();
-					
-					double normal = c2.getNormal(c1);
-					
-					double dis = c1.getCenter().distance(c2.getCenter());
-					
-					
-					dis =  ((c1.getRadius() + c2.getRadius())+EXPUNGE_TOLERANCE - dis);
-
-					c1.getCenter().setX(c1.getCenter().getX() +(dis)*Math.cos(normal));
-					c1.getCenter().setY(c1.getCenter().getY() + (dis)*Math.sin(normal));
-				}
-				else if(b.getBoundary().getRectangle() != null){
-					Circle c = a.getBoundary().getCircle();
-					Rectangle r = b.getBoundary().getRectangle();
-					double left = r.getLeft();
-					double right = r.getRight();
-					double top = r.getTop();
-					double bottom = r.getBottom();
-					double normal = c.getNormal(r);
-					double x;
-					double y;
-					
-					if(c.getCenter().getX() >= right){
-						x = right;
-					}
-					else if(c.getCenter().getX() <= left){
-						x = left;
-					}
-					else{
-						x = c.getCenter().getX();
-					}
-					
-					if(c.getCenter().getY() >= top){
-						y =top;
-					}
-					else if(c.getCenter().getY() <= bottom){
-						y = bottom;
-					}
-					else{
-						y = c.getCenter().getY();
-					}
-					
-					if(x == c.getCenter().getX() && y == c.getCenter().getY()){
-						if(normal == 0){
-							c.getCenter().setX(c.getCenter().getX() + (c.getRadius() + (right-c.getCenter().getX())));
-						}
-						else if(normal == Math.PI){
-							c.getCenter().setX(c.getCenter().getX() - (c.getRadius() + (c.getCenter().getX()-left)));
-						}
-						else if(normal == Math.PI/2){
-							c.getCenter().setY(c.getCenter().getY() + (c.getRadius() + (top - c.getCenter().getY())));
-						}
-						else{
-							c.getCenter().setY(c.getCenter().getY() - (c.getRadius() + (c.getCenter().getY()-bottom)));
-						}
-					}
-					else{
-						c.getCenter().setX(x + c.getRadius()*Math.cos(normal));
-						c.getCenter().setY(y + c.getRadius()*Math.sin(normal));
-					}
-					
-					
-				}
-			}
-			else if(a.getBoundary().getRectangle() != null){
-				if(b.getBoundary().getPolygon() != null){
-					Polygon p2 = b.getBoundary().getPolygon();
-					Rectangle r1 = a.getBoundary().getRectangle();
-					//get the normal and the min distance of the polygons stored in a pair. x=normal y=mindistance
-					Pair normal = dummyPair;
-					Polygon.expunge(p2, r1, normal);
-					//each polygon will be moved by mindistance
-					GLPoint point = r1.getCenter();		
-					point.setX(point.getX() - (normal.y * Math.cos(normal.x) + EXPUNGE_TOLERANCE));
-					point.setY(point.getY() - (normal.y * Math.sin(normal.x) + EXPUNGE_TOLERANCE));
-				}
-				else if(b.getBoundary().getCircle() != null){//broke*************************************solved
-					Circle c = b.getBoundary().getCircle();
-					Rectangle r = a.getBoundary().getRectangle();
-					double left = r.getLeft();
-					double right = r.getRight();
-					double top = r.getTop();
-					double bottom = r.getBottom();
-					double normal = c.getNormal(r);
-					double x;
-					double y;
-					
-					if(c.getCenter().getX() >= right){
-						x = right;
-					}
-					else if(c.getCenter().getX() <= left){
-						x = left;
-					}
-					else{
-						x = c.getCenter().getX();
-					}
-					
-					if(c.getCenter().getY() >= top){
-						y =top;
-					}
-					else if(c.getCenter().getY() <= bottom){
-						y = bottom;
-					}
-					else{
-						y = c.getCenter().getY();
-					}
-					
-					if(x == c.getCenter().getX() && y == c.getCenter().getY()){
-						if(normal == 0){
-							
-							r.getCenter().setX(r.getCenter().getX() - (c.getRadius() + (right-c.getCenter().getX())));
-						}
-						else if(normal == Math.PI){
-							
-							r.getCenter().setX(r.getCenter().getX() + (c.getRadius() + (c.getCenter().getX()-left)));
-						}
-						else if(normal == Math.PI/2){
-							
-							r.getCenter().setY(r.getCenter().getY() - (c.getRadius() + (top - c.getCenter().getY())));
-						}
-						else{
-							
-							r.getCenter().setY(r.getCenter().getY() + (c.getRadius() + (c.getCenter().getY()-bottom)));
-						}
-					}
-					else{		
-						r.getCenter().setX(r.getCenter().getX() - c.getRadius()*Math.cos(normal));
-						r.getCenter().setY(r.getCenter().getY() - c.getRadius()*Math.sin(normal));
-					}
-					/*Circle c = b.getBoundry().getCircle();
-					Rectangle r = a.getBoundry().getRectangle();
-					double x;
-					double y;
-					double normal = c.getNormal(r);
-					if(c.getCenter().x > r.getCenter().x + r.getWidth()){
-						x = r.getCenter().x + r.getWidth();
-					}
-					else if(c.getCenter().x < r.getCenter().x){
-						x = r.getCenter().x;
-					}
-					else{
-						x = c.getCenter().x;
-					}
-					
-					if(c.getCenter().y > r.getCenter().y){
-						y = r.getCenter().y;
-					}
-					else if(c.getCenter().y < r.getCenter().y - r.getHeight()){
-						y = r.getCenter().y - r.getHeight();
-					}
-					else{
-						y = c.getCenter().y;
-					}
-					
-					double dis = c.getCenter().distance(new Point(x,y));
-					
-					dis = (c.getRadius()+.1-dis);
-					r.getCenter().x = r.getCenter().x +(dis)*Math.cos(normal);
-					r.getCenter().y = r.getCenter().y + (dis)*Math.sin(normal);
-*/
-				}
-				else if(b.getBoundary().getRectangle() != null){
-					Rectangle r1 = a.getBoundary().getRectangle();
-					Rectangle r2 = b.getBoundary().getRectangle();
-					boolean flag = true;
-					double normal = r1.getNormal(r2);
-					if(normal == Math.PI || normal == 0){
-						
-						if(r1.getLeft() > r2.getLeft()){
-							Rectangle temp = r1;
-							r1 = r2;
-							r2 = temp;
-							flag = false;
-						}
-						double delta = r2.getLeft() - r1.getLeft();
-						delta = (r1.getWidth() +EXPUNGE_TOLERANCE - delta);
-						if(flag)r1.getCenter().setX(r1.getCenter().getX() - delta);
-						else    r2.getCenter().setX(r2.getCenter().getX() + delta);
-					
-					}
-					else{
-						if(r1.getTop() > r2.getTop()){
-							Rectangle temp = r1;
-							r1 = r2;
-							r2 = temp;
-							flag = false;
-						}
-						double delta = r2.getTop() - r1.getTop();
-						delta = (r2.getHeight() +EXPUNGE_TOLERANCE - delta);
-						if(flag) r1.getCenter().setY(r1.getCenter().getY() - delta);
-						else     r2.getCenter().setY(r2.getCenter().getY() + delta);
-					}
-				}	
-			}
+		else if(a.getVector() != null){
+			translate(a, dx, dy);
+		}
+		else if(b.getVector() != null){
+			translate(b, -dx, -dy);
 		}
 	}
+	/**
+	 * moves the boundary of an object, and the object with it
+	 */
+	private void translate(PhysicsObject object, double dx, double dy){
+		final Boundary boundary = object.getBoundary();
+		final GLPoint location = boundary.getLocation();
+		location.setX(location.getX() + dx);
+		location.setY(location.getY() + dy);
+		boundary.updateBox();
+	}
 
 	@Override
 	public void reset() {
@@ -22,8 +22,28 @@ import des.game.boundary.Boundary;
 
 public class PhysicsObject extends GameComponent{
 	public static final int PASSIVE_TYPE = 0;
+	private static int sNextId = 0;
+	/**
+	 * unique id of this object, used to key cached collision pairs
+	 */
+	public final int id;
 
 	public int type;
+	/**
+	 * bit of the collision layer this object is in and the bits of the layers it collides with. set from
+	 * 	the collision matrix when the object is added or its type changes, unless set with setCollisionFilter
+	 */
+	public int category;
+	public int mask;
+	/**
+	 * bit of the team this object is on, objects on the same team do not collide. 0 when it has no team
+	 */
+	public int teamBits;
+	/**
+	 * flags of the tiles the object ran into during the last step it moved, 0 when it hit none
+	 */
+	public int tileFlags;
+	private boolean customFilter;
 	public VectorObject vector;
 	public Field field;
 	public Boundary boundary;
@@ -32,15 +52,26 @@ public class PhysicsObject extends GameComponent{
 	public boolean active;
 
 	public boolean hasVector;
+	/**
+	 * handle of this object in a broadphase that keeps state between frames, -1 when it has none
+	 */
+	public int proxyId;
+	/**
+	 * frame stamp and index of this object in the contact islands, only valid while the stamp matches
+	 */
+	int islandStamp;
+	int islandIndex;
 
 	
 	public PhysicsObject(){
 		super();
 		super.setPhase(GameComponent.ComponentPhases.PHYSICS_OBJECT.ordinal());
+		id = sNextId++;
 		active = true;
 		type = 1;
 		location = new GLPoint();
-		
+		proxyId = -1;
+		updateFilter();
 	}
 	/**
 	 * 
@@ -51,12 +82,15 @@ public class PhysicsObject extends GameComponent{
 	 */
 	public PhysicsObject(Boundary b,VectorObject v,Field f, GLPoint p){
 		super();
+		id = sNextId++;
         boundary = b; 
         vector = v;
         field = f;
       
 		location = p;
 		type = 1;
+		proxyId = -1;
+		updateFilter();
 	}
 	
     public void initializeFromTemplate(GameComponent other, float x,float y,float orientation,float velocity,float lifetime){
@@ -91,6 +125,7 @@ public class PhysicsObject extends GameComponent{
 	}
 	public void setVector(VectorObject vector) {
 		this.vector = vector;
+		invalidatePartition();
 	}
 	/**
 	 * Gets a reference to the Field of this object.
@@ -114,6 +149,7 @@ public class PhysicsObject extends GameComponent{
 	}
 	public void add(){
 		active = true;
+		updateFilter();
 		PhysicsObjectSet.instance.add(this);
 		if(boundary != null) BoundarySet.instance.add(this);
 		if(vector != null) vector.add();
@@ -133,6 +169,42 @@ public class PhysicsObject extends GameComponent{
 			cb.handleCollision(other.getCollisionBehavior());
 		}
 	}
+	/**
+	 * called by the Physics Engine the first frame this object touches other, before handleCollision.
+	 * 	only reaches the collision behavior if it is a ContactBehavior.
+	 * @param other PhysicsObject that has started touching this object
+	 */
+	public void beginContact(PhysicsObject other){
+		CollisionBehavior cb = getCollisionBehavior();
+		
+		if(cb instanceof ContactBehavior){
+			((ContactBehavior)cb).beginContact(other.getCollisionBehavior());
+		}
+	}
+	/**
+	 * called by the Physics Engine the first frame this object is no longer touching other.
+	 * 	only reaches the collision behavior if it is a ContactBehavior.
+	 * @param other PhysicsObject that was touching this object
+	 */
+	public void endContact(PhysicsObject other){
+		CollisionBehavior cb = getCollisionBehavior();
+		
+		if(cb instanceof ContactBehavior){
+			((ContactBehavior)cb).endContact(other.getCollisionBehavior());
+		}
+	}
+	/**
+	 * called by the Physics Engine every step this object ran into the tiles of the level.
+	 * 	only reaches the collision behavior if it is a TileBehavior.
+	 * @param flags flags of the tiles that were hit
+	 */
+	public void handleTileCollision(int flags){
+		CollisionBehavior cb = getCollisionBehavior();
+		
+		if(cb instanceof TileBehavior){
+			((TileBehavior)cb).handleTileCollision(flags);
+		}
+	}
 	/**
 	 * Value of type used in the collision matrix, serves as an index in the matrix
 	 * @return value of type
@@ -147,6 +219,60 @@ public class PhysicsObject extends GameComponent{
 	 */
 	public void setType(int t){
 		type = t;
+		updateFilter();
+		invalidatePartition();
+	}
+	/**
+	 * @return true if each object is in a layer the other collides with and they are not on the same team. 
+	 * 	a pair of types only collides when the collision matrix allows it in both directions.
+	 */
+	public boolean canCollide(PhysicsObject other){
+		return (category & other.mask) != 0 && (other.category & mask) != 0 && (teamBits & other.teamBits) == 0;
+	}
+	/**
+	 * sets the collision layers directly instead of taking them from the type and the collision matrix
+	 * @param category bit of the layer this object is in
+	 * @param mask bits of the layers it collides with
+	 */
+	public void setCollisionFilter(int category, int mask){
+		customFilter = true;
+		this.category = category;
+		this.mask = mask;
+		invalidatePartition();
+	}
+	/**
+	 * goes back to taking the collision layers from the type and the collision matrix
+	 */
+	public void clearCollisionFilter(){
+		customFilter = false;
+		updateFilter();
+		invalidatePartition();
+	}
+	/**
+	 * puts the object on a team, objects on the same team do not collide with each other
+	 * @param team value of GameObject.team, less than 0 for no team
+	 */
+	public void setTeam(int team){
+		teamBits = team < 0 || team >= 32 ? 0 : 1 << team;
+		invalidatePartition();
+	}
+	/**
+	 * the static broadphase indexes static objects by their layers once, so it has to be rebuilt when 
+	 * 	they change
+	 */
+	private static void invalidatePartition(){
+		if(BoundarySet.instance != null){
+			BoundarySet.instance.invalidatePartition();
+		}
+	}
+	/**
+	 * sets the collision layers from the type, called again when the collision matrix changes
+	 */
+	void updateFilter(){
+		if(!customFilter){
+			category = BoundarySet.categoryOf(type);
+			mask = BoundarySet.maskOf(type);
+		}
 	}
 	/**
 	 * gets reference to location.
@@ -163,7 +289,8 @@ public class PhysicsObject extends GameComponent{
 	}
 	public void haltMotion(){
 		if(this.vector != null){
-			this.vector.velocity.xComponent = this.vector.velocity.yComponent = 0d;
+			this.vector.velocity.setXComponent(0d);
+			this.vector.velocity.setYComponent(0d);
 		}
 	}
 	public void remove(){
@@ -185,6 +312,7 @@ public class PhysicsObject extends GameComponent{
 		vector = null;
 		field = null;
 		boundary = null;
+		tileFlags = 0;
 		
 		collisionBehavior = null;
 		
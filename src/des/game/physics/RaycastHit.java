@@ -0,0 +1,65 @@
+/*******************************************************************************
+ * Copyright 2011 Douglas Siemon
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package des.game.physics;
+
+import des.game.base.AllocationGuard;
+
+/**
+ * The first object a ray or shape cast by the physics engine hit. Hits are meant to be allocated once 
+ * 	and filled again by each cast.
+ */
+public class RaycastHit extends AllocationGuard{
+	/**
+	 * the object that was hit, null when the ray hit nothing or hit a tile
+	 */
+	public PhysicsObject object;
+	/**
+	 * flags of the tile that was hit, TileCollision.EMPTY when the ray hit an object or nothing
+	 */
+	public int tileFlags;
+	/**
+	 * fraction of the ray from start to end before the hit, from 0 to 1
+	 */
+	public double fraction;
+	/**
+	 * distance from the start of the ray, or the shape's starting location, to the hit
+	 */
+	public double distance;
+	/**
+	 * point where the ray hit. for a shape cast, how far the shape moved before it hit
+	 */
+	public double x;
+	public double y;
+	/**
+	 * unit normal of the surface that was hit
+	 */
+	public double normalX;
+	public double normalY;
+	
+	public RaycastHit(){
+		super();
+		reset();
+	}
+	
+	public void reset(){
+		object = null;
+		tileFlags = TileCollision.EMPTY;
+		fraction = 1;
+		distance = 0;
+		x = y = 0;
+		normalX = normalY = 0;
+	}
+}
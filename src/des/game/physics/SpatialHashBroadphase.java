@@ -0,0 +1,376 @@
+/*******************************************************************************
+ * Copyright 2011 Douglas Siemon
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package des.game.physics;
+
+import des.game.base.FixedSizeArray;
+import des.game.boundary.Boundary;
+
+/**
+ * A uniform grid broadphase stored in a hash table. each object is inserted into every cell its
+ * 	bounding box covers, and only objects sharing a cell are compared. unlike the sweep this does
+ * 	not degrade when many objects share the same x band.
+ * 
+ * A pair of objects may share several cells, so a pair is only reported by the cell that contains
+ * 	the minimum corner of the overlap of the two boxes. objects that cover more than
+ * 	MAX_CELLS_PER_OBJECT cells are kept in a separate list and compared against everything.
+ */
+public class SpatialHashBroadphase extends Broadphase{
+	public static final int MAX_CELLS_PER_OBJECT = 64;
+	private static final int MIN_TABLE_SIZE = 64;
+	
+	private final double cellSize;
+	private final double inverseCellSize;
+	//hash table, buckets are cleared lazily by comparing their stamp with the current stamp
+	private int[] bucketHead;
+	private int[] bucketStamp;
+	private int stamp;
+	private int mask;
+	//entries are (object, cell) pairs chained in the buckets
+	private int[] entryNext;
+	private int[] entryObject;
+	private int[] entryCellX;
+	private int[] entryCellY;
+	private int entryCount;
+	//copies of the bounding boxes, indexed the same as objects
+	private Object[] objects;
+	private int count;
+	private double[] minX;
+	private double[] minY;
+	private double[] maxX;
+	private double[] maxY;
+	//objects that cover too many cells
+	private int[] large;
+	private boolean[] isLarge;
+	private int largeCount;
+	//marks the objects already returned by the current query
+	private int[] queryStamp;
+	private int queryCount;
+	
+	/**
+	 * @param cellSize width and height of each cell, should be around the size of the common moving objects
+	 * @param capacity expected number of objects
+	 */
+	public SpatialHashBroadphase(double cellSize, int capacity){
+		if(cellSize <= 0){
+			cellSize = 1;
+		}
+		if(capacity < 1){
+			capacity = 1;
+		}
+		this.cellSize = cellSize;
+		this.inverseCellSize = 1.0d/cellSize;
+		
+		int tableSize = MIN_TABLE_SIZE;
+		while(tableSize < capacity*2){
+			tableSize *= 2;
+		}
+		allocateTable(tableSize);
+		allocateEntries(capacity*2);
+		allocateObjects(capacity);
+		stamp = 0;
+	}
+	
+	public double getCellSize(){
+		return cellSize;
+	}
+	@Override
+	public Broadphase newInstance() {
+		return new SpatialHashBroadphase(cellSize, 1);
+	}
+	
+	@Override
+	public void update(Object[] objects, int count) {
+		if(minX.length < count){
+			allocateObjects(count);
+		}
+		this.objects = objects;
+		this.count = count;
+		entryCount = 0;
+		largeCount = 0;
+		stamp++;
+		if(stamp == Integer.MAX_VALUE){
+			//the stamps wrapped, clear every bucket once
+			stamp = 1;
+			for(int i = 0; i < bucketStamp.length; i++){
+				bucketStamp[i] = 0;
+			}
+		}
+		
+		for(int i = 0; i < count; i++){
+			final Boundary boundary = ((PhysicsObject)objects[i]).getBoundary();
+			final double x0 = boundary.getXProjection().getStart();
+			final double x1 = boundary.getXProjection().getEnd();
+			final double y0 = boundary.getYProjection().getStart();
+			final double y1 = boundary.getYProjection().getEnd();
+			minX[i] = x0;
+			maxX[i] = x1;
+			minY[i] = y0;
+			maxY[i] = y1;
+			
+			final int cx0 = cell(x0);
+			final int cx1 = cell(x1);
+			final int cy0 = cell(y0);
+			final int cy1 = cell(y1);
+			isLarge[i] = false;
+			if((cx1 - cx0 + 1)*(cy1 - cy0 + 1) > MAX_CELLS_PER_OBJECT){
+				large[largeCount++] = i;
+				isLarge[i] = true;
+			}
+			else{
+				for(int cx = cx0; cx <= cx1; cx++){
+					for(int cy = cy0; cy <= cy1; cy++){
+						insert(i, cx, cy);
+					}
+				}
+			}
+		}
+		//keep the load factor under one for the next frame
+		if(entryCount > bucketHead.length){
+			int tableSize = bucketHead.length;
+			while(tableSize < entryCount*2){
+				tableSize *= 2;
+			}
+			allocateTable(tableSize);
+			//link the entries into the new table so this frame's queries still find them
+			stamp = 1;
+			for(int e = 0; e < entryCount; e++){
+				final int h = hash(entryCellX[e], entryCellY[e]);
+				if(bucketStamp[h] != stamp){
+					bucketStamp[h] = stamp;
+					bucketHead[h] = -1;
+				}
+				entryNext[e] = bucketHead[h];
+				bucketHead[h] = e;
+			}
+		}
+	}
+
+	@Override
+	public void findPairs(PairBuffer pairs) {
+		final int[] entryNext = this.entryNext;
+		final int[] entryObject = this.entryObject;
+		final int[] entryCellX = this.entryCellX;
+		final int[] entryCellY = this.entryCellY;
+		
+		for(int e = 0; e < entryCount; e++){
+			final int i = entryObject[e];
+			final int cx = entryCellX[e];
+			final int cy = entryCellY[e];
+			//entries are prepended, so the chain after e holds the entries inserted before it
+			for(int f = entryNext[e]; f != -1; f = entryNext[f]){
+				final int j = entryObject[f];
+				if(j != i && entryCellX[f] == cx && entryCellY[f] == cy && overlap(i,j)){
+					//only the cell holding the corner of the overlap reports the pair
+					if(cell(Math.max(minX[i], minX[j])) == cx && cell(Math.max(minY[i], minY[j])) == cy){
+						addPair(i, j, pairs);
+					}
+				}
+			}
+		}
+		
+		for(int k = 0; k < largeCount; k++){
+			final int i = large[k];
+			for(int j = 0; j < count; j++){
+				//pairs of large objects are reported by the one with the lower index
+				if(j != i && (j > i || !isLarge[j]) && overlap(i,j)){
+					addPair(i, j, pairs);
+				}
+			}
+		}
+	}
+	private void addPair(int i, int j, PairBuffer pairs){
+		if(i < j){
+			pairs.add((PhysicsObject)objects[i], (PhysicsObject)objects[j]);
+		}
+		else{
+			pairs.add((PhysicsObject)objects[j], (PhysicsObject)objects[i]);
+		}
+	}
+	/**
+	 * walks the cells the segment passes through in order, so long rays only look at the cells they cross
+	 */
+	@Override
+	public void queryRay(double startX, double startY, double endX, double endY, FixedSizeArray<PhysicsObject> result) {
+		int cx = cell(startX);
+		int cy = cell(startY);
+		final int endCX = cell(endX);
+		final int endCY = cell(endY);
+		final int cells = Math.abs(endCX - cx) + Math.abs(endCY - cy) + 1;
+		if(cells > entryCount){
+			for(int i = 0; i < count && result.getCount() < result.getCapacity(); i++){
+				if(segmentOverlap(i, startX, startY, endX, endY)){
+					result.add((PhysicsObject)objects[i]);
+				}
+			}
+			return;
+		}
+		
+		nextQuery();
+		final double dx = endX - startX;
+		final double dy = endY - startY;
+		final int stepX = dx > 0 ? 1 : -1;
+		final int stepY = dy > 0 ? 1 : -1;
+		//fraction of the segment between two cell borders, and to the next border, on each axis
+		final double deltaX = dx == 0 ? Double.MAX_VALUE : cellSize/Math.abs(dx);
+		final double deltaY = dy == 0 ? Double.MAX_VALUE : cellSize/Math.abs(dy);
+		double nextX = dx == 0 ? Double.MAX_VALUE : ((dx > 0 ? cx + 1 : cx)*cellSize - startX)/dx;
+		double nextY = dy == 0 ? Double.MAX_VALUE : ((dy > 0 ? cy + 1 : cy)*cellSize - startY)/dy;
+		for(int k = 0; k < cells; k++){
+			final int h = hash(cx, cy);
+			if(bucketStamp[h] == stamp){
+				for(int e = bucketHead[h]; e != -1; e = entryNext[e]){
+					final int i = entryObject[e];
+					if(entryCellX[e] == cx && entryCellY[e] == cy && queryStamp[i] != queryCount){
+						queryStamp[i] = queryCount;
+						if(segmentOverlap(i, startX, startY, endX, endY) && result.getCount() < result.getCapacity()){
+							result.add((PhysicsObject)objects[i]);
+						}
+					}
+				}
+			}
+			//step into the neighbouring cell whose border is crossed first, never past the last cell
+			if(cy == endCY || (cx != endCX && nextX < nextY)){
+				cx += stepX;
+				nextX += deltaX;
+			}
+			else{
+				cy += stepY;
+				nextY += deltaY;
+			}
+		}
+		for(int k = 0; k < largeCount; k++){
+			final int i = large[k];
+			if(segmentOverlap(i, startX, startY, endX, endY) && result.getCount() < result.getCapacity()){
+				result.add((PhysicsObject)objects[i]);
+			}
+		}
+	}
+	
+	private void nextQuery(){
+		queryCount++;
+		if(queryCount == Integer.MAX_VALUE){
+			queryCount = 1;
+			for(int i = 0; i < queryStamp.length; i++){
+				queryStamp[i] = 0;
+			}
+		}
+	}
+	private boolean overlap(int i, int j){
+		return minX[i] <= maxX[j] && minX[j] <= maxX[i] && minY[i] <= maxY[j] && minY[j] <= maxY[i];
+	}
+	private int cell(double value){
+		return (int)Math.floor(value*inverseCellSize);
+	}
+	private int hash(int cx, int cy){
+		return ((cx*73856093) ^ (cy*19349663)) & mask;
+	}
+	private void insert(int object, int cx, int cy){
+		if(entryCount == entryNext.length){
+			allocateEntries(entryCount*2);
+		}
+		final int h = hash(cx, cy);
+		if(bucketStamp[h] != stamp){
+			bucketStamp[h] = stamp;
+			bucketHead[h] = -1;
+		}
+		entryObject[entryCount] = object;
+		entryCellX[entryCount] = cx;
+		entryCellY[entryCount] = cy;
+		entryNext[entryCount] = bucketHead[h];
+		bucketHead[h] = entryCount;
+		entryCount++;
+	}
+	private void allocateTable(int size){
+		bucketHead = new int[size];
+		bucketStamp = new int[size];
+		mask = size - 1;
+	}
+	private void allocateEntries(int size){
+		int[] next = new int[size];
+		int[] object = new int[size];
+		int[] cellX = new int[size];
+		int[] cellY = new int[size];
+		if(entryNext != null){
+			System.arraycopy(entryNext, 0, next, 0, entryCount);
+			System.arraycopy(entryObject, 0, object, 0, entryCount);
+			System.arraycopy(entryCellX, 0, cellX, 0, entryCount);
+			System.arraycopy(entryCellY, 0, cellY, 0, entryCount);
+		}
+		entryNext = next;
+		entryObject = object;
+		entryCellX = cellX;
+		entryCellY = cellY;
+	}
+	private void allocateObjects(int size){
+		minX = new double[size];
+		minY = new double[size];
+		maxX = new double[size];
+		maxY = new double[size];
+		large = new int[size];
+		isLarge = new boolean[size];
+		queryStamp = new int[size];
+		queryCount = 0;
+	}
+	
+	@Override
+	public void query(double minX, double minY, double maxX, double maxY, FixedSizeArray<PhysicsObject> result) {
+		final int cx0 = cell(minX);
+		final int cx1 = cell(maxX);
+		final int cy0 = cell(minY);
+		final int cy1 = cell(maxY);
+		
+		if((cx1 - cx0 + 1)*(cy1 - cy0 + 1) > entryCount){
+			//the query covers more cells than there are entries, testing every object is cheaper
+			for(int i = 0; i < count && result.getCount() < result.getCapacity(); i++){
+				if(overlap(i, minX, minY, maxX, maxY)){
+					result.add((PhysicsObject)objects[i]);
+				}
+			}
+			return;
+		}
+		
+		nextQuery();
+		for(int cx = cx0; cx <= cx1; cx++){
+			for(int cy = cy0; cy <= cy1; cy++){
+				final int h = hash(cx, cy);
+				if(bucketStamp[h] != stamp){
+					continue;
+				}
+				for(int e = bucketHead[h]; e != -1; e = entryNext[e]){
+					final int i = entryObject[e];
+					if(entryCellX[e] == cx && entryCellY[e] == cy && queryStamp[i] != queryCount){
+						queryStamp[i] = queryCount;
+						if(overlap(i, minX, minY, maxX, maxY) && result.getCount() < result.getCapacity()){
+							result.add((PhysicsObject)objects[i]);
+						}
+					}
+				}
+			}
+		}
+		for(int k = 0; k < largeCount; k++){
+			final int i = large[k];
+			if(overlap(i, minX, minY, maxX, maxY) && result.getCount() < result.getCapacity()){
+				result.add((PhysicsObject)objects[i]);
+			}
+		}
+	}
+	private boolean overlap(int i, double x0, double y0, double x1, double y1){
+		return minX[i] <= x1 && x0 <= maxX[i] && minY[i] <= y1 && y0 <= maxY[i];
+	}
+	private boolean segmentOverlap(int i, double startX, double startY, double endX, double endY){
+		return segmentOverlap(startX, startY, endX, endY, minX[i], minY[i], maxX[i], maxY[i]);
+	}
+}
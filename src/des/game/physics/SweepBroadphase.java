@@ -0,0 +1,114 @@
+/*******************************************************************************
+ * Copyright 2011 Douglas Siemon
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package des.game.physics;
+
+import des.game.base.FixedSizeArray;
+import des.game.boundary.BoundingBox;
+
+/**
+ * The original sweep and prune broadphase. the objects are insertion sorted on the start of their
+ * 	x projection and then swept, so each object is only compared to the objects that follow it
+ * 	until their x projections stop overlapping.
+ */
+public class SweepBroadphase extends Broadphase{
+	private Object[] objects;
+	private int count;
+	//widest x projection, bounds how far before a query an overlapping object can start
+	private double maxWidth;
+	
+	public SweepBroadphase(){
+		objects = null;
+		count = 0;
+	}
+	@Override
+	public Broadphase newInstance() {
+		return new SweepBroadphase();
+	}
+	/**
+	 * performs an insertion sort on the array in place. after the physics engine moves the vectors the order of the 
+	 * 	boundaries is assumed to change minimally, so the array should be already be near sorted.
+	 */
+	@Override
+	public void update(Object[] objects, int count) {
+		this.objects = objects;
+		this.count = count;
+		
+		for(int i = 1; i < count; i++){
+			for(int j = i-1; j >= 0 && ((PhysicsObject)objects[j+1]).getBoundary().getXProjection().lessThan(((PhysicsObject)objects[j]).getBoundary().getXProjection()); j--){
+				Object temp = objects[j];
+				objects[j]=objects[j+1];
+				objects[j+1]=temp;
+			}
+		}
+		maxWidth = 0;
+		for(int i = 0; i < count; i++){
+			final BoundingBox x = ((PhysicsObject)objects[i]).getBoundary().getXProjection();
+			if(x.getEnd() - x.getStart() > maxWidth){
+				maxWidth = x.getEnd() - x.getStart();
+			}
+		}
+	}
+
+	@Override
+	public void findPairs(PairBuffer pairs) {
+		final Object[] objects = this.objects;
+		final int size = count;
+		for(int i = 0; i < size-1; i++){
+			final PhysicsObject a = (PhysicsObject)objects[i];
+			final BoundingBox aX = a.getBoundary().getXProjection();
+			final BoundingBox aY = a.getBoundary().getYProjection();
+			//start at the next boundary in the sorted list and check until the bounding boxes 
+			//   no longer overlap, after this no boundaries in the list will overlap with this 
+			//   boundary as they are sorted
+			for(int j = i+1; j < size && aX.overlap(((PhysicsObject)objects[j]).getBoundary().getXProjection()); j++){
+				final PhysicsObject b = (PhysicsObject)objects[j];
+				if(aY.overlap(b.getBoundary().getYProjection())){
+					pairs.add(a, b);
+				}
+			}
+		}
+	}
+	
+	@Override
+	public void query(double minX, double minY, double maxX, double maxY, FixedSizeArray<PhysicsObject> result) {
+		final Object[] objects = this.objects;
+		final int size = count;
+		//binary search for the first object that could reach the query
+		final double first = minX - maxWidth;
+		int low = 0;
+		int high = size;
+		while(low < high){
+			final int mid = (low + high) >>> 1;
+			if(((PhysicsObject)objects[mid]).getBoundary().getXProjection().getStart() < first){
+				low = mid + 1;
+			}
+			else{
+				high = mid;
+			}
+		}
+		for(int i = low; i < size && result.getCount() < result.getCapacity(); i++){
+			final PhysicsObject object = (PhysicsObject)objects[i];
+			final BoundingBox x = object.getBoundary().getXProjection();
+			if(x.getStart() > maxX){
+				break;
+			}
+			final BoundingBox y = object.getBoundary().getYProjection();
+			if(x.getEnd() >= minX && y.getStart() <= maxY && y.getEnd() >= minY){
+				result.add(object);
+			}
+		}
+	}
+}
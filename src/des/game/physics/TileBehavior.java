@@ -0,0 +1,28 @@
+/*******************************************************************************
+ * Copyright 2011 Douglas Siemon
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package des.game.physics;
+
+/**
+ * A CollisionBehavior that also wants to know when its object runs into the tiles of the level. 
+ * 	handleCollision is only called for physics objects, tiles have no behavior of their own.
+ */
+public interface TileBehavior extends CollisionBehavior {
+	/**
+	 * called every step the object ran into tiles, after the tiles have stopped it
+	 * @param flags flags of the tiles it hit, see TileCollision
+	 */
+	public void handleTileCollision(int flags);
+}
@@ -0,0 +1,435 @@
+/*******************************************************************************
+ * Copyright 2011 Douglas Siemon
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package des.game.physics;
+
+import des.game.base.GLPoint;
+import des.game.boundary.Boundary;
+import des.game.boundary.Circle;
+import des.game.boundary.CompoundBoundary;
+import des.game.boundary.Manifold;
+import des.game.boundary.Pair;
+import des.game.boundary.Polygon;
+import des.game.boundary.Rectangle;
+import des.game.boundary.TimeOfImpact;
+import des.game.drawing.TiledWorld;
+
+/**
+ * Collides moving objects directly with the tiles of a TiledWorld, so the walls of a level do not 
+ * 	need a physics object for every tile and take no part in the broadphase. An object is only 
+ * 	tested against the tiles its box covers.
+ * 
+ * Tile (column,row) covers the tile width from originX + column*tileWidth and the tile height from 
+ * 	originY + row*tileHeight, row 0 is the bottom row as the tiles are drawn. The flags of a tile are 
+ * 	looked up by its value in the world. Values below 0 are empty, values without flags are solid.
+ * 
+ * A tile stops an object the way a wall without a vector does. The object is moved back to where 
+ * 	it first touched a tile during the step, or pushed out of the tiles it overlaps, and its 
+ * 	velocity is reflected off them. Faces shared by two solid tiles are skipped, so objects slide 
+ * 	along a row of tiles without catching on the seams. An object with a TileBehavior is told 
+ * 	which tiles it hit.
+ * 
+ * Rays cast by the physics engine step through the tiles along the ray. The box, point and shape 
+ * 	queries and shape casts only return physics objects, use isSolid to test a point against the tiles.
+ */
+public class TileCollision {
+	public static final int EMPTY = 0;
+	public static final int SOLID = 1;
+	//only stops objects falling onto its top
+	public static final int ONE_WAY = 2;
+	//solid below a slope rising from the bottom left corner to the top right corner
+	public static final int SLOPE_UP = 4;
+	//solid below a slope falling from the top left corner to the bottom right corner
+	public static final int SLOPE_DOWN = 8;
+	
+	private TiledWorld world;
+	private double tileWidth;
+	private double tileHeight;
+	private double originX;
+	private double originY;
+	//flags of each tile value
+	private int[] tileFlags;
+	private int mask;
+	
+	//shapes moved to the tile being tested
+	private GLPoint squareCorner;
+	private GLPoint slopeCorner;
+	private Boundary square;
+	private Boundary slopeUp;
+	private Boundary slopeDown;
+	private Manifold manifold;
+	private Pair normal;
+	//bounds of the object being tested
+	private double minX;
+	private double minY;
+	private double maxX;
+	private double maxY;
+	
+	/**
+	 * @param world map of tile values
+	 * @param tileWidth width of a tile in world units
+	 * @param tileHeight height of a tile in world units
+	 */
+	public TileCollision(TiledWorld world, double tileWidth, double tileHeight){
+		this.world = world;
+		this.tileWidth = tileWidth < PhysicsEngine.MIN_TILE_SIZE ? PhysicsEngine.MIN_TILE_SIZE : tileWidth;
+		this.tileHeight = tileHeight < PhysicsEngine.MIN_TILE_SIZE ? PhysicsEngine.MIN_TILE_SIZE : tileHeight;
+		tileFlags = new int[0];
+		mask = ~BoundarySet.categoryOf(PhysicsObject.PASSIVE_TYPE);
+		
+		squareCorner = new GLPoint();
+		slopeCorner = new GLPoint();
+		square = new Boundary(new Rectangle(squareCorner, this.tileWidth, this.tileHeight));
+		slopeUp = new Boundary(new Polygon(slopeCorner, 0, 0, this.tileWidth, 0, this.tileWidth, this.tileHeight));
+		slopeDown = new Boundary(new Polygon(slopeCorner, 0, 0, this.tileWidth, 0, 0, this.tileHeight));
+		manifold = new Manifold();
+		normal = new Pair();
+	}
+	
+	public TiledWorld getWorld() {
+		return world;
+	}
+	public void setWorld(TiledWorld world) {
+		this.world = world;
+	}
+	/**
+	 * sets where the bottom left corner of tile (0,0) is
+	 */
+	public void setOrigin(double x, double y){
+		originX = x;
+		originY = y;
+	}
+	public double getTileWidth() {
+		return tileWidth;
+	}
+	public double getTileHeight() {
+		return tileHeight;
+	}
+	/**
+	 * @param value a tile value in the world
+	 * @param flags EMPTY, SOLID, ONE_WAY, SLOPE_UP or SLOPE_DOWN
+	 */
+	public void setTileFlags(int value, int flags){
+		if(value < 0){
+			return;
+		}
+		if(value >= tileFlags.length){
+			final int[] grown = new int[value + 1];
+			System.arraycopy(tileFlags, 0, grown, 0, tileFlags.length);
+			for(int i = tileFlags.length; i < grown.length; i++){
+				grown[i] = SOLID;
+			}
+			tileFlags = grown;
+		}
+		tileFlags[value] = flags;
+	}
+	/**
+	 * @return the flags of the tile at (column,row), EMPTY outside the world
+	 */
+	public int getFlags(int column, int row){
+		final int value = world.getTile(column, row);
+		if(value < 0){
+			return EMPTY;
+		}
+		return value < tileFlags.length ? tileFlags[value] : SOLID;
+	}
+	/**
+	 * @return true if the point is inside the solid part of a tile, one-way tiles are not solid
+	 */
+	public boolean isSolid(double x, double y){
+		final int column = column(x);
+		final int row = row(y);
+		final int flags = getFlags(column, row);
+		if(flags == SOLID){
+			return true;
+		}
+		//how far across and up the tile the point is
+		final double across = (x - originX - column*tileWidth)/tileWidth;
+		final double up = (y - originY - row*tileHeight)/tileHeight;
+		if((flags & SLOPE_UP) != 0){
+			return up <= across;
+		}
+		if((flags & SLOPE_DOWN) != 0){
+			return up <= 1 - across;
+		}
+		return false;
+	}
+	/**
+	 * @return bits of the layers the tiles stop
+	 */
+	public int getMask() {
+		return mask;
+	}
+	/**
+	 * @param mask bits of the layers the tiles stop, every layer but the passive one by default
+	 */
+	public void setMask(int mask) {
+		this.mask = mask;
+	}
+	
+	/**
+	 * stops an object at the tiles it ran into during the last step
+	 * @param object a moving object with a boundary and a vector
+	 * @param seconds length of the step
+	 * @return the flags of the tiles the object hit, 0 if it hit none
+	 */
+	public int collide(PhysicsObject object, double seconds){
+		final Boundary boundary = object.getBoundary();
+		final VectorObject vector = object.getVector();
+		//the path the object took this step, its velocity may already have been changed by its contacts
+		final double dx = vector.getStepX(seconds);
+		final double dy = vector.getStepY(seconds);
+		int hit = 0;
+		
+		//the first tile the object touched on its way, when it did not start the step inside it
+		bounds(boundary);
+		final double startBottom = minY - dy;
+		double first = TimeOfImpact.NONE;
+		double firstX = 0;
+		double firstY = 0;
+		int firstFlags = EMPTY;
+		int startColumn = column(Math.min(minX, minX - dx));
+		int endColumn = column(Math.max(maxX, maxX - dx));
+		int startRow = row(Math.min(minY, minY - dy));
+		int endRow = row(Math.max(maxY, maxY - dy));
+		for(int row = startRow; row <= endRow; row++){
+			for(int column = startColumn; column <= endColumn; column++){
+				final int flags = getFlags(column, row);
+				if(flags == EMPTY){
+					continue;
+				}
+				final double t = TimeOfImpact.compute(boundary, place(column, row, flags), -dx, -dy, dx, dy, normal);
+				if(t > 0 && (first == TimeOfImpact.NONE || t < first) && stops(column, row, flags, normal.x, normal.y, startBottom)){
+					first = t;
+					firstX = normal.x;
+					firstY = normal.y;
+					firstFlags = flags;
+				}
+			}
+		}
+		if(first != TimeOfImpact.NONE){
+			//back to where it touched, then on for the rest of the step with the reflected velocity
+			final double back = 1 - first;
+			translate(boundary, -dx*back, -dy*back);
+			reflect(vector, firstX, firstY);
+			final double vx = vector.getVelocityXComponent();
+			final double vy = vector.getVelocityYComponent();
+			translate(boundary, vx*seconds*back, vy*seconds*back);
+			hit |= firstFlags;
+			bounds(boundary);
+		}
+		
+		//then push it out of the tiles it overlaps
+		startColumn = column(minX);
+		endColumn = column(maxX);
+		startRow = row(minY);
+		endRow = row(maxY);
+		for(int row = startRow; row <= endRow; row++){
+			for(int column = startColumn; column <= endColumn; column++){
+				final int flags = getFlags(column, row);
+				if(flags == EMPTY){
+					continue;
+				}
+				if(!manifold.compute(boundary, place(column, row, flags))){
+					continue;
+				}
+				double depth = manifold.depth;
+				double normalX = manifold.normalX;
+				double normalY = manifold.normalY;
+				if((flags & ONE_WAY) != 0){
+					//a platform only pushes up, out of its top
+					bounds(boundary);
+					depth = originY + (row + 1)*tileHeight - minY;
+					normalX = 0;
+					normalY = 1;
+				}
+				if(!stops(column, row, flags, normalX, normalY, startBottom)){
+					continue;
+				}
+				final double distance = depth + PhysicsEngine.EXPUNGE_TOLERANCE;
+				translate(boundary, normalX*distance, normalY*distance);
+				reflect(vector, normalX, normalY);
+				hit |= flags;
+			}
+		}
+		return hit;
+	}
+	
+	/**
+	 * casts the segment from start to end against the tiles, visiting the tiles it crosses in order. 
+	 * 	one-way tiles do not stop rays, and a ray that starts inside the solid tiles of a wall is not 
+	 * 	stopped until it has left them.
+	 * @param hit an object already hit by the ray, or reset. if a tile is hit before hit.fraction its 
+	 * 		object is cleared and its fraction, normal and tile flags are set, the rest is left to the caller
+	 * @return true if a tile was hit before hit.fraction
+	 */
+	public boolean raycast(double startX, double startY, double endX, double endY, RaycastHit hit){
+		final double dx = endX - startX;
+		final double dy = endY - startY;
+		int column = column(startX);
+		int row = row(startY);
+		final int steps = Math.abs(column(endX) - column) + Math.abs(row(endY) - row);
+		final int stepColumn = dx > 0 ? 1 : -1;
+		final int stepRow = dy > 0 ? 1 : -1;
+		//fraction of the segment that crosses a whole tile, and where it crosses the next tile edge
+		final double acrossX = dx != 0 ? Math.abs(tileWidth/dx) : Double.POSITIVE_INFINITY;
+		final double acrossY = dy != 0 ? Math.abs(tileHeight/dy) : Double.POSITIVE_INFINITY;
+		double nextX = dx != 0 ? (originX + (dx > 0 ? column + 1 : column)*tileWidth - startX)/dx : Double.POSITIVE_INFINITY;
+		double nextY = dy != 0 ? (originY + (dy > 0 ? row + 1 : row)*tileHeight - startY)/dy : Double.POSITIVE_INFINITY;
+		double entered = 0;
+		//the ray is still inside the wall it started in
+		boolean inside = false;
+		for(int i = 0; i <= steps && entered < hit.fraction; i++){
+			final int flags = getFlags(column, row);
+			if(flags == EMPTY || (flags & ONE_WAY) != 0){
+				inside = false;
+			}
+			//a face between two solid tiles is inside the wall
+			else if(!inside || flags != SOLID){
+				//the shape of a tile stays inside it, so the first tile hit has the closest hit
+				final double t = place(column, row, flags).raycast(startX, startY, endX, endY, normal);
+				inside = t == 0 && flags == SOLID;
+				if(t > 0){
+					if(t >= hit.fraction){
+						return false;
+					}
+					hit.object = null;
+					hit.tileFlags = flags;
+					hit.fraction = t;
+					hit.normalX = normal.x;
+					hit.normalY = normal.y;
+					return true;
+				}
+			}
+			entered = Math.min(nextX, nextY);
+			if(nextX < nextY){
+				column += stepColumn;
+				nextX += acrossX;
+			}
+			else{
+				row += stepRow;
+				nextY += acrossY;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * @param normal normal of the contact, pointing from the tile towards the object
+	 * @param startBottom bottom of the object at the start of the step
+	 * @return true if the tile stops an object it touches along the normal
+	 */
+	private boolean stops(int column, int row, int flags, double normalX, double normalY, double startBottom){
+		if((flags & (SLOPE_UP | SLOPE_DOWN)) != 0){
+			return true;
+		}
+		if((flags & ONE_WAY) != 0){
+			//only from above, by an object that was not already below the top
+			return normalY > 0 && normalY >= Math.abs(normalX) 
+					&& startBottom >= originY + (row + 1)*tileHeight - PhysicsEngine.TILE_TOLERANCE;
+		}
+		//a face against another solid tile is inside the wall
+		if(Math.abs(normalX) > Math.abs(normalY)){
+			return getFlags(normalX > 0 ? column + 1 : column - 1, row) != SOLID;
+		}
+		return getFlags(column, normalY > 0 ? row + 1 : row - 1) != SOLID;
+	}
+	/**
+	 * moves the shape for the kind of tile to the tile
+	 */
+	private Boundary place(int column, int row, int flags){
+		final double left = originX + column*tileWidth;
+		final double bottom = originY + row*tileHeight;
+		if((flags & (SLOPE_UP | SLOPE_DOWN)) != 0){
+			slopeCorner.setX(left);
+			slopeCorner.setY(bottom);
+			return (flags & SLOPE_UP) != 0 ? slopeUp : slopeDown;
+		}
+		//the corner of a rectangle is its top left
+		squareCorner.setX(left);
+		squareCorner.setY(bottom + tileHeight);
+		return square;
+	}
+	private int column(double x){
+		return (int)Math.floor((x - originX)/tileWidth);
+	}
+	private int row(double y){
+		return (int)Math.floor((y - originY)/tileHeight);
+	}
+	/**
+	 * sets the bounds of the shape where it is now, without the sweep of the step
+	 */
+	private void bounds(Boundary boundary){
+		final Polygon polygon = boundary.getPolygon();
+		final Circle circle = boundary.getCircle();
+		final Rectangle rectangle = boundary.getRectangle();
+		if(polygon != null){
+			minX = polygon.getMinX();
+			minY = polygon.getMinY();
+			maxX = polygon.getMaxX();
+			maxY = polygon.getMaxY();
+		}
+		else if(circle != null){
+			final double radius = circle.getRadius();
+			minX = circle.getCenter().getX() - radius;
+			minY = circle.getCenter().getY() - radius;
+			maxX = circle.getCenter().getX() + radius;
+			maxY = circle.getCenter().getY() + radius;
+		}
+		else if(rectangle != null){
+			minX = rectangle.getLeft();
+			minY = rectangle.getBottom();
+			maxX = rectangle.getRight();
+			maxY = rectangle.getTop();
+		}
+		else if(boundary instanceof CompoundBoundary){
+			final CompoundBoundary compound = (CompoundBoundary)boundary;
+			double left = Double.MAX_VALUE;
+			double bottom = Double.MAX_VALUE;
+			double right = -Double.MAX_VALUE;
+			double top = -Double.MAX_VALUE;
+			for(int i = 0; i < compound.getPartCount(); i++){
+				bounds(compound.getPart(i));
+				left = Math.min(left, minX);
+				bottom = Math.min(bottom, minY);
+				right = Math.max(right, maxX);
+				top = Math.max(top, maxY);
+			}
+			minX = left;
+			minY = bottom;
+			maxX = right;
+			maxY = top;
+		}
+	}
+	private static void translate(Boundary boundary, double dx, double dy){
+		final GLPoint location = boundary.getLocation();
+		location.setX(location.getX() + dx);
+		location.setY(location.getY() + dy);
+		//the parts of a compound are tested against the next tiles
+		boundary.updateBox();
+	}
+	/**
+	 * reflects the velocity off a surface with the given normal if it is moving into it
+	 */
+	private static void reflect(VectorObject vector, double normalX, double normalY){
+		final double vx = vector.getVelocityXComponent();
+		final double vy = vector.getVelocityYComponent();
+		final double along = vx*normalX + vy*normalY;
+		if(along < 0){
+			vector.setVelocityXComponent(vx - 2*along*normalX);
+			vector.setVelocityYComponent(vy - 2*along*normalY);
+		}
+	}
+}
@@ -18,56 +18,38 @@ package des.game.physics;
 import des.game.base.GLPoint;
 
 /**
- * represents a basic vector, stored in x,y components
+ * represents a basic vector, stored in x,y components. the components are a view onto the 
+ * 		body store, so the vectors of a body share its location.
  */
 public class Vector {
-	protected double xComponent;
-	protected double yComponent;
-	protected double zComponent;
-	protected GLPoint location;
+	protected int body;
+	//which vector of the body this is a view of, one of the vectors of the body store
+	protected int kind;
 	/*
-	 * Sets Components to zero.
+	 * a view of the given vector of a body.
 	 */
-	Vector(){
-		xComponent = 0;
-		yComponent = 0;	
-		zComponent = 0;	
-		location = new GLPoint();
-	}
-	/*
-	 * Sets Components to a and b.
-	 */
-	Vector(double x,double y,GLPoint p){
-		xComponent = x;
-		yComponent = y;
-		zComponent = 0;
-		location = p;
-	}
-	/*
-	 * Sets Components to a and b.
-	 */
-	Vector(double x,double y,double z,GLPoint p){
-		xComponent = x;
-		yComponent = y;
-		zComponent = z;
-		location = p;
+	Vector(int body,int kind){
+		this.body = body;
+		this.kind = kind;
 	}
 	/*
 	 * sets x and y components based on polar coordinates.
 	 */
 	public void setMagDir(double m,double d){
-		xComponent = Math.cos(d)*m;
-		yComponent = Math.sin(d)*m;
+		setXComponent(Math.cos(d)*m);
+		setYComponent(Math.sin(d)*m);
 	}
 	/**
 	 * gets direction of vector in x y plane
 	 * @return
 	 */
 	public double getDirection(){
+		final double x = getXComponent();
+		final double y = getYComponent();
 		double angle;
 		
-		if(xComponent == 0){
-			if(yComponent < 0){
+		if(x == 0){
+			if(y < 0){
 				angle = Math.PI + Math.PI/2;
 			}
 			else{
@@ -75,9 +57,9 @@ public class Vector {
 			}
 		}
 		else{
-			angle = Math.atan(yComponent/xComponent);
+			angle = Math.atan(y/x);
 			
-			if(xComponent < 0){
+			if(x < 0){
 				angle += Math.PI;
 			}
 		}
@@ -88,42 +70,47 @@ public class Vector {
 	 * Generates the magnitude from the x and y components.
 	 */
 	public double getMagnitude(){
-		return Math.sqrt(xComponent*xComponent + yComponent*yComponent);
+		final double x = getXComponent();
+		final double y = getYComponent();
+		return Math.sqrt(x*x + y*y);
 	}
 	
 	
 	public double getXComponent() {
-		return xComponent;
+		return BodyStore.instance.get(kind, 3*body);
 	}
 	public void setXComponent(double component) {
-		xComponent = component;
+		BodyStore.instance.set(kind, 3*body, component);
 	}
 	public double getYComponent() {
-		return yComponent;
+		return BodyStore.instance.get(kind, 3*body + 1);
 	}
 	public void setYComponent(double component) {
-		yComponent = component;
+		BodyStore.instance.set(kind, 3*body + 1, component);
 	}	
 	public double getZComponent() {
-		return zComponent;
+		return BodyStore.instance.get(kind, 3*body + 2);
 	}
 	public void setZComponent(double component) {
-		zComponent = component;
+		BodyStore.instance.set(kind, 3*body + 2, component);
 	}	
 
 	public GLPoint getLocation() {
-		return location;
+		return BodyStore.instance.location[body];
 	}
 	public void setLocation(double a,double b){
+		final GLPoint location = getLocation();
 		location.setX(a);
 		location.setY(b);
 	}
 	public void setLocation(GLPoint location) {
-		this.location = location;
+		BodyStore.instance.location[body] = location;
 	}
 	
 	public void zero(){
-		this.xComponent = this.yComponent = this.zComponent = 0.0d;
+		setXComponent(0.0d);
+		setYComponent(0.0d);
+		setZComponent(0.0d);
 	}
 
 }
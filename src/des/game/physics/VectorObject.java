@@ -19,21 +19,32 @@ package des.game.physics;
 import des.game.base.GLPoint;
 import des.game.base.GameComponent;
 
+/**
+ * a view onto a body of the body store, the location, velocity, accelerations and mass of the object
+ * 	are kept in the store so the physics engine can move every object in one pass over its arrays.
+ */
 public class VectorObject extends GameComponent{
 	
-	protected GLPoint location;
-	public double mass;
+	//id of the body in the body store
+	protected final int body;
 	protected Velocity velocity;
-	protected boolean locked;
 	protected boolean pendingRemove;
+	protected boolean sleepAllowed;
+	protected int slowFrames;
+	//location at the start of the last physics step, the sweep of a contact is taken from it and 
+	//	drawing interpolates from it to the current location
+	protected double previousX;
+	protected double previousY;
+	protected boolean previousSet;
 
 	public VectorObject(){
 		super();
 		super.setPhase(GameComponent.ComponentPhases.PHYSICS_VECTOR.ordinal());
-		locked = true;
+		velocity = new Velocity(0,0,null);
+		body = velocity.body;
 		pendingRemove = false;
-		mass = 1;
-		velocity = new Velocity(0,0,location);
+		sleepAllowed = true;
+		setLocked(true);
 
 	}
 
@@ -42,12 +53,11 @@ public class VectorObject extends GameComponent{
 	 */
 	public VectorObject(double m,GLPoint p, double xV,double yV){
 		super();
-		if(m <= 0) m = 1;
-		if(m > PhysicsEngine.MAX_MASS) m = PhysicsEngine.MAX_MASS;
-		mass = m;
-		location = p;
-		velocity = new Velocity(xV,yV,location);
+		velocity = new Velocity(xV,yV,p);
+		body = velocity.body;
+		setMass(m);
 		pendingRemove = false;
+		sleepAllowed = true;
 			
 	}
 	/**
@@ -55,99 +65,142 @@ public class VectorObject extends GameComponent{
 	 */
 	public VectorObject(double m,GLPoint p, double xV,double yV,double zV){
 		super();
-		if(m <= 0) m = 1;
-		if(m > PhysicsEngine.MAX_MASS) m = PhysicsEngine.MAX_MASS;
-		mass = m;
-		location = p;
-		velocity = new Velocity(xV,yV,zV,location);
+		velocity = new Velocity(xV,yV,zV,p);
+		body = velocity.body;
+		setMass(m);
 		pendingRemove = false;
+		sleepAllowed = true;
 			
 	}
     public void initializeFromTemplate(GameComponent other, float x,float y,float orientation,float velocity,float lifetime){
     	VectorObject comp = (VectorObject)other;
     	
-    	this.mass = comp.mass;
+    	this.setMass(comp.getMass());
     	this.setVelocityMagDir(velocity, orientation);
     }
 	public void initialize(double m,GLPoint p, double xV,double yV){
-		if(m <= 0) m = 1;
-		if(m > PhysicsEngine.MAX_MASS) m = PhysicsEngine.MAX_MASS;
-		mass = m;
-		location = p;
+		setMass(m);
 		pendingRemove = false;
+		previousSet = false;
+		wake();
 		
-		velocity.location = p;
-		velocity.xComponent = xV;
-		velocity.yComponent = yV;
-		
-		velocity.acceleration.location = p;
-		velocity.outsideAcceleration.location = p;
-		
-
-		
+		velocity.setLocation(p);
+		velocity.setXComponent(xV);
+		velocity.setYComponent(yV);
 	}
 	public double getMass() {
-		return mass;
+		return BodyStore.instance.getMass(body);
 	}
 	public void setMass(double mass) {
 		if(mass <= 0) mass = 1;
 		if(mass > PhysicsEngine.MAX_MASS) mass = PhysicsEngine.MAX_MASS;
-		this.mass = mass;
+		BodyStore.instance.setMass(body, mass);
+	}
+	/**
+	 * @return id of the body in the body store
+	 */
+	public int getBody() {
+		return body;
 	}
 	public GLPoint getLocation() {
-		return location;
+		return velocity.getLocation();
 	}
 	public void setLocation(GLPoint location) {
 		pendingRemove = false;
+		previousSet = false;
 		
-		this.location = location;
-		velocity.location = location;
-
-		
-		velocity.acceleration.location = location;
-		velocity.outsideAcceleration.location = location;
+		velocity.setLocation(location);
 	}
 	public void setLocation(double x,double y){
+		wake();
+		final GLPoint location = getLocation();
 		location.setX(x);
 		location.setY(y);
+		//a jump to a new location is not part of the step and is not drawn as motion
+		previousSet = false;
 	}
 	public void setLocation(double x,double y,double z){
+		wake();
+		final GLPoint location = getLocation();
 		location.setX(x);
 		location.setY(y);
 		location.setZ(z);
+		previousSet = false;
+	}
+	/**
+	 * remembers the current location as the start of the next physics step
+	 */
+	public void savePrevious(){
+		final GLPoint location = getLocation();
+		previousX = location.getX();
+		previousY = location.getY();
+		previousSet = true;
+	}
+	/**
+	 * @param seconds length of the step, used when the start of the step was not saved
+	 * @return how far the object has moved along x since the start of the step
+	 */
+	double getStepX(double seconds){
+		if(!previousSet){
+			return getVelocityXComponent()*seconds;
+		}
+		return getLocation().getX() - previousX;
+	}
+	double getStepY(double seconds){
+		if(!previousSet){
+			return getVelocityYComponent()*seconds;
+		}
+		return getLocation().getY() - previousY;
+	}
+	/**
+	 * @param alpha how far into the next step the frame is drawn, from 0 to 1
+	 * @return the x coordinate between the start and the end of the last physics step
+	 */
+	public double getInterpolatedX(double alpha){
+		final GLPoint location = getLocation();
+		if(!previousSet){
+			return location.getX();
+		}
+		return previousX + (location.getX() - previousX)*alpha;
+	}
+	public double getInterpolatedY(double alpha){
+		final GLPoint location = getLocation();
+		if(!previousSet){
+			return location.getY();
+		}
+		return previousY + (location.getY() - previousY)*alpha;
 	}
 	protected Velocity getVelocity() {
 		return velocity;
 	}	
+	/**
+	 * moves the object on its own, the physics engine moves every object at once through the body store
+	 * @param time in milliseconds
+	 */
 	public void moveVector(double time){
-		//if locked save the z coord and set it to the old value afterwards
-		double tempZ = 0;
-		if(locked){
-			tempZ = location.getZ();
-		}
-		
 		velocity.moveVector(time);
-		if(locked){
-			location.setZ(tempZ);
-		}
 	}
 	////////////////////////////velocity functions
 	public void setVelocityMagDir(double m,double d){
+		if(m != 0 || getVelocityMagnitude() != 0) wake();
 		velocity.setMagDir(m, d);
 	}
 	public void setVelocityXComponent(double x){
+		if(x != getVelocityXComponent()) wake();
 		velocity.setXComponent(x);
 	}
 	public double getVelocityXComponent(){
 		return velocity.getXComponent();
 	}
 	public void setVelocityYComponent(double y){
+		if(y != getVelocityYComponent()) wake();
 		velocity.setYComponent(y);
 	}
 	public double getVelocityYComponent(){
 		return velocity.getYComponent();
 	}
 	public void setVelocityZComponent(double z){
+		if(z != getVelocityZComponent()) wake();
 		velocity.setZComponent(z);
 	}
 	public double getVelocityZComponent(){
@@ -161,6 +214,7 @@ public class VectorObject extends GameComponent{
 	}
 	
 	public void setAccelerationMagDir(double m,double d){
+		if(m != 0 || getAccelerationMagnitude() != 0) wake();
 		velocity.setAccelerationMagDir(m, d);
 	}
 	public double getAccelerationDirection(){
@@ -178,24 +232,30 @@ public class VectorObject extends GameComponent{
 		return velocity.getAccelerationXComponent();
 	}
 	public void setAccelerationXComponent(double component) {
+		if(component != getAccelerationXComponent()) wake();
 		velocity.setAccelerationXComponent(component);
 	}
 	public double getAccelerationYComponent() {
 		return velocity.getAccelerationYComponent();
 	}
 	public void setAccelerationYComponent(double component) {
+		if(component != getAccelerationYComponent()) wake();
 		velocity.setAccelerationYComponent(component);
 	}	
 	public double getAccelerationZComponent() {
 		return velocity.getAccelerationZComponent();
 	}
 	public void setAccelerationZComponent(double component) {
+		if(component != getAccelerationZComponent()) wake();
 		velocity.setAccelerationZComponent(component);
 	}	
+	//a constant push such as gravity wakes a sleeping object but does not keep a resting one from sleeping
 	public void addOutsideAcceleration(Acceleration a){
+		if(isSleeping()) wake();
 		velocity.addOutsideAcceleration(a);
 	}
 	public void addOutsideAcceleration(double x, double y){
+		if(isSleeping()) wake();
 		velocity.addOutsideAcceleration(x,y);
 	}
 
@@ -221,12 +281,77 @@ public class VectorObject extends GameComponent{
 		
 	}
 
+	/**
+	 * @return true if the z coordinate is not moved by the velocity
+	 */
 	public boolean isLocked() {
-		return locked;
+		return BodyStore.instance.hasFlag(body, BodyStore.LOCKED);
 	}
 
 	public void setLocked(boolean locked) {
-		this.locked = locked;
+		BodyStore.instance.setFlag(body, BodyStore.LOCKED, locked);
+	}
+	
+	/**
+	 * a sleeping object is not moved, has no fields applied and is only tested against awake objects. it is 
+	 * 	woken when something runs into it, its boundary is moved or what it rests on goes away.
+	 */
+	public boolean isSleeping() {
+		return BodyStore.instance.hasFlag(body, BodyStore.SLEEPING);
+	}
+	public boolean isSleepAllowed() {
+		return sleepAllowed;
+	}
+	/**
+	 * @param sleepAllowed when false the object never sleeps, and is woken if it is sleeping
+	 */
+	public void setSleepAllowed(boolean sleepAllowed) {
+		this.sleepAllowed = sleepAllowed;
+		if(!sleepAllowed){
+			wake();
+		}
+	}
+	/**
+	 * wakes the object if it is sleeping and restarts the count towards sleep
+	 */
+	public void wake(){
+		slowFrames = 0;
+		if(isSleeping()){
+			BodyStore.instance.setFlag(body, BodyStore.SLEEPING, false);
+			invalidateSleeping();
+		}
+	}
+	/**
+	 * puts the object to sleep once its speed has stayed under threshold for the given number of frames.
+	 * 	called by the physics engine once a frame after collisions have been resolved.
+	 * @param threshold speed in units per second
+	 * @param frames frames the object has to stay slow before it sleeps
+	 * @return true if the object is sleeping
+	 */
+	public boolean updateSleep(double threshold, int frames){
+		if(isSleeping()){
+			return true;
+		}
+		final double x = getVelocityXComponent();
+		final double y = getVelocityYComponent();
+		final double z = getVelocityZComponent();
+		if(!sleepAllowed || x*x + y*y + z*z > threshold*threshold){
+			slowFrames = 0;
+			return false;
+		}
+		slowFrames++;
+		if(slowFrames >= frames){
+			BodyStore.instance.setFlag(body, BodyStore.SLEEPING, true);
+			clearOutsideAcceleration();
+			invalidateSleeping();
+			return true;
+		}
+		return false;
+	}
+	private static void invalidateSleeping(){
+		if(BoundarySet.instance != null){
+			BoundarySet.instance.invalidateSleeping();
+		}
 	}
 	
 	
@@ -237,8 +362,11 @@ public class VectorObject extends GameComponent{
 	@Override
 	public void reset() {
 		
-		mass = 1;
-		locked = true;
+		setMass(1);
+		setLocked(true);
+		wake();
+		sleepAllowed = true;
+		previousSet = false;
 		velocity.zero();
 		velocity.acceleration.zero();
 		velocity.outsideAcceleration.zero();
@@ -17,6 +17,7 @@ package des.game.physics;
 
 
 import des.game.base.BaseObject;
+import des.game.base.FixedSizeArray;
 import des.game.base.ObjectManager;
 
 /**
@@ -32,6 +33,35 @@ public class VectorObjectSet extends ObjectManager<VectorObject>{
     public void update(float timeDelta, BaseObject parent) {
         commitUpdates();
     }
+	/**
+	 * commits the pending additions and removals and marks the bodies in the body store that belong to the set,
+	 * 	the physics engine only moves those.
+	 */
+	@Override
+	public void commitUpdates() {
+		if(mPendingAdditions.getCount() == 0 && mPendingRemovals.getCount() == 0){
+			return;
+		}
+		//an object can be removed and added again in one frame, the flags are set from the set once it is committed
+		markBodies(mPendingAdditions, false);
+		markBodies(mPendingRemovals, false);
+		super.commitUpdates();
+		markBodies(mObjects, true);
+	}
+	@Override
+	public void clear() {
+		markBodies(mObjects, false);
+		markBodies(mPendingAdditions, false);
+		super.clear();
+	}
+	private static void markBodies(FixedSizeArray<VectorObject> objects, boolean added){
+		final BodyStore store = BodyStore.instance;
+		final int count = objects.getCount();
+		final Object[] array = objects.getArray();
+		for(int i = 0; i < count; i++){
+			store.setFlag(((VectorObject)array[i]).body, BodyStore.ADDED, added);
+		}
+	}
 	
 	protected synchronized static void initializeSet(int size){
 		if(instance == null){
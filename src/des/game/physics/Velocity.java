@@ -28,54 +28,32 @@ public class Velocity extends Vector{
 	protected Acceleration acceleration;
 	protected Acceleration outsideAcceleration;
 	
-	Velocity(){
-		super();
-		acceleration = new Acceleration();
-		outsideAcceleration = new Acceleration();
-
-	}
 	/**
-	 * initializes x and y components but not z
-	 * @param a
-	 * @param b
-	 * @param p
+	 * creates a new body at p with a velocity of (a,b,0)
 	 */
 	Velocity(double a,double b,GLPoint p){
-		super(a,b,p);
-		
-		acceleration = new Acceleration(0,0,p);
-		outsideAcceleration = new Acceleration();
+		this(a,b,0,p);
 	}
 	Velocity(double a,double b,double z,GLPoint p){
-		super(a,b,z,p);
+		super(BodyStore.instance.create(p), BodyStore.VELOCITY);
+		
+		acceleration = new Acceleration(body,false);
+		outsideAcceleration = new Acceleration(body,true);
 		
-		acceleration = new Acceleration(0,0,p);
-		outsideAcceleration = new Acceleration(0,0,p);
+		setXComponent(a);
+		setYComponent(b);
+		setZComponent(z);
 	}
 	
-	/*
-	 * Changes accelerations location as well.
-	 */
-	public void setLocation(double a,double b){
-		location.setX(a);
-		location.setY(b);
-	}
 	/*
 	 * 
 	 */
 	public void setLocation(double x,double y,double z){
+		final GLPoint location = getLocation();
 		location.setX(x);
 		location.setY(y);
 		location.setZ(z);
 	}
-	/*
-	 * Changes accelerations location as well.
-	 */
-	public void setLocation(GLPoint location) {
-		this.location = location;
-		
-		acceleration.setLocation(location);
-	}
 	
 	/**
 	 * sets internal acceleration in the x y plane
@@ -83,122 +61,76 @@ public class Velocity extends Vector{
 	 * @param d
 	 */
 	public void setAccelerationMagDir(double m,double d){
-		acceleration.xComponent = Math.cos(d)*m;
-		acceleration.yComponent = Math.sin(d)*m;
+		acceleration.setMagDir(m, d);
 	}
 	/**
 	 * gets the accelerations direction in the x y plane
 	 * @return
 	 */
 	public double getAccelerationDirection(){
-		double angle;
-		
-		if(acceleration.xComponent == 0){
-			if(acceleration.yComponent < 0){
-				angle = Math.PI + Math.PI/2;
-			}
-			else{
-				angle = Math.PI/2;
-			}
-		}
-		else{
-			angle = Math.atan(acceleration.yComponent/acceleration.xComponent);
-			
-			if(acceleration.xComponent < 0){
-				angle += Math.PI;
-			}
-		}
-		
-		return angle;
+		return acceleration.getDirection();
 	}
 	/*
 	 * Generates the magnitude from the x and y components.
 	 */
 	public double getAccelerationMagnitude(){
-		return Math.sqrt(acceleration.xComponent*acceleration.xComponent 
-				+ acceleration.yComponent*acceleration.yComponent);
+		return acceleration.getMagnitude();
 	}
 	
 	
 	public double getAccelerationXComponent() {
-		return acceleration.xComponent;
+		return acceleration.getXComponent();
 	}
 	public void setAccelerationXComponent(double component) {
-		acceleration.xComponent = component;
+		acceleration.setXComponent(component);
 	}
 	public double getAccelerationYComponent() {
-		return acceleration.yComponent;
+		return acceleration.getYComponent();
 	}
 	public void setAccelerationYComponent(double component) {
-		acceleration.yComponent = component;
+		acceleration.setYComponent(component);
 	}	
 	public double getAccelerationZComponent() {
-		return acceleration.zComponent;
+		return acceleration.getZComponent();
 	}
 	public void setAccelerationZComponent(double component) {
-		acceleration.zComponent = component;
+		acceleration.setZComponent(component);
 	}	
 	/**
 	 * adds an additional acceleration to existing outside accelerations
 	 * @param a
 	 */
 	public void addOutsideAcceleration(Acceleration a){
-		outsideAcceleration.xComponent += a.xComponent;
-		outsideAcceleration.yComponent += a.yComponent;
-		outsideAcceleration.zComponent += a.zComponent;
+		final BodyStore store = BodyStore.instance;
+		store.add(BodyStore.OUTSIDE_ACCELERATION, 3*body, a.getXComponent());
+		store.add(BodyStore.OUTSIDE_ACCELERATION, 3*body + 1, a.getYComponent());
+		store.add(BodyStore.OUTSIDE_ACCELERATION, 3*body + 2, a.getZComponent());
 	}
 	public void addOutsideAcceleration(double x, double y){
-		outsideAcceleration.xComponent += x;
-		outsideAcceleration.yComponent += y;
+		final BodyStore store = BodyStore.instance;
+		store.add(BodyStore.OUTSIDE_ACCELERATION, 3*body, x);
+		store.add(BodyStore.OUTSIDE_ACCELERATION, 3*body + 1, y);
 	}
 	/**
 	 * clears accelerations that have been added to the external acceleration.
 	 */
 	public void clearOutsideAcceleration(){
-		outsideAcceleration.xComponent = 0;
-		outsideAcceleration.yComponent = 0;
-		outsideAcceleration.zComponent = 0;
+		outsideAcceleration.zero();
 	}
 	public double totalXAcceleration(){		
-		return outsideAcceleration.xComponent + acceleration.xComponent;
+		return outsideAcceleration.getXComponent() + acceleration.getXComponent();
 	}
 	public double totalYAcceleration(){
-		return outsideAcceleration.yComponent + acceleration.yComponent;
+		return outsideAcceleration.getYComponent() + acceleration.getYComponent();
 	}
 	public double totalZAcceleration(){
-		return outsideAcceleration.zComponent + acceleration.zComponent;
+		return outsideAcceleration.getZComponent() + acceleration.getZComponent();
 	}
 	/*
 	 * Changes vectors position based on time.
 	 * @param time in milliseconds.
 	 */
 	public void moveVector(double time){
-		//convert to seconds
-		
-		time = time/1000.0d;
-		
-		double ax = totalXAcceleration();
-		double ay = totalYAcceleration();
-		double az = totalZAcceleration();
-		
-		xComponent = xComponent + ax*time;
-		yComponent = yComponent + ay*time;
-		zComponent = zComponent + az*time;
-		//insure that the x,y velocity stays under the max velocity
-		if(xComponent*xComponent + yComponent*yComponent >= PhysicsEngine.MAX_VELOCITY*PhysicsEngine.MAX_VELOCITY){
-			double dir = getDirection();
-			xComponent = PhysicsEngine.MAX_VELOCITY*Math.cos(dir);
-			yComponent = PhysicsEngine.MAX_VELOCITY*Math.sin(dir); 
-		}
-		//insure that the z velocity statys under the max velocity
-		if(zComponent >= PhysicsEngine.MAX_VELOCITY){
-			zComponent = PhysicsEngine.MAX_VELOCITY;
-		}
-
-		setLocation(getLocation().getX() + time*xComponent,getLocation().getY() + time*yComponent,getLocation().getZ() + time*zComponent);
-		
+		BodyStore.instance.integrate(body, time);
 	}
-
-
-	
 }
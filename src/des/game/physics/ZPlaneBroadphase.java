@@ -0,0 +1,258 @@
+/*******************************************************************************
+ * Copyright 2011 Douglas Siemon
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package des.game.physics;
+
+import des.game.base.FixedSizeArray;
+import des.game.boundary.Boundary;
+import des.game.boundary.BoundingBox;
+
+/**
+ * Keeps the objects in a separate broadphase for each z plane slice, so objects in slices that do not 
+ * 	overlap are never paired. Slice k covers z from zPlane + k*planeDepth up to the next slice. An object 
+ * 	whose z projection stays inside one slice goes in the broadphase of that slice. Objects that cross 
+ * 	slices, or have a height of 0 and so are coplanar with everything, are kept together and paired 
+ * 	with the slices they reach by querying them.
+ * 
+ * Objects in one slice can still miss each other in z, the narrow phase tests the exact projections.
+ */
+public class ZPlaneBroadphase extends Broadphase{
+	private final Broadphase prototype;
+	private double zPlane;
+	private double planeDepth;
+	//broadphase of each slice that has had an object, in the order they were first used
+	private Broadphase[] slices;
+	private int[] sliceIndexes;
+	private Object[][] members;
+	private int[] memberCount;
+	private int sliceCount;
+	//objects in more than one slice, with the first and last slice each one reaches
+	private final Broadphase spanning;
+	private Object[] spanningMembers;
+	private int[] spanningFirst;
+	private int[] spanningLast;
+	private int spanningCount;
+	private FixedSizeArray<PhysicsObject> hits;
+	
+	/**
+	 * @param prototype broadphase copied for each slice with newInstance, it is not used itself
+	 * @param zPlane bottom of slice 0
+	 * @param planeDepth thickness of a slice
+	 */
+	public ZPlaneBroadphase(Broadphase prototype, double zPlane, double planeDepth){
+		this.prototype = prototype;
+		slices = new Broadphase[4];
+		sliceIndexes = new int[4];
+		members = new Object[4][];
+		memberCount = new int[4];
+		sliceCount = 0;
+		spanning = prototype.newInstance();
+		spanningMembers = new Object[16];
+		spanningFirst = new int[16];
+		spanningLast = new int[16];
+		hits = new FixedSizeArray<PhysicsObject>(64);
+		setPlanes(zPlane, planeDepth);
+	}
+	@Override
+	public Broadphase newInstance() {
+		return new ZPlaneBroadphase(prototype.newInstance(), zPlane, planeDepth);
+	}
+	/**
+	 * sets where the slices are, takes effect on the next update
+	 * @param planeDepth thickness of a slice, values of 0 or less are treated as 1
+	 */
+	public void setPlanes(double zPlane, double planeDepth){
+		this.zPlane = zPlane;
+		this.planeDepth = planeDepth > 0 ? planeDepth : 1;
+	}
+	public double getZPlane() {
+		return zPlane;
+	}
+	public double getPlaneDepth() {
+		return planeDepth;
+	}
+	
+	@Override
+	public void update(Object[] objects, int count) {
+		for(int i = 0; i < sliceCount; i++){
+			memberCount[i] = 0;
+		}
+		spanningCount = 0;
+		for(int i = 0; i < count; i++){
+			final PhysicsObject object = (PhysicsObject)objects[i];
+			final Boundary boundary = object.getBoundary();
+			int first = Integer.MIN_VALUE;
+			int last = Integer.MAX_VALUE;
+			if(boundary.getHeight() > 0){
+				final BoundingBox z = boundary.getZProjection();
+				first = slice(z.getStart());
+				last = slice(z.getEnd());
+			}
+			if(first == last){
+				add(sliceFor(first), object);
+			}
+			else{
+				addSpanning(object, first, last);
+			}
+		}
+		//empty slices are updated too, so they let go of the objects that left them
+		for(int i = 0; i < sliceCount; i++){
+			slices[i].update(members[i], memberCount[i]);
+		}
+		spanning.update(spanningMembers, spanningCount);
+	}
+	
+	@Override
+	public void findPairs(PairBuffer pairs) {
+		for(int i = 0; i < sliceCount; i++){
+			if(memberCount[i] > 1){
+				slices[i].findPairs(pairs);
+			}
+		}
+		if(spanningCount == 0){
+			return;
+		}
+		spanning.findPairs(pairs);
+		
+		//each object crossing slices with the objects of the slices it reaches
+		for(int i = 0; i < spanningCount; i++){
+			final PhysicsObject a = (PhysicsObject)spanningMembers[i];
+			for(int j = 0; j < sliceCount; j++){
+				if(memberCount[j] == 0 || sliceIndexes[j] < spanningFirst[i] || sliceIndexes[j] > spanningLast[i]){
+					continue;
+				}
+				if(hits.getCapacity() < memberCount[j]){
+					hits = new FixedSizeArray<PhysicsObject>(memberCount[j]*2);
+				}
+				hits.clear();
+				slices[j].query(a.getBoundary(), a.mask, hits);
+				final int hitCount = hits.getCount();
+				for(int k = 0; k < hitCount; k++){
+					pairs.add(a, hits.get(k));
+				}
+			}
+		}
+		hits.clear();
+	}
+	
+	@Override
+	public void query(double minX, double minY, double maxX, double maxY, FixedSizeArray<PhysicsObject> result) {
+		query(minX, minY, maxX, maxY, -1, result);
+	}
+	@Override
+	public void query(double minX, double minY, double maxX, double maxY, int mask, FixedSizeArray<PhysicsObject> result) {
+		for(int i = 0; i < sliceCount; i++){
+			if(memberCount[i] > 0){
+				slices[i].query(minX, minY, maxX, maxY, mask, result);
+			}
+		}
+		if(spanningCount > 0){
+			spanning.query(minX, minY, maxX, maxY, mask, result);
+		}
+	}
+	@Override
+	public void query(Boundary boundary, int mask, FixedSizeArray<PhysicsObject> result) {
+		//a boundary without height is in every plane
+		int first = Integer.MIN_VALUE;
+		int last = Integer.MAX_VALUE;
+		if(boundary.getHeight() > 0){
+			first = slice(boundary.getZProjection().getStart());
+			last = slice(boundary.getZProjection().getEnd());
+		}
+		for(int i = 0; i < sliceCount; i++){
+			if(memberCount[i] > 0 && sliceIndexes[i] >= first && sliceIndexes[i] <= last){
+				slices[i].query(boundary, mask, result);
+			}
+		}
+		if(spanningCount > 0){
+			spanning.query(boundary, mask, result);
+		}
+	}
+	@Override
+	public void queryRay(double startX, double startY, double endX, double endY, FixedSizeArray<PhysicsObject> result) {
+		queryRay(startX, startY, endX, endY, -1, result);
+	}
+	@Override
+	public void queryRay(double startX, double startY, double endX, double endY, int mask, FixedSizeArray<PhysicsObject> result) {
+		for(int i = 0; i < sliceCount; i++){
+			if(memberCount[i] > 0){
+				slices[i].queryRay(startX, startY, endX, endY, mask, result);
+			}
+		}
+		if(spanningCount > 0){
+			spanning.queryRay(startX, startY, endX, endY, mask, result);
+		}
+	}
+	
+	private int slice(double z){
+		return (int)Math.floor((z - zPlane)/planeDepth);
+	}
+	/**
+	 * @return the position of the broadphase of slice index, creating it the first time the slice is used
+	 */
+	private int sliceFor(int index){
+		for(int i = 0; i < sliceCount; i++){
+			if(sliceIndexes[i] == index){
+				return i;
+			}
+		}
+		if(sliceCount == slices.length){
+			final int size = sliceCount*2;
+			final Broadphase[] grownSlices = new Broadphase[size];
+			final int[] grownIndexes = new int[size];
+			final Object[][] grownMembers = new Object[size][];
+			final int[] grownCount = new int[size];
+			System.arraycopy(slices, 0, grownSlices, 0, sliceCount);
+			System.arraycopy(sliceIndexes, 0, grownIndexes, 0, sliceCount);
+			System.arraycopy(members, 0, grownMembers, 0, sliceCount);
+			System.arraycopy(memberCount, 0, grownCount, 0, sliceCount);
+			slices = grownSlices;
+			sliceIndexes = grownIndexes;
+			members = grownMembers;
+			memberCount = grownCount;
+		}
+		slices[sliceCount] = prototype.newInstance();
+		sliceIndexes[sliceCount] = index;
+		members[sliceCount] = new Object[16];
+		memberCount[sliceCount] = 0;
+		return sliceCount++;
+	}
+	private void add(int slice, PhysicsObject object){
+		if(memberCount[slice] == members[slice].length){
+			final Object[] temp = new Object[memberCount[slice]*2];
+			System.arraycopy(members[slice], 0, temp, 0, memberCount[slice]);
+			members[slice] = temp;
+		}
+		members[slice][memberCount[slice]++] = object;
+	}
+	private void addSpanning(PhysicsObject object, int first, int last){
+		if(spanningCount == spanningMembers.length){
+			final int size = spanningCount*2;
+			final Object[] temp = new Object[size];
+			final int[] tempFirst = new int[size];
+			final int[] tempLast = new int[size];
+			System.arraycopy(spanningMembers, 0, temp, 0, spanningCount);
+			System.arraycopy(spanningFirst, 0, tempFirst, 0, spanningCount);
+			System.arraycopy(spanningLast, 0, tempLast, 0, spanningCount);
+			spanningMembers = temp;
+			spanningFirst = tempFirst;
+			spanningLast = tempLast;
+		}
+		spanningMembers[spanningCount] = object;
+		spanningFirst[spanningCount] = first;
+		spanningLast[spanningCount] = last;
+		spanningCount++;
+	}
+}
@@ -60,6 +60,7 @@ public class RenderComponent extends GameComponent {
             RenderSystem system = sSystemRegistry.renderSystem;
             if (system != null) {
                 mPositionWorkspace.set(((GameObject)parent).getPosition());
+                mPositionWorkspace.add(((GameObject)parent).renderOffset);
                 mPositionWorkspace.add(mDrawOffset);
                 if (mCameraRelative) {
                     CameraSystem camera = sSystemRegistry.cameraSystem;
@@ -0,0 +1,76 @@
+/*******************************************************************************
+ * Copyright 2011 Douglas Siemon
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package des.game.boundary;
+
+import junit.framework.TestCase;
+import des.game.base.GLPoint;
+
+/**
+ * the parts of a compound are placed when its box is set, the pair tests only read them
+ */
+public class CompoundBoundaryTest extends TestCase {
+	private GLPoint location;
+	private CompoundBoundary compound;
+
+	@Override
+	protected void setUp() {
+		location = new GLPoint(0, 0, 0);
+		compound = new CompoundBoundary(location, 2);
+		compound.addPart(new Boundary(new Circle(new GLPoint(10, 0, 0), 5)));
+		compound.addPart(new Boundary(new Circle(new GLPoint(-10, 0, 0), 5)));
+		compound.updateBox();
+	}
+
+	public void testPartsArePlacedWhenBoxIsSet() {
+		location.setX(50);
+		assertEquals(10, compound.getPart(0).getLocation().getX(), 1e-9);
+
+		assertTrue(compound.updateBox());
+		assertEquals(60, compound.getPart(0).getLocation().getX(), 1e-9);
+		assertEquals(40, compound.getPart(1).getLocation().getX(), 1e-9);
+	}
+
+	public void testPairTestsOnlyRead() {
+		final Boundary other = new Boundary(new Circle(new GLPoint(18, 0, 0), 5));
+		other.updateBox();
+		final int compoundVersion = compound.getBoxVersion();
+		final int partVersion = compound.getPart(0).getBoxVersion();
+		final int otherVersion = other.getBoxVersion();
+		final double partX = compound.getPart(0).getLocation().getX();
+		//moved by the game, but its box is only set again by the engine
+		location.setX(1);
+
+		final Manifold manifold = new Manifold();
+		assertTrue(manifold.compute(compound, other));
+		assertTrue(manifold.compute(other, compound));
+		assertTrue(compound.collision(other));
+		final Pair normal = new Pair();
+		compound.getNormal(other, normal);
+		assertTrue(TimeOfImpact.compute(compound, other, -2, 0, 2, 0, normal) >= 0);
+
+		assertEquals(compoundVersion, compound.getBoxVersion());
+		assertEquals(partVersion, compound.getPart(0).getBoxVersion());
+		assertEquals(otherVersion, other.getBoxVersion());
+		assertEquals(partX, compound.getPart(0).getLocation().getX(), 1e-9);
+	}
+
+	public void testOnlyOverlappingPartsAreTested() {
+		final Boundary other = new Boundary(new Circle(new GLPoint(18, 0, 0), 5));
+		other.updateBox();
+		assertTrue(compound.partOverlaps(0, other));
+		assertFalse(compound.partOverlaps(1, other));
+	}
+}
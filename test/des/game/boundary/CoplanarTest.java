@@ -0,0 +1,53 @@
+/*******************************************************************************
+ * Copyright 2011 Douglas Siemon
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package des.game.boundary;
+
+import junit.framework.TestCase;
+import des.game.base.GLPoint;
+
+/**
+ * boundaries on different z planes are not coplanar unless one of them has no height
+ */
+public class CoplanarTest extends TestCase {
+	private static Boundary circle(double z, double height) {
+		final Boundary boundary = new Boundary(new Circle(new GLPoint(0, 0, z), 5));
+		boundary.setHeight(height);
+		boundary.setBox();
+		return boundary;
+	}
+
+	public void testSamePlane() {
+		assertTrue(circle(0, 1).isCoplanar(circle(0.5, 1)));
+	}
+
+	public void testDifferentPlanes() {
+		final Boundary low = circle(0, 1);
+		final Boundary high = circle(2, 1);
+		assertFalse(low.isCoplanar(high));
+		assertFalse(high.isCoplanar(low));
+	}
+
+	public void testSpanningPlanes() {
+		final Boundary tall = circle(0, 3);
+		assertTrue(tall.isCoplanar(circle(2, 1)));
+		assertFalse(tall.isCoplanar(circle(4, 1)));
+	}
+
+	public void testNoHeightIsInEveryPlane() {
+		assertTrue(circle(0, 0).isCoplanar(circle(6, 1)));
+		assertTrue(circle(6, 1).isCoplanar(circle(0, 0)));
+	}
+}
@@ -0,0 +1,136 @@
+/*******************************************************************************
+ * Copyright 2011 Douglas Siemon
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package des.game.boundary;
+
+import java.util.Random;
+
+import des.game.base.GLPoint;
+
+/**
+ * Times Boundary.collision against the chain of null checks it replaced, on random pairs of circles, 
+ * 	rectangles and triangles. Run as a program, it prints the time per pair of each and the number 
+ * 	of hits, which have to match. Pass any argument to leave the polygons out.
+ */
+public class ShapeDispatchBenchmark {
+	private static final int BOUNDARIES = 512;
+	private static final int PAIRS = 1 << 16;
+	private static final int ROUNDS = 12;
+	private static final int REPEATS = 40;
+
+	/**
+	 * the test Boundary.collision made before shape types, one null check per shape on each side
+	 */
+	static boolean chain(Boundary a, Boundary b){
+		final Polygon polygon = a.getPolygon();
+		final Circle circle = a.getCircle();
+		final Rectangle rectangle = a.getRectangle();
+		if(polygon != null){
+			if(b.getPolygon() != null) return polygon.collision(b.getPolygon());
+			if(b.getCircle() != null) return polygon.collision(b.getCircle());
+			if(b.getRectangle() != null) return polygon.collision(b.getRectangle());
+		}
+		else if(circle != null){
+			if(b.getPolygon() != null) return b.getPolygon().collision(circle);
+			if(b.getCircle() != null) return circle.collision(b.getCircle());
+			if(b.getRectangle() != null) return circle.collision(b.getRectangle());
+		}
+		else if(rectangle != null){
+			if(b.getPolygon() != null) return b.getPolygon().collision(rectangle);
+			if(b.getCircle() != null) return b.getCircle().collision(rectangle);
+			if(b.getRectangle() != null) return rectangle.collision(b.getRectangle());
+		}
+		return false;
+	}
+
+	public static void main(String[] args) {
+		final Random random = new Random(1);
+		final int kinds = args.length > 0 ? 2 : 3;
+		final Boundary[] boundaries = new Boundary[BOUNDARIES];
+		for(int i = 0; i < BOUNDARIES; i++){
+			final GLPoint point = new GLPoint(random.nextDouble()*2000, random.nextDouble()*2000, 0);
+			switch(random.nextInt(kinds)){
+			case 0:
+				boundaries[i] = new Boundary(new Circle(point, 5));
+				break;
+			case 1:
+				boundaries[i] = new Boundary(new Rectangle(point, 8, 8));
+				break;
+			default:
+				boundaries[i] = new Boundary(new Polygon(point, new Pair[]{new Pair(-5, -5), new Pair(6, -4), new Pair(0, 7)}));
+			}
+			boundaries[i].setBox();
+		}
+		final int[] first = new int[PAIRS];
+		final int[] second = new int[PAIRS];
+		for(int i = 0; i < PAIRS; i++){
+			first[i] = random.nextInt(BOUNDARIES);
+			second[i] = random.nextInt(BOUNDARIES);
+		}
+		
+		final double tests = (double)REPEATS*PAIRS;
+		for(int round = 0; round < ROUNDS; round++){
+			//alternate which runs first so neither always runs on a warmer cache
+			long chainTime;
+			long switchTime;
+			int chainHits = 0;
+			int switchHits = 0;
+			if(round%2 == 0){
+				long start = System.nanoTime();
+				chainHits = runChain(boundaries, first, second);
+				chainTime = System.nanoTime() - start;
+				start = System.nanoTime();
+				switchHits = runSwitch(boundaries, first, second);
+				switchTime = System.nanoTime() - start;
+			}
+			else{
+				long start = System.nanoTime();
+				switchHits = runSwitch(boundaries, first, second);
+				switchTime = System.nanoTime() - start;
+				start = System.nanoTime();
+				chainHits = runChain(boundaries, first, second);
+				chainTime = System.nanoTime() - start;
+			}
+			System.out.printf("chain %.2f ns/pair  switch %.2f ns/pair  hits %d %d%n", 
+					chainTime/tests, switchTime/tests, chainHits, switchHits);
+			if(chainHits != switchHits){
+				throw new IllegalStateException("the dispatch changed the results");
+			}
+		}
+	}
+	
+	private static int runChain(Boundary[] boundaries, int[] first, int[] second){
+		int hits = 0;
+		for(int repeat = 0; repeat < REPEATS; repeat++){
+			for(int i = 0; i < first.length; i++){
+				if(chain(boundaries[first[i]], boundaries[second[i]])){
+					hits++;
+				}
+			}
+		}
+		return hits;
+	}
+	private static int runSwitch(Boundary[] boundaries, int[] first, int[] second){
+		int hits = 0;
+		for(int repeat = 0; repeat < REPEATS; repeat++){
+			for(int i = 0; i < first.length; i++){
+				if(boundaries[first[i]].collision(boundaries[second[i]])){
+					hits++;
+				}
+			}
+		}
+		return hits;
+	}
+}
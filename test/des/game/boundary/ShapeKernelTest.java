@@ -0,0 +1,67 @@
+/*******************************************************************************
+ * Copyright 2011 Douglas Siemon
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package des.game.boundary;
+
+import junit.framework.TestCase;
+import des.game.base.GLPoint;
+
+/**
+ * new kinds of shape are tested by their kernels, the built in pairs by Boundary
+ */
+public class ShapeKernelTest extends TestCase {
+	/**
+	 * a boundary with a new shape type and a circle to give it a location
+	 */
+	private static class Custom extends Boundary {
+		Custom(int type) {
+			super(new Circle(new GLPoint(0, 0, 0), 5));
+			setShapeType(type);
+		}
+	}
+
+	public void testBuiltInPairsCannotBeReplaced() {
+		try{
+			ShapeKernel.register(Boundary.CIRCLE, Boundary.RECTANGLE, null);
+			fail("replaced a built in pair");
+		}
+		catch(IllegalArgumentException e){
+		}
+	}
+
+	public void testKernelIsUsedForNewShape() {
+		final int type = ShapeKernel.newShapeType();
+		final Boundary custom = new Custom(type);
+		final Boundary circle = new Boundary(new Circle(new GLPoint(100, 0, 0), 5));
+		assertFalse("a pair without a kernel collided", custom.collision(circle));
+
+		ShapeKernel.register(type, Boundary.CIRCLE, new ShapeKernel() {
+			@Override
+			public boolean collision(Boundary a, Boundary b) {
+				return true;
+			}
+			@Override
+			public void normal(Boundary a, Boundary b, Pair normal) {
+				normal.x = 1;
+				normal.y = 0;
+			}
+		});
+		assertTrue(custom.collision(circle));
+		assertFalse("only one order was registered", circle.collision(custom));
+		final Pair normal = new Pair();
+		custom.getNormal(circle, normal);
+		assertEquals(1, normal.x, 0);
+	}
+}
@@ -0,0 +1,177 @@
+/*******************************************************************************
+ * Copyright 2011 Douglas Siemon
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package des.game.physics;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import des.game.base.FixedSizeArray;
+import des.game.base.GLPoint;
+import des.game.boundary.Boundary;
+import des.game.boundary.Circle;
+import des.game.boundary.Rectangle;
+
+/**
+ * the tree and the spatial hash have to find the same pairs and query results as the sweep and prune 
+ * 	broadphase, frame after frame while the objects move and join or leave the set
+ */
+public class BroadphaseTest extends TestCase {
+	private static final int OBJECTS = 200;
+	private static final int FRAMES = 30;
+	private static final int QUERIES = 40;
+	private static final double SIZE = 300;
+
+	private Random random;
+	private PhysicsObject[] objects;
+	private GLPoint[] points;
+	private Object[] members;
+
+	@Override
+	protected void setUp() throws Exception {
+		if(PhysicsEngine.instance == null){
+			PhysicsEngine.initialize(100, 100, 100, 100, 0);
+		}
+		random = new Random(11);
+		objects = new PhysicsObject[OBJECTS];
+		points = new GLPoint[OBJECTS];
+		members = new Object[OBJECTS];
+		for(int i = 0; i < OBJECTS; i++){
+			points[i] = new GLPoint(random.nextDouble()*SIZE, random.nextDouble()*SIZE, 0);
+			final Boundary boundary = random.nextBoolean() ? new Boundary(new Circle(points[i], 2 + random.nextDouble()*8)) 
+					: new Boundary(new Rectangle(points[i], 4 + random.nextDouble()*16, 4 + random.nextDouble()*16));
+			objects[i] = new PhysicsObject(boundary, null, null, points[i]);
+			objects[i].setCollisionFilter(1, -1);
+			boundary.setBox();
+		}
+	}
+
+	public void testDynamicTreeMatchesSweep() {
+		compare(new SweepBroadphase(), new DynamicTreeBroadphase(), false);
+	}
+
+	public void testSpatialHashMatchesSweep() {
+		compare(new SweepBroadphase(), new SpatialHashBroadphase(20, OBJECTS), false);
+	}
+
+	public void testLayeredDynamicTreeMatchesSweep() {
+		compare(new LayeredBroadphase(new SweepBroadphase()), new LayeredBroadphase(new DynamicTreeBroadphase()), true);
+	}
+
+	public void testLayeredSpatialHashMatchesSweep() {
+		compare(new LayeredBroadphase(new SweepBroadphase()), new LayeredBroadphase(new SpatialHashBroadphase(20, OBJECTS)), true);
+	}
+
+	/**
+	 * runs both broadphases over the same frames and checks every result against the reference
+	 * @param layers when true some objects change their collision layer each frame
+	 */
+	private void compare(Broadphase reference, Broadphase tested, boolean layers){
+		final PairBuffer expectedPairs = new PairBuffer(OBJECTS*8);
+		final PairBuffer actualPairs = new PairBuffer(OBJECTS*8);
+		final FixedSizeArray<PhysicsObject> expected = new FixedSizeArray<PhysicsObject>(OBJECTS);
+		final FixedSizeArray<PhysicsObject> actual = new FixedSizeArray<PhysicsObject>(OBJECTS);
+		int pairsSeen = 0;
+		for(int frame = 0; frame < FRAMES; frame++){
+			final int count = nextFrame(frame, layers);
+			//both get the objects in the same order, the broadphases may reorder their copy
+			final Object[] referenceMembers = Arrays.copyOf(members, count);
+			final Object[] testedMembers = Arrays.copyOf(members, count);
+			reference.update(referenceMembers, count);
+			tested.update(testedMembers, count);
+
+			expectedPairs.clear();
+			actualPairs.clear();
+			reference.findPairs(expectedPairs);
+			tested.findPairs(actualPairs);
+			assertTrue("frame " + frame + " pairs", Arrays.equals(keys(expectedPairs), keys(actualPairs)));
+			pairsSeen += expectedPairs.getCount();
+
+			for(int i = 0; i < QUERIES; i++){
+				final double x = random.nextDouble()*SIZE;
+				final double y = random.nextDouble()*SIZE;
+				final double width = random.nextDouble()*60;
+				final double height = random.nextDouble()*60;
+				final int mask = layers ? 1 << random.nextInt(3) : -1;
+				expected.clear();
+				actual.clear();
+				reference.query(x, y, x + width, y + height, mask, expected);
+				tested.query(x, y, x + width, y + height, mask, actual);
+				assertTrue("frame " + frame + " query " + i, Arrays.equals(ids(expected), ids(actual)));
+
+				final double endX = random.nextDouble()*SIZE;
+				final double endY = random.nextDouble()*SIZE;
+				expected.clear();
+				actual.clear();
+				reference.queryRay(x, y, endX, endY, mask, expected);
+				tested.queryRay(x, y, endX, endY, mask, actual);
+				assertTrue("frame " + frame + " ray " + i, Arrays.equals(ids(expected), ids(actual)));
+			}
+		}
+		assertTrue("no pairs were compared", pairsSeen > 0);
+	}
+	/**
+	 * moves the objects, drops some from the set and brings back others
+	 * @return the number of objects in members this frame
+	 */
+	private int nextFrame(int frame, boolean layers){
+		int count = 0;
+		for(int i = 0; i < OBJECTS; i++){
+			final GLPoint point = points[i];
+			//most move a little, a few jump across the world
+			if(random.nextInt(10) == 0){
+				point.setX(random.nextDouble()*SIZE);
+				point.setY(random.nextDouble()*SIZE);
+			}
+			else{
+				point.setX(point.getX() + random.nextDouble()*6 - 3);
+				point.setY(point.getY() + random.nextDouble()*6 - 3);
+			}
+			objects[i].getBoundary().setBox();
+			if(layers && random.nextInt(5) == 0){
+				//layer 0 sees every layer, layer 1 sees layer 0 and layer 2 only sees itself
+				final int layer = random.nextInt(3);
+				objects[i].setCollisionFilter(1 << layer, layer == 0 ? 7 : layer == 1 ? 1 : 4);
+			}
+			//objects leave the set for a few frames at a time
+			if(frame == 0 || (i + frame) % 7 != 0){
+				members[count++] = objects[i];
+			}
+		}
+		return count;
+	}
+	/**
+	 * @return the pairs as sorted keys of the two ids, so the order of the pairs and of each pair does not matter
+	 */
+	private static long[] keys(PairBuffer pairs){
+		final long[] keys = new long[pairs.getCount()];
+		for(int i = 0; i < keys.length; i++){
+			final int a = pairs.getFirst(i).id;
+			final int b = pairs.getSecond(i).id;
+			keys[i] = ((long)Math.min(a, b) << 32) | (Math.max(a, b) & 0xffffffffL);
+		}
+		Arrays.sort(keys);
+		return keys;
+	}
+	private static int[] ids(FixedSizeArray<PhysicsObject> objects){
+		final int[] ids = new int[objects.getCount()];
+		for(int i = 0; i < ids.length; i++){
+			ids[i] = objects.get(i).id;
+		}
+		Arrays.sort(ids);
+		return ids;
+	}
+}
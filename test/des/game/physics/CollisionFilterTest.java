@@ -0,0 +1,116 @@
+/*******************************************************************************
+ * Copyright 2011 Douglas Siemon
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package des.game.physics;
+
+import des.game.base.GLPoint;
+import des.game.boundary.Boundary;
+import des.game.boundary.Circle;
+import des.game.boundary.Rectangle;
+
+/**
+ * collision layers of objects already in the engine can be changed, and the collision matrix has to 
+ * 	allow a pair in both directions
+ */
+public class CollisionFilterTest extends PhysicsEngineTestCase {
+	private int hits;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		hits = 0;
+	}
+
+	private PhysicsObject addBall(int type) {
+		final GLPoint point = new GLPoint(0, 0, 0);
+		final PhysicsObject ball = new PhysicsObject(new Boundary(new Circle(point, 5)), new VectorObject(1, point, 0, 0), null, point);
+		ball.setType(type);
+		ball.setCollisionBehavior(new CollisionBehavior() {
+			public void handleCollision(CollisionBehavior other) {
+				hits++;
+			}
+		});
+		ball.add();
+		return ball;
+	}
+
+	private PhysicsObject addWall(int type) {
+		final GLPoint point = new GLPoint(-2, -2, 0);
+		final PhysicsObject wall = new PhysicsObject(new Boundary(new Rectangle(point, 4, 4)), null, null, point);
+		wall.setType(type);
+		wall.add();
+		return wall;
+	}
+
+	private void step() {
+		PhysicsEngine.instance.update(0.016f, null);
+	}
+
+	public void testStaticFilterChange() {
+		boolean[][] matrix = {{false, true}, {true, true}};
+		PhysicsEngine.setCollisionMatrix(matrix);
+		final PhysicsObject ball = addBall(1);
+		ball.setCollisionFilter(1, 2);
+		final PhysicsObject wall = addWall(1);
+		wall.setCollisionFilter(4, -1);
+		step();
+		assertEquals("collided outside its layers", 0, hits);
+
+		wall.setCollisionFilter(2, -1);
+		step();
+		assertTrue("static layer change was missed", hits > 0);
+	}
+
+	public void testStaticTypeChange() {
+		boolean[][] matrix = {{false, true, true}, {true, false, true}, {true, true, true}};
+		PhysicsEngine.setCollisionMatrix(matrix);
+		addBall(1);
+		final PhysicsObject wall = addWall(1);
+		step();
+		assertEquals("collided with a type it ignores", 0, hits);
+
+		wall.setType(2);
+		step();
+		assertTrue("static type change was missed", hits > 0);
+	}
+
+	public void testMatrixChange() {
+		boolean[][] matrix = {{false, true}, {true, false}};
+		PhysicsEngine.setCollisionMatrix(matrix);
+		addBall(1);
+		addWall(1);
+		step();
+		assertEquals("collided with a type it ignores", 0, hits);
+
+		boolean[][] colliding = {{false, true}, {true, true}};
+		PhysicsEngine.setCollisionMatrix(colliding);
+		step();
+		assertTrue("matrix change was missed", hits > 0);
+	}
+
+	public void testMatrixNeedsBothDirections() {
+		boolean[][] matrix = {{false, true, true}, {true, true, false}, {true, true, true}};
+		PhysicsEngine.setCollisionMatrix(matrix);
+		addBall(1);
+		addWall(2);
+		step();
+		assertEquals("one direction of the matrix was enough", 0, hits);
+
+		matrix[1][2] = true;
+		PhysicsEngine.setCollisionMatrix(matrix);
+		step();
+		assertTrue(hits > 0);
+	}
+}
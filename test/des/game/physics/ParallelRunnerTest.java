@@ -0,0 +1,85 @@
+/*******************************************************************************
+ * Copyright 2011 Douglas Siemon
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package des.game.physics;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+/**
+ * failures in a job reach the caller and do not stall later runs
+ */
+public class ParallelRunnerTest extends TestCase {
+	private static final int COUNT = 64;
+
+	public void testErrorOnWorkerIsRethrownAndRunnerRecovers() throws Exception {
+		final ParallelRunner runner = new ParallelRunner(3);
+		final AtomicInteger done = new AtomicInteger();
+		final ParallelJob failing = new ParallelJob() {
+			public void run(int index, int worker) {
+				if(worker != 0){
+					throw new AssertionError("worker " + worker);
+				}
+				//give the workers time to pick up an index
+				try{
+					Thread.sleep(1);
+				}
+				catch(InterruptedException e){
+				}
+			}
+		};
+		final ParallelJob counting = new ParallelJob() {
+			public void run(int index, int worker) {
+				done.incrementAndGet();
+			}
+		};
+		final Throwable[] caught = new Throwable[1];
+		final Thread caller = new Thread() {
+			@Override
+			public void run() {
+				try{
+					runner.run(failing, COUNT);
+				}
+				catch(Throwable e){
+					caught[0] = e;
+				}
+				runner.run(counting, COUNT);
+				runner.run(counting, COUNT);
+			}
+		};
+		caller.start();
+		caller.join(5000);
+		assertFalse("runner stalled after a worker died", caller.isAlive());
+		assertTrue("error was not rethrown", caught[0] instanceof AssertionError);
+		assertEquals(2*COUNT, done.get());
+		runner.shutdown();
+	}
+
+	public void testRuntimeExceptionOnCallerIsRethrown() {
+		final ParallelRunner runner = new ParallelRunner(2);
+		try{
+			runner.run(new ParallelJob() {
+				public void run(int index, int worker) {
+					throw new IllegalStateException();
+				}
+			}, COUNT);
+			fail("exception was not rethrown");
+		}
+		catch(IllegalStateException e){
+		}
+		runner.shutdown();
+	}
+}
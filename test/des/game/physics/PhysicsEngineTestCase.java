@@ -0,0 +1,42 @@
+/*******************************************************************************
+ * Copyright 2011 Douglas Siemon
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package des.game.physics;
+
+import junit.framework.TestCase;
+
+/**
+ * puts the physics engine back to the same settings and an empty world before each test, so a test 
+ * 	does not depend on what the tests before it changed. tests change what they need after super.setUp.
+ */
+public abstract class PhysicsEngineTestCase extends TestCase {
+
+	@Override
+	protected void setUp() throws Exception {
+		if(PhysicsEngine.instance == null){
+			PhysicsEngine.initialize(100, 100, 100, 100, 0);
+		}
+		final PhysicsEngine engine = PhysicsEngine.instance;
+		engine.clearObjects();
+		engine.setSolverIterations(0);
+		engine.setFixedStep(16, 4);
+		engine.setSleepThreshold(PhysicsEngine.DEFAULT_SLEEP_VELOCITY, PhysicsEngine.DEFAULT_SLEEP_FRAMES);
+		engine.setWarmStarting(true);
+		engine.setSinglePrecision(BodyStore.SINGLE_PRECISION);
+		engine.setTileCollision(null);
+		boolean[][] matrix = {{false, true}, {true, true}};
+		PhysicsEngine.setCollisionMatrix(matrix);
+	}
+}
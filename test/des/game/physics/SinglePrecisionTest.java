@@ -0,0 +1,84 @@
+/*******************************************************************************
+ * Copyright 2011 Douglas Siemon
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package des.game.physics;
+
+import des.game.base.GLPoint;
+import des.game.boundary.Boundary;
+import des.game.boundary.Circle;
+import des.game.boundary.Rectangle;
+
+/**
+ * a scene run with the body store in floats stays close to the same scene run in doubles
+ */
+public class SinglePrecisionTest extends PhysicsEngineTestCase {
+	private static final int BODIES = 8;
+	private static final int FRAMES = 300;
+	//units, the objects travel several hundred and bounce off the floor
+	private static final double TOLERANCE = 0.01;
+
+	/**
+	 * throws balls of different masses and accelerations onto a floor
+	 * @return x and y of every ball after the last frame
+	 */
+	private double[] runScene(boolean singlePrecision) {
+		final PhysicsEngine engine = PhysicsEngine.instance;
+		engine.clearObjects();
+		engine.setSinglePrecision(singlePrecision);
+		engine.setSolverIterations(0);
+		engine.setFixedStep(16, 4);
+
+		final GLPoint floorPoint = new GLPoint(-1000, -20, 0);
+		new PhysicsObject(new Boundary(new Rectangle(floorPoint, 3000, 20)), null, null, floorPoint).add();
+		final PhysicsObject[] balls = new PhysicsObject[BODIES];
+		for(int i = 0; i < BODIES; i++){
+			final GLPoint point = new GLPoint(i*60, 50 + i*7, 0);
+			final VectorObject vector = new VectorObject(1 + i%3, point, 13.7*i - 40, 20 - i*3.3);
+			balls[i] = new PhysicsObject(new Boundary(new Circle(point, 5)), vector, null, point);
+			balls[i].add();
+			vector.setAccelerationXComponent(1.3*i - 3);
+			vector.setAccelerationYComponent(-98.1);
+		}
+		for(int frame = 0; frame < FRAMES; frame++){
+			engine.update(0.016f, null);
+		}
+		final double[] result = new double[2*BODIES];
+		for(int i = 0; i < BODIES; i++){
+			result[2*i] = balls[i].getLocation().getX();
+			result[2*i + 1] = balls[i].getLocation().getY();
+		}
+		return result;
+	}
+
+	public void testDriftWithinTolerance() {
+		final double[] doubles = runScene(false);
+		final double[] floats = runScene(true);
+		for(int i = 0; i < doubles.length; i++){
+			assertEquals("coordinate " + i, doubles[i], floats[i], TOLERANCE);
+		}
+	}
+
+	public void testPrecisionChangeKeepsValues() {
+		final GLPoint point = new GLPoint(0, 0, 0);
+		final VectorObject vector = new VectorObject(2.5, point, 12.25, -3.5);
+		PhysicsEngine.instance.setSinglePrecision(true);
+		assertEquals(12.25, vector.getVelocityXComponent(), 0);
+		assertEquals(-3.5, vector.getVelocityYComponent(), 0);
+		assertEquals(2.5, vector.getMass(), 0);
+		PhysicsEngine.instance.setSinglePrecision(false);
+		assertEquals(12.25, vector.getVelocityXComponent(), 0);
+		assertEquals(2.5, vector.getMass(), 0);
+	}
+}
@@ -0,0 +1,201 @@
+/*******************************************************************************
+ * Copyright 2011 Douglas Siemon
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package des.game.physics;
+
+import des.game.base.FieldComponent;
+import des.game.base.FixedSizeArray;
+import des.game.base.GLPoint;
+import des.game.boundary.Boundary;
+import des.game.boundary.Rectangle;
+
+/**
+ * sleeping objects are kept out of the moving objects, keep their contacts and wake when their 
+ * 	surroundings change
+ */
+public class SleepContactTest extends PhysicsEngineTestCase {
+	private int begins;
+	private int ends;
+	private int handled;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		PhysicsEngine.instance.setSolverIterations(4);
+		begins = 0;
+		ends = 0;
+		handled = 0;
+	}
+	private PhysicsObject addFloor(){
+		final GLPoint floorPoint = new GLPoint(-100, 0, 0);
+		final PhysicsObject floor = new PhysicsObject(new Boundary(new Rectangle(floorPoint, 300, 20)), null, null, floorPoint);
+		floor.add();
+		return floor;
+	}
+	private PhysicsObject addBox(GLPoint point){
+		final VectorObject vector = new VectorObject(1, point, 0, 0);
+		final PhysicsObject box = new PhysicsObject(new Boundary(new Rectangle(point, 10, 10)), vector, null, point);
+		box.setCollisionBehavior(new ContactBehavior() {
+			public void handleCollision(CollisionBehavior other) {
+				handled++;
+			}
+			public void beginContact(CollisionBehavior other) {
+				begins++;
+			}
+			public void endContact(CollisionBehavior other) {
+				ends++;
+			}
+		});
+		box.add();
+		return box;
+	}
+	private void runUntilAsleep(VectorObject vector){
+		int frame = 0;
+		while(!vector.isSleeping() && frame < 600){
+			PhysicsEngine.instance.update(0.016f, null);
+			frame++;
+		}
+		assertTrue("box never fell asleep", vector.isSleeping());
+	}
+
+	public void testRestingContactSurvivesSleep() {
+		addFloor();
+		final VectorObject vector = addBox(new GLPoint(0, 10, 0)).getVector();
+		vector.setAccelerationYComponent(-200);
+
+		runUntilAsleep(vector);
+		assertEquals("contacts begun", 1, begins);
+		final int version = BoundarySet.instance.getStaticVersion();
+
+		handled = 0;
+		for(int i = 0; i < 100; i++){
+			PhysicsEngine.instance.update(0.016f, null);
+		}
+		assertTrue(vector.isSleeping());
+		assertEquals("contacts ended while asleep", 0, ends);
+		assertTrue("collisions not handled while asleep", handled >= 90);
+		assertEquals("static partition rebuilt", version, BoundarySet.instance.getStaticVersion());
+
+		vector.wake();
+		for(int i = 0; i < 10; i++){
+			PhysicsEngine.instance.update(0.016f, null);
+		}
+		assertEquals("contacts begun after waking", 1, begins);
+		assertEquals("contacts ended after waking", 0, ends);
+		assertEquals("static partition rebuilt", version, BoundarySet.instance.getStaticVersion());
+	}
+
+	public void testSleepKeepsStaticIndex() {
+		final GLPoint wallPoint = new GLPoint(-100, 0, 0);
+		new PhysicsObject(new Boundary(new Rectangle(wallPoint, 20, 20)), null, null, wallPoint).add();
+
+		final GLPoint point = new GLPoint(0, 0, 0);
+		final VectorObject vector = new VectorObject(1, point, 0, 0);
+		new PhysicsObject(new Boundary(new Rectangle(point, 10, 10)), vector, null, point).add();
+		PhysicsEngine.instance.update(0.016f, null);
+		final int version = BoundarySet.instance.getStaticVersion();
+
+		for(int i = 0; i < PhysicsEngine.DEFAULT_SLEEP_FRAMES + 10; i++){
+			PhysicsEngine.instance.update(0.016f, null);
+		}
+		assertTrue("box never fell asleep", vector.isSleeping());
+		assertEquals("sleeping box still moving", 0, BoundarySet.instance.getDynamicObjects().getCount());
+		assertEquals("sleeping box not kept", 1, BoundarySet.instance.getSleepingObjects().getCount());
+		assertEquals("static partition rebuilt", version, BoundarySet.instance.getStaticVersion());
+
+		//the sleeping objects can still be queried
+		final FixedSizeArray<PhysicsObject> hits = new FixedSizeArray<PhysicsObject>(4);
+		assertEquals(1, PhysicsEngine.instance.queryPoint(5, -5, PhysicsEngine.ALL_LAYERS, hits));
+
+		vector.wake();
+		PhysicsEngine.instance.update(0.016f, null);
+		assertFalse(vector.isSleeping());
+		assertEquals("woken box not moving", 1, BoundarySet.instance.getDynamicObjects().getCount());
+		assertEquals(0, BoundarySet.instance.getSleepingObjects().getCount());
+		assertEquals("static partition rebuilt", version, BoundarySet.instance.getStaticVersion());
+	}
+
+	public void testRestingBodySleepsInField() {
+		addFloor();
+		final VectorObject vector = addBox(new GLPoint(0, 10, 0)).getVector();
+		//gravity over the whole level, pushing on a resting body every step
+		final Field gravity = new Field(new FieldComponent(){
+			@Override
+			public boolean handleObject(PhysicsObject object, int time){
+				object.getVector().addOutsideAcceleration(0, -200);
+				return true;
+			}
+		});
+		gravity.setArea(new Boundary(new Rectangle(new GLPoint(-500, -500, 0), 1000, 1000)));
+		gravity.add();
+
+		runUntilAsleep(vector);
+		for(int i = 0; i < 20; i++){
+			PhysicsEngine.instance.update(0.016f, null);
+		}
+		assertTrue("field woke the resting box", vector.isSleeping());
+		assertEquals("contacts ended", 0, ends);
+	}
+
+	public void testMovedSleeperWakes() {
+		final GLPoint wallPoint = new GLPoint(100, 0, 0);
+		new PhysicsObject(new Boundary(new Rectangle(wallPoint, 20, 20)), null, null, wallPoint).add();
+		final GLPoint point = new GLPoint(0, 0, 0);
+		final VectorObject vector = addBox(point).getVector();
+		runUntilAsleep(vector);
+
+		//game code moves the box into the wall through the point it shares with its boundary
+		point.setX(105);
+		PhysicsEngine.instance.update(0.016f, null);
+		assertFalse("moved box still asleep", vector.isSleeping());
+		assertEquals("contact with the wall", 1, begins);
+	}
+
+	public void testRemovedSupportWakes() {
+		final PhysicsObject floor = addFloor();
+		final VectorObject vector = addBox(new GLPoint(0, 10, 0)).getVector();
+		vector.setAccelerationYComponent(-200);
+		runUntilAsleep(vector);
+		final double y = vector.getLocation().getY();
+
+		floor.remove();
+		for(int i = 0; i < 10; i++){
+			PhysicsEngine.instance.update(0.016f, null);
+		}
+		assertEquals("contact not ended", 1, ends);
+		assertFalse("box left floating", vector.isSleeping());
+		assertTrue("box did not fall", vector.getLocation().getY() < y);
+	}
+
+	public void testSleepersRestOnEachOther() {
+		addFloor();
+		final VectorObject bottom = addBox(new GLPoint(0, 10, 0)).getVector();
+		final VectorObject top = addBox(new GLPoint(0, 20, 0)).getVector();
+		bottom.setAccelerationYComponent(-200);
+		top.setAccelerationYComponent(-200);
+		int frame = 0;
+		while(!(bottom.isSleeping() && top.isSleeping()) && frame < 600){
+			PhysicsEngine.instance.update(0.016f, null);
+			frame++;
+		}
+		assertTrue("stack never fell asleep", bottom.isSleeping() && top.isSleeping());
+		final int ended = ends;
+		for(int i = 0; i < 50; i++){
+			PhysicsEngine.instance.update(0.016f, null);
+		}
+		assertTrue("stack woke on its own", bottom.isSleeping() && top.isSleeping());
+		assertEquals("contacts ended while asleep", ended, ends);
+	}
+}
@@ -0,0 +1,59 @@
+/*******************************************************************************
+ * Copyright 2011 Douglas Siemon
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package des.game.physics;
+
+import des.game.base.GLPoint;
+import des.game.boundary.Boundary;
+import des.game.boundary.Circle;
+
+/**
+ * the time of impact of a pair comes from how far the objects moved during the step, not from 
+ * 	velocities that earlier contacts of the island have already changed
+ */
+public class StepImpactTest extends PhysicsEngineTestCase {
+	private static final int STEP = 16;
+
+	private PhysicsObject mover;
+	private PhysicsObject target;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		//the mover went from x = 0 to x = 10 during the step and has since been turned around
+		final GLPoint start = new GLPoint(0, 0, 0);
+		mover = new PhysicsObject(new Boundary(new Circle(start, 5)), new VectorObject(1, start, 625, 0), null, start);
+		mover.getVector().savePrevious();
+		start.setX(10);
+		mover.getVector().setVelocityXComponent(-100);
+		mover.getBoundary().updateBox();
+		final GLPoint point = new GLPoint(18, 0, 0);
+		target = new PhysicsObject(new Boundary(new Circle(point, 5)), null, null, point);
+		target.getBoundary().updateBox();
+	}
+
+	public void testImpactFromStepStart() {
+		final double impact = PhysicsEngine.instance.timeOfImpact(mover, target, STEP, null);
+		assertEquals(0.8, impact, 1e-6);
+	}
+
+	public void testWalkBackAlongStep() {
+		final double impact = PhysicsEngine.instance.timeOfImpact(mover, target, STEP, null);
+		final double back = PhysicsEngine.instance.walkBack(mover, target, impact, STEP);
+		assertEquals(STEP*0.2, back, 1e-6);
+		assertEquals(8, mover.getLocation().getX(), 1e-6);
+		assertEquals(18, target.getLocation().getX(), 0);
+	}
+}
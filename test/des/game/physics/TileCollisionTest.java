@@ -0,0 +1,107 @@
+/*******************************************************************************
+ * Copyright 2011 Douglas Siemon
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package des.game.physics;
+
+import des.game.base.GLPoint;
+import des.game.boundary.Boundary;
+import des.game.boundary.Circle;
+import des.game.drawing.TiledWorld;
+
+/**
+ * objects and rays against the tiles of a level
+ */
+public class TileCollisionTest extends PhysicsEngineTestCase {
+	private static final int WALL = 0;
+	private static final int PLATFORM = 1;
+
+	private TileCollision tiles;
+	private int tileHits;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		//a floor along row 0, a wall at column 10 and a one-way platform at row 5
+		final TiledWorld world = new TiledWorld(20, 10);
+		world.setTileRange(0, 0, 20, 1, WALL);
+		world.setTileRange(10, 1, 1, 4, WALL);
+		world.setTileRange(2, 5, 4, 1, PLATFORM);
+		tiles = new TileCollision(world, 10, 10);
+		tiles.setTileFlags(PLATFORM, TileCollision.ONE_WAY);
+		PhysicsEngine.instance.setTileCollision(tiles);
+		tileHits = 0;
+	}
+
+	private PhysicsObject addBall(double x, double y, double vx, double vy) {
+		final GLPoint point = new GLPoint(x, y, 0);
+		final PhysicsObject ball = new PhysicsObject(new Boundary(new Circle(point, 2)), new VectorObject(1, point, vx, vy), null, point);
+		ball.setCollisionBehavior(new TileBehavior() {
+			public void handleCollision(CollisionBehavior other) {
+			}
+			public void handleTileCollision(int flags) {
+				tileHits++;
+			}
+		});
+		ball.add();
+		return ball;
+	}
+
+	public void testRaycastStopsAtWall() {
+		final RaycastHit hit = new RaycastHit();
+		assertTrue(PhysicsEngine.instance.raycast(50, 25, 150, 25, PhysicsEngine.ALL_LAYERS, hit));
+		assertNull(hit.object);
+		assertEquals(TileCollision.SOLID, hit.tileFlags);
+		assertEquals(100, hit.x, 1e-6);
+		assertEquals(25, hit.y, 1e-6);
+		assertEquals(-1, hit.normalX, 1e-6);
+		assertEquals(0.5, hit.fraction, 1e-6);
+
+		assertFalse("saw through the wall", PhysicsEngine.instance.lineOfSight(50, 25, 150, 25));
+		assertTrue(PhysicsEngine.instance.lineOfSight(50, 75, 150, 75));
+	}
+
+	public void testRaycastDiagonalAndOneWay() {
+		final RaycastHit hit = new RaycastHit();
+		//down and to the right onto the floor, through the one-way platform
+		assertTrue(PhysicsEngine.instance.raycast(35, 75, 75, 5, PhysicsEngine.ALL_LAYERS, hit));
+		assertEquals(TileCollision.SOLID, hit.tileFlags);
+		assertEquals(10, hit.y, 1e-6);
+		assertEquals(1, hit.normalY, 1e-6);
+		//a ray that starts inside a wall looks out of it
+		assertFalse(PhysicsEngine.instance.raycast(105, 25, 105, 95, PhysicsEngine.ALL_LAYERS, hit));
+	}
+
+	public void testTileBehaviorIsCalled() {
+		final PhysicsObject ball = addBall(50, 20, 0, -200);
+		for(int i = 0; i < 10; i++){
+			PhysicsEngine.instance.update(0.016f, null);
+		}
+		assertTrue(tileHits > 0);
+		assertTrue("fell through the floor", ball.getLocation().getY() >= 12 - PhysicsEngine.TILE_TOLERANCE);
+	}
+
+	public void testSweepStartsAtStepStart() {
+		//the ball came down through the top of the platform during the step, then a contact turned it around
+		final PhysicsObject ball = addBall(30, 64, 0, -300);
+		ball.getVector().savePrevious();
+		ball.getLocation().setY(59);
+		ball.getVector().setVelocityYComponent(300);
+		ball.getBoundary().updateBox();
+
+		final int flags = tiles.collide(ball, 0.016);
+		assertEquals("missed the platform", TileCollision.ONE_WAY, flags);
+		assertTrue(ball.getLocation().getY() >= 62 - PhysicsEngine.TILE_TOLERANCE);
+	}
+}
@@ -0,0 +1,92 @@
+/*******************************************************************************
+ * Copyright 2011 Douglas Siemon
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package des.game.physics;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import des.game.base.GLPoint;
+import des.game.boundary.Boundary;
+import des.game.boundary.Manifold;
+import des.game.boundary.Rectangle;
+
+/**
+ * a stack of boxes settles with less overlap and less jitter when the solver is warm started
+ */
+public class WarmStartTest extends PhysicsEngineTestCase {
+	private static final int BOXES = 4;
+	private static final int ITERATIONS = 2;
+	private static final int SETTLE_FRAMES = 100;
+	private static final int MEASURED_FRAMES = 200;
+
+	private double penetration;
+	private double speed;
+
+	/**
+	 * drops the stack, lets it settle, then averages the deepest overlap between neighbouring boxes 
+	 * 	and the total vertical speed of the boxes over the measured frames
+	 */
+	private void runStack(boolean warmStarting) {
+		final PhysicsEngine engine = PhysicsEngine.instance;
+		engine.clearObjects();
+		engine.setWarmStarting(warmStarting);
+		engine.setSolverIterations(ITERATIONS);
+		engine.setFixedStep(16, 4);
+		//keep the boxes awake so the jitter is measured
+		engine.setSleepThreshold(PhysicsEngine.DEFAULT_SLEEP_VELOCITY, 0);
+
+		final GLPoint floorPoint = new GLPoint(-100, 0, 0);
+		new PhysicsObject(new Boundary(new Rectangle(floorPoint, 300, 10)), null, null, floorPoint).add();
+		final List<PhysicsObject> boxes = new ArrayList<PhysicsObject>();
+		for(int i = 0; i < BOXES; i++){
+			final GLPoint point = new GLPoint(0, 10 + i*10, 0);
+			final VectorObject vector = new VectorObject(1, point, 0, 0);
+			final PhysicsObject box = new PhysicsObject(new Boundary(new Rectangle(point, 10, 10)), vector, null, point);
+			box.add();
+			vector.setAccelerationYComponent(-200);
+			boxes.add(box);
+		}
+
+		final Manifold manifold = new Manifold();
+		penetration = 0;
+		speed = 0;
+		for(int frame = 0; frame < SETTLE_FRAMES + MEASURED_FRAMES; frame++){
+			engine.update(0.016f, null);
+			if(frame < SETTLE_FRAMES){
+				continue;
+			}
+			double deepest = 0;
+			for(int i = 0; i < BOXES; i++){
+				speed += Math.abs(boxes.get(i).getVector().getVelocityYComponent());
+				if(i > 0 && manifold.compute(boxes.get(i - 1).getBoundary(), boxes.get(i).getBoundary())){
+					deepest = Math.max(deepest, manifold.depth);
+				}
+			}
+			penetration += deepest;
+		}
+		penetration /= MEASURED_FRAMES;
+		speed /= MEASURED_FRAMES;
+	}
+
+	public void testStackSettlesBetterWarmStarted() {
+		runStack(false);
+		final double coldPenetration = penetration;
+		final double coldSpeed = speed;
+		runStack(true);
+		assertTrue("overlap " + penetration + " warm, " + coldPenetration + " cold", penetration < coldPenetration*0.5);
+		assertTrue("speed " + speed + " warm, " + coldSpeed + " cold", speed < coldSpeed*0.1);
+	}
+}
@@ -0,0 +1,95 @@
+/*******************************************************************************
+ * Copyright 2011 Douglas Siemon
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package des.game.physics;
+
+import java.util.Random;
+
+import des.game.base.GLPoint;
+import des.game.boundary.Boundary;
+import des.game.boundary.Circle;
+import des.game.boundary.Rectangle;
+
+/**
+ * Compares the candidate pairs and the time of the z plane broadphase against the layered broadphase 
+ * 	it wraps, on a scene spread over four z planes. Most objects sit in one plane, some span several 
+ * 	and some have no height. Run as a program, it prints the pair counts and the time per update 
+ * 	and findPairs, and checks that no pair whose z ranges overlap was lost.
+ */
+public class ZPlaneBroadphaseBenchmark {
+	private static final int OBJECTS = 1500;
+	private static final int ROUNDS = 10;
+	private static final int REPEATS = 50;
+
+	public static void main(String[] args) {
+		PhysicsEngine.initialize(10, OBJECTS, OBJECTS, OBJECTS, 0);
+		final Random random = new Random(5);
+		final Object[] objects = new Object[OBJECTS];
+		for(int i = 0; i < OBJECTS; i++){
+			final int kind = random.nextInt(10);
+			final double z = kind < 8 ? random.nextInt(4)*2 + random.nextDouble()*0.5 : random.nextDouble()*8;
+			final GLPoint point = new GLPoint(random.nextDouble()*500, random.nextDouble()*500, z);
+			final Boundary boundary = random.nextBoolean() ? new Boundary(new Circle(point, 3 + random.nextDouble()*5)) 
+					: new Boundary(new Rectangle(point, 4 + random.nextDouble()*6, 4 + random.nextDouble()*6));
+			boundary.setHeight(kind == 9 ? 0 : kind == 8 ? 3 : 1);
+			final PhysicsObject object = new PhysicsObject(boundary, null, null, point);
+			object.setCollisionFilter(1, -1);
+			boundary.setBox();
+			objects[i] = object;
+		}
+		final Broadphase flat = new LayeredBroadphase(new SweepBroadphase());
+		final Broadphase planes = new ZPlaneBroadphase(new LayeredBroadphase(new SweepBroadphase()), 0, 2);
+		final PairBuffer flatPairs = new PairBuffer(OBJECTS*4);
+		final PairBuffer planePairs = new PairBuffer(OBJECTS*4);
+		
+		for(int round = 0; round < ROUNDS; round++){
+			final long flatTime = time(flat, objects, flatPairs);
+			final long planeTime = time(planes, objects, planePairs);
+			System.out.printf("layered %d pairs %.1f us   z planes %d pairs %.1f us%n", 
+					flatPairs.getCount(), flatTime/1000.0/REPEATS, planePairs.getCount(), planeTime/1000.0/REPEATS);
+		}
+		
+		//every pair the layered broadphase finds with overlapping z ranges has to be found by the planes
+		int missing = 0;
+		for(int i = 0; i < flatPairs.getCount(); i++){
+			final Boundary a = flatPairs.getFirst(i).getBoundary();
+			final Boundary b = flatPairs.getSecond(i).getBoundary();
+			final boolean zOverlap = a.getHeight() == 0 || b.getHeight() == 0 || a.getZProjection().overlap(b.getZProjection());
+			if(zOverlap && !contains(planePairs, flatPairs.getFirst(i), flatPairs.getSecond(i))){
+				missing++;
+			}
+		}
+		System.out.println("pairs with overlapping z missed by the planes: " + missing);
+	}
+	
+	private static long time(Broadphase broadphase, Object[] objects, PairBuffer pairs){
+		final long start = System.nanoTime();
+		for(int i = 0; i < REPEATS; i++){
+			pairs.clear();
+			broadphase.update(objects, objects.length);
+			broadphase.findPairs(pairs);
+		}
+		return System.nanoTime() - start;
+	}
+	
+	private static boolean contains(PairBuffer pairs, PhysicsObject a, PhysicsObject b){
+		for(int i = 0; i < pairs.getCount(); i++){
+			if((pairs.getFirst(i) == a && pairs.getSecond(i) == b) || (pairs.getFirst(i) == b && pairs.getSecond(i) == a)){
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,80 @@
+/*******************************************************************************
+ * Copyright 2011 Douglas Siemon
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package des.game.physics;
+
+import des.game.base.GLPoint;
+import des.game.boundary.Boundary;
+import des.game.boundary.Circle;
+
+/**
+ * overlapping objects on different z planes do not collide, whichever broadphase found the pair
+ */
+public class ZPlaneCollisionTest extends PhysicsEngineTestCase {
+	private Broadphase broadphase;
+	private Broadphase staticBroadphase;
+	private int hits;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		broadphase = PhysicsEngine.instance.getBroadphase();
+		staticBroadphase = PhysicsEngine.instance.getStaticBroadphase();
+		hits = 0;
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		PhysicsEngine.instance.setBroadphase(broadphase);
+		PhysicsEngine.instance.setStaticBroadphase(staticBroadphase);
+	}
+
+	private void addBall(double x, double z, boolean moving) {
+		final GLPoint point = new GLPoint(x, 0, z);
+		final VectorObject vector = moving ? new VectorObject(1, point, 0, 0) : null;
+		final PhysicsObject ball = new PhysicsObject(new Boundary(new Circle(point, 5)), vector, null, point);
+		ball.getBoundary().setHeight(1);
+		ball.setCollisionBehavior(new CollisionBehavior() {
+			public void handleCollision(CollisionBehavior other) {
+				hits++;
+			}
+		});
+		ball.add();
+	}
+
+	private int run(double z) {
+		addBall(0, 0, true);
+		addBall(6, z, true);
+		addBall(-6, z, false);
+		PhysicsEngine.instance.update(0.016f, null);
+		return hits;
+	}
+
+	public void testDifferentPlanesWithFlatBroadphase() {
+		PhysicsEngine.instance.setBroadphase(new SweepBroadphase());
+		PhysicsEngine.instance.setStaticBroadphase(new SweepBroadphase());
+		assertEquals("objects on different planes collided", 0, run(2));
+	}
+
+	public void testDifferentPlanesWithPlaneBroadphase() {
+		assertEquals("objects on different planes collided", 0, run(2));
+	}
+
+	public void testSamePlane() {
+		PhysicsEngine.instance.setBroadphase(new SweepBroadphase());
+		PhysicsEngine.instance.setStaticBroadphase(new SweepBroadphase());
+		assertTrue(run(0.5) > 0);
+	}
+}